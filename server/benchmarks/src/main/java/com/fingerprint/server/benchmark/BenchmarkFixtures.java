@@ -0,0 +1,122 @@
+package com.fingerprint.server.benchmark;
+
+import com.fingerprint.server.dto.FingerprintRequest;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基准测试共用的指纹样本。
+ */
+final class BenchmarkFixtures {
+
+    static final String USER_AGENT = "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/537.36 "
+            + "(KHTML, like Gecko) Chrome/124.0.0.0 Safari/537.36";
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * 典型上报请求，插件与证书列表长度可调。
+     */
+    static FingerprintRequest request(String visitorId, String ip, int plugins) {
+        return new FingerprintRequest(
+                visitorId,
+                new FingerprintRequest.BrowserFingerprint(
+                        USER_AGENT,
+                        "zh-CN",
+                        "Asia/Shanghai",
+                        names("Plugin", plugins),
+                        "canvas-" + visitorId,
+                        "webgl-" + visitorId,
+                        "audio-" + visitorId
+                ),
+                new FingerprintRequest.DeviceFingerprint(
+                        "MacIntel",
+                        "x86_64",
+                        0,
+                        16,
+                        8,
+                        "2560x1600",
+                        "24"
+                ),
+                new FingerprintRequest.NetworkFingerprint(
+                        ip,
+                        null,
+                        "4g",
+                        10.5d,
+                        50d,
+                        "China Mobile",
+                        Map.of("effectiveType", "4g")
+                ),
+                new FingerprintRequest.CertificateFingerprint(
+                        names("cert-" + visitorId + "-", 3),
+                        names("pin-", 2)
+                ),
+                Instant.parse("2025-11-09T08:00:00Z"),
+                Map.of("sessionId", "sess-" + visitorId, "page", "/checkout")
+        );
+    }
+
+    /**
+     * 与 {@link #request} 对应的完整文档，附带地理位置与 IP 历史。
+     */
+    static DeviceFingerprintDocument document(String id, String visitorId, String ip, int plugins) {
+        return DeviceFingerprintDocument.builder()
+                .id(id)
+                .visitorId(visitorId)
+                .browser(DeviceFingerprintDocument.BrowserFingerprint.builder()
+                        .userAgent(USER_AGENT)
+                        .language("zh-CN")
+                        .timezone("Asia/Shanghai")
+                        .plugins(names("Plugin", plugins))
+                        .canvasFingerprint("canvas-" + visitorId)
+                        .webglFingerprint("webgl-" + visitorId)
+                        .audioFingerprint("audio-" + visitorId)
+                        .build())
+                .device(DeviceFingerprintDocument.DeviceFingerprint.builder()
+                        .platform("MacIntel")
+                        .architecture("x86_64")
+                        .touchPoints(0)
+                        .deviceMemory(16)
+                        .cpuCores(8)
+                        .screenResolution("2560x1600")
+                        .colorDepth("24")
+                        .build())
+                .network(DeviceFingerprintDocument.NetworkFingerprint.builder()
+                        .ipAddress(ip)
+                        .connectionType("4g")
+                        .downlinkMbps(10.5d)
+                        .rtt(50d)
+                        .isp("China Mobile")
+                        .build())
+                .geoLocation(DeviceFingerprintDocument.GeoLocation.builder()
+                        .country("China")
+                        .region("Shanghai")
+                        .city("Shanghai")
+                        .latitude(31.2304d)
+                        .longitude(121.4737d)
+                        .timezone("Asia/Shanghai")
+                        .build())
+                .certificate(DeviceFingerprintDocument.CertificateFingerprint.builder()
+                        .fingerprints(names("cert-" + visitorId + "-", 3))
+                        .pinningHashes(names("pin-", 2))
+                        .build())
+                .observationCount(12)
+                .ipHistory(new ArrayList<>(List.of(ip, "10.0.0.1", "10.0.0.2")))
+                .createdAt(Instant.parse("2025-01-01T00:00:00Z"))
+                .updatedAt(Instant.parse("2025-11-01T00:00:00Z"))
+                .build();
+    }
+
+    private static List<String> names(String prefix, int count) {
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(prefix + i);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,60 @@
+package com.fingerprint.server.benchmark;
+
+import com.fingerprint.server.config.ClientIpProperties;
+import com.fingerprint.server.service.support.ClientIpResolver;
+import com.fingerprint.server.util.IpAddress;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ClientIpResolver#resolve} 在常见代理头组合下的开销。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ClientIpResolverBenchmark {
+
+    /**
+     * forwardedChain：多级 X-Forwarded-For；realIp：仅 X-Real-IP；remoteOnly：无代理头；ipv6：IPv6 客户端。
+     */
+    @Param({"forwardedChain", "realIp", "remoteOnly", "ipv6"})
+    private String scenario;
+
+    private ClientIpResolver resolver;
+    private MockHttpServletRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        resolver = new ClientIpResolver(new ClientIpProperties());
+        request = new MockHttpServletRequest();
+        request.setRemoteAddr("10.0.0.8");
+        switch (scenario) {
+            case "forwardedChain" -> request.addHeader("X-Forwarded-For", "36.112.10.1, 10.0.0.3, 10.0.0.2");
+            case "realIp" -> request.addHeader("X-Real-IP", "36.112.10.1");
+            case "remoteOnly" -> request.setRemoteAddr("36.112.10.1");
+            case "ipv6" -> request.addHeader("X-Forwarded-For", "2409:8a1e:6c34:1f70::1");
+            default -> throw new IllegalArgumentException("Unknown scenario: " + scenario);
+        }
+    }
+
+    @Benchmark
+    public IpAddress resolve() {
+        return resolver.resolve(request);
+    }
+}
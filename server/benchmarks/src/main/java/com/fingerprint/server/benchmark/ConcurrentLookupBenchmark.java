@@ -0,0 +1,141 @@
+package com.fingerprint.server.benchmark;
+
+import com.fingerprint.server.config.MatchingProperties;
+import com.fingerprint.server.config.SimilarityProperties;
+import com.fingerprint.server.dto.FingerprintRequest;
+import com.fingerprint.server.dto.FingerprintResponse;
+import com.fingerprint.server.mapper.DeviceFingerprintMapper;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import com.fingerprint.server.repository.DeviceFingerprintRepository;
+import com.fingerprint.server.service.DeviceFingerprintService;
+import com.fingerprint.server.service.support.CandidateScriptQueryBuilder;
+import com.fingerprint.server.service.support.KeyedLocks;
+import com.fingerprint.server.service.support.MatchingMetrics;
+import com.fingerprint.server.service.support.SimilarityScorer;
+import com.fingerprint.server.util.IpAddress;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * 不同召回方式下的吞吐量与延迟分布。
+ * <p>
+ * ES 访问以固定耗时的桩对象模拟（{@code _msearch} 按一次往返计），64 个线程并发请求，{@link Mode#SampleTime} 输出 p99 等分位数。
+ * 对比同一 p99 下的吞吐量时，可调整 {@link Threads} 线程数后重复运行。
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@Threads(64)
+@State(Scope.Benchmark)
+public class ConcurrentLookupBenchmark {
+
+    /**
+     * 单次 ES 查询的模拟耗时（微秒）。
+     */
+    @Param({"2000"})
+    private long esLatencyMicros;
+
+    @Param({"SEQUENTIAL", "CONCURRENT", "COMBINED"})
+    private MatchingProperties.LookupMode lookupMode;
+
+    private DeviceFingerprintService service;
+    private ExecutorService lookupExecutor;
+    private final AtomicInteger visitorSequence = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        DeviceFingerprintRepository repository = Mockito.mock(DeviceFingerprintRepository.class, withSettings().stubOnly());
+        ElasticsearchOperations operations = Mockito.mock(ElasticsearchOperations.class, withSettings().stubOnly());
+
+        when(repository.findByVisitorIdOrderByUpdatedAtDesc(anyString(), any(Pageable.class))).thenAnswer(invocation -> {
+            simulateRoundTrip();
+            return List.of();
+        });
+        @SuppressWarnings("unchecked")
+        SearchHits<DeviceFingerprintDocument> searchHits = Mockito.mock(SearchHits.class, withSettings().stubOnly());
+        when(searchHits.iterator()).thenAnswer(invocation -> Collections.emptyIterator());
+        when(operations.search(any(Query.class), eq(DeviceFingerprintDocument.class))).thenAnswer(invocation -> {
+            simulateRoundTrip();
+            return searchHits;
+        });
+        when(operations.multiSearch(anyList(), eq(DeviceFingerprintDocument.class))).thenAnswer(invocation -> {
+            simulateRoundTrip();
+            List<?> queries = invocation.getArgument(0);
+            return Collections.nCopies(queries.size(), searchHits);
+        });
+        when(repository.save(any(DeviceFingerprintDocument.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        SimilarityProperties similarityProperties = new SimilarityProperties();
+        MatchingProperties matchingProperties = new MatchingProperties();
+        matchingProperties.setLookupMode(lookupMode);
+        service = new DeviceFingerprintService(repository, operations, new DeviceFingerprintMapper(),
+                new SimilarityScorer(similarityProperties), similarityProperties,
+                matchingProperties, new KeyedLocks(1024), new CandidateScriptQueryBuilder(similarityProperties, matchingProperties),
+                new MatchingMetrics(new SimpleMeterRegistry()));
+        lookupExecutor = Executors.newCachedThreadPool();
+        ReflectionTestUtils.setField(service, "lookupExecutor", lookupExecutor);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        lookupExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public FingerprintResponse handleFingerprint(ThreadRequest threadRequest) {
+        return service.handleFingerprint(threadRequest.request, IpAddress.parse("36.112.10.1"));
+    }
+
+    private void simulateRoundTrip() throws InterruptedException {
+        TimeUnit.MICROSECONDS.sleep(esLatencyMicros);
+    }
+
+    /**
+     * 每个压测线程使用不同的 visitorId，避免在同一把锁上串行。
+     */
+    @State(Scope.Thread)
+    public static class ThreadRequest {
+
+        private FingerprintRequest request;
+
+        @Setup(Level.Trial)
+        public void setUp(ConcurrentLookupBenchmark benchmark) {
+            request = BenchmarkFixtures.request("visitor-" + benchmark.visitorSequence.incrementAndGet(), "36.112.10.1", 10);
+        }
+    }
+}
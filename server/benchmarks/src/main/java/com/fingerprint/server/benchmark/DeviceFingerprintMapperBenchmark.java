@@ -0,0 +1,44 @@
+package com.fingerprint.server.benchmark;
+
+import com.fingerprint.server.dto.FingerprintRequest;
+import com.fingerprint.server.mapper.DeviceFingerprintMapper;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DeviceFingerprintMapper#toDocument} 的吞吐量与分配量。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DeviceFingerprintMapperBenchmark {
+
+    private DeviceFingerprintMapper mapper;
+    private FingerprintRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mapper = new DeviceFingerprintMapper();
+        request = BenchmarkFixtures.request("visitor-1", "36.112.10.1", 10);
+    }
+
+    @Benchmark
+    public DeviceFingerprintDocument toDocument() {
+        return mapper.toDocument(request);
+    }
+}
@@ -0,0 +1,85 @@
+package com.fingerprint.server.benchmark;
+
+import com.fingerprint.server.config.GeoIpProperties;
+import com.fingerprint.server.dto.GeoLocationInfo;
+import com.fingerprint.server.service.GeoIpService;
+import com.fingerprint.server.service.support.GeoIpDatabase;
+import com.maxmind.db.Reader;
+import com.maxmind.geoip2.DatabaseReader;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link GeoIpService#lookup} 的开销。
+ * <p>
+ * 需要通过 {@code -Djmh.jvmArgs=-Dgeoip.database=/path/GeoLite2-City.mmdb} 指定数据库文件，缺失时该基准报错并被跳过。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class GeoIpServiceBenchmark {
+
+    /**
+     * publicIp：公网地址查库；privateIp：私有地址提前返回。
+     */
+    @Param({"publicIp", "privateIp"})
+    private String scenario;
+
+    /**
+     * 是否启用查询结果缓存；关闭时每次都查询数据库。
+     */
+    @Param({"true", "false"})
+    private boolean resultCache;
+
+    private DatabaseReader databaseReader;
+    private GeoIpService geoIpService;
+    private String[] addresses;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File database = new File(System.getProperty("geoip.database", "GeoLite2-City.mmdb"));
+        if (!database.isFile()) {
+            throw new IllegalStateException("GeoIP database not found: " + database.getAbsolutePath());
+        }
+        databaseReader = new DatabaseReader.Builder(database).fileMode(Reader.FileMode.MEMORY_MAPPED).build();
+        GeoIpProperties properties = new GeoIpProperties();
+        properties.setCacheSize(resultCache ? 100_000 : 0);
+        geoIpService = new GeoIpService(new GeoIpDatabase(databaseReader), properties, new SimpleMeterRegistry());
+        addresses = "publicIp".equals(scenario)
+                ? new String[]{"36.112.10.1", "8.8.8.8", "1.1.1.1", "114.114.114.114", "223.5.5.5", "2409:8a1e::1"}
+                : new String[]{"10.0.0.1", "192.168.1.10", "172.16.5.4", "127.0.0.1"};
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        databaseReader.close();
+    }
+
+    @Benchmark
+    public Optional<GeoLocationInfo> lookup() {
+        String address = addresses[cursor];
+        cursor = (cursor + 1) % addresses.length;
+        return geoIpService.lookup(address);
+    }
+}
@@ -0,0 +1,145 @@
+package com.fingerprint.server.benchmark;
+
+import com.fingerprint.server.dto.FingerprintRequest;
+import com.fingerprint.server.mapper.DeviceFingerprintMapper;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MinHash 分段召回在“浏览器升级”漂移数据集上的召回率与查找耗时。
+ * <p>
+ * 每台合成设备漂移后 userAgent 版本与 canvas 指纹发生变化、IP 不同，仅能通过分段键召回。
+ * 内存倒排索引模拟 ES 上的 terms 查询，候选按命中分段数排序后截取前 {@code limit} 个，
+ * 与 ES 按匹配子句数打分再截断的行为一致。召回率在初始化时计算并记录到日志。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LshRecallBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(LshRecallBenchmark.class);
+
+    private static final String[] LANGUAGES = {"zh-CN", "en-US", "ja-JP", "ko-KR", "de-DE"};
+    private static final String[] TIMEZONES = {"Asia/Shanghai", "America/New_York", "Europe/Berlin", "Asia/Tokyo"};
+    private static final String[] PLATFORMS = {"MacIntel", "Win32", "Linux x86_64", "iPhone"};
+
+    @Param({"10000", "100000"})
+    private int devices;
+
+    /**
+     * 每次查找返回的候选上限，对应候选查询的 size。
+     */
+    @Param({"20"})
+    private int limit;
+
+    private Map<String, List<Integer>> index;
+    private List<List<String>> driftedBands;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        DeviceFingerprintMapper mapper = new DeviceFingerprintMapper();
+        index = new HashMap<>();
+        driftedBands = new ArrayList<>(devices);
+        for (int id = 0; id < devices; id++) {
+            DeviceFingerprintDocument original = mapper.toDocument(syntheticRequest(id, 123, "canvas-" + id, "36.112.0.1"));
+            for (String band : DeviceFingerprintMapper.lshBands(original.getBrowser(), original.getDevice())) {
+                index.computeIfAbsent(band, key -> new ArrayList<>()).add(id);
+            }
+            DeviceFingerprintDocument drifted = mapper.toDocument(syntheticRequest(id, 124, "canvas-upd-" + id, "117.136.0.9"));
+            driftedBands.add(DeviceFingerprintMapper.lshBands(drifted.getBrowser(), drifted.getDevice()));
+        }
+
+        int recalled = 0;
+        long candidates = 0;
+        for (int id = 0; id < devices; id++) {
+            List<Integer> found = lookup(driftedBands.get(id));
+            candidates += found.size();
+            if (found.contains(id)) {
+                recalled++;
+            }
+        }
+        log.info("LSH recall@{}={}, mean candidates={}, distinct bands={}, devices={}", limit,
+                String.format("%.4f", (double) recalled / devices), String.format("%.2f", (double) candidates / devices),
+                index.size(), devices);
+    }
+
+    @Benchmark
+    public List<Integer> lookup() {
+        List<Integer> found = lookup(driftedBands.get(cursor));
+        cursor = (cursor + 1) % devices;
+        return found;
+    }
+
+    private List<Integer> lookup(List<String> bands) {
+        Map<Integer, Integer> matches = new HashMap<>();
+        for (String band : bands) {
+            for (Integer id : index.getOrDefault(band, List.of())) {
+                matches.merge(id, 1, Integer::sum);
+            }
+        }
+        return matches.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Integer>comparingByValue().reversed())
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    private FingerprintRequest syntheticRequest(int id, int chromeMajor, String canvas, String ip) {
+        Random random = new Random(id);
+        List<String> plugins = new ArrayList<>();
+        int pluginCount = 2 + random.nextInt(6);
+        for (int i = 0; i < pluginCount; i++) {
+            plugins.add("Plugin-" + random.nextInt(30));
+        }
+        return new FingerprintRequest(
+                "visitor-" + id + "-" + chromeMajor,
+                new FingerprintRequest.BrowserFingerprint(
+                        "Mozilla/5.0 Chrome/" + chromeMajor + ".0." + random.nextInt(5000) + ".0",
+                        LANGUAGES[random.nextInt(LANGUAGES.length)],
+                        TIMEZONES[random.nextInt(TIMEZONES.length)],
+                        plugins,
+                        canvas,
+                        "webgl-" + random.nextInt(500),
+                        "audio-" + random.nextInt(200)
+                ),
+                new FingerprintRequest.DeviceFingerprint(
+                        PLATFORMS[random.nextInt(PLATFORMS.length)],
+                        random.nextBoolean() ? "x86_64" : "arm64",
+                        random.nextInt(3) * 5,
+                        4 << random.nextInt(3),
+                        2 << random.nextInt(4),
+                        (1280 + 160 * random.nextInt(10)) + "x" + (720 + 90 * random.nextInt(10)),
+                        random.nextBoolean() ? "24" : "30"
+                ),
+                new FingerprintRequest.NetworkFingerprint(ip, null, "wifi", 50d, 30d, null, null),
+                null,
+                Instant.parse("2025-11-09T08:00:00Z"),
+                null
+        );
+    }
+}
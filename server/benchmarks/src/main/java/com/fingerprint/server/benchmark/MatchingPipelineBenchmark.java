@@ -0,0 +1,119 @@
+package com.fingerprint.server.benchmark;
+
+import com.fingerprint.server.config.MatchingProperties;
+import com.fingerprint.server.config.SimilarityProperties;
+import com.fingerprint.server.dto.FingerprintRequest;
+import com.fingerprint.server.dto.FingerprintResponse;
+import com.fingerprint.server.mapper.DeviceFingerprintMapper;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import com.fingerprint.server.repository.DeviceFingerprintRepository;
+import com.fingerprint.server.service.DeviceFingerprintService;
+import com.fingerprint.server.service.support.CandidateScriptQueryBuilder;
+import com.fingerprint.server.service.support.KeyedLocks;
+import com.fingerprint.server.service.support.MatchingMetrics;
+import com.fingerprint.server.service.support.SimilarityScorer;
+import com.fingerprint.server.util.IpAddress;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * 完整匹配流程（映射、候选召回、打分、合并）的开销，ES 访问以桩对象代替。
+ * <p>
+ * 桩对象使用 {@code stubOnly} 模式以减少 Mockito 自身的记录开销，结果仍包含少量桩调用成本，
+ * 适合对比不同候选数量与配置下的相对变化。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MatchingPipelineBenchmark {
+
+    /**
+     * 候选查询返回的文档数量（不含 visitorId 命中）。
+     */
+    @Param({"0", "5", "20"})
+    private int candidates;
+
+    /**
+     * 是否存在 visitorId 命中的历史设备。
+     */
+    @Param({"true", "false"})
+    private boolean returningVisitor;
+
+    private DeviceFingerprintService service;
+    private FingerprintRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        DeviceFingerprintRepository repository = Mockito.mock(DeviceFingerprintRepository.class, withSettings().stubOnly());
+        ElasticsearchOperations operations = Mockito.mock(ElasticsearchOperations.class, withSettings().stubOnly());
+
+        DeviceFingerprintDocument visitorHit = BenchmarkFixtures.document("device-0", "visitor-1", "36.112.10.1", 10);
+        when(repository.findByVisitorIdOrderByUpdatedAtDesc(anyString(), any(Pageable.class)))
+                .thenAnswer(invocation -> returningVisitor ? List.of(visitorHit) : List.of());
+
+        Map<String, DeviceFingerprintDocument> stored = new HashMap<>();
+        stored.put(visitorHit.getId(), visitorHit);
+        List<SearchHit<DeviceFingerprintDocument>> hits = new ArrayList<>();
+        for (int i = 0; i < candidates; i++) {
+            @SuppressWarnings("unchecked")
+            SearchHit<DeviceFingerprintDocument> hit = Mockito.mock(SearchHit.class, withSettings().stubOnly());
+            DeviceFingerprintDocument candidate = BenchmarkFixtures.document("device-" + (i + 1), "visitor-x" + i, "36.112.10.1", 10);
+            when(hit.getContent()).thenReturn(candidate);
+            hits.add(hit);
+            stored.put(candidate.getId(), candidate);
+        }
+        @SuppressWarnings("unchecked")
+        SearchHits<DeviceFingerprintDocument> searchHits = Mockito.mock(SearchHits.class, withSettings().stubOnly());
+        when(searchHits.iterator()).thenAnswer(invocation -> hits.iterator());
+        when(operations.search(any(Query.class), eq(DeviceFingerprintDocument.class))).thenReturn(searchHits);
+        when(operations.get(anyString(), eq(DeviceFingerprintDocument.class)))
+                .thenAnswer(invocation -> stored.get(invocation.<String>getArgument(0)));
+        when(repository.save(any(DeviceFingerprintDocument.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        SimilarityProperties similarityProperties = new SimilarityProperties();
+        MatchingProperties matchingProperties = new MatchingProperties();
+        matchingProperties.setLookupMode(MatchingProperties.LookupMode.SEQUENTIAL);
+        service = new DeviceFingerprintService(repository, operations, new DeviceFingerprintMapper(),
+                new SimilarityScorer(similarityProperties), similarityProperties,
+                matchingProperties, new KeyedLocks(1024), new CandidateScriptQueryBuilder(similarityProperties, matchingProperties),
+                new MatchingMetrics(new SimpleMeterRegistry()));
+        request = BenchmarkFixtures.request("visitor-1", "36.112.10.1", 10);
+    }
+
+    @Benchmark
+    public FingerprintResponse handleFingerprint() {
+        return service.handleFingerprint(request, IpAddress.parse("36.112.10.1"));
+    }
+}
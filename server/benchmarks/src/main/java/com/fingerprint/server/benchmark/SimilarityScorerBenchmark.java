@@ -0,0 +1,80 @@
+package com.fingerprint.server.benchmark;
+
+import com.fingerprint.server.config.SimilarityProperties;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import com.fingerprint.server.service.support.CompiledFingerprint;
+import com.fingerprint.server.service.support.SimilarityScorer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SimilarityScorer#calculate} 在不同文档形态下的吞吐量。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SimilarityScorerBenchmark {
+
+    /**
+     * identical：完全一致；revisit：同设备换 IP；stranger：不同设备；sparse：历史文档缺失大部分字段。
+     */
+    @Param({"identical", "revisit", "stranger", "sparse"})
+    private String shape;
+
+    @Param({"5", "30"})
+    private int plugins;
+
+    private SimilarityScorer scorer;
+    private DeviceFingerprintDocument incoming;
+    private DeviceFingerprintDocument existing;
+    private CompiledFingerprint compiled;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        scorer = new SimilarityScorer(new SimilarityProperties());
+        incoming = BenchmarkFixtures.document(null, "visitor-1", "36.112.10.1", plugins);
+        existing = switch (shape) {
+            case "identical" -> BenchmarkFixtures.document("device-1", "visitor-1", "36.112.10.1", plugins);
+            case "revisit" -> BenchmarkFixtures.document("device-1", "visitor-1", "36.112.10.77", plugins);
+            case "stranger" -> BenchmarkFixtures.document("device-2", "visitor-2", "36.112.10.1", plugins);
+            case "sparse" -> DeviceFingerprintDocument.builder()
+                    .id("device-3")
+                    .visitorId("visitor-1")
+                    .browser(BenchmarkFixtures.document(null, "visitor-1", "36.112.10.1", plugins).getBrowser())
+                    .build();
+            default -> throw new IllegalArgumentException("Unknown shape: " + shape);
+        };
+        compiled = scorer.compile(incoming);
+    }
+
+    /**
+     * 每次打分都重新编译新上报指纹。
+     */
+    @Benchmark
+    public double calculate() {
+        return scorer.calculate(incoming, existing);
+    }
+
+    /**
+     * 新上报指纹只编译一次，对应匹配流程中逐个候选打分的场景。
+     */
+    @Benchmark
+    public double calculateCompiled() {
+        return scorer.calculate(compiled, existing);
+    }
+}
@@ -0,0 +1,91 @@
+package com.fingerprint.server.benchmark;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fingerprint.server.dto.FingerprintRequest;
+import com.fingerprint.server.mapper.DeviceFingerprintMapper;
+import com.fingerprint.server.mapper.FingerprintDocumentReader;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单条上报以 JSON 与 CBOR 传输时的报文大小，以及服务端解析并映射为文档的吞吐量。
+ * {@code stream*} 为接口实际使用的 {@link FingerprintDocumentReader} 一次遍历解析，{@code parseAndMap*} 为先绑定
+ * {@link FingerprintRequest} 再映射的两步方式，可配合 {@code -prof gc} 对比每次分配量。
+ * <p>
+ * 两种格式均与 Web SDK 一致，以 ISO-8601 字符串传输 {@code collectedAt}。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class WireFormatBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(WireFormatBenchmark.class);
+
+    private DeviceFingerprintMapper mapper;
+    private FingerprintDocumentReader reader;
+    private ObjectMapper jsonMapper;
+    private ObjectMapper cborMapper;
+    private byte[] jsonPayload;
+    private byte[] cborPayload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mapper = new DeviceFingerprintMapper();
+        jsonMapper = JsonMapper.builder().findAndAddModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build();
+        reader = new FingerprintDocumentReader(jsonMapper);
+        cborMapper = CBORMapper.builder().findAndAddModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build();
+        FingerprintRequest request = BenchmarkFixtures.request("visitor-1", "36.112.10.1", 10);
+        jsonPayload = jsonMapper.writeValueAsBytes(request);
+        cborPayload = cborMapper.writeValueAsBytes(request);
+        log.info("Payload bytes: json={}, cbor={} ({}%)", jsonPayload.length, cborPayload.length,
+                String.format("%.1f", 100d * cborPayload.length / jsonPayload.length));
+    }
+
+    @Benchmark
+    public DeviceFingerprintDocument parseAndMapJson() throws IOException {
+        return mapper.toDocument(jsonMapper.readValue(jsonPayload, FingerprintRequest.class));
+    }
+
+    @Benchmark
+    public DeviceFingerprintDocument parseAndMapCbor() throws IOException {
+        return mapper.toDocument(cborMapper.readValue(cborPayload, FingerprintRequest.class));
+    }
+
+    @Benchmark
+    public DeviceFingerprintDocument streamJson() throws IOException {
+        try (JsonParser parser = jsonMapper.getFactory().createParser(jsonPayload)) {
+            return reader.read(parser);
+        }
+    }
+
+    @Benchmark
+    public DeviceFingerprintDocument streamCbor() throws IOException {
+        try (JsonParser parser = cborMapper.getFactory().createParser(cborPayload)) {
+            return reader.read(parser);
+        }
+    }
+}
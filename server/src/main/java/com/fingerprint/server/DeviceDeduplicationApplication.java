@@ -0,0 +1,35 @@
+package com.fingerprint.server;
+
+import com.fingerprint.server.service.DeviceDeduplicationJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * 离线去重任务入口：以非 Web 方式、{@code dedup} profile 启动服务的应用上下文，执行一次 {@link DeviceDeduplicationJob} 后退出。
+ * 该 profile 关闭索引创建与迁移、分层调度、GeoIP 重载与写缓冲刷写等服务端后台组件，见 {@code application.yml}。
+ * 默认只统计不写入，需以 {@code --fingerprint.dedup.dry-run=false} 显式开启合并。
+ */
+public class DeviceDeduplicationApplication {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceDeduplicationApplication.class);
+
+    public static void main(String[] args) {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(FingerprintServerApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("dedup")
+                .run(args);
+        int exitCode = 0;
+        try {
+            context.getBean(DeviceDeduplicationJob.class).run();
+        } catch (RuntimeException e) {
+            log.error("Dedup job failed, rerun to resume from checkpoint", e);
+            exitCode = 1;
+        }
+        int code = exitCode;
+        System.exit(SpringApplication.exit(context, () -> code));
+    }
+}
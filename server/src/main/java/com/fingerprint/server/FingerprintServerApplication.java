@@ -1,7 +1,15 @@
 package com.fingerprint.server;
 
+import com.fingerprint.server.config.ClientIpProperties;
+import com.fingerprint.server.config.DeduplicationProperties;
+import com.fingerprint.server.config.DeviceCacheProperties;
+import com.fingerprint.server.config.DeviceIndexProperties;
 import com.fingerprint.server.config.FingerprintElasticsearchProperties;
+import com.fingerprint.server.config.IndexTieringProperties;
+import com.fingerprint.server.config.MatchingProperties;
 import com.fingerprint.server.config.SimilarityProperties;
+import com.fingerprint.server.config.UserAgentProperties;
+import com.fingerprint.server.config.WriteBehindProperties;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
@@ -9,7 +17,15 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
 @SpringBootApplication
 @EnableConfigurationProperties({
         FingerprintElasticsearchProperties.class,
-        SimilarityProperties.class
+        SimilarityProperties.class,
+        DeviceCacheProperties.class,
+        MatchingProperties.class,
+        WriteBehindProperties.class,
+        ClientIpProperties.class,
+        IndexTieringProperties.class,
+        DeviceIndexProperties.class,
+        UserAgentProperties.class,
+        DeduplicationProperties.class
 })
 public class FingerprintServerApplication {
 
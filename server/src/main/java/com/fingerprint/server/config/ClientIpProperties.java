@@ -0,0 +1,24 @@
+package com.fingerprint.server.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 客户端 IP 解析配置。
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "fingerprint.client-ip")
+public class ClientIpProperties {
+
+    /**
+     * 可信代理网段（CIDR）。仅当连接来自这些网段时才读取 X-Forwarded-For / X-Real-IP，
+     * 并从右向左跳过其中的可信代理，第一个不可信地址即客户端地址。默认为回环与私有网段。
+     */
+    private List<String> trustedProxies = new ArrayList<>(List.of(
+            "127.0.0.0/8", "::1/128", "10.0.0.0/8", "172.16.0.0/12", "192.168.0.0/16", "fc00::/7"));
+}
@@ -0,0 +1,65 @@
+package com.fingerprint.server.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 离线重打分与设备去重任务配置。
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "fingerprint.dedup")
+public class DeduplicationProperties {
+
+    /**
+     * 只统计与记录合并决策，不写入 ES。
+     */
+    private boolean dryRun = true;
+
+    /**
+     * 分块字段，每个字段扫描一遍索引，按字段值排序后相邻且取值相同的设备构成一个块。多值字段按最小值分块。
+     */
+    private List<String> blockingFields = new ArrayList<>(List.of(
+            "visitorId", "browser.canvasFingerprint", "network.ipAddress", "certificate.fingerprints"));
+
+    /**
+     * 每次 {@code search_after} 读取的文档数量。
+     */
+    private int pageSize = 1000;
+
+    /**
+     * point-in-time 的保持时间，需覆盖相邻两次翻页之间的处理耗时。
+     */
+    private Duration keepAlive = Duration.ofMinutes(5);
+
+    /**
+     * 单个块最多参与打分的设备数量，超出部分跳过并计数，避免共享出口 IP 等超大块导致平方级打分与内存增长。
+     */
+    private int maxBlockSize = 200;
+
+    /**
+     * 每个打分窗口累积的最大文档数量。窗口内的块并行打分并写入后才读取下一批，堆占用以此为上限。
+     */
+    private int windowSize = 20_000;
+
+    /**
+     * 打分使用的 fork-join 并行度，默认等于可用处理器数。
+     */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 单次 {@code _bulk} 请求的最大操作数量。
+     */
+    private int bulkSize = 500;
+
+    /**
+     * 断点文件，每个窗口写入后更新；任务完成后删除。
+     */
+    private Path checkpointFile = Path.of("fingerprint-dedup.checkpoint.json");
+}
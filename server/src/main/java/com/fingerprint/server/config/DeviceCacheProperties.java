@@ -0,0 +1,31 @@
+package com.fingerprint.server.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 热点设备本地缓存配置。
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "fingerprint.device-cache")
+public class DeviceCacheProperties {
+
+    /**
+     * 是否启用热点设备缓存。
+     */
+    private boolean enabled = true;
+
+    /**
+     * 最多缓存的设备文档数量。
+     */
+    private long maximumSize = 100_000L;
+
+    /**
+     * 设备文档写入后的存活时间。
+     */
+    private Duration ttl = Duration.ofMinutes(10);
+}
@@ -0,0 +1,49 @@
+package com.fingerprint.server.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 设备索引设置。
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "fingerprint.device-index")
+public class DeviceIndexProperties {
+
+    /**
+     * 是否在启动时创建、迁移设备索引并同步动态设置。关闭后直接使用已有索引，分层（index-tiering）也随之不可用。
+     */
+    private boolean manageEnabled = true;
+
+    /**
+     * 主分片数，仅在创建索引时生效。
+     */
+    private int numberOfShards = 1;
+
+    /**
+     * 副本数，启动时同步到当前索引。
+     */
+    private int numberOfReplicas = 1;
+
+    /**
+     * 刷新间隔，启动时同步到当前索引。间隔越长写入开销越低，但新设备在下一次刷新前无法被候选查询召回。
+     */
+    private Duration refreshInterval = Duration.ofSeconds(1);
+
+    /**
+     * 当前索引的映射版本低于代码中的映射版本时，是否在启动时自动重建索引并切换别名。
+     * 关闭时仅记录告警，继续使用旧索引。
+     */
+    private boolean autoMigrate = false;
+
+    /**
+     * 创建索引时附加的其他索引设置，如 {@code index.codec}。
+     */
+    private Map<String, String> indexSettings = new LinkedHashMap<>();
+}
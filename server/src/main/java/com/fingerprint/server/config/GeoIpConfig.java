@@ -1,5 +1,7 @@
 package com.fingerprint.server.config;
 
+import com.fingerprint.server.service.support.GeoIpDatabase;
+import com.fingerprint.server.service.support.GeoIpDatabaseWatcher;
 import com.maxmind.geoip2.DatabaseReader;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -12,6 +14,7 @@ import org.springframework.core.io.ResourceLoader;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
 
 /**
  * GeoIP配置类。
@@ -27,18 +30,61 @@ public class GeoIpConfig {
     private final ResourceLoader resourceLoader;
 
     /**
-     * 创建MaxMind DatabaseReader Bean。
+     * 创建可热替换的 GeoIP 数据库 Bean。
+     * <p>
+     * 数据库位于文件系统时以内存映射方式打开，否则（如打包在 jar 内）从输入流加载到堆内存。
      *
-     * @return DatabaseReader实例
+     * @return GeoIP 数据库
      * @throws IOException 如果数据库文件读取失败
      */
     @Bean
-    public DatabaseReader databaseReader() throws IOException {
-        String databasePath = geoIpProperties.getDatabasePath();
-        log.info("Initializing GeoIP DatabaseReader with database path: {}", databasePath);
+    public GeoIpDatabase geoIpDatabase() throws IOException {
+        log.info("Initializing GeoIP DatabaseReader with database path: {}", geoIpProperties.getDatabasePath());
+        Resource resource = resolveDatabase();
+        DatabaseReader reader;
+        try {
+            if (resource.isFile()) {
+                reader = GeoIpDatabase.open(resource.getFile().toPath());
+                log.info("GeoIP DatabaseReader initialized with memory-mapped file: {}", resource.getFile());
+            } else {
+                try (InputStream inputStream = resource.getInputStream()) {
+                    reader = new DatabaseReader.Builder(inputStream).build();
+                }
+                log.info("GeoIP DatabaseReader initialized from stream: {}", resource);
+            }
+        } catch (IOException e) {
+            log.error("Failed to initialize GeoIP DatabaseReader", e);
+            throw e;
+        }
+
+        return new GeoIpDatabase(reader);
+    }
+
+    /**
+     * 监听文件系统上的数据库文件并热加载，数据库不在文件系统上时不启动监听。
+     *
+     * @param geoIpDatabase GeoIP 数据库
+     * @return 文件监听器
+     * @throws IOException 如果无法监听数据库所在目录
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "fingerprint.geoip", name = "reload-enabled", havingValue = "true", matchIfMissing = true)
+    public GeoIpDatabaseWatcher geoIpDatabaseWatcher(GeoIpDatabase geoIpDatabase) throws IOException {
+        Resource resource = resolveDatabase();
+        Path file = resource.isFile() ? resource.getFile().toPath() : null;
+        GeoIpDatabaseWatcher watcher = new GeoIpDatabaseWatcher(geoIpDatabase, file, geoIpProperties.getReloadDelay());
+        if (file != null) {
+            watcher.start();
+        } else {
+            log.info("GeoIP database {} is not on the file system, hot reload disabled", resource);
+        }
+        return watcher;
+    }
 
+    private Resource resolveDatabase() throws IOException {
+        String databasePath = geoIpProperties.getDatabasePath();
         Resource resource = resourceLoader.getResource(databasePath);
-        
+
         if (!resource.exists()) {
             log.warn("GeoIP database not found at: {}, trying classpath location", databasePath);
             resource = resourceLoader.getResource("classpath:" + databasePath);
@@ -47,16 +93,6 @@ public class GeoIpConfig {
         if (!resource.exists()) {
             throw new IOException("GeoIP database file not found: " + databasePath);
         }
-
-        try (InputStream inputStream = resource.getInputStream()) {
-            DatabaseReader reader = new DatabaseReader.Builder(inputStream)
-                    .withCache(new com.maxmind.db.CHMCache(geoIpProperties.getCacheSize()))
-                    .build();
-            log.info("GeoIP DatabaseReader initialized successfully");
-            return reader;
-        } catch (IOException e) {
-            log.error("Failed to initialize GeoIP DatabaseReader", e);
-            throw e;
-        }
+        return resource;
     }
 }
@@ -4,6 +4,8 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+
 /**
  * GeoIP配置属性。
  */
@@ -23,7 +25,22 @@ public class GeoIpProperties {
     private boolean enabled = true;
 
     /**
-     * 缓存大小（条目数）
+     * 查询结果缓存大小（条目数），0 表示不缓存
+     */
+    private int cacheSize = 100_000;
+
+    /**
+     * 查询结果缓存写入后的存活时间
+     */
+    private Duration cacheTtl = Duration.ofHours(24);
+
+    /**
+     * 数据库位于文件系统时是否监听文件变化并热加载
+     */
+    private boolean reloadEnabled = true;
+
+    /**
+     * 检测到文件变化后，等待该时长内没有新变化再加载，避免读取到写入中的文件
      */
-    private int cacheSize = 4096;
+    private Duration reloadDelay = Duration.ofSeconds(5);
 }
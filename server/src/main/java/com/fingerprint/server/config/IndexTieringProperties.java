@@ -0,0 +1,54 @@
+package com.fingerprint.server.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 设备索引冷热分层配置。
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "fingerprint.index-tiering")
+public class IndexTieringProperties {
+
+    /**
+     * 是否启用分层。启用后 {@code device_fingerprints} 仅保存近期活跃设备，其余设备迁移到温索引。
+     */
+    private boolean enabled = false;
+
+    /**
+     * 温索引别名，指向按滚动生成的全部温索引，其中最新一个为写入索引。
+     */
+    private String warmAlias = "device_fingerprints_warm";
+
+    /**
+     * 设备在热索引中保留的时长，{@code updatedAt} 早于该时长的设备会被迁移到温索引。
+     */
+    private Duration hotRetention = Duration.ofDays(30);
+
+    /**
+     * 迁移任务执行间隔。
+     */
+    private Duration migrationInterval = Duration.ofHours(1);
+
+    /**
+     * 单批迁移的设备数量。
+     */
+    private int migrationBatchSize = 1000;
+
+    /**
+     * 温写入索引文档数达到该值后滚动到新索引。
+     */
+    private long warmRolloverMaxDocs = 50_000_000L;
+
+    /**
+     * 新建温索引时附加的索引设置，默认优先分配到 warm 数据节点。
+     */
+    private Map<String, String> warmIndexSettings = new LinkedHashMap<>(Map.of(
+            "index.routing.allocation.include._tier_preference", "data_warm,data_hot"));
+}
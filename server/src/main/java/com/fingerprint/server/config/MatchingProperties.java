@@ -0,0 +1,138 @@
+package com.fingerprint.server.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 设备匹配流程配置。
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "fingerprint.matching")
+public class MatchingProperties {
+
+    /**
+     * 按匹配键串行化写入的分段锁数量，会向上取整为 2 的幂。
+     */
+    private int lockStripes = 1024;
+
+    /**
+     * 写入发生版本冲突（seq_no/primary_term 不一致）时的最大重试次数。
+     */
+    private int maxConflictRetries = 3;
+
+    /**
+     * 是否将 MinHash 分段键作为额外的候选召回条件。除 visitorId 以外的权重之和低于相似度阈值时不生效。
+     */
+    private boolean lshEnabled = true;
+
+    /**
+     * visitorId 最新设备查询与候选查询的执行方式。
+     */
+    private LookupMode lookupMode = LookupMode.COMBINED;
+
+    /**
+     * 并发模式下等待 visitorId 查询的客户端上限，超时则请求失败，不用不完整的召回结果打分；
+     * 为空或 0 表示不限制（默认），此时单次查询只受 ES 客户端 socket-timeout 约束。
+     */
+    private Duration lookupTimeout = Duration.ZERO;
+
+    /**
+     * 是否由 ES 通过 script_score 按加权相似度预排序候选，只返回前 {@link #scriptScoringTopK} 个投影文档。
+     */
+    private boolean scriptScoringEnabled = false;
+
+    /**
+     * script_score 模式下 ES 返回的候选数量。
+     */
+    private int scriptScoringTopK = 3;
+
+    /**
+     * script_score 模式下 ES 侧的最低得分，低于该值的候选不返回；0 表示不过滤。
+     */
+    private float scriptScoringMinScore = 0f;
+
+    /**
+     * 是否以 painless 脚本的 {@code _update} 局部更新写入匹配结果，替代整篇文档的重新索引。
+     */
+    private boolean scriptedUpdateEnabled = false;
+
+    /**
+     * 脚本局部更新时，内容完全相同的回访在设备最近一次更新后的该时长内视为 noop，不累加观测次数也不重建文档；
+     * 为 0 时每次回访都会写入。
+     */
+    private Duration scriptedUpdateTouchInterval = Duration.ZERO;
+
+    /**
+     * 每个召回条件单独查询时返回的候选数上限，为 0 时不按该条件召回。
+     * 未在此处配置的条件使用默认值。
+     */
+    private Map<CandidateCriterion, Integer> candidateLimits = defaultCandidateLimits();
+
+    private static Map<CandidateCriterion, Integer> defaultCandidateLimits() {
+        Map<CandidateCriterion, Integer> limits = new EnumMap<>(CandidateCriterion.class);
+        limits.put(CandidateCriterion.VISITOR_ID, 5);
+        limits.put(CandidateCriterion.CERTIFICATE, 5);
+        limits.put(CandidateCriterion.CANVAS, 10);
+        limits.put(CandidateCriterion.LSH, 20);
+        limits.put(CandidateCriterion.IP_ADDRESS, 10);
+        return limits;
+    }
+
+    /**
+     * 候选召回条件，按选择性从高到低排列，召回结果按此顺序参与打分。
+     */
+    public enum CandidateCriterion {
+
+        /**
+         * 相同 visitorId 的其他设备。
+         */
+        VISITOR_ID,
+
+        /**
+         * 任一 TLS 证书指纹相同。
+         */
+        CERTIFICATE,
+
+        /**
+         * canvas 指纹相同。
+         */
+        CANVAS,
+
+        /**
+         * 任一 MinHash 分段键相同，需开启 {@code lsh-enabled}。
+         */
+        LSH,
+
+        /**
+         * IP 地址相同；运营商 NAT 出口下命中数量往往达到上限，选择性最低。
+         */
+        IP_ADDRESS
+    }
+
+    /**
+     * 候选召回方式。
+     */
+    public enum LookupMode {
+
+        /**
+         * 先查询 visitorId 最新设备，再执行候选查询。
+         */
+        SEQUENTIAL,
+
+        /**
+         * 在 applicationTaskExecutor 中执行 visitorId 查询，与候选查询同时发出，适合配合虚拟线程使用。
+         */
+        CONCURRENT,
+
+        /**
+         * 两个查询合并为一次 {@code _msearch} 请求。
+         */
+        COMBINED
+    }
+}
@@ -0,0 +1,24 @@
+package com.fingerprint.server.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * User-Agent 解析配置。
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "fingerprint.user-agent")
+public class UserAgentProperties {
+
+    /**
+     * 是否解析 User-Agent 并按浏览器、版本、系统、设备类型分项打分。
+     */
+    private boolean enabled = true;
+
+    /**
+     * 解析结果缓存的最大条目数，按不同的 User-Agent 字符串计。
+     */
+    private long cacheSize = 10_000L;
+}
@@ -0,0 +1,46 @@
+package com.fingerprint.server.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 已匹配设备合并结果的异步写后缓冲配置。
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "fingerprint.write-behind")
+public class WriteBehindProperties {
+
+    /**
+     * 是否启用写后缓冲。关闭时每次匹配均同步写入 ES。
+     */
+    private boolean enabled = false;
+
+    /**
+     * 缓冲区最多容纳的待写入设备数量。
+     */
+    private int capacity = 10_000;
+
+    /**
+     * 单次 {@code _bulk} 写入的最大设备数量，缓冲区达到该数量时立即触发刷写。
+     */
+    private int maxBatchSize = 500;
+
+    /**
+     * 定时刷写间隔，即同一设备多次上报的最长合并窗口。
+     */
+    private Duration flushInterval = Duration.ofSeconds(1);
+
+    /**
+     * 缓冲区已满时入队的最长等待时间，超时后退化为同步写入。
+     */
+    private Duration offerTimeout = Duration.ofMillis(200);
+
+    /**
+     * 单个设备写入失败后的最大重新入队次数。
+     */
+    private int maxFlushAttempts = 3;
+}
@@ -2,49 +2,89 @@ package com.fingerprint.server.controller;
 
 import com.fingerprint.server.dto.FingerprintRequest;
 import com.fingerprint.server.dto.FingerprintResponse;
+import com.fingerprint.server.mapper.FingerprintDocumentHttpMessageConverter;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
 import com.fingerprint.server.service.DeviceFingerprintService;
-import com.fingerprint.server.util.IpAddressUtil;
+import com.fingerprint.server.service.support.ClientIpResolver;
+import com.fingerprint.server.util.IpAddress;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+
 /**
  * 设备指纹采集控制器。
  */
 @RestController
 @RequestMapping("/api/v1/fingerprints")
 @RequiredArgsConstructor
+@Validated
 @Tag(name = "Device Fingerprint", description = "设备指纹采集与匹配接口")
 public class DeviceFingerprintController {
 
     private static final Logger log = LoggerFactory.getLogger(DeviceFingerprintController.class);
 
+    /**
+     * 单次批量上报允许的最大条数。
+     */
+    static final int MAX_BATCH_SIZE = 1000;
+
     private final DeviceFingerprintService deviceFingerprintService;
+    private final ClientIpResolver clientIpResolver;
 
     /**
      * 接收客户端指纹数据并进行匹配。
+     * <p>
+     * 请求体可为 JSON 或 CBOR（{@code application/cbor}），二者字段相同，响应格式由 {@code Accept} 决定。
+     * 请求体由 {@link FingerprintDocumentHttpMessageConverter} 流式解析并校验，直接得到 ES 文档；
+     * 字段定义与校验提示仍以 {@link FingerprintRequest} 为准。
      */
-    @PostMapping
-    @Operation(summary = "采集并匹配设备指纹")
+    @PostMapping(consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE})
+    @Operation(summary = "采集并匹配设备指纹",
+            requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(required = true,
+                    content = @Content(schema = @Schema(implementation = FingerprintRequest.class))))
     public ResponseEntity<FingerprintResponse> collect(
-            @Valid @RequestBody FingerprintRequest request,
+            @RequestBody DeviceFingerprintDocument incoming,
             HttpServletRequest httpRequest) {
         // 从请求头中获取真实IP地址
-        String clientIp = IpAddressUtil.getClientIpAddress(httpRequest);
-        log.info("Received fingerprint request for visitorId={}, clientIp={}", request.visitorId(), clientIp);
+        IpAddress clientIp = clientIpResolver.resolve(httpRequest);
+        log.info("Received fingerprint request for visitorId={}, clientIp={}", incoming.getVisitorId(), clientIp);
         
-        FingerprintResponse response = deviceFingerprintService.handleFingerprint(request, clientIp);
+        FingerprintResponse response = deviceFingerprintService.handleFingerprint(incoming, clientIp);
         HttpStatus status = response.matched() ? HttpStatus.OK : HttpStatus.CREATED;
         return ResponseEntity.status(status).body(response);
     }
+
+    /**
+     * 批量接收边缘采集节点缓冲的指纹数据，按请求顺序返回匹配结果。
+     */
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE})
+    @Operation(summary = "批量采集并匹配设备指纹")
+    public ResponseEntity<List<FingerprintResponse>> collectBatch(
+            @RequestBody
+            @NotEmpty(message = "批量上报不能为空")
+            @Size(max = MAX_BATCH_SIZE, message = "单次批量上报最多 " + MAX_BATCH_SIZE + " 条")
+            List<@Valid FingerprintRequest> requests) {
+        log.info("Received fingerprint batch request: size={}", requests.size());
+
+        List<FingerprintResponse> responses = deviceFingerprintService.handleFingerprints(requests);
+        return ResponseEntity.ok(responses);
+    }
 }
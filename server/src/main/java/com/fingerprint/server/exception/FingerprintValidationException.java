@@ -0,0 +1,20 @@
+package com.fingerprint.server.exception;
+
+import java.util.List;
+
+/**
+ * 流式解析上报请求体时发现的约束违反，由 {@link GlobalExceptionHandler} 按校验失败返回。
+ */
+public class FingerprintValidationException extends RuntimeException {
+
+    private final List<String> details;
+
+    public FingerprintValidationException(List<String> details) {
+        super("Validation failed: " + details);
+        this.details = List.copyOf(details);
+    }
+
+    public List<String> getDetails() {
+        return details;
+    }
+}
@@ -34,14 +34,16 @@ public class GlobalExceptionHandler {
         List<String> details = ex.getBindingResult().getFieldErrors().stream()
                 .map(FieldError::getDefaultMessage)
                 .collect(Collectors.toList());
-        ErrorResponse response = new ErrorResponse(
-                Instant.now(),
-                request.getRequestURI(),
-                HttpStatus.BAD_REQUEST.getReasonPhrase(),
-                "Validation failed",
-                details
-        );
-        return ResponseEntity.badRequest().body(response);
+        return validationFailed(details, request);
+    }
+
+    /**
+     * 处理流式解析上报请求体时的校验失败，响应与 {@link MethodArgumentNotValidException} 相同。
+     */
+    @ExceptionHandler(FingerprintValidationException.class)
+    public ResponseEntity<ErrorResponse> handleFingerprintValidation(FingerprintValidationException ex,
+                                                                     HttpServletRequest request) {
+        return validationFailed(ex.getDetails(), request);
     }
 
     /**
@@ -78,4 +80,15 @@ public class GlobalExceptionHandler {
         );
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
     }
+
+    private ResponseEntity<ErrorResponse> validationFailed(List<String> details, HttpServletRequest request) {
+        ErrorResponse response = new ErrorResponse(
+                Instant.now(),
+                request.getRequestURI(),
+                HttpStatus.BAD_REQUEST.getReasonPhrase(),
+                "Validation failed",
+                details
+        );
+        return ResponseEntity.badRequest().body(response);
+    }
 }
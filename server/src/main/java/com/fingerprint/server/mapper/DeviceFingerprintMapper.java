@@ -2,10 +2,14 @@ package com.fingerprint.server.mapper;
 
 import com.fingerprint.server.dto.FingerprintRequest;
 import com.fingerprint.server.model.DeviceFingerprintDocument;
+import com.fingerprint.server.util.MinHashUtil;
+import com.fingerprint.server.util.StringDictionary;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * FingerprintRequest 与 ES 文档的转换器。
@@ -31,7 +35,7 @@ public class DeviceFingerprintMapper {
             ipHistory.add(network.getIpAddress());
         }
 
-        return DeviceFingerprintDocument.builder()
+        return canonicalize(DeviceFingerprintDocument.builder()
                 .visitorId(request.visitorId())
                 .browser(browser)
                 .device(device)
@@ -43,9 +47,118 @@ public class DeviceFingerprintMapper {
                 .ipHistory(ipHistory)
                 .createdAt(request.collectedAt())
                 .updatedAt(request.collectedAt())
+                .build());
+    }
+
+    /**
+     * 将文档中低基数的字段替换为 {@link StringDictionary} 中的共享实例，原地修改并返回该文档。
+     * <p>
+     * 覆盖语言、时区、插件、平台、架构、分辨率、色深、网络类型、ISP 与地理位置名称；UA 与各类指纹哈希基数高，不收录。
+     */
+    public static DeviceFingerprintDocument canonicalize(DeviceFingerprintDocument document) {
+        DeviceFingerprintDocument.BrowserFingerprint browser = document.getBrowser();
+        if (browser != null) {
+            browser.setLanguage(StringDictionary.canonical(browser.getLanguage()));
+            browser.setTimezone(StringDictionary.canonical(browser.getTimezone()));
+            browser.setPlugins(StringDictionary.canonical(browser.getPlugins()));
+        }
+        DeviceFingerprintDocument.DeviceFingerprint device = document.getDevice();
+        if (device != null) {
+            device.setPlatform(StringDictionary.canonical(device.getPlatform()));
+            device.setArchitecture(StringDictionary.canonical(device.getArchitecture()));
+            device.setScreenResolution(StringDictionary.canonical(device.getScreenResolution()));
+            device.setColorDepth(StringDictionary.canonical(device.getColorDepth()));
+        }
+        DeviceFingerprintDocument.NetworkFingerprint network = document.getNetwork();
+        if (network != null) {
+            network.setConnectionType(StringDictionary.canonical(network.getConnectionType()));
+            network.setIsp(StringDictionary.canonical(network.getIsp()));
+        }
+        DeviceFingerprintDocument.GeoLocation geo = document.getGeoLocation();
+        if (geo != null) {
+            geo.setCountry(StringDictionary.canonical(geo.getCountry()));
+            geo.setRegion(StringDictionary.canonical(geo.getRegion()));
+            geo.setCity(StringDictionary.canonical(geo.getCity()));
+            geo.setTimezone(StringDictionary.canonical(geo.getTimezone()));
+        }
+        return document;
+    }
+
+    /**
+     * 复制设备文档，子对象与 ipHistory、metadata 等集合均为独立实例，修改副本不会影响原文档。
+     * 集合中的元素为不可变值或只整体替换的嵌套结构，不再逐层复制。
+     *
+     * @param document 原文档，可为 null
+     * @return 副本；原文档为 null 时返回 null
+     */
+    public static DeviceFingerprintDocument detach(DeviceFingerprintDocument document) {
+        if (document == null) {
+            return null;
+        }
+        DeviceFingerprintDocument.BrowserFingerprint browser = document.getBrowser();
+        DeviceFingerprintDocument.DeviceFingerprint device = document.getDevice();
+        DeviceFingerprintDocument.NetworkFingerprint network = document.getNetwork();
+        DeviceFingerprintDocument.GeoLocation geo = document.getGeoLocation();
+        DeviceFingerprintDocument.CertificateFingerprint certificate = document.getCertificate();
+        return document.toBuilder()
+                .browser(browser == null ? null : browser.toBuilder().plugins(copy(browser.getPlugins())).build())
+                .device(device == null ? null : device.toBuilder().build())
+                .network(network == null ? null : network.toBuilder().extra(copy(network.getExtra())).build())
+                .geoLocation(geo == null ? null : geo.toBuilder().extra(copy(geo.getExtra())).build())
+                .certificate(certificate == null ? null : certificate.toBuilder()
+                        .fingerprints(copy(certificate.getFingerprints()))
+                        .pinningHashes(copy(certificate.getPinningHashes()))
+                        .build())
+                .metadata(copy(document.getMetadata()))
+                .ipHistory(copy(document.getIpHistory()))
+                .lshBands(copy(document.getLshBands()))
+                .flushTokens(copy(document.getFlushTokens()))
                 .build();
     }
 
+    private static <T> List<T> copy(List<T> values) {
+        return values == null ? null : new ArrayList<>(values);
+    }
+
+    private static <K, V> Map<K, V> copy(Map<K, V> values) {
+        return values == null ? null : new LinkedHashMap<>(values);
+    }
+
+    /**
+     * 由浏览器与终端特征计算 MinHash 分段键。网络特征不参与，以便 IP 变化时仍能召回。
+     * 转换时不计算，由服务层在 LSH 召回可能产生匹配时写入文档。
+     */
+    public static List<String> lshBands(DeviceFingerprintDocument.BrowserFingerprint browser,
+                                  DeviceFingerprintDocument.DeviceFingerprint device) {
+        List<String> features = new ArrayList<>();
+        if (browser != null) {
+            features.add(feature("ua", browser.getUserAgent()));
+            features.add(feature("lang", browser.getLanguage()));
+            features.add(feature("tz", browser.getTimezone()));
+            features.add(feature("canvas", browser.getCanvasFingerprint()));
+            features.add(feature("webgl", browser.getWebglFingerprint()));
+            features.add(feature("audio", browser.getAudioFingerprint()));
+            if (browser.getPlugins() != null) {
+                browser.getPlugins().forEach(plugin -> features.add(feature("plugin", plugin)));
+            }
+        }
+        if (device != null) {
+            features.add(feature("platform", device.getPlatform()));
+            features.add(feature("arch", device.getArchitecture()));
+            features.add(feature("touch", device.getTouchPoints()));
+            features.add(feature("memory", device.getDeviceMemory()));
+            features.add(feature("cpu", device.getCpuCores()));
+            features.add(feature("screen", device.getScreenResolution()));
+            features.add(feature("color", device.getColorDepth()));
+        }
+        List<String> bands = MinHashUtil.bands(features);
+        return bands.isEmpty() ? null : bands;
+    }
+
+    private static String feature(String name, Object value) {
+        return value == null ? null : name + "=" + value;
+    }
+
     private DeviceFingerprintDocument.BrowserFingerprint mapBrowser(FingerprintRequest.BrowserFingerprint browser) {
         if (browser == null) {
             return null;
@@ -0,0 +1,61 @@
+package com.fingerprint.server.mapper;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * 以 {@link FingerprintDocumentReader} 读取单条上报的请求体，JSON 与 CBOR 共用同一解析逻辑。只读不写，响应仍由
+ * Jackson 转换器输出。
+ */
+@Component
+public class FingerprintDocumentHttpMessageConverter extends AbstractHttpMessageConverter<DeviceFingerprintDocument> {
+
+    private final JsonFactory jsonFactory;
+    private final JsonFactory cborFactory = new CBORFactory();
+    private final FingerprintDocumentReader reader;
+
+    public FingerprintDocumentHttpMessageConverter(ObjectMapper objectMapper) {
+        super(MediaType.APPLICATION_JSON, new MediaType("application", "*+json"), MediaType.APPLICATION_CBOR);
+        this.jsonFactory = objectMapper.getFactory();
+        this.reader = new FingerprintDocumentReader(objectMapper);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return DeviceFingerprintDocument.class == clazz;
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected DeviceFingerprintDocument readInternal(Class<? extends DeviceFingerprintDocument> clazz,
+                                                     HttpInputMessage inputMessage) throws IOException {
+        MediaType contentType = inputMessage.getHeaders().getContentType();
+        JsonFactory factory = MediaType.APPLICATION_CBOR.isCompatibleWith(contentType) ? cborFactory : jsonFactory;
+        try (JsonParser parser = factory.createParser(inputMessage.getBody())) {
+            return reader.read(parser);
+        } catch (JsonProcessingException ex) {
+            throw new HttpMessageNotReadableException("JSON parse error: " + ex.getOriginalMessage(), ex, inputMessage);
+        }
+    }
+
+    @Override
+    protected void writeInternal(DeviceFingerprintDocument document, HttpOutputMessage outputMessage) {
+        throw new UnsupportedOperationException("DeviceFingerprintDocument 不作为响应体输出");
+    }
+}
@@ -0,0 +1,338 @@
+package com.fingerprint.server.mapper;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import com.fingerprint.server.exception.FingerprintValidationException;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 将单条上报的请求体一次遍历直接解析为 ES 文档。
+ * <p>
+ * 字段与 {@link com.fingerprint.server.dto.FingerprintRequest} 相同，解析结果与
+ * {@link DeviceFingerprintMapper#toDocument} 一致，但不再构造中间的请求对象。校验规则与请求对象上的约束注解相同，
+ * 子对象在读完时即校验，所有违反项收集后以 {@link FingerprintValidationException} 抛出，提示文案与 Bean Validation 一致。
+ * 低基数字段同样经 {@link DeviceFingerprintMapper#canonicalize} 替换为共享实例。
+ * 未知字段跳过；标量按 Jackson 默认规则宽松转换，类型无法转换时抛出 {@link MismatchedInputException}。
+ * 基于 {@link JsonParser}，JSON 与 CBOR 通用。
+ */
+public class FingerprintDocumentReader {
+
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {
+    };
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * @param objectMapper 仅用于读取 metadata、extra 等自由结构的字段
+     */
+    public FingerprintDocumentReader(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 从解析器当前位置读取一条上报。
+     *
+     * @param parser 尚未读取或位于顶层对象起始处的解析器
+     * @return ES 文档
+     * @throws FingerprintValidationException 存在违反约束的字段时
+     */
+    public DeviceFingerprintDocument read(JsonParser parser) throws IOException {
+        if (!parser.hasToken(JsonToken.START_OBJECT) && parser.nextToken() != JsonToken.START_OBJECT) {
+            throw MismatchedInputException.from(parser, DeviceFingerprintDocument.class, "请求体必须为对象");
+        }
+        List<String> violations = new ArrayList<>();
+        DeviceFingerprintDocument document = new DeviceFingerprintDocument();
+        Instant collectedAt = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "visitorId" -> document.setVisitorId(readString(parser));
+                case "browser" -> document.setBrowser(readBrowser(parser, violations));
+                case "device" -> document.setDevice(readDevice(parser, violations));
+                case "network" -> document.setNetwork(readNetwork(parser, violations));
+                case "certificate" -> document.setCertificate(readCertificate(parser, violations));
+                case "collectedAt" -> collectedAt = readInstant(parser);
+                case "metadata" -> {
+                    Map<String, Object> metadata = readMap(parser);
+                    document.setMetadata(metadata == null ? null : new HashMap<>(metadata));
+                }
+                default -> parser.skipChildren();
+            }
+        }
+
+        if (StringUtils.isBlank(document.getVisitorId())) {
+            violations.add("visitorId 不能为空");
+        }
+        if (document.getBrowser() == null) {
+            violations.add("浏览器指纹不能为空");
+        }
+        if (document.getDevice() == null) {
+            violations.add("终端硬件指纹不能为空");
+        }
+        if (document.getNetwork() == null) {
+            violations.add("网络指纹不能为空");
+        }
+        if (collectedAt == null) {
+            violations.add("采集时间不能为空");
+        }
+        if (!violations.isEmpty()) {
+            throw new FingerprintValidationException(violations);
+        }
+
+        List<String> ipHistory = new ArrayList<>();
+        if (document.getNetwork().getIpAddress() != null) {
+            ipHistory.add(document.getNetwork().getIpAddress());
+        }
+        document.setIpHistory(ipHistory);
+        document.setObservationCount(1);
+        document.setCreatedAt(collectedAt);
+        document.setUpdatedAt(collectedAt);
+        return DeviceFingerprintMapper.canonicalize(document);
+    }
+
+    private DeviceFingerprintDocument.BrowserFingerprint readBrowser(JsonParser parser, List<String> violations)
+            throws IOException {
+        if (!startObject(parser, DeviceFingerprintDocument.BrowserFingerprint.class)) {
+            return null;
+        }
+        DeviceFingerprintDocument.BrowserFingerprint browser = new DeviceFingerprintDocument.BrowserFingerprint();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "userAgent" -> browser.setUserAgent(readString(parser));
+                case "language" -> browser.setLanguage(readString(parser));
+                case "timezone" -> browser.setTimezone(readString(parser));
+                case "plugins" -> browser.setPlugins(readStringList(parser));
+                case "canvasFingerprint" -> browser.setCanvasFingerprint(readString(parser));
+                case "webglFingerprint" -> browser.setWebglFingerprint(readString(parser));
+                case "audioFingerprint" -> browser.setAudioFingerprint(readString(parser));
+                default -> parser.skipChildren();
+            }
+        }
+        requireText(browser.getUserAgent(), "userAgent 不能为空", violations);
+        requireText(browser.getLanguage(), "language 不能为空", violations);
+        requireText(browser.getTimezone(), "timezone 不能为空", violations);
+        if (browser.getPlugins() != null && browser.getPlugins().isEmpty()) {
+            violations.add("plugins 至少需要一个元素");
+        }
+        return browser;
+    }
+
+    private DeviceFingerprintDocument.DeviceFingerprint readDevice(JsonParser parser, List<String> violations)
+            throws IOException {
+        if (!startObject(parser, DeviceFingerprintDocument.DeviceFingerprint.class)) {
+            return null;
+        }
+        DeviceFingerprintDocument.DeviceFingerprint device = new DeviceFingerprintDocument.DeviceFingerprint();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "platform" -> device.setPlatform(readString(parser));
+                case "architecture" -> device.setArchitecture(readString(parser));
+                case "touchPoints" -> device.setTouchPoints(readInteger(parser));
+                case "deviceMemory" -> device.setDeviceMemory(readInteger(parser));
+                case "cpuCores" -> device.setCpuCores(readInteger(parser));
+                case "screenResolution" -> device.setScreenResolution(readString(parser));
+                case "colorDepth" -> device.setColorDepth(readString(parser));
+                default -> parser.skipChildren();
+            }
+        }
+        requireText(device.getPlatform(), "platform 不能为空", violations);
+        requireText(device.getArchitecture(), "architecture 不能为空", violations);
+        requireValue(device.getTouchPoints(), "触控点数量不能为空", violations);
+        requireValue(device.getDeviceMemory(), "内存容量不能为空", violations);
+        requireValue(device.getCpuCores(), "cpu 核心数不能为空", violations);
+        requireText(device.getScreenResolution(), "screenResolution 不能为空", violations);
+        requireText(device.getColorDepth(), "colorDepth 不能为空", violations);
+        return device;
+    }
+
+    private DeviceFingerprintDocument.NetworkFingerprint readNetwork(JsonParser parser, List<String> violations)
+            throws IOException {
+        if (!startObject(parser, DeviceFingerprintDocument.NetworkFingerprint.class)) {
+            return null;
+        }
+        DeviceFingerprintDocument.NetworkFingerprint network = new DeviceFingerprintDocument.NetworkFingerprint();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "ipAddress" -> network.setIpAddress(readString(parser));
+                case "ipv6Address" -> network.setIpv6Address(readString(parser));
+                case "connectionType" -> network.setConnectionType(readString(parser));
+                case "downlinkMbps" -> network.setDownlinkMbps(readDouble(parser));
+                case "rtt" -> network.setRtt(readDouble(parser));
+                case "isp" -> network.setIsp(readString(parser));
+                case "extra" -> network.setExtra(readMap(parser));
+                default -> parser.skipChildren();
+            }
+        }
+        requireText(network.getIpAddress(), "ipAddress 不能为空", violations);
+        requireText(network.getConnectionType(), "connectionType 不能为空", violations);
+        requireValue(network.getDownlinkMbps(), "downlinkMbps 不能为空", violations);
+        requireValue(network.getRtt(), "rtt 不能为空", violations);
+        return network;
+    }
+
+    private DeviceFingerprintDocument.CertificateFingerprint readCertificate(JsonParser parser, List<String> violations)
+            throws IOException {
+        if (!startObject(parser, DeviceFingerprintDocument.CertificateFingerprint.class)) {
+            return null;
+        }
+        List<String> fingerprints = null;
+        List<String> pinningHashes = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "fingerprints" -> fingerprints = readStringList(parser);
+                case "pinningHashes" -> pinningHashes = readStringList(parser);
+                default -> parser.skipChildren();
+            }
+        }
+        if (fingerprints != null && fingerprints.isEmpty()) {
+            violations.add("证书指纹列表不能为空");
+        }
+        if (fingerprints == null && pinningHashes == null) {
+            return null;
+        }
+        return new DeviceFingerprintDocument.CertificateFingerprint(fingerprints, pinningHashes);
+    }
+
+    /**
+     * @return 当前为 null 时返回 false，为对象起始时返回 true
+     */
+    private boolean startObject(JsonParser parser, Class<?> targetType) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return false;
+        }
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw MismatchedInputException.from(parser, targetType,
+                    "字段 " + parser.currentName() + " 必须为对象");
+        }
+        return true;
+    }
+
+    private String readString(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token != null && token.isScalarValue()) {
+            return parser.getText();
+        }
+        throw MismatchedInputException.from(parser, String.class, "字段 " + parser.currentName() + " 必须为字符串");
+    }
+
+    private Integer readInteger(JsonParser parser) throws IOException {
+        return switch (parser.currentToken()) {
+            case VALUE_NULL -> null;
+            case VALUE_NUMBER_INT -> parser.getIntValue();
+            case VALUE_NUMBER_FLOAT -> (int) parser.getDoubleValue();
+            case VALUE_STRING -> {
+                String text = parser.getText().trim();
+                try {
+                    yield text.isEmpty() ? null : Integer.valueOf(text);
+                } catch (NumberFormatException ex) {
+                    throw MismatchedInputException.from(parser, Integer.class,
+                            "字段 " + parser.currentName() + " 必须为整数");
+                }
+            }
+            default -> throw MismatchedInputException.from(parser, Integer.class,
+                    "字段 " + parser.currentName() + " 必须为整数");
+        };
+    }
+
+    private Double readDouble(JsonParser parser) throws IOException {
+        return switch (parser.currentToken()) {
+            case VALUE_NULL -> null;
+            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> parser.getDoubleValue();
+            case VALUE_STRING -> {
+                String text = parser.getText().trim();
+                try {
+                    yield text.isEmpty() ? null : Double.valueOf(text);
+                } catch (NumberFormatException ex) {
+                    throw MismatchedInputException.from(parser, Double.class,
+                            "字段 " + parser.currentName() + " 必须为数字");
+                }
+            }
+            default -> throw MismatchedInputException.from(parser, Double.class,
+                    "字段 " + parser.currentName() + " 必须为数字");
+        };
+    }
+
+    /**
+     * 与 Jackson 对 {@link Instant} 的默认处理一致：字符串按 ISO-8601 解析，数值按纪元秒（可带小数纳秒）解析。
+     */
+    private Instant readInstant(JsonParser parser) throws IOException {
+        try {
+            return switch (parser.currentToken()) {
+                case VALUE_NULL -> null;
+                case VALUE_NUMBER_INT -> Instant.ofEpochSecond(parser.getLongValue());
+                case VALUE_NUMBER_FLOAT -> {
+                    BigDecimal seconds = parser.getDecimalValue();
+                    yield Instant.ofEpochSecond(seconds.longValue(),
+                            seconds.remainder(BigDecimal.ONE).movePointRight(9).intValue());
+                }
+                case VALUE_STRING -> {
+                    String text = parser.getText().trim();
+                    yield text.isEmpty() ? null : Instant.parse(text);
+                }
+                default -> throw MismatchedInputException.from(parser, Instant.class,
+                        "字段 " + parser.currentName() + " 必须为时间");
+            };
+        } catch (DateTimeException | ArithmeticException ex) {
+            throw MismatchedInputException.from(parser, Instant.class,
+                    "字段 " + parser.currentName() + " 不是合法的时间: " + ex.getMessage());
+        }
+    }
+
+    private List<String> readStringList(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw MismatchedInputException.from(parser, List.class, "字段 " + parser.currentName() + " 必须为数组");
+        }
+        List<String> values = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            values.add(readString(parser));
+        }
+        return values;
+    }
+
+    private Map<String, Object> readMap(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        return objectMapper.readValue(parser, MAP_TYPE);
+    }
+
+    private static void requireText(String value, String message, List<String> violations) {
+        if (StringUtils.isBlank(value)) {
+            violations.add(message);
+        }
+    }
+
+    private static void requireValue(Object value, String message, List<String> violations) {
+        if (value == null) {
+            violations.add(message);
+        }
+    }
+}
@@ -9,6 +9,8 @@ import org.springframework.data.elasticsearch.annotations.DateFormat;
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.annotations.Field;
 import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.Mapping;
+import org.springframework.data.elasticsearch.core.query.SeqNoPrimaryTerm;
 
 import java.time.Instant;
 import java.util.List;
@@ -16,14 +18,23 @@ import java.util.Map;
 
 /**
  * 存储在 ElasticSearch 中的设备指纹文档。
+ * <p>
+ * 索引映射以 {@code elasticsearch/device-fingerprints-mapping.json} 为准，{@link Field} 注解仅用于对象转换；
+ * 索引由 {@link com.fingerprint.server.service.support.DeviceIndexManager} 在启动时创建或迁移。
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
-@Document(indexName = "device_fingerprints")
+@Document(indexName = "device_fingerprints", createIndex = false)
+@Mapping(mappingPath = "/elasticsearch/device-fingerprints-mapping.json")
 public class DeviceFingerprintDocument {
 
+    /**
+     * IP 历史保留的最大数量。
+     */
+    public static final int IP_HISTORY_LIMIT = 20;
+
     /**
      * 指纹采集记录唯一标识。
      */
@@ -96,6 +107,12 @@ public class DeviceFingerprintDocument {
     @Field(type = FieldType.Keyword)
     private List<String> ipHistory;
 
+    /**
+     * 浏览器与终端特征的 MinHash 分段键，用于容忍部分特征变化的模糊召回。
+     */
+    @Field(type = FieldType.Keyword)
+    private List<String> lshBands;
+
     /**
      * 首次采集时间。
      */
@@ -108,11 +125,22 @@ public class DeviceFingerprintDocument {
     @Field(type = FieldType.Date, format = DateFormat.date_time)
     private Instant updatedAt;
 
+    /**
+     * 写后缓冲最近几次刷写的标识，写入请求超时后用于判断该次刷写是否已在 ES 生效。不建索引。
+     */
+    @Field(type = FieldType.Keyword)
+    private List<String> flushTokens;
+
+    /**
+     * 读取时的 seq_no/primary_term，写入时用于乐观并发控制，不写入 _source。
+     */
+    private SeqNoPrimaryTerm seqNoPrimaryTerm;
+
     /**
      * 浏览器指纹细节。
      */
     @Data
-    @Builder
+    @Builder(toBuilder = true)
     @NoArgsConstructor
     @AllArgsConstructor
     public static class BrowserFingerprint {
@@ -130,13 +158,24 @@ public class DeviceFingerprintDocument {
         private String webglFingerprint;
         @Field(type = FieldType.Keyword)
         private String audioFingerprint;
+        /**
+         * 以下为服务端由 userAgent 解析出的分项，无法识别时为空。
+         */
+        @Field(type = FieldType.Keyword)
+        private String uaFamily;
+        @Field(type = FieldType.Integer)
+        private Integer uaMajorVersion;
+        @Field(type = FieldType.Keyword)
+        private String uaOs;
+        @Field(type = FieldType.Keyword)
+        private String uaDeviceClass;
     }
 
     /**
      * 终端硬件指纹细节。
      */
     @Data
-    @Builder
+    @Builder(toBuilder = true)
     @NoArgsConstructor
     @AllArgsConstructor
     public static class DeviceFingerprint {
@@ -160,7 +199,7 @@ public class DeviceFingerprintDocument {
      * 网络指纹细节。
      */
     @Data
-    @Builder
+    @Builder(toBuilder = true)
     @NoArgsConstructor
     @AllArgsConstructor
     public static class NetworkFingerprint {
@@ -184,7 +223,7 @@ public class DeviceFingerprintDocument {
      * 地理位置。
      */
     @Data
-    @Builder
+    @Builder(toBuilder = true)
     @NoArgsConstructor
     @AllArgsConstructor
     public static class GeoLocation {
@@ -208,7 +247,7 @@ public class DeviceFingerprintDocument {
      * TLS 证书指纹。
      */
     @Data
-    @Builder
+    @Builder(toBuilder = true)
     @NoArgsConstructor
     @AllArgsConstructor
     public static class CertificateFingerprint {
@@ -1,10 +1,12 @@
 package com.fingerprint.server.repository;
 
 import com.fingerprint.server.model.DeviceFingerprintDocument;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.annotations.SourceFilters;
 import org.springframework.data.elasticsearch.repository.ElasticsearchRepository;
 import org.springframework.stereotype.Repository;
 
-import java.util.Optional;
+import java.util.List;
 
 /**
  * 设备指纹索引仓储接口。
@@ -13,10 +15,31 @@ import java.util.Optional;
 public interface DeviceFingerprintRepository extends ElasticsearchRepository<DeviceFingerprintDocument, String> {
 
     /**
-     * 根据 FingerprintJS 访客标识查询文档。
+     * 根据 FingerprintJS 访客标识按更新时间倒序查询文档，只返回打分所需字段。
+     * <p>
+     * 字段列表需与 {@link com.fingerprint.server.service.support.CandidateProjection#SOURCE_INCLUDES} 一致。
      *
      * @param visitorId 访客标识
-     * @return 匹配的文档
+     * @param pageable  返回数量
+     * @return 匹配文档的投影，最新的在最前
      */
-    Optional<DeviceFingerprintDocument> findTopByVisitorIdOrderByUpdatedAtDesc(String visitorId);
+    @SourceFilters(includes = {
+            "visitorId",
+            "browser.*",
+            "device.*",
+            "network.ipAddress",
+            "network.ipv6Address",
+            "network.connectionType",
+            "network.downlinkMbps",
+            "network.rtt",
+            "network.isp",
+            "geoLocation.country",
+            "geoLocation.region",
+            "geoLocation.city",
+            "geoLocation.latitude",
+            "geoLocation.longitude",
+            "geoLocation.timezone",
+            "certificate.*"
+    })
+    List<DeviceFingerprintDocument> findByVisitorIdOrderByUpdatedAtDesc(String visitorId, Pageable pageable);
 }
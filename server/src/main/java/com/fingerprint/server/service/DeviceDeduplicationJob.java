@@ -0,0 +1,450 @@
+package com.fingerprint.server.service;
+
+import com.fingerprint.server.config.DeduplicationProperties;
+import com.fingerprint.server.config.MatchingProperties;
+import com.fingerprint.server.config.SimilarityProperties;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import com.fingerprint.server.service.support.CandidateProjection;
+import com.fingerprint.server.service.support.CompiledFingerprint;
+import com.fingerprint.server.service.support.DeduplicationCheckpoint;
+import com.fingerprint.server.service.support.SimilarityScorer;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.json.JsonData;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
+import org.springframework.data.elasticsearch.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 离线重打分与设备去重。
+ * <p>
+ * 线上匹配只在上报时比较新指纹与候选，设备一旦被错误地拆成多条（并发首报、权重调整前的旧数据等）就不会再合并。
+ * 本任务按 {@code fingerprint.dedup.blocking-fields} 逐个字段扫描索引：以 point-in-time 加 {@code search_after}
+ * 按字段值排序翻页，取值相同的相邻设备构成一个块，块内以当前 {@link SimilarityScorer} 两两打分，
+ * 得分达到阈值的较新设备合并到最早创建的设备后删除。
+ * <p>
+ * 块累积到 {@code window-size} 后在 fork-join 池中并行打分，再以 {@code _bulk} 写入合并决策，
+ * 之后才继续翻页，堆占用与索引大小无关。每个窗口写入后更新断点文件，中断后重新运行会从断点继续。
+ * 删除以扫描时读取的 {@code updatedAt} 为条件，扫描后又被线上合并更新过的设备不会被删除，也不会计入保留设备；
+ * 写入失败时任务中止，断点停在失败窗口之前。
+ */
+@Service
+@RequiredArgsConstructor
+public class DeviceDeduplicationJob {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceDeduplicationJob.class);
+
+    private static final String VISITOR_FIELD = "visitorId";
+
+    /**
+     * 打分字段之外，合并还需要的字段。
+     */
+    static final String[] SOURCE_INCLUDES = Stream.concat(Arrays.stream(CandidateProjection.SOURCE_INCLUDES),
+            Stream.of("observationCount", "ipHistory", "createdAt", "updatedAt")).toArray(String[]::new);
+
+    static final String SURVIVOR_SCRIPT = """
+            def s = ctx._source;
+            s.observationCount = (s.observationCount == null ? 0 : s.observationCount) + params.observations;
+            if (s.ipHistory == null) { s.ipHistory = new ArrayList(); }
+            for (def ip : params.ipHistory) {
+              if (s.ipHistory.size() >= params.ipHistoryLimit) { break; }
+              if (!s.ipHistory.contains(ip)) { s.ipHistory.add(ip); }
+            }
+            if (s.metadata == null) { s.metadata = new HashMap(); }
+            if (s.metadata.mergedDeviceIds == null) { s.metadata.mergedDeviceIds = new ArrayList(); }
+            s.metadata.mergedDeviceIds.addAll(params.mergedDeviceIds);
+            """;
+
+    static final String DUPLICATE_SCRIPT = """
+            if (Objects.equals(ctx._source.updatedAt, params.updatedAt)) { ctx.op = 'delete'; } else { ctx.op = 'noop'; }
+            """;
+
+    private final ElasticsearchOperations operations;
+    private final ElasticsearchClient client;
+    private final ElasticsearchConverter converter;
+    private final SimilarityScorer similarityScorer;
+    private final SimilarityProperties similarityProperties;
+    private final MatchingProperties matchingProperties;
+    private final DeduplicationProperties properties;
+
+    /**
+     * 一个块内的合并决策。
+     *
+     * @param survivor   保留的设备，即块内最早创建的设备
+     * @param duplicates 合并到 survivor 后删除的设备
+     */
+    record Decision(DeviceFingerprintDocument survivor, List<DeviceFingerprintDocument> duplicates) {
+    }
+
+    /**
+     * 任务统计。
+     *
+     * @param scanned         扫描的文档数量，同一设备在每个分块字段中各计一次
+     * @param blocks          包含两个及以上设备的块数量
+     * @param oversizedBlocks 超过 {@code max-block-size} 被截断的块数量
+     * @param duplicates      判定为重复的设备数量；非 dry run 时为实际删除并合并的数量
+     */
+    public record Result(long scanned, long blocks, long oversizedBlocks, long duplicates) {
+    }
+
+    /**
+     * 当前字段中尚未随断点提交的统计。
+     */
+    private static final class PendingCounters {
+
+        private long scanned;
+        private long blocks;
+        private long oversizedBlocks;
+        private long duplicates;
+
+        void completeBlock(List<DeviceFingerprintDocument> block, long blockScanned, boolean truncated) {
+            scanned += blockScanned;
+            blocks += block.size() > 1 ? 1 : 0;
+            oversizedBlocks += truncated ? 1 : 0;
+        }
+
+        void commitTo(DeduplicationCheckpoint checkpoint) {
+            checkpoint.setScanned(checkpoint.getScanned() + scanned);
+            checkpoint.setBlocks(checkpoint.getBlocks() + blocks);
+            checkpoint.setOversizedBlocks(checkpoint.getOversizedBlocks() + oversizedBlocks);
+            checkpoint.setDuplicates(checkpoint.getDuplicates() + duplicates);
+            scanned = 0;
+            blocks = 0;
+            oversizedBlocks = 0;
+            duplicates = 0;
+        }
+    }
+
+    public Result run() {
+        DeduplicationCheckpoint checkpoint = DeduplicationCheckpoint.load(properties.getCheckpointFile());
+        IndexCoordinates index = operations.getIndexCoordinatesFor(DeviceFingerprintDocument.class);
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, properties.getParallelism()));
+        try {
+            for (String field : passes()) {
+                if (checkpoint.getCompletedPasses().contains(field)) {
+                    log.info("Dedup pass {} already completed, skipping", field);
+                    continue;
+                }
+                scan(field, index, pool, checkpoint);
+                checkpoint.completePass(field);
+                checkpoint.save(properties.getCheckpointFile());
+                if (!properties.isDryRun()) {
+                    // 下一个字段的 point-in-time 需看到本字段的删除
+                    operations.indexOps(index).refresh();
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        deleteCheckpoint();
+        Result result = new Result(checkpoint.getScanned(), checkpoint.getBlocks(),
+                checkpoint.getOversizedBlocks(), checkpoint.getDuplicates());
+        log.info("Dedup finished (dryRun={}): {}", properties.isDryRun(), result);
+        return result;
+    }
+
+    /**
+     * visitorId 不同的设备得分上界不足阈值时，其他分块字段不可能产生合并，跳过这些字段。
+     */
+    List<String> passes() {
+        double withoutVisitor = similarityProperties.getBrowserWeight() + similarityProperties.getDeviceWeight()
+                + similarityProperties.getNetworkWeight() + similarityProperties.getGeoWeight()
+                + similarityProperties.getCertificateWeight();
+        if (withoutVisitor >= similarityProperties.getThreshold()) {
+            return properties.getBlockingFields();
+        }
+        List<String> passes = properties.getBlockingFields().stream().filter(VISITOR_FIELD::equals).toList();
+        if (passes.size() < properties.getBlockingFields().size()) {
+            log.info("Weights without visitorId sum to {} < threshold {}, only blocking on {}",
+                    withoutVisitor, similarityProperties.getThreshold(), passes);
+        }
+        return passes;
+    }
+
+    private void scan(String field, IndexCoordinates index, ForkJoinPool pool, DeduplicationCheckpoint checkpoint) {
+        List<Object> searchAfter = checkpoint.resumeAfter(field);
+        checkpoint.setPass(field);
+        log.info("Dedup pass {} started{}", field, searchAfter == null ? "" : " after " + searchAfter.get(0));
+
+        String pitId = operations.openPointInTime(index, properties.getKeepAlive());
+        List<List<DeviceFingerprintDocument>> window = new ArrayList<>();
+        int windowDocs = 0;
+        List<DeviceFingerprintDocument> block = new ArrayList<>();
+        Object blockKey = null;
+        long blockScanned = 0;
+        boolean truncated = false;
+        Object completedKey = null;
+        PendingCounters pending = new PendingCounters();
+        try {
+            while (true) {
+                NativeQuery query = NativeQuery.builder()
+                        .withQuery(q -> q.exists(e -> e.field(field)))
+                        .withSort(Sort.by(Sort.Order.asc(field), Sort.Order.asc("_shard_doc")))
+                        .withPointInTime(new Query.PointInTime(pitId, properties.getKeepAlive()))
+                        .withSearchAfter(searchAfter)
+                        .withSourceFilter(new FetchSourceFilter(SOURCE_INCLUDES, null))
+                        .withMaxResults(properties.getPageSize())
+                        .withTrackTotalHits(false)
+                        .build();
+                SearchHits<DeviceFingerprintDocument> hits = operations.search(query, DeviceFingerprintDocument.class);
+                if (hits.getPointInTimeId() != null) {
+                    pitId = hits.getPointInTimeId();
+                }
+                int count = 0;
+                for (SearchHit<DeviceFingerprintDocument> hit : hits) {
+                    count++;
+                    searchAfter = hit.getSortValues();
+                    Object key = searchAfter.get(0);
+                    if (!Objects.equals(key, blockKey)) {
+                        if (block.size() > 1) {
+                            window.add(block);
+                            windowDocs += block.size();
+                        }
+                        pending.completeBlock(block, blockScanned, truncated);
+                        completedKey = blockKey;
+                        block = new ArrayList<>();
+                        blockKey = key;
+                        blockScanned = 0;
+                        truncated = false;
+                    }
+                    if (block.size() < properties.getMaxBlockSize()) {
+                        block.add(hit.getContent());
+                    } else {
+                        truncated = true;
+                    }
+                    blockScanned++;
+                }
+                if (count < properties.getPageSize()) {
+                    break;
+                }
+                if (windowDocs >= properties.getWindowSize()) {
+                    pending.duplicates += flush(window, index, pool);
+                    window.clear();
+                    windowDocs = 0;
+                }
+                // 断点只在已读取的块全部写入后前进，统计随之并入；恢复后重新扫描的部分不会重复计数
+                if (window.isEmpty() && completedKey != null) {
+                    pending.commitTo(checkpoint);
+                    checkpoint.setLastKey(completedKey);
+                    checkpoint.save(properties.getCheckpointFile());
+                }
+            }
+            if (block.size() > 1) {
+                window.add(block);
+            }
+            pending.completeBlock(block, blockScanned, truncated);
+            pending.duplicates += flush(window, index, pool);
+            pending.commitTo(checkpoint);
+        } finally {
+            operations.closePointInTime(pitId);
+        }
+        log.info("Dedup pass {} finished: scanned={}, blocks={}, oversized={}, duplicates={}", field,
+                checkpoint.getScanned(), checkpoint.getBlocks(), checkpoint.getOversizedBlocks(),
+                checkpoint.getDuplicates());
+    }
+
+    /**
+     * @return 窗口内判定为重复的设备数量；非 dry run 时为实际删除的数量
+     */
+    private long flush(List<List<DeviceFingerprintDocument>> window, IndexCoordinates index, ForkJoinPool pool) {
+        if (window.isEmpty()) {
+            return 0;
+        }
+        List<Decision> decisions = pool.submit(() -> window.parallelStream()
+                .flatMap(block -> cluster(block).stream())
+                .toList()).join();
+        if (!properties.isDryRun()) {
+            return write(decisions, index);
+        }
+        for (Decision decision : decisions) {
+            log.info("Dedup (dry run) would merge {} into {}",
+                    decision.duplicates().stream().map(DeviceFingerprintDocument::getId).toList(),
+                    decision.survivor().getId());
+        }
+        return decisions.stream().mapToLong(decision -> decision.duplicates().size()).sum();
+    }
+
+    /**
+     * 块内按创建时间从早到晚依次作为保留设备，较新且尚未归属的设备与其得分达到阈值即归入。
+     * 打分方向与线上一致：较新的设备作为上报方，与较早的设备比较。
+     */
+    List<Decision> cluster(List<DeviceFingerprintDocument> block) {
+        List<DeviceFingerprintDocument> ordered = new ArrayList<>(block);
+        ordered.sort(Comparator.comparing(DeviceFingerprintDocument::getCreatedAt,
+                        Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(DeviceFingerprintDocument::getId, Comparator.nullsLast(Comparator.naturalOrder())));
+        int size = ordered.size();
+        CompiledFingerprint[] compiled = new CompiledFingerprint[size];
+        for (int i = 0; i < size; i++) {
+            compiled[i] = similarityScorer.compile(ordered.get(i));
+        }
+
+        double threshold = similarityProperties.getThreshold();
+        boolean[] merged = new boolean[size];
+        List<Decision> decisions = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (merged[i]) {
+                continue;
+            }
+            DeviceFingerprintDocument survivor = ordered.get(i);
+            List<DeviceFingerprintDocument> duplicates = null;
+            for (int j = i + 1; j < size; j++) {
+                if (merged[j] || similarityScorer.upperBound(compiled[j], survivor) < threshold
+                        || similarityScorer.calculate(compiled[j], survivor) < threshold) {
+                    continue;
+                }
+                merged[j] = true;
+                if (duplicates == null) {
+                    duplicates = new ArrayList<>();
+                }
+                duplicates.add(ordered.get(j));
+            }
+            if (duplicates != null) {
+                decisions.add(new Decision(survivor, duplicates));
+            }
+        }
+        return decisions;
+    }
+
+    /**
+     * 先发出以 {@code updatedAt} 为条件的删除，再只把实际删除的重复设备计入保留设备，扫描后被线上更新过的设备不会被计入。
+     * 任一操作失败时在计入已删除的设备后抛出异常，断点不前进，重新运行会从上一个断点重新扫描。
+     *
+     * @return 实际删除的重复设备数量
+     */
+    private long write(List<Decision> decisions, IndexCoordinates index) {
+        List<BulkOperation> deletes = new ArrayList<>();
+        for (Decision decision : decisions) {
+            for (DeviceFingerprintDocument duplicate : decision.duplicates()) {
+                deletes.add(duplicateDelete(duplicate));
+            }
+        }
+        Set<String> deleted = new HashSet<>();
+        List<String> failures = new ArrayList<>();
+        execute(deletes, index, failures, true, item -> {
+            if ("deleted".equals(item.result())) {
+                deleted.add(item.id());
+            }
+        });
+
+        List<BulkOperation> credits = new ArrayList<>();
+        for (Decision decision : decisions) {
+            List<DeviceFingerprintDocument> removed = decision.duplicates().stream()
+                    .filter(duplicate -> deleted.contains(duplicate.getId()))
+                    .toList();
+            if (!removed.isEmpty()) {
+                credits.add(survivorUpdate(decision.survivor(), removed));
+            }
+        }
+        execute(credits, index, failures, false, item -> {
+        });
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("Dedup bulk failed for " + failures.size() + " operations: "
+                    + failures.subList(0, Math.min(failures.size(), 10)));
+        }
+        return deleted.size();
+    }
+
+    /**
+     * 按 {@code bulk-size} 分批执行；失败的操作记入 {@code failures}，请求本身失败时不再发出后续批次。
+     *
+     * @param ignoreMissing 文档已不存在（404）时不视为失败，用于重复设备已被删除的情况
+     */
+    private void execute(List<BulkOperation> requests, IndexCoordinates index, List<String> failures,
+                         boolean ignoreMissing, Consumer<BulkResponseItem> onSuccess) {
+        int bulkSize = Math.max(1, properties.getBulkSize());
+        for (int from = 0; from < requests.size(); from += bulkSize) {
+            List<BulkOperation> batch = requests.subList(from, Math.min(requests.size(), from + bulkSize));
+            BulkResponse response;
+            try {
+                response = client.bulk(BulkRequest.of(request -> request.index(index.getIndexName()).operations(batch)));
+            } catch (IOException | RuntimeException e) {
+                log.warn("Dedup bulk request of {} operations failed", batch.size(), e);
+                failures.add("bulk request: " + e.getMessage());
+                return;
+            }
+            for (BulkResponseItem item : response.items()) {
+                if (item.error() == null) {
+                    onSuccess.accept(item);
+                } else if (!ignoreMissing || item.status() != HttpStatus.NOT_FOUND.value()) {
+                    failures.add(item.id() + ": " + item.error().reason());
+                }
+            }
+        }
+    }
+
+    BulkOperation survivorUpdate(DeviceFingerprintDocument survivor, List<DeviceFingerprintDocument> duplicates) {
+        long observations = 0;
+        Set<String> ipHistory = new LinkedHashSet<>();
+        List<String> mergedDeviceIds = new ArrayList<>();
+        for (DeviceFingerprintDocument duplicate : duplicates) {
+            observations += duplicate.getObservationCount() == null ? 1 : duplicate.getObservationCount();
+            if (duplicate.getIpHistory() != null) {
+                ipHistory.addAll(duplicate.getIpHistory());
+            }
+            mergedDeviceIds.add(duplicate.getId());
+        }
+        Map<String, JsonData> params = new HashMap<>();
+        params.put("observations", JsonData.of(observations));
+        params.put("ipHistory", JsonData.of(new ArrayList<>(ipHistory)));
+        params.put("ipHistoryLimit", JsonData.of(DeviceFingerprintDocument.IP_HISTORY_LIMIT));
+        params.put("mergedDeviceIds", JsonData.of(mergedDeviceIds));
+        return scriptUpdate(survivor.getId(), SURVIVOR_SCRIPT, params, matchingProperties.getMaxConflictRetries());
+    }
+
+    BulkOperation duplicateDelete(DeviceFingerprintDocument duplicate) {
+        // 按写入 _source 时的格式转换，脚本中可直接与已存储的值比较
+        Object updatedAt = converter.mapObject(
+                DeviceFingerprintDocument.builder().updatedAt(duplicate.getUpdatedAt()).build()).get("updatedAt");
+        return scriptUpdate(duplicate.getId(), DUPLICATE_SCRIPT, Map.of("updatedAt", JsonData.of(updatedAt)), null);
+    }
+
+    private static BulkOperation scriptUpdate(String id, String script, Map<String, JsonData> params, Integer retryOnConflict) {
+        return BulkOperation.of(operation -> operation.<Object, Object>update(update -> update
+                .id(id)
+                .retryOnConflict(retryOnConflict)
+                .action(action -> action.script(s -> s.inline(inline -> inline
+                        .lang("painless")
+                        .source(script)
+                        .params(params))))));
+    }
+
+    private void deleteCheckpoint() {
+        try {
+            Files.deleteIfExists(properties.getCheckpointFile());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete dedup checkpoint " + properties.getCheckpointFile(), e);
+        }
+    }
+}
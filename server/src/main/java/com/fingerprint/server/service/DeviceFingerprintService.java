@@ -1,5 +1,6 @@
 package com.fingerprint.server.service;
 
+import com.fingerprint.server.config.MatchingProperties;
 import com.fingerprint.server.config.SimilarityProperties;
 import com.fingerprint.server.dto.FingerprintRequest;
 import com.fingerprint.server.dto.FingerprintResponse;
@@ -7,28 +8,64 @@ import com.fingerprint.server.dto.GeoLocationInfo;
 import com.fingerprint.server.mapper.DeviceFingerprintMapper;
 import com.fingerprint.server.model.DeviceFingerprintDocument;
 import com.fingerprint.server.repository.DeviceFingerprintRepository;
+import com.fingerprint.server.service.support.CandidateProjection;
+import com.fingerprint.server.service.support.CandidateScriptQueryBuilder;
+import com.fingerprint.server.service.support.CompiledFingerprint;
+import com.fingerprint.server.service.support.DeviceIndexTiering;
+import com.fingerprint.server.service.support.DeviceWriteBehindBuffer;
+import com.fingerprint.server.service.support.HotDeviceCache;
+import com.fingerprint.server.service.support.KeyedLocks;
+import com.fingerprint.server.service.support.MatchingMetrics;
+import com.fingerprint.server.service.support.ScriptedMergeUpdateBuilder;
 import com.fingerprint.server.service.support.SimilarityScorer;
+import com.fingerprint.server.service.support.UserAgentParser;
+import com.fingerprint.server.util.IpAddress;
 import lombok.RequiredArgsConstructor;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.elasticsearch.BulkFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.MultiGetItem;
 import org.springframework.data.elasticsearch.core.SearchHit;
 import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
 import org.springframework.data.elasticsearch.core.query.Criteria;
 import org.springframework.data.elasticsearch.core.query.CriteriaQuery;
+import org.springframework.data.elasticsearch.core.query.UpdateQuery;
+import org.springframework.data.elasticsearch.core.query.UpdateResponse;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 设备指纹业务逻辑。
@@ -44,134 +81,918 @@ public class DeviceFingerprintService {
     private final DeviceFingerprintMapper mapper;
     private final SimilarityScorer similarityScorer;
     private final SimilarityProperties similarityProperties;
+    private final MatchingProperties matchingProperties;
+    private final KeyedLocks keyedLocks;
+    private final CandidateScriptQueryBuilder candidateScriptQueryBuilder;
+    private final MatchingMetrics matchingMetrics;
 
     @Autowired(required = false)
     private GeoIpService geoIpService;
 
+    @Autowired(required = false)
+    private HotDeviceCache hotDeviceCache;
+
+    @Autowired(required = false)
+    private DeviceWriteBehindBuffer deviceWriteBehindBuffer;
+
+    @Autowired(required = false)
+    private DeviceIndexTiering deviceIndexTiering;
+
+    @Autowired(required = false)
+    private ScriptedMergeUpdateBuilder scriptedMergeUpdateBuilder;
+
+    @Autowired(required = false)
+    private UserAgentParser userAgentParser;
+
+    /**
+     * 并发召回时执行 visitorId 查询的线程池；启用虚拟线程时为每任务一个虚拟线程。
+     */
+    @Autowired(required = false)
+    @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    private Executor lookupExecutor;
+
     /**
      * 处理新上报的设备指纹。
+     * <p>
+     * 同一 visitorId 的上报在本节点内串行处理；写入时依赖 ES 的 seq_no/primary_term
+     * 乐观并发控制，冲突时重新读取并合并，最多重试 {@code fingerprint.matching.max-conflict-retries} 次。
+     * 启用写后缓冲时，匹配到已有设备的合并结果异步批量写入，不等待 ES 响应；
+     * 启用脚本局部更新时，合并在 ES 端以 {@code _update} 脚本完成，不依赖读取到的 seq_no。
      *
      * @param request 指纹上报请求
      * @param clientIp 客户端真实IP地址
      * @return 匹配结果
      */
-    @Transactional
-    public FingerprintResponse handleFingerprint(FingerprintRequest request, String clientIp) {
-        DeviceFingerprintDocument incoming = mapper.toDocument(request);
-        
-        // 使用从请求头获取的真实IP地址覆盖客户端上报的IP
-        if (StringUtils.isNotBlank(clientIp)) {
+    public FingerprintResponse handleFingerprint(FingerprintRequest request, IpAddress clientIp) {
+        return handleFingerprint(mapper.toDocument(request), clientIp);
+    }
+
+    /**
+     * 处理已由请求体直接解析并校验的设备指纹文档，规则同 {@link #handleFingerprint(FingerprintRequest, IpAddress)}。
+     *
+     * @param document 由 {@link com.fingerprint.server.mapper.FingerprintDocumentReader} 解析得到的文档
+     * @param clientIp 客户端真实IP地址
+     * @return 匹配结果
+     */
+    public FingerprintResponse handleFingerprint(DeviceFingerprintDocument document, IpAddress clientIp) {
+        return matchingMetrics.observe("single", () -> {
+            DeviceFingerprintDocument incoming = prepareIncoming(document, clientIp);
+            return keyedLocks.withLock(incoming.getVisitorId(), () -> matchAndMergeWithRetry(incoming));
+        });
+    }
+
+    private FingerprintResponse matchAndMergeWithRetry(DeviceFingerprintDocument incoming) {
+        int attempt = 0;
+        while (true) {
+            try {
+                return matchAndMerge(incoming);
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt++ >= matchingProperties.getMaxConflictRetries()) {
+                    throw e;
+                }
+                log.warn("Concurrent update detected for visitorId={}, retrying ({}/{})",
+                        incoming.getVisitorId(), attempt, matchingProperties.getMaxConflictRetries());
+            }
+        }
+    }
+
+    private FingerprintResponse matchAndMerge(DeviceFingerprintDocument incoming) {
+        CandidateMatch candidateMatch = findBestMatch(incoming).orElse(null);
+        Instant now = Instant.now();
+        recordOutcome(candidateMatch);
+
+        if (isMatch(candidateMatch)) {
+            DeviceFingerprintDocument matched = candidateMatch.document();
+            DeviceFingerprintDocument merged = mergeWriteBehind(matched, incoming, now, candidateMatch.score()).orElse(null);
+            if (merged == null) {
+                if (scriptedMergeUpdateBuilder != null) {
+                    updateDevice(matched, incoming, now, candidateMatch.score());
+                } else {
+                    mergeFingerprint(matched, incoming, now, candidateMatch.score());
+                    saveDevice(matched);
+                }
+                merged = matched;
+            }
+            log.info("Fingerprint matched with existing device: id={} score={}", merged.getId(), candidateMatch.score());
+            return matchedResponse(merged, candidateMatch.score(), now);
+        }
+
+        initializeNewDevice(incoming, now);
+        saveDevice(incoming);
+        log.info("Fingerprint stored as new device: id={}", incoming.getId());
+        return createdResponse(incoming, now);
+    }
+
+    private void saveDevice(DeviceFingerprintDocument document) {
+        try {
+            matchingMetrics.time(MatchingMetrics.Stage.SAVE, () -> repository.save(document));
+        } catch (RuntimeException e) {
+            // 写入失败时 ES 中的状态不确定，丢弃缓存中的设备，下次从 ES 重新读取
+            evictDevice(document.getId());
+            throw e;
+        }
+        cacheDevice(document);
+    }
+
+    /**
+     * 以脚本局部更新合并匹配到的设备，并在本地副本上执行同样的合并用于响应与缓存。
+     * <p>
+     * ES 返回 noop 时文档未变化，本地副本保持原样。本地副本的 seq_no 不再是最新值，之后仍依赖它写入的路径
+     * （写后缓冲、温索引提升）会按既有的冲突处理重新读取。
+     */
+    private void updateDevice(DeviceFingerprintDocument matched,
+                              DeviceFingerprintDocument incoming,
+                              Instant now,
+                              double similarityScore) {
+        UpdateQuery update = scriptedMergeUpdateBuilder.build(matched.getId(), incoming, now, similarityScore);
+        UpdateResponse response;
+        try {
+            response = matchingMetrics.time(MatchingMetrics.Stage.SAVE, () -> elasticsearchOperations.update(update,
+                    elasticsearchOperations.getIndexCoordinatesFor(DeviceFingerprintDocument.class)));
+        } catch (RuntimeException e) {
+            evictDevice(matched.getId());
+            throw e;
+        }
+        if (response.getResult() != UpdateResponse.Result.NOOP) {
+            mergeFingerprint(matched, incoming, now, similarityScore);
+        }
+        cacheDevice(matched);
+    }
+
+    /**
+     * 启用写后缓冲时由缓冲区合并并异步写入匹配到的设备。
+     *
+     * @return 缓冲区中合并后文档的快照，缓存的是与缓冲区脱离的副本；未启用写后缓冲或缓冲区已满时返回空，由调用方同步合并并写入
+     */
+    private Optional<DeviceFingerprintDocument> mergeWriteBehind(DeviceFingerprintDocument matched,
+                                                                 DeviceFingerprintDocument incoming,
+                                                                 Instant now,
+                                                                 double similarityScore) {
+        if (deviceWriteBehindBuffer == null) {
+            return Optional.empty();
+        }
+        Optional<DeviceFingerprintDocument> merged = deviceWriteBehindBuffer.merge(matched,
+                target -> mergeFingerprint(target, incoming, now, similarityScore));
+        merged.ifPresent(this::cacheDevice);
+        return merged;
+    }
+
+    /**
+     * 批量处理设备指纹上报。
+     * <p>
+     * 整批请求的候选设备通过一次 {@code _msearch} 查询获取，在内存中完成打分与合并后
+     * 通过一次 {@code _bulk} 写入。同一批次内指向同一设备的多条上报会依次合并到同一文档。
+     * 启用写后缓冲时，匹配到已有设备的合并结果交由缓冲区写入，仅新设备在本次 {@code _bulk} 中写入。
+     * 启用脚本局部更新时，已有设备的合并以脚本更新在随后的 {@code _bulk} 中发出。
+     * {@code _bulk} 中因版本冲突失败的上报单独重新匹配并重试，已写入的上报不会重复计入。
+     * 批量上报通常来自边缘采集节点，因此使用每条上报自带的 IP 地址而非请求来源 IP。
+     *
+     * @param requests 指纹上报请求列表
+     * @return 与请求顺序一致的匹配结果
+     */
+    public List<FingerprintResponse> handleFingerprints(List<FingerprintRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            return List.of();
+        }
+
+        return matchingMetrics.observe("batch", () -> {
+            List<DeviceFingerprintDocument> incomings = new ArrayList<>(requests.size());
+            for (FingerprintRequest request : requests) {
+                IpAddress reportedIp = request.network() == null ? null : IpAddress.parse(request.network().ipAddress());
+                incomings.add(prepareIncoming(mapper.toDocument(request), reportedIp));
+            }
+
+            Set<String> visitorIds = new HashSet<>();
+            incomings.forEach(incoming -> visitorIds.add(incoming.getVisitorId()));
+            return keyedLocks.withLocks(visitorIds, () -> matchAndMergeBatch(incomings));
+        });
+    }
+
+    /**
+     * 写入时因版本冲突或设备已被删除、迁移而失败的上报重新匹配后重试，最多重试
+     * {@code fingerprint.matching.max-conflict-retries} 次；其余上报的写入结果保留，不重复计入。
+     */
+    private List<FingerprintResponse> matchAndMergeBatch(List<DeviceFingerprintDocument> incomings) {
+        FingerprintResponse[] responses = new FingerprintResponse[incomings.size()];
+        List<Integer> pending = new ArrayList<>(incomings.size());
+        for (int i = 0; i < incomings.size(); i++) {
+            pending.add(i);
+        }
+        int attempt = 0;
+        while (true) {
+            FingerprintResponse[] batchResponses = new FingerprintResponse[pending.size()];
+            List<Integer> conflicted = matchAndMergeBatchOnce(pending.stream().map(incomings::get).toList(), batchResponses);
+            for (int j = 0; j < pending.size(); j++) {
+                if (batchResponses[j] != null) {
+                    responses[pending.get(j)] = batchResponses[j];
+                }
+            }
+            if (conflicted.isEmpty()) {
+                return Arrays.asList(responses);
+            }
+            if (attempt++ >= matchingProperties.getMaxConflictRetries()) {
+                throw new OptimisticLockingFailureException(conflicted.size() + " batch reports still conflicting after "
+                        + attempt + " attempts");
+            }
+            log.warn("Concurrent update detected for {} batch reports, retrying ({}/{})",
+                    conflicted.size(), attempt, matchingProperties.getMaxConflictRetries());
+            List<Integer> previous = pending;
+            pending = conflicted.stream().map(previous::get).toList();
+        }
+    }
+
+    /**
+     * @param responses 与 {@code incomings} 对齐，写入成功的上报填入匹配结果
+     * @return 需要重新匹配的上报在 {@code incomings} 中的下标
+     */
+    private List<Integer> matchAndMergeBatchOnce(List<DeviceFingerprintDocument> incomings,
+                                                 FingerprintResponse[] responses) {
+        List<CompiledFingerprint> compiled = incomings.stream().map(similarityScorer::compile).toList();
+        List<List<DeviceFingerprintDocument>> candidatesPerItem = searchCandidatesInBatch(incomings, compiled, null);
+        Set<String> warmIds = appendWarmCandidates(incomings, compiled, candidatesPerItem);
+        Map<String, DeviceFingerprintDocument> likelyWinners = loadLikelyWinners(compiled, candidatesPerItem, warmIds);
+
+        Map<String, DeviceFingerprintDocument> touched = new LinkedHashMap<>();
+        Map<String, DeviceFingerprintDocument> toSave = new LinkedHashMap<>();
+        List<UpdateQuery> toUpdate = new ArrayList<>();
+        Map<String, List<DeviceFingerprintDocument>> touchedByKey = new HashMap<>();
+        // 每台设备由哪些上报写入，写入失败时这些上报一并重试
+        Map<String, List<Integer>> itemsByDevice = new HashMap<>();
+        Set<String> conflictedIds = new HashSet<>();
+        Set<Integer> conflicted = new TreeSet<>();
+        Instant now = Instant.now();
+        for (int i = 0; i < incomings.size(); i++) {
+            DeviceFingerprintDocument incoming = incomings.get(i);
+
+            // 已在本批次中更新或新建的设备优先使用其最新状态参与打分
+            Map<String, DeviceFingerprintDocument> candidates = new LinkedHashMap<>();
+            for (DeviceFingerprintDocument doc : candidatesPerItem.get(i)) {
+                candidates.putIfAbsent(doc.getId(), touched.getOrDefault(doc.getId(), doc));
+            }
+            for (String key : candidateKeys(incoming)) {
+                for (DeviceFingerprintDocument doc : touchedByKey.getOrDefault(key, List.of())) {
+                    candidates.putIfAbsent(doc.getId(), doc);
+                }
+            }
+
+            CandidateMatch candidateMatch = scoreCandidates(compiled.get(i), candidates.values()).orElse(null);
+            // 批内已更新或新建的设备本身就是完整文档，其余候选为投影，合并前换成完整文档；已被删除的候选排除后重新打分
+            while (isMatch(candidateMatch) && !touched.containsKey(candidateMatch.document().getId())) {
+                String id = candidateMatch.document().getId();
+                DeviceFingerprintDocument full = loadFullDocument(id, likelyWinners, warmIds);
+                if (full != null) {
+                    candidateMatch = new CandidateMatch(full, candidateMatch.score());
+                    break;
+                }
+                candidates.remove(id);
+                candidateMatch = scoreCandidates(compiled.get(i), candidates.values()).orElse(null);
+            }
+            recordOutcome(candidateMatch);
+            if (isMatch(candidateMatch)) {
+                DeviceFingerprintDocument matched = candidateMatch.document();
+                if (conflictedIds.contains(matched.getId())) {
+                    conflicted.add(i);
+                    continue;
+                }
+                if (warmIds.remove(matched.getId())) {
+                    try {
+                        deviceIndexTiering.promote(matched);
+                    } catch (OptimisticLockingFailureException e) {
+                        // 其他请求已提升或更新了该设备，重新匹配时会在热索引中找到它
+                        conflictedIds.add(matched.getId());
+                        conflicted.add(i);
+                        continue;
+                    }
+                }
+                DeviceFingerprintDocument merged = mergeWriteBehind(matched, incoming, now, candidateMatch.score()).orElse(null);
+                if (merged == null) {
+                    // 批内新建的设备尚未写入，只能整篇写入；已有设备的每次合并各对应一条脚本更新，_bulk 中按顺序执行
+                    if (scriptedMergeUpdateBuilder != null && !toSave.containsKey(matched.getId())) {
+                        toUpdate.add(scriptedMergeUpdateBuilder.build(matched.getId(), incoming, now, candidateMatch.score()));
+                    } else {
+                        toSave.put(matched.getId(), matched);
+                    }
+                    mergeFingerprint(matched, incoming, now, candidateMatch.score());
+                    merged = matched;
+                }
+                touched.put(merged.getId(), merged);
+                indexByCandidateKeys(touchedByKey, merged);
+                itemsByDevice.computeIfAbsent(merged.getId(), id -> new ArrayList<>()).add(i);
+                responses[i] = matchedResponse(merged, candidateMatch.score(), now);
+            } else {
+                initializeNewDevice(incoming, now);
+                touched.put(incoming.getId(), incoming);
+                toSave.put(incoming.getId(), incoming);
+                indexByCandidateKeys(touchedByKey, incoming);
+                itemsByDevice.computeIfAbsent(incoming.getId(), id -> new ArrayList<>()).add(i);
+                responses[i] = createdResponse(incoming, now);
+            }
+        }
+
+        Set<String> failedIds = new HashSet<>();
+        if (!toSave.isEmpty()) {
+            try {
+                matchingMetrics.time(MatchingMetrics.Stage.SAVE, () -> repository.saveAll(toSave.values()));
+                toSave.values().forEach(this::cacheDevice);
+            } catch (BulkFailureException e) {
+                // 写入成功的文档也未回填新的 seq_no，一并丢弃缓存
+                toSave.keySet().forEach(this::evictDevice);
+                failedIds.addAll(retryableFailures(e));
+            } catch (RuntimeException e) {
+                toSave.keySet().forEach(this::evictDevice);
+                throw e;
+            }
+        }
+        Set<String> updatedIds = new LinkedHashSet<>();
+        if (!toUpdate.isEmpty()) {
+            toUpdate.forEach(update -> updatedIds.add(update.getId()));
+            try {
+                matchingMetrics.time(MatchingMetrics.Stage.SAVE,
+                        () -> elasticsearchOperations.bulkUpdate(toUpdate, DeviceFingerprintDocument.class));
+            } catch (BulkFailureException e) {
+                // 脚本更新在 ES 端按 retry_on_conflict 重试，仍失败通常是设备已被删除，同一设备的各条更新一起失败
+                failedIds.addAll(retryableFailures(e));
+            } catch (RuntimeException e) {
+                updatedIds.forEach(this::evictDevice);
+                throw e;
+            }
+            // 批量结果不区分 noop，本地合并后的副本可能比 ES 多计一次观测，直接丢弃缓存
+            updatedIds.forEach(this::evictDevice);
+        }
+        for (String id : failedIds) {
+            for (int i : itemsByDevice.getOrDefault(id, List.of())) {
+                responses[i] = null;
+                conflicted.add(i);
+            }
+        }
+        log.info("Fingerprint batch processed: reports={} devicesWritten={} devicesUpdated={} devicesBuffered={} retrying={}",
+                incomings.size(), toSave.size(), updatedIds.size(), touched.size() - toSave.size() - updatedIds.size(),
+                conflicted.size());
+        return new ArrayList<>(conflicted);
+    }
+
+    /**
+     * @return 因版本冲突或文档已不存在而写入失败、重新匹配后可重试的设备 id
+     * @throws BulkFailureException 存在其他原因的失败时原样抛出
+     */
+    private Set<String> retryableFailures(BulkFailureException e) {
+        for (BulkFailureException.FailureDetails details : e.getFailedDocuments().values()) {
+            Integer status = details.status();
+            if (status == null || (status != HttpStatus.CONFLICT.value() && status != HttpStatus.NOT_FOUND.value())) {
+                throw e;
+            }
+        }
+        return e.getFailedDocuments().keySet();
+    }
+
+    /**
+     * 分层时为热索引中未命中阈值的上报补充温索引候选，整批只发出一次 {@code _msearch}。
+     *
+     * @return 来自温索引、被选中时需先提升回热索引的设备 id
+     */
+    private Set<String> appendWarmCandidates(List<DeviceFingerprintDocument> incomings,
+                                             List<CompiledFingerprint> compiled,
+                                             List<List<DeviceFingerprintDocument>> candidatesPerItem) {
+        Set<String> warmIds = new HashSet<>();
+        if (deviceIndexTiering == null) {
+            return warmIds;
+        }
+        List<Integer> misses = new ArrayList<>();
+        for (int i = 0; i < incomings.size(); i++) {
+            if (scoreCandidates(compiled.get(i), candidatesPerItem.get(i)).filter(this::isMatch).isEmpty()) {
+                misses.add(i);
+            }
+        }
+        if (misses.isEmpty()) {
+            return warmIds;
+        }
+        List<List<DeviceFingerprintDocument>> warmCandidates = searchCandidatesInBatch(
+                misses.stream().map(incomings::get).toList(),
+                misses.stream().map(compiled::get).toList(),
+                deviceIndexTiering.warmIndex());
+        for (int j = 0; j < misses.size(); j++) {
+            List<DeviceFingerprintDocument> candidates = candidatesPerItem.get(misses.get(j));
+            Set<String> hotIds = new HashSet<>();
+            candidates.forEach(doc -> hotIds.add(doc.getId()));
+            for (DeviceFingerprintDocument doc : warmCandidates.get(j)) {
+                // 迁移期间被更新的设备可能短暂同时存在于两层，以热索引为准
+                if (hotIds.add(doc.getId())) {
+                    candidates.add(doc);
+                    warmIds.add(doc.getId());
+                }
+            }
+        }
+        return warmIds;
+    }
+
+    /**
+     * 按 ES 返回的候选预先打分，通过一次 multi-get（分层时温索引另发一次 ids 查询）读取可能胜出设备的完整文档。
+     * 批内合并会改变后续上报的候选，预判之外的胜出者由 {@link #loadFullDocument} 单独读取。
+     */
+    private Map<String, DeviceFingerprintDocument> loadLikelyWinners(List<CompiledFingerprint> compiled,
+                                                                    List<List<DeviceFingerprintDocument>> candidatesPerItem,
+                                                                    Set<String> warmIds) {
+        Set<String> hotWinnerIds = new HashSet<>();
+        Set<String> warmWinnerIds = new HashSet<>();
+        for (int i = 0; i < compiled.size(); i++) {
+            scoreCandidates(compiled.get(i), candidatesPerItem.get(i))
+                    .filter(this::isMatch)
+                    .map(match -> match.document().getId())
+                    .ifPresent(id -> (warmIds.contains(id) ? warmWinnerIds : hotWinnerIds).add(id));
+        }
+        Map<String, DeviceFingerprintDocument> documents = multiGet(hotWinnerIds);
+        if (!warmWinnerIds.isEmpty()) {
+            documents.putAll(findWarmDocuments(warmWinnerIds));
+        }
+        return documents;
+    }
+
+    /**
+     * @return 完整文档；已被删除或迁移时返回 null
+     */
+    private DeviceFingerprintDocument loadFullDocument(String id,
+                                                       Map<String, DeviceFingerprintDocument> loaded,
+                                                       Set<String> warmIds) {
+        DeviceFingerprintDocument document = loaded.get(id);
+        if (document != null) {
+            return document;
+        }
+        return warmIds.contains(id)
+                ? findWarmDocuments(List.of(id)).get(id)
+                : elasticsearchOperations.get(id, DeviceFingerprintDocument.class);
+    }
+
+    private Map<String, DeviceFingerprintDocument> multiGet(Collection<String> ids) {
+        Map<String, DeviceFingerprintDocument> documents = new HashMap<>();
+        if (ids.isEmpty()) {
+            return documents;
+        }
+        CriteriaQuery query = new CriteriaQuery(new Criteria());
+        query.setIds(ids);
+        List<MultiGetItem<DeviceFingerprintDocument>> items = matchingMetrics.time(MatchingMetrics.Stage.WINNER_LOAD,
+                () -> elasticsearchOperations.multiGet(query, DeviceFingerprintDocument.class));
+        for (MultiGetItem<DeviceFingerprintDocument> item : items) {
+            if (item.hasItem()) {
+                documents.put(item.getItem().getId(), item.getItem());
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * 按 id 查询温索引中的完整文档。温索引别名滚动后指向多个索引，ES 拒绝对这类别名执行 get/multi-get，
+     * 因此改用 ids 查询。
+     */
+    private Map<String, DeviceFingerprintDocument> findWarmDocuments(Collection<String> ids) {
+        Map<String, DeviceFingerprintDocument> documents = new HashMap<>();
+        if (ids.isEmpty()) {
+            return documents;
+        }
+        CriteriaQuery query = new CriteriaQuery(new Criteria());
+        query.setIds(ids);
+        query.setMaxResults(ids.size());
+        SearchHits<DeviceFingerprintDocument> hits = matchingMetrics.time(MatchingMetrics.Stage.WINNER_LOAD,
+                () -> elasticsearchOperations.search(query, DeviceFingerprintDocument.class, deviceIndexTiering.warmIndex()));
+        for (SearchHit<DeviceFingerprintDocument> hit : hits) {
+            documents.putIfAbsent(hit.getContent().getId(), hit.getContent());
+        }
+        return documents;
+    }
+
+    private void indexByCandidateKeys(Map<String, List<DeviceFingerprintDocument>> index,
+                                      DeviceFingerprintDocument document) {
+        for (String key : candidateKeys(document)) {
+            List<DeviceFingerprintDocument> documents = index.computeIfAbsent(key, k -> new ArrayList<>());
+            if (!documents.contains(document)) {
+                documents.add(document);
+            }
+        }
+    }
+
+    /**
+     * 与 {@link #buildCandidateQueries} 相同的召回键，用于在批次内查找尚未写入 ES 的设备。
+     */
+    private List<String> candidateKeys(DeviceFingerprintDocument document) {
+        List<String> keys = new ArrayList<>();
+        if (StringUtils.isNotBlank(document.getVisitorId())) {
+            keys.add("visitorId:" + document.getVisitorId());
+        }
+        if (document.getNetwork() != null && StringUtils.isNotBlank(document.getNetwork().getIpAddress())) {
+            keys.add("ip:" + document.getNetwork().getIpAddress());
+        }
+        if (document.getCertificate() != null && document.getCertificate().getFingerprints() != null) {
+            document.getCertificate().getFingerprints().stream()
+                    .filter(StringUtils::isNotBlank)
+                    .map(fp -> "certificate:" + fp)
+                    .forEach(keys::add);
+        }
+        if (document.getBrowser() != null && StringUtils.isNotBlank(document.getBrowser().getCanvasFingerprint())) {
+            keys.add("canvas:" + document.getBrowser().getCanvasFingerprint());
+        }
+        if (matchingProperties.isLshEnabled() && document.getLshBands() != null) {
+            document.getLshBands().forEach(band -> keys.add("lsh:" + band));
+        }
+        return keys;
+    }
+
+    private DeviceFingerprintDocument prepareIncoming(DeviceFingerprintDocument incoming, IpAddress clientIp) {
+        // 解析 UA 分项，相同 UA 只解析一次
+        if (userAgentParser != null) {
+            userAgentParser.enrich(incoming.getBrowser());
+        }
+
+        // LSH 只召回 visitorId 不同的设备，这类设备达不到阈值时分段键既不计算也不写入
+        if (matchingProperties.isLshEnabled()
+                && similarityScorer.maxScoreWithoutVisitor() >= similarityProperties.getThreshold()) {
+            incoming.setLshBands(DeviceFingerprintMapper.lshBands(incoming.getBrowser(), incoming.getDevice()));
+        }
+
+        // 使用从请求头获取的真实IP地址覆盖客户端上报的IP，统一为规范文本形式存储
+        if (clientIp != null) {
             if (incoming.getNetwork() == null) {
                 incoming.setNetwork(new DeviceFingerprintDocument.NetworkFingerprint());
             }
-            incoming.getNetwork().setIpAddress(clientIp);
+            incoming.getNetwork().setIpAddress(clientIp.toString());
             log.debug("Updated IP address from request header: {}", clientIp);
-            
+
             // 通过GeoIP查询地理位置信息
             enrichWithGeoLocation(incoming, clientIp);
         }
-        
-        CandidateMatch candidateMatch = findBestMatch(incoming).orElse(null);
-        Instant now = Instant.now();
+        return incoming;
+    }
 
-        if (candidateMatch != null && candidateMatch.score() >= similarityProperties.getThreshold()) {
-            DeviceFingerprintDocument matched = candidateMatch.document();
-            mergeFingerprint(matched, incoming, now, candidateMatch.score());
-            repository.save(matched);
-            log.info("Fingerprint matched with existing device: id={} score={}", matched.getId(), candidateMatch.score());
-            return new FingerprintResponse(
-                    matched.getId(),
-                    true,
-                    candidateMatch.score(),
-                    matched.getId(),
-                    now,
-                    Map.of(
-                            "observationCount", Optional.ofNullable(matched.getObservationCount()).orElse(0),
-                            "ipHistorySize", matched.getIpHistory() == null ? 0 : matched.getIpHistory().size())
-            );
-        }
-
-        String newId = UUID.randomUUID().toString();
-        incoming.setId(newId);
+    private boolean isMatch(CandidateMatch candidateMatch) {
+        return candidateMatch != null && candidateMatch.score() >= similarityProperties.getThreshold();
+    }
+
+    private void initializeNewDevice(DeviceFingerprintDocument incoming, Instant now) {
+        incoming.setId(UUID.randomUUID().toString());
         incoming.setCreatedAt(now);
         incoming.setUpdatedAt(now);
         incoming.setSimilarityScore(1d);
-        repository.save(incoming);
-        log.info("Fingerprint stored as new device: id={}", newId);
+    }
+
+    private FingerprintResponse matchedResponse(DeviceFingerprintDocument matched, double score, Instant now) {
+        return new FingerprintResponse(
+                matched.getId(),
+                true,
+                score,
+                matched.getId(),
+                now,
+                Map.of(
+                        "observationCount", Optional.ofNullable(matched.getObservationCount()).orElse(0),
+                        "ipHistorySize", matched.getIpHistory() == null ? 0 : matched.getIpHistory().size())
+        );
+    }
+
+    private FingerprintResponse createdResponse(DeviceFingerprintDocument created, Instant now) {
         return new FingerprintResponse(
-                newId,
+                created.getId(),
                 false,
                 0d,
                 null,
                 now,
-                Map.of("observationCount", incoming.getObservationCount())
+                Map.of("observationCount", created.getObservationCount())
         );
     }
 
+    private void recordOutcome(CandidateMatch candidateMatch) {
+        matchingMetrics.recordOutcome(isMatch(candidateMatch), candidateMatch == null ? null : candidateMatch.score());
+    }
+
+    private void cacheDevice(DeviceFingerprintDocument document) {
+        if (hotDeviceCache != null) {
+            hotDeviceCache.put(document);
+        }
+    }
+
+    private void evictDevice(String deviceId) {
+        if (hotDeviceCache != null) {
+            hotDeviceCache.invalidate(deviceId);
+        }
+    }
+
     private Optional<CandidateMatch> findBestMatch(DeviceFingerprintDocument incoming) {
+        CompiledFingerprint compiled = similarityScorer.compile(incoming);
+
+        // 回访设备优先在本地缓存中匹配，命中阈值时无需访问 ES
+        if (hotDeviceCache != null) {
+            Optional<CandidateMatch> cachedMatch = scoreCandidates(compiled, hotDeviceCache.findCandidates(incoming));
+            if (cachedMatch.filter(this::isMatch).isPresent()) {
+                log.debug("Fingerprint matched from hot device cache: id={}", cachedMatch.get().document().getId());
+                return cachedMatch;
+            }
+        }
+
+        // ES 返回的候选均为投影，只有命中阈值的胜出者才读取完整文档
+        Optional<CandidateMatch> best = matchingProperties.isScriptScoringEnabled()
+                ? findBestMatchWithScriptScoring(incoming, compiled)
+                : scoreCandidates(compiled, lookupCandidates(incoming, compiled));
+        if (best.filter(this::isMatch).isPresent()) {
+            return Optional.of(loadWinner(best.get(), false));
+        }
+        if (deviceIndexTiering != null) {
+            Optional<CandidateMatch> warmMatch = findBestMatchInWarmTier(incoming, compiled);
+            if (warmMatch.isPresent()) {
+                return warmMatch;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 读取胜出候选的完整文档（含 seq_no）用于合并。
+     *
+     * @param warm 候选是否来自温索引
+     * @throws OptimisticLockingFailureException 文档在召回后被删除或迁移，由调用方重新匹配
+     */
+    private CandidateMatch loadWinner(CandidateMatch match, boolean warm) {
+        String id = match.document().getId();
+        DeviceFingerprintDocument full = warm
+                ? findWarmDocuments(List.of(id)).get(id)
+                : matchingMetrics.time(MatchingMetrics.Stage.WINNER_LOAD,
+                        () -> elasticsearchOperations.get(id, DeviceFingerprintDocument.class));
+        if (full == null) {
+            throw new OptimisticLockingFailureException("Matched device " + id + " disappeared before merge");
+        }
+        return new CandidateMatch(full, match.score());
+    }
+
+    /**
+     * 热索引未命中时查询温索引，命中阈值的设备提升回热索引后返回。
+     */
+    private Optional<CandidateMatch> findBestMatchInWarmTier(DeviceFingerprintDocument incoming,
+                                                             CompiledFingerprint compiled) {
+        List<DeviceFingerprintDocument> candidates =
+                searchCandidatesInBatch(List.of(incoming), List.of(compiled), deviceIndexTiering.warmIndex()).get(0);
+        Optional<CandidateMatch> warmMatch = scoreCandidates(compiled, candidates)
+                .filter(this::isMatch)
+                .map(match -> loadWinner(match, true));
+        warmMatch.ifPresent(match -> deviceIndexTiering.promote(match.document()));
+        return warmMatch;
+    }
+
+    /**
+     * 按 {@code fingerprint.matching.lookup-mode} 获取 visitorId 下的设备与候选设备，visitorId 命中排在最前并按 id 去重。
+     * 顺序查询时，visitorId 最新设备已取得可能的最高分则不再发出候选查询。
+     */
+    private List<DeviceFingerprintDocument> lookupCandidates(DeviceFingerprintDocument incoming,
+                                                             CompiledFingerprint compiled) {
+        MatchingProperties.LookupMode mode = matchingProperties.getLookupMode();
+        if (mode == MatchingProperties.LookupMode.COMBINED) {
+            return searchCandidatesInBatch(List.of(incoming), List.of(compiled), null).get(0);
+        }
+
+        List<DeviceFingerprintDocument> visitorHits;
+        List<DeviceFingerprintDocument> searched;
+        if (mode == MatchingProperties.LookupMode.CONCURRENT && lookupExecutor != null) {
+            // visitorId 查询与候选查询同时发出，请求耗时取两者中较慢的一次往返
+            CompletableFuture<List<DeviceFingerprintDocument>> visitorLookup = CompletableFuture.supplyAsync(
+                    () -> findVisitorDevices(incoming.getVisitorId()), lookupExecutor);
+            searched = searchCandidates(incoming, compiled);
+            visitorHits = awaitVisitorLookup(visitorLookup, incoming.getVisitorId());
+        } else {
+            visitorHits = findVisitorDevices(incoming.getVisitorId());
+            if (!visitorHits.isEmpty() && similarityScorer.calculate(compiled, visitorHits.get(0))
+                    >= similarityScorer.maxScore(compiled, true)) {
+                return List.of(visitorHits.get(0));
+            }
+            searched = searchCandidates(incoming, compiled);
+        }
+
         Set<String> visitedIds = new HashSet<>();
         List<DeviceFingerprintDocument> candidates = new ArrayList<>();
+        for (DeviceFingerprintDocument doc : visitorHits) {
+            if (visitedIds.add(doc.getId())) {
+                candidates.add(doc);
+            }
+        }
 
-        repository.findTopByVisitorIdOrderByUpdatedAtDesc(incoming.getVisitorId())
-                .ifPresent(doc -> {
-                    candidates.add(doc);
-                    visitedIds.add(doc.getId());
-                });
-
-        for (DeviceFingerprintDocument doc : searchCandidates(incoming)) {
+        for (DeviceFingerprintDocument doc : searched) {
             if (doc.getId() != null && !visitedIds.contains(doc.getId())) {
                 candidates.add(doc);
                 visitedIds.add(doc.getId());
             }
         }
+        return candidates;
+    }
 
-        CandidateMatch best = null;
-        for (DeviceFingerprintDocument candidate : candidates) {
-            double score = similarityScorer.calculate(incoming, candidate);
-            if (best == null || score > best.score()) {
-                best = new CandidateMatch(candidate, score);
+    /**
+     * @return 该 visitorId 下最近更新的设备，最新的在最前，数量受 {@code candidate-limits.visitor-id} 限制
+     */
+    private List<DeviceFingerprintDocument> findVisitorDevices(String visitorId) {
+        return matchingMetrics.time(MatchingMetrics.Stage.VISITOR_LOOKUP,
+                () -> repository.findByVisitorIdOrderByUpdatedAtDesc(visitorId, PageRequest.of(0, visitorLookupLimit())));
+    }
+
+    /**
+     * visitorId 查询同时承担 VISITOR_ID 召回条件，返回数量取该条件的上限，至少包含最新的一台设备。
+     */
+    private int visitorLookupLimit() {
+        return Math.max(1, matchingProperties.getCandidateLimits()
+                .getOrDefault(MatchingProperties.CandidateCriterion.VISITOR_ID, 0));
+    }
+
+    /**
+     * 等待并发发出的 visitorId 查询；超过 lookup-timeout 时请求失败，不使用不完整的召回结果打分。
+     */
+    private List<DeviceFingerprintDocument> awaitVisitorLookup(CompletableFuture<List<DeviceFingerprintDocument>> visitorLookup,
+                                                               String visitorId) {
+        Duration timeout = matchingProperties.getLookupTimeout();
+        try {
+            if (timeout == null || timeout.isZero()) {
+                return visitorLookup.join();
+            }
+            return visitorLookup.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            visitorLookup.cancel(true);
+            throw new QueryTimeoutException("VisitorId lookup timed out after " + timeout.toMillis()
+                    + "ms for visitorId=" + visitorId, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            visitorLookup.cancel(true);
+            throw new QueryTimeoutException("Interrupted while waiting for visitorId lookup", e);
+        } catch (CompletionException | ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
             }
+            throw new IllegalStateException(e.getCause());
         }
-        return Optional.ofNullable(best);
     }
 
-    private List<DeviceFingerprintDocument> searchCandidates(DeviceFingerprintDocument incoming) {
-        List<Criteria> criteriaList = new ArrayList<>();
-        if (StringUtils.isNotBlank(incoming.getVisitorId())) {
-            criteriaList.add(Criteria.where("visitorId").is(incoming.getVisitorId()));
+    /**
+     * 由 ES 按加权相似度预排序并只返回前 k 个投影候选，在本地精确打分。
+     */
+    private Optional<CandidateMatch> findBestMatchWithScriptScoring(DeviceFingerprintDocument incoming,
+                                                                    CompiledFingerprint compiled) {
+        NativeQuery query = candidateScriptQueryBuilder.build(incoming);
+        if (query == null) {
+            return Optional.empty();
         }
-        if (incoming.getNetwork() != null && StringUtils.isNotBlank(incoming.getNetwork().getIpAddress())) {
-            criteriaList.add(Criteria.where("network.ipAddress").is(incoming.getNetwork().getIpAddress()));
+        SearchHits<DeviceFingerprintDocument> searchHits = matchingMetrics.time(MatchingMetrics.Stage.CANDIDATE_SEARCH,
+                () -> elasticsearchOperations.search(query, DeviceFingerprintDocument.class));
+        List<DeviceFingerprintDocument> projections = new ArrayList<>();
+        for (SearchHit<DeviceFingerprintDocument> hit : searchHits) {
+            projections.add(hit.getContent());
         }
-        if (incoming.getCertificate() != null && incoming.getCertificate().getFingerprints() != null) {
-            incoming.getCertificate().getFingerprints().stream()
-                    .filter(StringUtils::isNotBlank)
-                    .map(fp -> Criteria.where("certificate.fingerprints").is(fp))
-                    .forEach(criteriaList::add);
+        matchingMetrics.recordCandidateHits(projections.size());
+
+        return scoreCandidates(compiled, projections);
+    }
+
+    private Optional<CandidateMatch> scoreCandidates(CompiledFingerprint incoming,
+                                                     Collection<DeviceFingerprintDocument> candidates) {
+        return matchingMetrics.time(MatchingMetrics.Stage.SCORING, () -> {
+            CandidateMatch best = null;
+            int scored = 0;
+            for (DeviceFingerprintDocument candidate : candidates) {
+                // 得分上界不超过当前最佳的候选不可能胜出，跳过完整打分
+                if (best != null && similarityScorer.upperBound(incoming, candidate) <= best.score()) {
+                    continue;
+                }
+                scored++;
+                double score = similarityScorer.calculate(incoming, candidate);
+                if (best == null || score > best.score()) {
+                    best = new CandidateMatch(candidate, score);
+                }
+            }
+            matchingMetrics.recordScoredCandidates(scored);
+            return Optional.ofNullable(best);
+        });
+    }
+
+    /**
+     * 各召回条件分别查询，多个条件时合并为一次 {@code _msearch}，结果按条件的选择性顺序排列并按 id 去重。
+     */
+    private List<DeviceFingerprintDocument> searchCandidates(DeviceFingerprintDocument incoming,
+                                                             CompiledFingerprint compiled) {
+        List<CriteriaQuery> queries = buildCandidateQueries(incoming, compiled);
+        if (queries.isEmpty()) {
+            matchingMetrics.recordCandidateHits(0);
+            return List.of();
         }
-        if (incoming.getBrowser() != null && StringUtils.isNotBlank(incoming.getBrowser().getCanvasFingerprint())) {
-            criteriaList.add(Criteria.where("browser.canvasFingerprint").is(incoming.getBrowser().getCanvasFingerprint()));
+        List<SearchHits<DeviceFingerprintDocument>> responses = matchingMetrics.time(MatchingMetrics.Stage.CANDIDATE_SEARCH,
+                () -> queries.size() == 1
+                        ? List.of(elasticsearchOperations.search(queries.get(0), DeviceFingerprintDocument.class))
+                        : elasticsearchOperations.multiSearch(queries, DeviceFingerprintDocument.class));
+        Map<String, DeviceFingerprintDocument> results = new LinkedHashMap<>();
+        for (SearchHits<DeviceFingerprintDocument> searchHits : responses) {
+            for (SearchHit<DeviceFingerprintDocument> hit : searchHits) {
+                DeviceFingerprintDocument doc = hit.getContent();
+                if (doc.getId() != null) {
+                    results.putIfAbsent(doc.getId(), doc);
+                }
+            }
         }
+        matchingMetrics.recordCandidateHits(results.size());
+        return new ArrayList<>(results.values());
+    }
 
-        if (criteriaList.isEmpty()) {
-            return List.of();
+    /**
+     * 为整批指纹构造 visitorId 查询（按更新时间倒序，兼作 VISITOR_ID 召回条件）与其余召回条件的查询，
+     * 并通过一次 {@code _msearch} 获取结果。
+     *
+     * @param index 查询的索引；为 null 时使用文档默认索引（分层时即热索引）
+     * @return 与输入顺序一致、按 id 去重后的候选列表
+     */
+    private List<List<DeviceFingerprintDocument>> searchCandidatesInBatch(List<DeviceFingerprintDocument> incomings,
+                                                                          List<CompiledFingerprint> compiled,
+                                                                          IndexCoordinates index) {
+        List<CriteriaQuery> queries = new ArrayList<>();
+        // 第 i 条上报的查询位于 queries 的 [queryStart[i], queryStart[i + 1])，visitorId 查询在最前
+        int[] queryStart = new int[incomings.size() + 1];
+        for (int i = 0; i < incomings.size(); i++) {
+            DeviceFingerprintDocument incoming = incomings.get(i);
+            queryStart[i] = queries.size();
+            if (StringUtils.isNotBlank(incoming.getVisitorId())) {
+                CriteriaQuery visitorQuery = new CriteriaQuery(Criteria.where("visitorId").is(incoming.getVisitorId()));
+                visitorQuery.addSort(Sort.by(Sort.Direction.DESC, "updatedAt"));
+                visitorQuery.setMaxResults(visitorLookupLimit());
+                visitorQuery.addSourceFilter(CandidateProjection.sourceFilter());
+                queries.add(visitorQuery);
+            }
+            queries.addAll(buildCandidateQueries(incoming, compiled.get(i)));
         }
+        queryStart[incomings.size()] = queries.size();
 
-        Criteria combined = criteriaList.get(0);
-        for (int i = 1; i < criteriaList.size(); i++) {
-            combined = combined.or(criteriaList.get(i));
+        List<SearchHits<DeviceFingerprintDocument>> responses;
+        if (queries.isEmpty()) {
+            responses = List.of();
+        } else {
+            responses = matchingMetrics.time(MatchingMetrics.Stage.CANDIDATE_SEARCH, () -> index == null
+                    ? elasticsearchOperations.multiSearch(queries, DeviceFingerprintDocument.class)
+                    : elasticsearchOperations.multiSearch(queries, DeviceFingerprintDocument.class, index));
         }
 
-        CriteriaQuery query = new CriteriaQuery(combined);
-        query.setMaxResults(20);
-        SearchHits<DeviceFingerprintDocument> searchHits = elasticsearchOperations.search(query, DeviceFingerprintDocument.class);
-        List<DeviceFingerprintDocument> results = new ArrayList<>();
-        for (SearchHit<DeviceFingerprintDocument> hit : searchHits) {
-            results.add(hit.getContent());
+        List<List<DeviceFingerprintDocument>> results = new ArrayList<>(incomings.size());
+        for (int i = 0; i < incomings.size(); i++) {
+            Map<String, DeviceFingerprintDocument> candidates = new LinkedHashMap<>();
+            for (int queryIndex = queryStart[i]; queryIndex < queryStart[i + 1]; queryIndex++) {
+                for (SearchHit<DeviceFingerprintDocument> hit : responses.get(queryIndex)) {
+                    DeviceFingerprintDocument doc = hit.getContent();
+                    if (doc.getId() != null) {
+                        candidates.putIfAbsent(doc.getId(), doc);
+                    }
+                }
+            }
+            matchingMetrics.recordCandidateHits(candidates.size());
+            results.add(new ArrayList<>(candidates.values()));
         }
         return results;
     }
 
+    /**
+     * 按选择性从高到低为每个召回条件构造一个查询，各自使用 {@code fingerprint.matching.candidate-limits} 中的上限。
+     * <p>
+     * visitorId 由调用方单独按更新时间倒序查询，这里不再重复构造 VISITOR_ID 条件的查询。
+     * visitorId 不同的候选最多得到 {@link SimilarityScorer#maxScore} 中除 visitorId 以外的权重之和，
+     * 低于阈值时这些候选不可能匹配，此时不发出任何候选查询。
+     */
+    private List<CriteriaQuery> buildCandidateQueries(DeviceFingerprintDocument incoming, CompiledFingerprint compiled) {
+        boolean otherVisitorsCanMatch = similarityScorer.maxScore(compiled, false) >= similarityProperties.getThreshold();
+        List<CriteriaQuery> queries = new ArrayList<>();
+        for (MatchingProperties.CandidateCriterion criterion : MatchingProperties.CandidateCriterion.values()) {
+            if (criterion == MatchingProperties.CandidateCriterion.VISITOR_ID || !otherVisitorsCanMatch) {
+                continue;
+            }
+            int limit = matchingProperties.getCandidateLimits().getOrDefault(criterion, 0);
+            Criteria criteria = limit > 0 ? candidateCriteria(criterion, incoming) : null;
+            if (criteria == null) {
+                continue;
+            }
+            CriteriaQuery query = new CriteriaQuery(criteria);
+            query.setMaxResults(limit);
+            query.addSourceFilter(CandidateProjection.sourceFilter());
+            queries.add(query);
+        }
+        return queries;
+    }
+
+    /**
+     * @return 新上报缺少该条件所需字段时返回 null
+     */
+    private Criteria candidateCriteria(MatchingProperties.CandidateCriterion criterion, DeviceFingerprintDocument incoming) {
+        return switch (criterion) {
+            case VISITOR_ID -> StringUtils.isNotBlank(incoming.getVisitorId())
+                    ? Criteria.where("visitorId").is(incoming.getVisitorId()) : null;
+            case CERTIFICATE -> {
+                if (incoming.getCertificate() == null || incoming.getCertificate().getFingerprints() == null) {
+                    yield null;
+                }
+                List<String> fingerprints = incoming.getCertificate().getFingerprints().stream()
+                        .filter(StringUtils::isNotBlank)
+                        .toList();
+                yield fingerprints.isEmpty() ? null : Criteria.where("certificate.fingerprints").in(fingerprints);
+            }
+            case CANVAS -> incoming.getBrowser() != null && StringUtils.isNotBlank(incoming.getBrowser().getCanvasFingerprint())
+                    ? Criteria.where("browser.canvasFingerprint").is(incoming.getBrowser().getCanvasFingerprint()) : null;
+            case LSH -> matchingProperties.isLshEnabled() && incoming.getLshBands() != null && !incoming.getLshBands().isEmpty()
+                    ? Criteria.where("lshBands").in(incoming.getLshBands()) : null;
+            case IP_ADDRESS -> incoming.getNetwork() != null && StringUtils.isNotBlank(incoming.getNetwork().getIpAddress())
+                    ? Criteria.where("network.ipAddress").is(incoming.getNetwork().getIpAddress()) : null;
+        };
+    }
+
     private void mergeFingerprint(DeviceFingerprintDocument target,
                                   DeviceFingerprintDocument incoming,
                                   Instant now,
@@ -195,6 +1016,9 @@ public class DeviceFingerprintService {
         if (incoming.getCertificate() != null) {
             target.setCertificate(incoming.getCertificate());
         }
+        if (incoming.getLshBands() != null) {
+            target.setLshBands(incoming.getLshBands());
+        }
         if (incoming.getMetadata() != null && !incoming.getMetadata().isEmpty()) {
             if (target.getMetadata() == null) {
                 target.setMetadata(incoming.getMetadata());
@@ -216,7 +1040,7 @@ public class DeviceFingerprintService {
         String ip = incoming.getNetwork().getIpAddress();
         if (!ipHistory.contains(ip)) {
             ipHistory.add(0, ip);
-            if (ipHistory.size() > 20) {
+            if (ipHistory.size() > DeviceFingerprintDocument.IP_HISTORY_LIMIT) {
                 ipHistory.remove(ipHistory.size() - 1);
             }
         }
@@ -228,14 +1052,14 @@ public class DeviceFingerprintService {
      * @param document 设备指纹文档
      * @param ipAddress IP地址
      */
-    private void enrichWithGeoLocation(DeviceFingerprintDocument document, String ipAddress) {
+    private void enrichWithGeoLocation(DeviceFingerprintDocument document, IpAddress ipAddress) {
         if (geoIpService == null) {
             log.debug("GeoIpService is not available, skipping geo location enrichment");
             return;
         }
 
         try {
-            geoIpService.lookup(ipAddress).ifPresent(geoInfo -> {
+            matchingMetrics.time(MatchingMetrics.Stage.GEO_LOOKUP, () -> geoIpService.lookup(ipAddress)).ifPresent(geoInfo -> {
                 DeviceFingerprintDocument.GeoLocation geoData = convertToGeoLocationData(geoInfo);
                 document.setGeoLocation(geoData);
                 log.debug("Enriched fingerprint with geo location: country={}, city={}", 
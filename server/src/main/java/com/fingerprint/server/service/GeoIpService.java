@@ -1,34 +1,54 @@
 package com.fingerprint.server.service;
 
+import com.fingerprint.server.config.GeoIpProperties;
 import com.fingerprint.server.dto.GeoLocationInfo;
-import com.maxmind.geoip2.DatabaseReader;
+import com.fingerprint.server.service.support.GeoIpDatabase;
+import com.fingerprint.server.service.support.NetworkPrefixCache;
+import com.fingerprint.server.util.IpAddress;
+import com.fingerprint.server.util.StringDictionary;
+import com.maxmind.db.Network;
 import com.maxmind.geoip2.exception.AddressNotFoundException;
 import com.maxmind.geoip2.exception.GeoIp2Exception;
 import com.maxmind.geoip2.model.CityResponse;
 import com.maxmind.geoip2.record.*;
-import lombok.RequiredArgsConstructor;
-import org.apache.commons.lang3.StringUtils;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
-import java.net.InetAddress;
-import java.net.UnknownHostException;
 import java.util.Optional;
 
 /**
  * GeoIP查询服务。
+ * <p>
+ * 查询结果按 MaxMind 返回的网段缓存，同一网段内的其他地址无需再查库；数据库中不存在的地址按单个地址缓存。
+ * 容量与存活时间由 {@code fingerprint.geoip.cache-size}、{@code fingerprint.geoip.cache-ttl} 控制，
+ * 命中率、条目数与加载耗时以 {@code cache.*{cache=geoIpCache}} 指标暴露。
  */
 @Service
-@RequiredArgsConstructor
-@ConditionalOnBean(DatabaseReader.class)
+@ConditionalOnBean(GeoIpDatabase.class)
 public class GeoIpService {
 
     private static final Logger log = LoggerFactory.getLogger(GeoIpService.class);
 
-    private final DatabaseReader databaseReader;
+    /**
+     * 查询结果缓存名称，数据库热加载后会被清空。
+     */
+    public static final String CACHE_NAME = "geoIpCache";
+
+    private final GeoIpDatabase geoIpDatabase;
+    private final NetworkPrefixCache<Optional<GeoLocationInfo>> cache;
+
+    public GeoIpService(GeoIpDatabase geoIpDatabase, GeoIpProperties properties, MeterRegistry meterRegistry) {
+        this.geoIpDatabase = geoIpDatabase;
+        if (properties.getCacheSize() > 0) {
+            this.cache = new NetworkPrefixCache<>(properties.getCacheSize(), properties.getCacheTtl(), meterRegistry, CACHE_NAME);
+            geoIpDatabase.onReload(cache::invalidateAll);
+        } else {
+            this.cache = null;
+        }
+    }
 
     /**
      * 根据IP地址查询地理位置信息。
@@ -36,41 +56,63 @@ public class GeoIpService {
      * @param ipAddress IP地址
      * @return 地理位置信息，如果查询失败则返回Optional.empty()
      */
-    @Cacheable(value = "geoIpCache", key = "#ipAddress", unless = "#result.isEmpty()")
     public Optional<GeoLocationInfo> lookup(String ipAddress) {
-        if (StringUtils.isBlank(ipAddress)) {
-            log.debug("IP address is blank, skipping lookup");
+        IpAddress address = IpAddress.parse(ipAddress);
+        if (address == null) {
+            log.debug("Invalid IP address format: {}", ipAddress);
             return Optional.empty();
         }
+        return lookup(address);
+    }
 
+    /**
+     * 根据已解析的IP地址查询地理位置信息。
+     *
+     * @param address IP地址
+     * @return 地理位置信息，如果查询失败则返回Optional.empty()
+     */
+    public Optional<GeoLocationInfo> lookup(IpAddress address) {
         // 过滤本地IP和私有IP
-        if (isLocalOrPrivateIp(ipAddress)) {
-            log.debug("IP address {} is local or private, skipping lookup", ipAddress);
+        if (address.isLocalOrPrivate()) {
+            log.debug("IP address {} is local or private, skipping lookup", address);
             return Optional.empty();
         }
 
+        if (cache == null) {
+            NetworkPrefixCache.Loaded<Optional<GeoLocationInfo>> loaded = queryDatabase(address);
+            return loaded == null ? Optional.empty() : loaded.value();
+        }
+        Optional<GeoLocationInfo> result = cache.get(address, this::queryDatabase);
+        return result == null ? Optional.empty() : result;
+    }
+
+    /**
+     * 查询数据库。
+     *
+     * @return 地理位置信息及其所属网段；地址不在库中时值为空、网段为该地址本身；查询出错时返回 null，不写入缓存
+     */
+    private NetworkPrefixCache.Loaded<Optional<GeoLocationInfo>> queryDatabase(IpAddress address) {
+        int hostPrefixLength = address.isIpv4() ? 32 : 128;
         try {
-            InetAddress inetAddress = InetAddress.getByName(ipAddress);
-            CityResponse response = databaseReader.city(inetAddress);
+            CityResponse response = geoIpDatabase.city(address.toInetAddress());
 
             GeoLocationInfo geoInfo = buildGeoLocationInfo(response);
             log.debug("GeoIP lookup successful for IP: {}, country: {}, city: {}", 
-                    ipAddress, geoInfo.getCountryCode(), geoInfo.getCity());
+                    address, geoInfo.getCountryCode(), geoInfo.getCity());
             
-            return Optional.of(geoInfo);
+            Network network = response.getTraits().getNetwork();
+            return new NetworkPrefixCache.Loaded<>(Optional.of(geoInfo),
+                    network == null ? hostPrefixLength : network.getPrefixLength());
 
         } catch (AddressNotFoundException e) {
-            log.debug("IP address {} not found in GeoIP database", ipAddress);
-            return Optional.empty();
-        } catch (UnknownHostException e) {
-            log.warn("Invalid IP address format: {}", ipAddress);
-            return Optional.empty();
+            log.debug("IP address {} not found in GeoIP database", address);
+            return new NetworkPrefixCache.Loaded<>(Optional.empty(), hostPrefixLength);
         } catch (GeoIp2Exception e) {
-            log.error("GeoIP lookup error for IP: {}", ipAddress, e);
-            return Optional.empty();
+            log.error("GeoIP lookup error for IP: {}", address, e);
+            return null;
         } catch (Exception e) {
-            log.error("Unexpected error during GeoIP lookup for IP: {}", ipAddress, e);
-            return Optional.empty();
+            log.error("Unexpected error during GeoIP lookup for IP: {}", address, e);
+            return null;
         }
     }
 
@@ -86,73 +128,22 @@ public class GeoIpService {
         Continent continent = response.getContinent();
         Traits traits = response.getTraits();
 
+        // 名称类字段取值有限，替换为字典中的共享实例，同一城市的不同网段缓存项不再各持一份
         return GeoLocationInfo.builder()
-                .countryCode(country.getIsoCode())
-                .countryName(country.getName())
-                .region(subdivision.getName())
-                .city(city.getName())
+                .countryCode(StringDictionary.canonical(country.getIsoCode()))
+                .countryName(StringDictionary.canonical(country.getName()))
+                .region(StringDictionary.canonical(subdivision.getName()))
+                .city(StringDictionary.canonical(city.getName()))
                 .postalCode(postal.getCode())
                 .latitude(location.getLatitude())
                 .longitude(location.getLongitude())
-                .timezone(location.getTimeZone())
-                .continentCode(continent.getCode())
-                .continentName(continent.getName())
-                .isp(traits.getIsp())
+                .timezone(StringDictionary.canonical(location.getTimeZone()))
+                .continentCode(StringDictionary.canonical(continent.getCode()))
+                .continentName(StringDictionary.canonical(continent.getName()))
+                .isp(StringDictionary.canonical(traits.getIsp()))
                 .organization(traits.getOrganization())
                 .asn(traits.getAutonomousSystemNumber())
-                .asOrganization(traits.getAutonomousSystemOrganization())
+                .asOrganization(StringDictionary.canonical(traits.getAutonomousSystemOrganization()))
                 .build();
     }
-
-    /**
-     * 判断是否为本地或私有IP地址。
-     */
-    private boolean isLocalOrPrivateIp(String ip) {
-        if (StringUtils.isBlank(ip)) {
-            return true;
-        }
-
-        // 移除可能的端口号
-        if (ip.contains(":") && !ip.contains("::")) {
-            ip = ip.substring(0, ip.indexOf(":"));
-        }
-
-        // 本地回环地址
-        if (ip.startsWith("127.") || ip.equals("localhost") || ip.equals("::1")) {
-            return true;
-        }
-
-        // 私有IP地址段
-        // 10.0.0.0 - 10.255.255.255
-        if (ip.startsWith("10.")) {
-            return true;
-        }
-
-        // 172.16.0.0 - 172.31.255.255
-        if (ip.startsWith("172.")) {
-            String[] parts = ip.split("\\.");
-            if (parts.length >= 2) {
-                try {
-                    int secondOctet = Integer.parseInt(parts[1]);
-                    if (secondOctet >= 16 && secondOctet <= 31) {
-                        return true;
-                    }
-                } catch (NumberFormatException e) {
-                    // ignore
-                }
-            }
-        }
-
-        // 192.168.0.0 - 192.168.255.255
-        if (ip.startsWith("192.168.")) {
-            return true;
-        }
-
-        // IPv6 私有地址
-        if (ip.startsWith("fc") || ip.startsWith("fd") || ip.startsWith("fe80")) {
-            return true;
-        }
-
-        return false;
-    }
 }
@@ -0,0 +1,42 @@
+package com.fingerprint.server.service.support;
+
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
+import org.springframework.data.elasticsearch.core.query.SourceFilter;
+
+/**
+ * 候选投影。
+ * <p>
+ * 候选召回只读取 {@link SimilarityScorer} 打分所需的 {@code _source} 字段，得到的文档不含 metadata、ipHistory 与各类 extra，
+ * 只能用于打分；胜出者需按 id 重新读取完整文档（含 seq_no）后才能合并写入。
+ */
+public final class CandidateProjection {
+
+    /**
+     * 打分所需的 {@code _source} 字段。
+     */
+    public static final String[] SOURCE_INCLUDES = {
+            "visitorId",
+            "browser.*",
+            "device.*",
+            "network.ipAddress",
+            "network.ipv6Address",
+            "network.connectionType",
+            "network.downlinkMbps",
+            "network.rtt",
+            "network.isp",
+            "geoLocation.country",
+            "geoLocation.region",
+            "geoLocation.city",
+            "geoLocation.latitude",
+            "geoLocation.longitude",
+            "geoLocation.timezone",
+            "certificate.*"
+    };
+
+    private CandidateProjection() {
+    }
+
+    public static SourceFilter sourceFilter() {
+        return new FetchSourceFilter(SOURCE_INCLUDES, null);
+    }
+}
@@ -0,0 +1,243 @@
+package com.fingerprint.server.service.support;
+
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.json.JsonData;
+import com.fingerprint.server.config.MatchingProperties;
+import com.fingerprint.server.config.SimilarityProperties;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * 构造在 ES 侧按加权相似度预排序候选的 script_score 查询。
+ * <p>
+ * 脚本基于 doc values 近似 {@link SimilarityScorer} 的打分规则，仅用于挑选前 k 个候选；
+ * 返回的是 {@link CandidateProjection} 投影，最终得分仍由 {@link SimilarityScorer} 计算。
+ */
+@Component
+@RequiredArgsConstructor
+public class CandidateScriptQueryBuilder {
+
+    static final String SCRIPT = """
+            double same(Map d, String f, def v) {
+              if (v == null || !d.containsKey(f) || d[f].size() == 0) { return 0; }
+              return v.equals(d[f].value) ? 1 : 0;
+            }
+            double str(Map d, String f, def v) {
+              if (v == null || !d.containsKey(f) || d[f].size() == 0) { return 0; }
+              return v.equalsIgnoreCase(d[f].value) ? 1 : 0;
+            }
+            double num(Map d, String f, def v) {
+              if (v == null || !d.containsKey(f) || d[f].size() == 0) { return 0; }
+              return ((Number) d[f].value).doubleValue() == ((Number) v).doubleValue() ? 1 : 0;
+            }
+            double range(Map d, String f, def v, double tolerance) {
+              if (v == null || !d.containsKey(f) || d[f].size() == 0) { return 0; }
+              double diff = Math.abs(((Number) d[f].value).doubleValue() - ((Number) v).doubleValue());
+              if (diff < 0.0001) { return 1; }
+              return diff <= tolerance ? Math.max(0, 1 - diff / tolerance) : 0;
+            }
+            double jaccard(Map d, String f, def v) {
+              if (v == null || v.isEmpty() || !d.containsKey(f) || d[f].size() == 0) { return 0; }
+              int intersection = 0;
+              for (def x : d[f]) { if (v.contains(x)) { intersection++; } }
+              int union = v.size() + d[f].size() - intersection;
+              return union == 0 ? 0 : (double) intersection / union;
+            }
+            double distance(Map d, def lat1, def lon1) {
+              if (lat1 == null || lon1 == null
+                  || !d.containsKey('geoLocation.latitude') || d['geoLocation.latitude'].size() == 0
+                  || !d.containsKey('geoLocation.longitude') || d['geoLocation.longitude'].size() == 0) { return 0; }
+              double lat2 = d['geoLocation.latitude'].value;
+              double lon2 = d['geoLocation.longitude'].value;
+              double dLat = Math.toRadians(lat2 - lat1);
+              double dLon = Math.toRadians(lon2 - lon1);
+              double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                  + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+              double km = 6371.0 * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+              return km < 1 ? 1 : km < 20 ? 0.9 : km < 50 ? 0.7 : km < 200 ? 0.4 : 0.1;
+            }
+            double ua(Map d, def p) {
+              double exact = str(d, 'browser.userAgent', p.get('userAgent'));
+              if (exact == 1 || p.get('uaFamily') == null
+                  || !d.containsKey('browser.uaFamily') || d['browser.uaFamily'].size() == 0) { return exact; }
+              return (4 * same(d, 'browser.uaFamily', p.get('uaFamily'))
+                  + 3 * same(d, 'browser.uaOs', p.get('uaOs'))
+                  + 2 * same(d, 'browser.uaDeviceClass', p.get('uaDeviceClass'))
+                  + num(d, 'browser.uaMajorVersion', p.get('uaMajorVersion'))) / 10;
+            }
+            def p = params;
+            double score = p.visitorWeight * same(doc, 'visitorId', p.get('visitorId'));
+            score += p.browserWeight * (ua(doc, p)
+                + str(doc, 'browser.language', p.get('language'))
+                + str(doc, 'browser.timezone', p.get('browserTimezone'))
+                + jaccard(doc, 'browser.plugins', p.get('plugins'))
+                + str(doc, 'browser.canvasFingerprint', p.get('canvasFingerprint'))
+                + str(doc, 'browser.webglFingerprint', p.get('webglFingerprint'))
+                + str(doc, 'browser.audioFingerprint', p.get('audioFingerprint'))) / 7;
+            score += p.deviceWeight * (str(doc, 'device.platform', p.get('platform'))
+                + str(doc, 'device.architecture', p.get('architecture'))
+                + num(doc, 'device.touchPoints', p.get('touchPoints'))
+                + num(doc, 'device.deviceMemory', p.get('deviceMemory'))
+                + num(doc, 'device.cpuCores', p.get('cpuCores'))
+                + str(doc, 'device.screenResolution', p.get('screenResolution'))
+                + str(doc, 'device.colorDepth', p.get('colorDepth'))) / 7;
+            score += p.networkWeight * (str(doc, 'network.ipAddress', p.get('ipAddress'))
+                + str(doc, 'network.ipv6Address', p.get('ipv6Address'))
+                + str(doc, 'network.connectionType', p.get('connectionType'))
+                + range(doc, 'network.downlinkMbps', p.get('downlinkMbps'), 5)
+                + range(doc, 'network.rtt', p.get('rtt'), 50)
+                + str(doc, 'network.isp', p.get('isp'))) / 6;
+            score += p.geoWeight * (str(doc, 'geoLocation.country', p.get('country'))
+                + str(doc, 'geoLocation.region', p.get('region'))
+                + str(doc, 'geoLocation.city', p.get('city'))
+                + str(doc, 'geoLocation.timezone', p.get('geoTimezone'))
+                + distance(doc, p.get('latitude'), p.get('longitude'))) / 5;
+            score += p.certificateWeight * (jaccard(doc, 'certificate.fingerprints', p.get('certificateFingerprints'))
+                + jaccard(doc, 'certificate.pinningHashes', p.get('pinningHashes'))) / 2;
+            return Math.min(1, Math.max(0, score));
+            """;
+
+    private final SimilarityProperties similarityProperties;
+    private final MatchingProperties matchingProperties;
+
+    /**
+     * 构造 script_score 候选查询。
+     *
+     * @param incoming 新上报的指纹
+     * @return 查询；没有任何召回条件时返回 null
+     */
+    public NativeQuery build(DeviceFingerprintDocument incoming) {
+        List<Query> should = new ArrayList<>();
+        if (StringUtils.isNotBlank(incoming.getVisitorId())) {
+            should.add(term("visitorId", incoming.getVisitorId()));
+        }
+        if (incoming.getNetwork() != null && StringUtils.isNotBlank(incoming.getNetwork().getIpAddress())) {
+            should.add(term("network.ipAddress", incoming.getNetwork().getIpAddress()));
+        }
+        if (incoming.getCertificate() != null && incoming.getCertificate().getFingerprints() != null) {
+            incoming.getCertificate().getFingerprints().stream()
+                    .filter(StringUtils::isNotBlank)
+                    .map(fp -> term("certificate.fingerprints", fp))
+                    .forEach(should::add);
+        }
+        if (incoming.getBrowser() != null && StringUtils.isNotBlank(incoming.getBrowser().getCanvasFingerprint())) {
+            should.add(term("browser.canvasFingerprint", incoming.getBrowser().getCanvasFingerprint()));
+        }
+        if (matchingProperties.isLshEnabled() && incoming.getLshBands() != null) {
+            incoming.getLshBands().forEach(band -> should.add(term("lshBands", band)));
+        }
+        if (should.isEmpty()) {
+            return null;
+        }
+
+        Map<String, JsonData> params = scriptParams(incoming);
+        Query query = Query.of(q -> q.scriptScore(scriptScore -> scriptScore
+                .query(filter -> filter.bool(bool -> bool.should(should).minimumShouldMatch("1")))
+                .script(script -> script.inline(inline -> inline
+                        .lang("painless")
+                        .source(SCRIPT)
+                        .params(params)))));
+
+        NativeQueryBuilder builder = NativeQuery.builder()
+                .withQuery(query)
+                .withSourceFilter(CandidateProjection.sourceFilter())
+                .withMaxResults(matchingProperties.getScriptScoringTopK());
+        if (matchingProperties.getScriptScoringMinScore() > 0f) {
+            builder.withMinScore(matchingProperties.getScriptScoringMinScore());
+        }
+        return builder.build();
+    }
+
+    private Query term(String field, String value) {
+        return Query.of(q -> q.term(t -> t.field(field).value(value)));
+    }
+
+    private Map<String, JsonData> scriptParams(DeviceFingerprintDocument incoming) {
+        Map<String, JsonData> params = new HashMap<>();
+        params.put("visitorWeight", JsonData.of(similarityProperties.getVisitorWeight()));
+        params.put("browserWeight", JsonData.of(similarityProperties.getBrowserWeight()));
+        params.put("deviceWeight", JsonData.of(similarityProperties.getDeviceWeight()));
+        params.put("networkWeight", JsonData.of(similarityProperties.getNetworkWeight()));
+        params.put("geoWeight", JsonData.of(similarityProperties.getGeoWeight()));
+        params.put("certificateWeight", JsonData.of(similarityProperties.getCertificateWeight()));
+        putIfPresent(params, "visitorId", incoming.getVisitorId());
+
+        DeviceFingerprintDocument.BrowserFingerprint browser = incoming.getBrowser();
+        if (browser != null) {
+            putIfPresent(params, "userAgent", browser.getUserAgent());
+            putIfPresent(params, "language", browser.getLanguage());
+            putIfPresent(params, "browserTimezone", browser.getTimezone());
+            putIfPresent(params, "plugins", distinct(browser.getPlugins()));
+            putIfPresent(params, "canvasFingerprint", browser.getCanvasFingerprint());
+            putIfPresent(params, "webglFingerprint", browser.getWebglFingerprint());
+            putIfPresent(params, "audioFingerprint", browser.getAudioFingerprint());
+            putIfPresent(params, "uaFamily", browser.getUaFamily());
+            putIfPresent(params, "uaMajorVersion", browser.getUaMajorVersion());
+            putIfPresent(params, "uaOs", browser.getUaOs());
+            putIfPresent(params, "uaDeviceClass", browser.getUaDeviceClass());
+        }
+        DeviceFingerprintDocument.DeviceFingerprint device = incoming.getDevice();
+        if (device != null) {
+            putIfPresent(params, "platform", device.getPlatform());
+            putIfPresent(params, "architecture", device.getArchitecture());
+            putIfPresent(params, "touchPoints", device.getTouchPoints());
+            putIfPresent(params, "deviceMemory", device.getDeviceMemory());
+            putIfPresent(params, "cpuCores", device.getCpuCores());
+            putIfPresent(params, "screenResolution", device.getScreenResolution());
+            putIfPresent(params, "colorDepth", device.getColorDepth());
+        }
+        DeviceFingerprintDocument.NetworkFingerprint network = incoming.getNetwork();
+        if (network != null) {
+            putIfPresent(params, "ipAddress", network.getIpAddress());
+            putIfPresent(params, "ipv6Address", network.getIpv6Address());
+            putIfPresent(params, "connectionType", network.getConnectionType());
+            putIfPresent(params, "downlinkMbps", network.getDownlinkMbps());
+            putIfPresent(params, "rtt", network.getRtt());
+            putIfPresent(params, "isp", network.getIsp());
+        }
+        DeviceFingerprintDocument.GeoLocation geo = incoming.getGeoLocation();
+        if (geo != null) {
+            putIfPresent(params, "country", geo.getCountry());
+            putIfPresent(params, "region", geo.getRegion());
+            putIfPresent(params, "city", geo.getCity());
+            putIfPresent(params, "geoTimezone", geo.getTimezone());
+            putIfPresent(params, "latitude", geo.getLatitude());
+            putIfPresent(params, "longitude", geo.getLongitude());
+        }
+        DeviceFingerprintDocument.CertificateFingerprint certificate = incoming.getCertificate();
+        if (certificate != null) {
+            putIfPresent(params, "certificateFingerprints", distinct(certificate.getFingerprints()));
+            putIfPresent(params, "pinningHashes", distinct(certificate.getPinningHashes()));
+        }
+        return params;
+    }
+
+    private void putIfPresent(Map<String, JsonData> params, String name, Object value) {
+        if (value == null || (value instanceof String text && StringUtils.isBlank(text))
+                || (value instanceof List<?> list && list.isEmpty())) {
+            return;
+        }
+        params.put(name, JsonData.of(value));
+    }
+
+    private List<String> distinct(List<String> values) {
+        if (values == null) {
+            return null;
+        }
+        return new ArrayList<>(values.stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.toCollection(LinkedHashSet::new)));
+    }
+}
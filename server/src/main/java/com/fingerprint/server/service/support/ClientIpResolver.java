@@ -0,0 +1,94 @@
+package com.fingerprint.server.service.support;
+
+import com.fingerprint.server.config.ClientIpProperties;
+import com.fingerprint.server.util.IpAddress;
+import com.fingerprint.server.util.IpCidr;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * 解析请求的真实客户端 IP。
+ * <p>
+ * 只有直连地址属于可信代理时才信任转发头：X-Forwarded-For 从右向左逐跳解析，跳过可信代理，
+ * 第一个不可信地址即为客户端；全部可信时取最左侧地址，遇到非法条目时停在已解析的最后一跳。
+ * 没有 X-Forwarded-For 时退回 X-Real-IP。直连地址不可信时忽略所有转发头，防止客户端伪造。
+ */
+@Component
+public class ClientIpResolver {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientIpResolver.class);
+
+    static final String FORWARDED_FOR_HEADER = "X-Forwarded-For";
+    static final String REAL_IP_HEADER = "X-Real-IP";
+
+    private final IpCidr[] trustedProxies;
+
+    public ClientIpResolver(ClientIpProperties properties) {
+        this.trustedProxies = properties.getTrustedProxies().stream()
+                .map(IpCidr::parse)
+                .toArray(IpCidr[]::new);
+    }
+
+    /**
+     * @param request HTTP 请求
+     * @return 客户端地址；无法确定时返回 null
+     */
+    public IpAddress resolve(HttpServletRequest request) {
+        if (request == null) {
+            return null;
+        }
+        IpAddress remote = IpAddress.parse(request.getRemoteAddr());
+        if (remote == null || !isTrusted(remote)) {
+            return remote;
+        }
+
+        Enumeration<String> forwardedHeaders = request.getHeaders(FORWARDED_FOR_HEADER);
+        if (forwardedHeaders != null && forwardedHeaders.hasMoreElements()) {
+            return walkForwardedFor(forwardedHeaders, remote);
+        }
+
+        IpAddress realIp = IpAddress.parse(request.getHeader(REAL_IP_HEADER));
+        return realIp != null ? realIp : remote;
+    }
+
+    /**
+     * 多个同名头等价于按出现顺序以逗号拼接，因此从最后一个头的最右侧开始向左解析。
+     */
+    private IpAddress walkForwardedFor(Enumeration<String> forwardedHeaders, IpAddress remote) {
+        List<String> headers = Collections.list(forwardedHeaders);
+        IpAddress current = remote;
+        for (int h = headers.size() - 1; h >= 0; h--) {
+            String header = headers.get(h);
+            int end = header.length();
+            while (end >= 0) {
+                int comma = header.lastIndexOf(',', end - 1);
+                IpAddress hop = IpAddress.parse(header, comma + 1, end);
+                if (hop == null) {
+                    log.debug("Invalid {} entry, stopping at {}", FORWARDED_FOR_HEADER, current);
+                    return current;
+                }
+                current = hop;
+                if (!isTrusted(hop)) {
+                    return hop;
+                }
+                end = comma;
+            }
+        }
+        return current;
+    }
+
+    private boolean isTrusted(IpAddress address) {
+        for (IpCidr cidr : trustedProxies) {
+            if (cidr.contains(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,192 @@
+package com.fingerprint.server.service.support;
+
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 预编译的新上报指纹特征。
+ * <p>
+ * 由 {@link SimilarityScorer#compile} 对每个新上报指纹构建一次：空白字符串归一为 null，
+ * 数值拆为基本类型与存在标记，集合字段转为按哈希排序的去重数组，
+ * 之后与每个候选文档打分时不再产生额外对象分配。
+ */
+public final class CompiledFingerprint {
+
+    final String visitorId;
+
+    final boolean hasBrowser;
+    final String userAgent;
+    final String language;
+    final String browserTimezone;
+    final StringSet plugins;
+    final String canvasFingerprint;
+    final String webglFingerprint;
+    final String audioFingerprint;
+    final String uaFamily;
+    final boolean hasUaMajorVersion;
+    final int uaMajorVersion;
+    final String uaOs;
+    final String uaDeviceClass;
+
+    final boolean hasDevice;
+    final String platform;
+    final String architecture;
+    final boolean hasTouchPoints;
+    final int touchPoints;
+    final boolean hasDeviceMemory;
+    final int deviceMemory;
+    final boolean hasCpuCores;
+    final int cpuCores;
+    final String screenResolution;
+    final String colorDepth;
+
+    final boolean hasNetwork;
+    final String ipAddress;
+    final String ipv6Address;
+    final String connectionType;
+    final boolean hasDownlink;
+    final double downlinkMbps;
+    final boolean hasRtt;
+    final double rtt;
+    final String isp;
+
+    final boolean hasGeo;
+    final String country;
+    final String region;
+    final String city;
+    final String geoTimezone;
+    final boolean hasCoordinates;
+    final double latitude;
+    final double longitude;
+    final double cosLatitude;
+
+    final boolean hasCertificate;
+    final StringSet certificateFingerprints;
+    final StringSet pinningHashes;
+
+    CompiledFingerprint(DeviceFingerprintDocument document) {
+        this.visitorId = document.getVisitorId();
+
+        DeviceFingerprintDocument.BrowserFingerprint browser = document.getBrowser();
+        this.hasBrowser = browser != null;
+        this.userAgent = hasBrowser ? nonBlank(browser.getUserAgent()) : null;
+        this.language = hasBrowser ? nonBlank(browser.getLanguage()) : null;
+        this.browserTimezone = hasBrowser ? nonBlank(browser.getTimezone()) : null;
+        this.plugins = hasBrowser ? StringSet.of(browser.getPlugins()) : null;
+        this.canvasFingerprint = hasBrowser ? nonBlank(browser.getCanvasFingerprint()) : null;
+        this.webglFingerprint = hasBrowser ? nonBlank(browser.getWebglFingerprint()) : null;
+        this.audioFingerprint = hasBrowser ? nonBlank(browser.getAudioFingerprint()) : null;
+        this.uaFamily = hasBrowser ? nonBlank(browser.getUaFamily()) : null;
+        this.hasUaMajorVersion = hasBrowser && browser.getUaMajorVersion() != null;
+        this.uaMajorVersion = hasUaMajorVersion ? browser.getUaMajorVersion() : 0;
+        this.uaOs = hasBrowser ? nonBlank(browser.getUaOs()) : null;
+        this.uaDeviceClass = hasBrowser ? nonBlank(browser.getUaDeviceClass()) : null;
+
+        DeviceFingerprintDocument.DeviceFingerprint device = document.getDevice();
+        this.hasDevice = device != null;
+        this.platform = hasDevice ? nonBlank(device.getPlatform()) : null;
+        this.architecture = hasDevice ? nonBlank(device.getArchitecture()) : null;
+        this.hasTouchPoints = hasDevice && device.getTouchPoints() != null;
+        this.touchPoints = hasTouchPoints ? device.getTouchPoints() : 0;
+        this.hasDeviceMemory = hasDevice && device.getDeviceMemory() != null;
+        this.deviceMemory = hasDeviceMemory ? device.getDeviceMemory() : 0;
+        this.hasCpuCores = hasDevice && device.getCpuCores() != null;
+        this.cpuCores = hasCpuCores ? device.getCpuCores() : 0;
+        this.screenResolution = hasDevice ? nonBlank(device.getScreenResolution()) : null;
+        this.colorDepth = hasDevice ? nonBlank(device.getColorDepth()) : null;
+
+        DeviceFingerprintDocument.NetworkFingerprint network = document.getNetwork();
+        this.hasNetwork = network != null;
+        this.ipAddress = hasNetwork ? nonBlank(network.getIpAddress()) : null;
+        this.ipv6Address = hasNetwork ? nonBlank(network.getIpv6Address()) : null;
+        this.connectionType = hasNetwork ? nonBlank(network.getConnectionType()) : null;
+        this.hasDownlink = hasNetwork && network.getDownlinkMbps() != null;
+        this.downlinkMbps = hasDownlink ? network.getDownlinkMbps() : 0d;
+        this.hasRtt = hasNetwork && network.getRtt() != null;
+        this.rtt = hasRtt ? network.getRtt() : 0d;
+        this.isp = hasNetwork ? nonBlank(network.getIsp()) : null;
+
+        DeviceFingerprintDocument.GeoLocation geo = document.getGeoLocation();
+        this.hasGeo = geo != null;
+        this.country = hasGeo ? nonBlank(geo.getCountry()) : null;
+        this.region = hasGeo ? nonBlank(geo.getRegion()) : null;
+        this.city = hasGeo ? nonBlank(geo.getCity()) : null;
+        this.geoTimezone = hasGeo ? nonBlank(geo.getTimezone()) : null;
+        this.hasCoordinates = hasGeo && geo.getLatitude() != null && geo.getLongitude() != null;
+        this.latitude = hasCoordinates ? geo.getLatitude() : 0d;
+        this.longitude = hasCoordinates ? geo.getLongitude() : 0d;
+        this.cosLatitude = hasCoordinates ? Math.cos(Math.toRadians(latitude)) : 0d;
+
+        DeviceFingerprintDocument.CertificateFingerprint certificate = document.getCertificate();
+        this.hasCertificate = certificate != null;
+        this.certificateFingerprints = hasCertificate ? StringSet.of(certificate.getFingerprints()) : null;
+        this.pinningHashes = hasCertificate ? StringSet.of(certificate.getPinningHashes()) : null;
+    }
+
+    private static String nonBlank(String value) {
+        return StringUtils.isBlank(value) ? null : value;
+    }
+
+    /**
+     * 按 {@link String#hashCode()} 排序的去重字符串集合，查找时先比较哈希再比较内容。
+     */
+    static final class StringSet {
+
+        private final int[] hashes;
+        private final String[] values;
+
+        private StringSet(int[] hashes, String[] values) {
+            this.hashes = hashes;
+            this.values = values;
+        }
+
+        /**
+         * @return 列表为 null 或为空时返回 null，与原 Jaccard 计算的短路条件一致
+         */
+        static StringSet of(List<String> source) {
+            if (source == null || source.isEmpty()) {
+                return null;
+            }
+            String[] sorted = source.stream()
+                    .filter(Objects::nonNull)
+                    .distinct()
+                    .sorted((a, b) -> a.hashCode() != b.hashCode()
+                            ? Integer.compare(a.hashCode(), b.hashCode())
+                            : a.compareTo(b))
+                    .toArray(String[]::new);
+            int[] hashes = new int[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                hashes[i] = sorted[i].hashCode();
+            }
+            return new StringSet(hashes, sorted);
+        }
+
+        int size() {
+            return values.length;
+        }
+
+        boolean contains(String value) {
+            int hash = value.hashCode();
+            int index = Arrays.binarySearch(hashes, hash);
+            if (index < 0) {
+                return false;
+            }
+            // 向两侧扫描哈希相同的区间
+            for (int i = index; i >= 0 && hashes[i] == hash; i--) {
+                if (values[i].equals(value)) {
+                    return true;
+                }
+            }
+            for (int i = index + 1; i < hashes.length && hashes[i] == hash; i++) {
+                if (values[i].equals(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
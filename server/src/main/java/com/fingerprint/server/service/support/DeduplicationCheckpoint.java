@@ -0,0 +1,77 @@
+package com.fingerprint.server.service.support;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 离线去重任务的断点。
+ * <p>
+ * 记录已完成的分块字段、当前字段最后一个已处理完的块的取值以及累计统计。恢复时以
+ * {@code search_after=[lastKey, Long.MAX_VALUE]} 跳过该取值及之前的块，未写入的窗口从头重新处理。
+ * 文件先写入临时文件再原子替换，进程在写入过程中退出也不会留下损坏的断点。
+ */
+@Data
+public class DeduplicationCheckpoint {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private List<String> completedPasses = new ArrayList<>();
+    private String pass;
+    private Object lastKey;
+    private long scanned;
+    private long blocks;
+    private long oversizedBlocks;
+    private long duplicates;
+
+    /**
+     * 读取断点，文件不存在时返回新的断点。
+     */
+    public static DeduplicationCheckpoint load(Path file) {
+        if (!Files.exists(file)) {
+            return new DeduplicationCheckpoint();
+        }
+        try {
+            return MAPPER.readValue(file.toFile(), DeduplicationCheckpoint.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read dedup checkpoint " + file, e);
+        }
+    }
+
+    public void save(Path file) {
+        try {
+            Path absolute = file.toAbsolutePath();
+            Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+            MAPPER.writeValue(temp.toFile(), this);
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write dedup checkpoint " + file, e);
+        }
+    }
+
+    /**
+     * 当前字段扫描完成，清除字段内的进度。
+     */
+    public void completePass(String field) {
+        completedPasses.add(field);
+        pass = null;
+        lastKey = null;
+    }
+
+    /**
+     * @return 恢复扫描该字段时的 {@code search_after}，该字段尚未开始时为 null
+     */
+    public List<Object> resumeAfter(String field) {
+        if (!field.equals(pass) || lastKey == null) {
+            return null;
+        }
+        return List.of(lastKey, Long.MAX_VALUE);
+    }
+}
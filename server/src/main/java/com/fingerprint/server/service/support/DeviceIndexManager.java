@@ -0,0 +1,234 @@
+package com.fingerprint.server.service.support;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import com.fingerprint.server.config.DeviceIndexProperties;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.elasticsearch.annotations.Document.VersionType;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.data.elasticsearch.core.index.AliasAction;
+import org.springframework.data.elasticsearch.core.index.AliasActionParameters;
+import org.springframework.data.elasticsearch.core.index.AliasActions;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.Criteria;
+import org.springframework.data.elasticsearch.core.query.CriteriaQuery;
+import org.springframework.data.elasticsearch.core.reindex.ReindexRequest;
+import org.springframework.data.elasticsearch.core.reindex.ReindexResponse;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 设备索引的映射版本与设置管理。
+ * <p>
+ * 映射由 {@code elasticsearch/device-fingerprints-mapping.json} 定义，{@code _meta.version} 为版本号。
+ * {@code device_fingerprints} 是指向 {@code device_fingerprints_v<版本>} 的别名，启动时按以下规则处理：
+ * 别名不存在则按当前版本建索引并挂上别名；别名指向的索引版本较旧（或仍是早期由注解建出的同名索引）时，
+ * 开启 {@code auto-migrate} 则重建索引后原子切换别名，否则仅告警；最后把副本数与刷新间隔同步到当前索引。
+ * <p>
+ * 重建期间读写仍走旧索引。reindex 使用 external 版本，重复拷贝同一文档只会产生版本冲突而不会回退数据，
+ * 因此先全量拷贝，再按 {@code updatedAt} 反复补拷增量直到没有新文档，然后切换别名，最后再补拷一次切换前写入旧索引的文档。
+ * <p>
+ * {@code fingerprint.device-index.manage-enabled=false} 时不注册，离线任务直接使用已有索引。
+ */
+@Component
+@ConditionalOnProperty(prefix = "fingerprint.device-index", name = "manage-enabled", havingValue = "true", matchIfMissing = true)
+public class DeviceIndexManager {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceIndexManager.class);
+
+    /**
+     * 早期由 {@code @Field} 注解生成的映射没有 {@code _meta.version}，视为版本 1。
+     */
+    static final int LEGACY_VERSION = 1;
+
+    /**
+     * 增量补拷的最大轮数。
+     */
+    static final int MAX_CATCH_UP_PASSES = 5;
+
+    /**
+     * 增量补拷起点相对上一轮开始时间的回退量，覆盖各实例间的时钟偏差。
+     */
+    static final Duration CATCH_UP_OVERLAP = Duration.ofMinutes(1);
+
+    private final ElasticsearchOperations operations;
+    private final ElasticsearchClient client;
+    private final DeviceIndexProperties properties;
+    private final IndexCoordinates alias;
+    private final Document mapping;
+    private final int mappingVersion;
+
+    public DeviceIndexManager(ElasticsearchOperations operations,
+                              ElasticsearchClient client,
+                              DeviceIndexProperties properties) {
+        this.operations = operations;
+        this.client = client;
+        this.properties = properties;
+        this.alias = operations.getIndexCoordinatesFor(DeviceFingerprintDocument.class);
+        this.mapping = operations.indexOps(DeviceFingerprintDocument.class).createMapping();
+        this.mappingVersion = versionOf(mapping);
+    }
+
+    /**
+     * 创建或迁移设备索引，并同步动态设置。
+     */
+    @PostConstruct
+    public void initialize() {
+        String aliasName = alias.getIndexName();
+        String target = indexName(aliasName, mappingVersion);
+        if (!operations.indexOps(alias).exists()) {
+            createIndex(target);
+            operations.indexOps(IndexCoordinates.of(target)).alias(new AliasActions(new AliasAction.Add(
+                    AliasActionParameters.builder().withIndices(target).withAliases(aliasName).build())));
+            log.info("Created device index {} (mapping version {}) behind alias {}", target, mappingVersion, aliasName);
+            return;
+        }
+
+        String current = currentIndex(aliasName);
+        int currentVersion = versionOf(operations.indexOps(IndexCoordinates.of(current)).getMapping());
+        if (currentVersion < mappingVersion) {
+            if (properties.isAutoMigrate()) {
+                if (migrate(current, target)) {
+                    return;
+                }
+            } else {
+                log.warn("Device index {} has mapping version {} but version {} is expected; "
+                                + "enable fingerprint.device-index.auto-migrate to reindex it into {}",
+                        current, currentVersion, mappingVersion, target);
+            }
+        } else if (currentVersion > mappingVersion) {
+            log.warn("Device index {} has mapping version {}, newer than version {} of this build",
+                    current, currentVersion, mappingVersion);
+        }
+        applyDynamicSettings(current);
+    }
+
+    /**
+     * 新建设备索引（含温索引）使用的索引设置。
+     */
+    public Map<String, Object> indexSettings() {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("index.number_of_shards", properties.getNumberOfShards());
+        settings.put("index.number_of_replicas", properties.getNumberOfReplicas());
+        settings.put("index.refresh_interval", refreshInterval());
+        settings.putAll(properties.getIndexSettings());
+        return settings;
+    }
+
+    /**
+     * 设备索引映射。
+     */
+    public Document mapping() {
+        return mapping;
+    }
+
+    /**
+     * 将别名从旧索引切换到按当前映射重建的新索引，并删除旧索引。
+     *
+     * @return 是否完成切换；目标索引已存在（其他实例正在迁移或上次迁移中断）时不做处理并返回 false
+     */
+    boolean migrate(String source, String target) {
+        IndexCoordinates targetIndex = IndexCoordinates.of(target);
+        if (operations.indexOps(targetIndex).exists()) {
+            log.warn("Device index {} already exists but is not behind alias {}, skipping migration; "
+                    + "delete it if no other instance is migrating", target, alias.getIndexName());
+            return false;
+        }
+        createIndex(target);
+        log.info("Migrating device index {} into {}", source, target);
+
+        Instant since = null;
+        for (int pass = 0; pass <= MAX_CATCH_UP_PASSES; pass++) {
+            Instant started = Instant.now();
+            long copied = reindex(source, target, since);
+            log.info("Reindexed {} devices from {} into {} (pass {})", copied, source, target, pass);
+            if (since != null && copied == 0) {
+                break;
+            }
+            since = started.minus(CATCH_UP_OVERLAP);
+        }
+
+        // 早期索引与别名同名，只能在挂别名的同一请求中删除，最后一轮补拷之后写入的少量文档会丢失，宜在低峰期迁移；
+        // 版本化索引则先切换别名，再补拷切换前写入旧索引的文档
+        boolean legacy = source.equals(alias.getIndexName());
+        AliasAction detach = legacy
+                ? new AliasAction.RemoveIndex(AliasActionParameters.builder().withIndices(source).build())
+                : new AliasAction.Remove(AliasActionParameters.builder()
+                .withIndices(source).withAliases(alias.getIndexName()).build());
+        operations.indexOps(targetIndex).alias(new AliasActions(
+                new AliasAction.Add(AliasActionParameters.builder()
+                        .withIndices(target).withAliases(alias.getIndexName()).build()),
+                detach));
+        if (!legacy) {
+            reindex(source, target, since);
+            operations.indexOps(IndexCoordinates.of(source)).delete();
+        }
+        log.info("Device alias {} switched from {} to {}", alias.getIndexName(), source, target);
+        return true;
+    }
+
+    private long reindex(String source, String target, Instant since) {
+        ReindexRequest.ReindexRequestBuilder request = ReindexRequest
+                .builder(IndexCoordinates.of(source), IndexCoordinates.of(target))
+                .withDestVersionType(VersionType.EXTERNAL)
+                .withConflicts(ReindexRequest.Conflicts.PROCEED)
+                .withRefresh(true);
+        if (since != null) {
+            request.withSourceQuery(new CriteriaQuery(Criteria.where("updatedAt").greaterThanEqual(since)));
+        }
+        ReindexResponse response = operations.reindex(request.build());
+        if (!response.getFailures().isEmpty()) {
+            throw new IllegalStateException("Reindex from " + source + " into " + target + " failed: "
+                    + response.getFailures().get(0));
+        }
+        return response.getCreated() + response.getUpdated();
+    }
+
+    private void createIndex(String name) {
+        IndexOperations indexOps = operations.indexOps(IndexCoordinates.of(name));
+        indexOps.create(indexSettings(), mapping);
+    }
+
+    private String currentIndex(String aliasName) {
+        // 对别名返回其指向的索引，对早期的同名索引返回其自身
+        return operations.indexOps(alias).getAliasesForIndex(aliasName).keySet().iterator().next();
+    }
+
+    private void applyDynamicSettings(String index) {
+        try {
+            client.indices().putSettings(request -> request
+                    .index(index)
+                    .settings(settings -> settings
+                            .numberOfReplicas(String.valueOf(properties.getNumberOfReplicas()))
+                            .refreshInterval(time -> time.time(refreshInterval()))));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to apply settings to device index {}", index, e);
+        }
+    }
+
+    private String refreshInterval() {
+        return properties.getRefreshInterval().toMillis() + "ms";
+    }
+
+    static String indexName(String aliasName, int version) {
+        return aliasName + "_v" + version;
+    }
+
+    static int versionOf(Map<String, Object> mapping) {
+        if (mapping != null && mapping.get("_meta") instanceof Map<?, ?> meta
+                && meta.get("version") instanceof Number version) {
+            return version.intValue();
+        }
+        return LEGACY_VERSION;
+    }
+}
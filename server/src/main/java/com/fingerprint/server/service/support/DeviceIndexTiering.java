@@ -0,0 +1,281 @@
+package com.fingerprint.server.service.support;
+
+import com.fingerprint.server.config.IndexTieringProperties;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.elasticsearch.UncategorizedElasticsearchException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.index.AliasAction;
+import org.springframework.data.elasticsearch.core.index.AliasActionParameters;
+import org.springframework.data.elasticsearch.core.index.AliasActions;
+import org.springframework.data.elasticsearch.core.index.AliasData;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.Criteria;
+import org.springframework.data.elasticsearch.core.query.CriteriaQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.data.elasticsearch.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 设备索引冷热分层。
+ * <p>
+ * {@code device_fingerprints} 作为热索引，只保留 {@code updatedAt} 在 {@code hot-retention} 内的设备，
+ * 读写路径与未分层时一致，候选查询的扫描范围只随活跃设备数增长。更早的设备由后台任务按批迁移到温索引别名下，
+ * 温写入索引文档数达到上限后滚动到新索引。热索引未命中时才查询温索引，命中的设备先提升回热索引再合并写入。
+ */
+@Component
+@ConditionalOnProperty(prefix = "fingerprint.index-tiering", name = "enabled", havingValue = "true")
+public class DeviceIndexTiering {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceIndexTiering.class);
+
+    private final ElasticsearchOperations operations;
+    private final IndexTieringProperties properties;
+    private final DeviceIndexManager indexManager;
+    private final IndexCoordinates hotIndex;
+    private final IndexCoordinates warmIndex;
+    private final Counter migratedCounter;
+    private final Counter promotedCounter;
+    private ScheduledExecutorService scheduler;
+
+    public DeviceIndexTiering(ElasticsearchOperations operations,
+                              IndexTieringProperties properties,
+                              DeviceIndexManager indexManager,
+                              MeterRegistry meterRegistry) {
+        this.operations = operations;
+        this.properties = properties;
+        this.indexManager = indexManager;
+        this.hotIndex = operations.getIndexCoordinatesFor(DeviceFingerprintDocument.class);
+        this.warmIndex = IndexCoordinates.of(properties.getWarmAlias());
+        this.migratedCounter = Counter.builder("fingerprint.index_tiering.migrated")
+                .description("从热索引迁移到温索引的设备数量")
+                .register(meterRegistry);
+        this.promotedCounter = Counter.builder("fingerprint.index_tiering.promoted")
+                .description("在温索引中命中并提升回热索引的设备数量")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 创建首个温索引并启动迁移任务。
+     */
+    @PostConstruct
+    public void start() {
+        if (!operations.indexOps(warmIndex).exists()) {
+            createWarmIndex(properties.getWarmAlias() + "-000001", null);
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "device-index-tiering");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getMigrationInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::migrateQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 温索引别名，用于热索引未命中时的候选查询。
+     */
+    public IndexCoordinates warmIndex() {
+        return warmIndex;
+    }
+
+    /**
+     * 将温索引中命中的设备以 {@code op_type=create} 写回热索引并删除温索引副本，写入后文档携带热索引中的 seq_no，
+     * 可直接参与后续合并写入。并发提升同一设备时只有一次写入成功。
+     *
+     * @throws OptimisticLockingFailureException 热索引中已存在该设备（迁移期间被更新或已被其他请求提升），
+     *                                           此时仅删除温索引副本，由调用方重新匹配
+     */
+    public void promote(DeviceFingerprintDocument document) {
+        String id = document.getId();
+        document.setSeqNoPrimaryTerm(null);
+        IndexQuery create = new IndexQueryBuilder()
+                .withId(id)
+                .withObject(document)
+                .withOpType(IndexQuery.OpType.CREATE)
+                .build();
+        try {
+            operations.index(create, hotIndex);
+        } catch (UncategorizedElasticsearchException e) {
+            if (!Integer.valueOf(HttpStatus.CONFLICT.value()).equals(e.getStatusCode())) {
+                throw e;
+            }
+            deleteFromWarm(List.of(id));
+            throw new OptimisticLockingFailureException("Device " + id + " already exists in hot index", e);
+        }
+        deleteFromWarm(List.of(id));
+        promotedCounter.increment();
+        log.debug("Promoted device from warm index: id={}", id);
+    }
+
+    /**
+     * 将 {@code updatedAt} 早于保留时长的设备分批迁移到温索引，完成后按需滚动温写入索引。
+     *
+     * @return 迁移的设备数量
+     */
+    public int migrate() {
+        Instant cutoff = Instant.now().minus(properties.getHotRetention());
+        int batchSize = properties.getMigrationBatchSize();
+        int migrated = 0;
+        while (true) {
+            CriteriaQuery staleQuery = new CriteriaQuery(Criteria.where("updatedAt").lessThan(cutoff));
+            staleQuery.addSort(Sort.by(Sort.Direction.ASC, "updatedAt"));
+            staleQuery.setMaxResults(batchSize);
+            Map<String, DeviceFingerprintDocument> stale = new LinkedHashMap<>();
+            for (SearchHit<DeviceFingerprintDocument> hit : operations.search(staleQuery, DeviceFingerprintDocument.class, hotIndex)) {
+                stale.put(hit.getContent().getId(), hit.getContent());
+            }
+            if (stale.isEmpty()) {
+                break;
+            }
+
+            List<IndexQuery> copies = new ArrayList<>(stale.size());
+            for (DeviceFingerprintDocument document : stale.values()) {
+                document.setSeqNoPrimaryTerm(null);
+                copies.add(new IndexQueryBuilder().withId(document.getId()).withObject(document).build());
+            }
+            operations.bulkIndex(copies, warmIndex);
+
+            // 只删除仍未被更新的设备；迁移期间被更新的设备留在热索引，并删除刚写入的温索引副本
+            CriteriaQuery deleteQuery = new CriteriaQuery(Criteria.where("updatedAt").lessThan(cutoff));
+            deleteQuery.setIds(stale.keySet());
+            try {
+                operations.delete(deleteQuery, DeviceFingerprintDocument.class, hotIndex);
+            } catch (RuntimeException e) {
+                log.warn("Partial failure deleting migrated devices from hot index", e);
+            }
+            operations.indexOps(hotIndex).refresh();
+            List<String> survivors = findIds(stale.keySet(), hotIndex);
+            if (!survivors.isEmpty()) {
+                deleteFromWarm(survivors);
+            }
+
+            int moved = stale.size() - survivors.size();
+            migrated += moved;
+            migratedCounter.increment(moved);
+            if (stale.size() < batchSize || moved == 0) {
+                break;
+            }
+        }
+        if (migrated > 0) {
+            log.info("Migrated {} devices not seen since {} to warm index", migrated, cutoff);
+        }
+        rolloverIfNeeded();
+        return migrated;
+    }
+
+    private void migrateQuietly() {
+        try {
+            migrate();
+        } catch (RuntimeException e) {
+            log.error("Device index tiering migration failed", e);
+        }
+    }
+
+    /**
+     * 温写入索引文档数达到上限时创建下一个索引并切换写入标记，旧索引仍保留在别名下供查询。
+     */
+    void rolloverIfNeeded() {
+        String writeIndex = currentWarmWriteIndex();
+        if (writeIndex == null) {
+            return;
+        }
+        long count = operations.count(Query.findAll(), DeviceFingerprintDocument.class, IndexCoordinates.of(writeIndex));
+        if (count < properties.getWarmRolloverMaxDocs()) {
+            return;
+        }
+        String next = nextIndexName(writeIndex);
+        createWarmIndex(next, writeIndex);
+        log.info("Rolled over warm device index {} ({} docs) to {}", writeIndex, count, next);
+    }
+
+    private String currentWarmWriteIndex() {
+        Map<String, Set<AliasData>> aliases = operations.indexOps(warmIndex).getAliases(properties.getWarmAlias());
+        for (Map.Entry<String, Set<AliasData>> entry : aliases.entrySet()) {
+            for (AliasData alias : entry.getValue()) {
+                if (Boolean.TRUE.equals(alias.isWriteIndex())) {
+                    return entry.getKey();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 使用设备索引的映射与设置创建温索引，并在同一次别名操作中把写入标记从旧索引移到新索引。
+     */
+    private void createWarmIndex(String name, String previousWriteIndex) {
+        IndexOperations indexOps = operations.indexOps(IndexCoordinates.of(name));
+        Map<String, Object> settings = new LinkedHashMap<>(indexManager.indexSettings());
+        settings.putAll(properties.getWarmIndexSettings());
+        indexOps.create(settings, indexManager.mapping());
+
+        List<AliasAction> actions = new ArrayList<>();
+        if (previousWriteIndex != null) {
+            actions.add(new AliasAction.Add(AliasActionParameters.builder()
+                    .withIndices(previousWriteIndex)
+                    .withAliases(properties.getWarmAlias())
+                    .withIsWriteIndex(false)
+                    .build()));
+        }
+        actions.add(new AliasAction.Add(AliasActionParameters.builder()
+                .withIndices(name)
+                .withAliases(properties.getWarmAlias())
+                .withIsWriteIndex(true)
+                .build()));
+        indexOps.alias(new AliasActions(actions.toArray(new AliasAction[0])));
+    }
+
+    static String nextIndexName(String index) {
+        int dash = index.lastIndexOf('-');
+        int generation = Integer.parseInt(index.substring(dash + 1));
+        return String.format("%s-%06d", index.substring(0, dash), generation + 1);
+    }
+
+    private List<String> findIds(Collection<String> ids, IndexCoordinates index) {
+        CriteriaQuery query = new CriteriaQuery(new Criteria());
+        query.setIds(ids);
+        query.setMaxResults(ids.size());
+        List<String> found = new ArrayList<>();
+        for (SearchHit<DeviceFingerprintDocument> hit : operations.search(query, DeviceFingerprintDocument.class, index)) {
+            found.add(hit.getId());
+        }
+        return found;
+    }
+
+    private void deleteFromWarm(Collection<String> ids) {
+        CriteriaQuery query = new CriteriaQuery(new Criteria());
+        query.setIds(ids);
+        operations.delete(query, DeviceFingerprintDocument.class, warmIndex);
+    }
+}
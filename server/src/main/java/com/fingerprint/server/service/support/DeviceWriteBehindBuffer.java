@@ -0,0 +1,379 @@
+package com.fingerprint.server.service.support;
+
+import com.fingerprint.server.config.WriteBehindProperties;
+import com.fingerprint.server.mapper.DeviceFingerprintMapper;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import com.fingerprint.server.repository.DeviceFingerprintRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.elasticsearch.BulkFailureException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * 已匹配设备合并结果的写后缓冲。
+ * <p>
+ * 同一设备在刷写窗口内的多次合并作用在同一份待写入文档上，观测次数累加、IP 历史合并，
+ * 窗口结束或缓冲数量达到批量上限时通过一次 {@code _bulk} 写入。缓冲区满时调用方最多等待
+ * {@code offer-timeout}，超时后退化为同步写入。
+ * <p>
+ * 每个待写入设备保留窗口内的全部合并操作；{@code _bulk} 中出现版本冲突时重新读取 ES 中的最新文档，
+ * 依次重放这些操作后重新入队，因此其他节点的并发更新不会被覆盖。每次刷写在文档的 {@code flushTokens} 中记录一个标识，
+ * 请求超时但已在 ES 生效时，重发会产生版本冲突，此时最新文档中已有的标识表明哪些合并操作已写入，只重放其余的操作。
+ * 刷写成功后以带有新 seq_no 的文档刷新 {@link HotDeviceCache}，下个窗口的合并不会因缓存中的旧版本而冲突。
+ * 应用关闭时会刷写剩余数据。
+ */
+@Component
+@ConditionalOnProperty(prefix = "fingerprint.write-behind", name = "enabled", havingValue = "true")
+public class DeviceWriteBehindBuffer {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceWriteBehindBuffer.class);
+
+    /**
+     * 文档中保留的最近刷写标识数量。
+     */
+    static final int FLUSH_TOKEN_LIMIT = 10;
+
+    private final DeviceFingerprintRepository repository;
+    private final WriteBehindProperties properties;
+    private final Map<String, PendingWrite> pending = new LinkedHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler;
+    private final Counter coalescedCounter;
+    private final Counter droppedCounter;
+    private volatile boolean closed;
+
+    @Autowired(required = false)
+    private HotDeviceCache hotDeviceCache;
+
+    public DeviceWriteBehindBuffer(DeviceFingerprintRepository repository,
+                                   WriteBehindProperties properties,
+                                   MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.properties = properties;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "device-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getFlushInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+
+        Gauge.builder("fingerprint.write_behind.pending", this, DeviceWriteBehindBuffer::size)
+                .description("等待写入 ES 的设备数量")
+                .register(meterRegistry);
+        this.coalescedCounter = Counter.builder("fingerprint.write_behind.coalesced")
+                .description("合并到已有待写入文档、未产生额外写入的上报数量")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("fingerprint.write_behind.dropped")
+                .description("多次写入失败后被丢弃的设备数量")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 将合并操作作用到设备的待写入文档上。
+     * <p>
+     * 设备尚未在缓冲区中时以传入文档的副本作为基础，传入文档不会被修改。待写入文档只在缓冲区锁内修改，
+     * 返回给调用方的是锁内复制的快照，可直接用于响应与缓存。
+     *
+     * @param document 匹配到的设备文档
+     * @param merger   合并操作，在缓冲区锁内执行
+     * @return 合并后待写入文档的快照；缓冲区已满且等待超时或已关闭时返回空，由调用方同步写入
+     */
+    public Optional<DeviceFingerprintDocument> merge(DeviceFingerprintDocument document,
+                                                     Consumer<DeviceFingerprintDocument> merger) {
+        long remainingNanos = properties.getOfferTimeout().toNanos();
+        lock.lock();
+        try {
+            PendingWrite write = pending.get(document.getId());
+            if (write == null) {
+                while (!closed && pending.size() >= properties.getCapacity()) {
+                    if (remainingNanos <= 0) {
+                        return Optional.empty();
+                    }
+                    remainingNanos = notFull.awaitNanos(remainingNanos);
+                }
+                if (closed) {
+                    return Optional.empty();
+                }
+                write = new PendingWrite(DeviceFingerprintMapper.detach(document), new ArrayList<>(), 0, new ArrayList<>());
+                pending.put(document.getId(), write);
+            } else {
+                coalescedCounter.increment();
+            }
+            merger.accept(write.document());
+            write.merges().add(merger);
+            if (pending.size() >= properties.getMaxBatchSize()) {
+                requestFlush();
+            }
+            return Optional.of(DeviceFingerprintMapper.detach(write.document()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 当前等待写入的设备数量。
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 按批量上限分批写入当前缓冲的全部设备，写入失败的设备在本轮结束后重新入队。
+     */
+    void flush() {
+        flushLock.lock();
+        try {
+            List<PendingWrite> retries = new ArrayList<>();
+            List<PendingWrite> batch;
+            while (!(batch = drain()).isEmpty()) {
+                write(batch, retries);
+            }
+            requeue(retries);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        closed = true;
+        lock.lock();
+        try {
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(properties.getFlushInterval().toMillis() + 5_000L, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (int round = 0; round <= properties.getMaxFlushAttempts() && size() > 0; round++) {
+            flush();
+        }
+        int remaining = size();
+        if (remaining > 0) {
+            log.error("Write-behind buffer closed with {} devices not persisted", remaining);
+        }
+    }
+
+    private void requestFlush() {
+        if (!closed && flushRequested.compareAndSet(false, true)) {
+            scheduler.execute(this::flushQuietly);
+        }
+    }
+
+    private void flushQuietly() {
+        flushRequested.set(false);
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Write-behind flush failed", e);
+        }
+    }
+
+    private List<PendingWrite> drain() {
+        lock.lock();
+        try {
+            List<PendingWrite> batch = new ArrayList<>(Math.min(pending.size(), properties.getMaxBatchSize()));
+            Iterator<PendingWrite> iterator = pending.values().iterator();
+            while (iterator.hasNext() && batch.size() < properties.getMaxBatchSize()) {
+                batch.add(iterator.next());
+                iterator.remove();
+            }
+            if (!batch.isEmpty()) {
+                notFull.signalAll();
+            }
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(List<PendingWrite> batch, List<PendingWrite> retries) {
+        batch.forEach(DeviceWriteBehindBuffer::stamp);
+        List<DeviceFingerprintDocument> documents = batch.stream().map(PendingWrite::document).toList();
+        try {
+            repository.saveAll(documents);
+            log.debug("Write-behind flushed {} devices", documents.size());
+            refreshCache(documents);
+        } catch (BulkFailureException e) {
+            Set<String> failedIds = e.getFailedDocuments().keySet();
+            log.warn("Write-behind bulk partially failed: {}/{} devices", failedIds.size(), documents.size());
+            for (PendingWrite write : batch) {
+                if (failedIds.contains(write.document().getId())) {
+                    rebase(write).ifPresent(retries::add);
+                }
+            }
+        } catch (RuntimeException e) {
+            // 请求可能已在 ES 生效；原样重发时若版本冲突，由 rebase 按刷写标识跳过已写入的合并操作
+            log.warn("Write-behind bulk failed for {} devices, will retry", documents.size(), e);
+            for (PendingWrite write : batch) {
+                retry(write, write.document()).ifPresent(retries::add);
+            }
+        }
+    }
+
+    /**
+     * 为本次刷写生成标识，记入待写入文档的 {@code flushTokens} 与刷写记录。
+     */
+    private static void stamp(PendingWrite write) {
+        String token = UUID.randomUUID().toString();
+        DeviceFingerprintDocument document = write.document();
+        List<String> tokens = new ArrayList<>(FLUSH_TOKEN_LIMIT);
+        tokens.add(token);
+        if (document.getFlushTokens() != null) {
+            document.getFlushTokens().stream().limit(FLUSH_TOKEN_LIMIT - 1).forEach(tokens::add);
+        }
+        document.setFlushTokens(tokens);
+        write.flushes().add(new Flush(token, write.merges().size()));
+    }
+
+    /**
+     * 刷写期间又有新合并的设备以缓冲区中的快照为准，不覆盖缓存。
+     */
+    private void refreshCache(List<DeviceFingerprintDocument> documents) {
+        if (hotDeviceCache == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            for (DeviceFingerprintDocument document : documents) {
+                if (!pending.containsKey(document.getId())) {
+                    hotDeviceCache.put(document);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 以 ES 中的最新文档为基础重放窗口内尚未写入的合并操作。
+     */
+    private Optional<PendingWrite> rebase(PendingWrite write) {
+        String id = write.document().getId();
+        DeviceFingerprintDocument latest;
+        try {
+            latest = repository.findById(id).orElse(null);
+        } catch (RuntimeException e) {
+            log.warn("Failed to reload device {} after write conflict", id, e);
+            return retry(write, write.document());
+        }
+        if (latest == null) {
+            log.warn("Device {} no longer exists, dropping {} buffered merges", id, write.merges().size());
+            droppedCounter.increment();
+            return Optional.empty();
+        }
+        int applied = appliedMerges(write, latest);
+        if (applied == write.merges().size()) {
+            log.debug("Device {} already contains all {} buffered merges", id, applied);
+            return Optional.empty();
+        }
+        List<Consumer<DeviceFingerprintDocument>> remaining =
+                new ArrayList<>(write.merges().subList(applied, write.merges().size()));
+        remaining.forEach(merger -> merger.accept(latest));
+        return retry(new PendingWrite(latest, remaining, write.attempts(), new ArrayList<>()), latest);
+    }
+
+    /**
+     * @return 最新文档中保留有刷写标识的各次刷写所包含的合并操作数量的最大值，即已写入的合并操作数量
+     */
+    private static int appliedMerges(PendingWrite write, DeviceFingerprintDocument latest) {
+        List<String> tokens = latest.getFlushTokens();
+        int applied = 0;
+        if (tokens != null) {
+            for (Flush flush : write.flushes()) {
+                if (tokens.contains(flush.token())) {
+                    applied = Math.max(applied, flush.merges());
+                }
+            }
+        }
+        return applied;
+    }
+
+    private Optional<PendingWrite> retry(PendingWrite write, DeviceFingerprintDocument document) {
+        int attempts = write.attempts() + 1;
+        if (attempts >= properties.getMaxFlushAttempts()) {
+            log.error("Dropping device {} after {} failed write attempts", document.getId(), attempts);
+            droppedCounter.increment();
+            return Optional.empty();
+        }
+        return Optional.of(new PendingWrite(document, write.merges(), attempts, write.flushes()));
+    }
+
+    private void requeue(List<PendingWrite> retries) {
+        if (retries.isEmpty()) {
+            return;
+        }
+        lock.lock();
+        try {
+            for (PendingWrite retry : retries) {
+                String id = retry.document().getId();
+                PendingWrite newer = pending.get(id);
+                if (newer == null) {
+                    pending.put(id, retry);
+                } else {
+                    // 刷写期间产生的新待写入文档可能以 ES 中读取的文档为基础，不含本次失败的修改；
+                    // 以失败的文档为基础重放新的合并操作，合并操作按发生顺序拼接
+                    newer.merges().forEach(merger -> merger.accept(retry.document()));
+                    List<Consumer<DeviceFingerprintDocument>> merges = new ArrayList<>(retry.merges());
+                    merges.addAll(newer.merges());
+                    pending.put(id, new PendingWrite(retry.document(), merges, retry.attempts(), retry.flushes()));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param flushes 该文档的各次刷写，合并操作只追加，每次刷写包含 {@code merges} 的一个前缀
+     */
+    private record PendingWrite(DeviceFingerprintDocument document,
+                                List<Consumer<DeviceFingerprintDocument>> merges,
+                                int attempts,
+                                List<Flush> flushes) {
+    }
+
+    /**
+     * @param merges 该次刷写时文档已包含的合并操作数量
+     */
+    private record Flush(String token, int merges) {
+    }
+}
@@ -0,0 +1,119 @@
+package com.fingerprint.server.service.support;
+
+import com.maxmind.db.ClosedDatabaseException;
+import com.maxmind.db.Reader;
+import com.maxmind.geoip2.DatabaseReader;
+import com.maxmind.geoip2.exception.GeoIp2Exception;
+import com.maxmind.geoip2.model.CityResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 可原子替换的 GeoIP 数据库。
+ * <p>
+ * 查询方通过 {@link #city(InetAddress)} 查询当前实例；替换后旧实例随即关闭，此后在旧实例上发起或仍在进行的查询会抛出
+ * {@link ClosedDatabaseException}，{@link #city(InetAddress)} 遇到时以新实例重试一次，替换对查询方透明。
+ */
+public class GeoIpDatabase implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(GeoIpDatabase.class);
+
+    private final AtomicReference<DatabaseReader> current;
+    private final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
+
+    public GeoIpDatabase(DatabaseReader reader) {
+        this.current = new AtomicReference<>(reader);
+    }
+
+    /**
+     * 以内存映射方式打开数据库文件，文件内容由操作系统页缓存承载而不占用堆内存。
+     * 查询结果由 GeoIpService 统一缓存，这里不再启用 MaxMind 的节点缓存。
+     *
+     * @param file .mmdb 文件路径
+     * @return 数据库读取器
+     * @throws IOException 文件无法读取或格式错误
+     */
+    public static DatabaseReader open(Path file) throws IOException {
+        return new DatabaseReader.Builder(file.toFile())
+                .fileMode(Reader.FileMode.MEMORY_MAPPED)
+                .build();
+    }
+
+    /**
+     * 当前使用的数据库读取器。
+     */
+    public DatabaseReader reader() {
+        return current.get();
+    }
+
+    /**
+     * 查询地址所在城市。查询期间数据库被替换、旧实例已关闭时，以替换后的实例重试一次。
+     *
+     * @param address 待查询地址
+     * @return 城市信息
+     * @throws IOException     数据库读取失败
+     * @throws GeoIp2Exception 地址不在库中等查询错误
+     */
+    public CityResponse city(InetAddress address) throws IOException, GeoIp2Exception {
+        DatabaseReader reader = current.get();
+        try {
+            return reader.city(address);
+        } catch (ClosedDatabaseException e) {
+            DatabaseReader latest = current.get();
+            if (latest == reader) {
+                throw e;
+            }
+            return latest.city(address);
+        }
+    }
+
+    /**
+     * 替换为新的数据库读取器，依次通知监听器后关闭旧实例。
+     *
+     * @param reader 新的数据库读取器
+     */
+    public void replace(DatabaseReader reader) {
+        DatabaseReader previous = current.getAndSet(reader);
+        for (Runnable listener : reloadListeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                log.error("GeoIP reload listener failed", e);
+            }
+        }
+        closeQuietly(previous);
+    }
+
+    /**
+     * 注册数据库替换后的回调，例如清空查询结果缓存。
+     *
+     * @param listener 回调
+     */
+    public void onReload(Runnable listener) {
+        reloadListeners.add(listener);
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(current.get());
+    }
+
+    private static void closeQuietly(DatabaseReader reader) {
+        if (reader == null) {
+            return;
+        }
+        try {
+            reader.close();
+        } catch (IOException e) {
+            log.warn("Failed to close GeoIP DatabaseReader", e);
+        }
+    }
+}
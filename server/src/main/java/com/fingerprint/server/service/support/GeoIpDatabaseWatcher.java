@@ -0,0 +1,122 @@
+package com.fingerprint.server.service.support;
+
+import com.maxmind.geoip2.DatabaseReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 监听 GeoIP 数据库文件变化并热加载。
+ * <p>
+ * 监听数据库所在目录中同名文件的创建与修改事件，在 {@code reloadDelay} 内没有新事件后重新打开文件，
+ * 新数据库可正常读取时才替换当前实例，失败则继续使用旧数据库。
+ * 更新数据库应先写入同目录下的临时文件再重命名覆盖，原地改写会影响仍映射旧文件的读取器。
+ */
+public class GeoIpDatabaseWatcher implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(GeoIpDatabaseWatcher.class);
+
+    private final GeoIpDatabase database;
+    private final Path databaseFile;
+    private final Duration reloadDelay;
+    private WatchService watchService;
+    private Thread thread;
+
+    /**
+     * @param databaseFile 数据库文件路径；为空时 {@link #start()} 不会被调用
+     */
+    public GeoIpDatabaseWatcher(GeoIpDatabase database, Path databaseFile, Duration reloadDelay) {
+        this.database = database;
+        this.databaseFile = databaseFile == null ? null : databaseFile.toAbsolutePath();
+        this.reloadDelay = reloadDelay;
+    }
+
+    /**
+     * 注册目录监听并启动后台线程。
+     *
+     * @throws IOException 无法监听数据库所在目录
+     */
+    public void start() throws IOException {
+        Path directory = databaseFile.getParent();
+        watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        thread = new Thread(this::watch, "geoip-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Watching GeoIP database for updates: {}", databaseFile);
+    }
+
+    /**
+     * 重新打开数据库文件并替换当前实例。
+     *
+     * @return 是否替换成功
+     */
+    boolean reload() {
+        DatabaseReader reader;
+        try {
+            reader = GeoIpDatabase.open(databaseFile);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to load updated GeoIP database {}, keeping the current one", databaseFile, e);
+            return false;
+        }
+        database.replace(reader);
+        log.info("GeoIP database reloaded: {} (build {})", databaseFile, reader.getMetadata().getBuildDate());
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                if (!drainEvents(watchService.take())) {
+                    continue;
+                }
+                // 文件可能仍在写入，等到一段时间内没有新事件后再加载
+                WatchKey key;
+                while ((key = watchService.poll(reloadDelay.toMillis(), TimeUnit.MILLISECONDS)) != null) {
+                    drainEvents(key);
+                }
+                reload();
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            log.debug("GeoIP database watcher stopped");
+        }
+    }
+
+    /**
+     * 消费目录事件。
+     *
+     * @return 是否包含数据库文件的变化
+     */
+    private boolean drainEvents(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || databaseFile.getFileName().equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+}
@@ -0,0 +1,114 @@
+package com.fingerprint.server.service.support;
+
+import com.fingerprint.server.config.DeviceCacheProperties;
+import com.fingerprint.server.mapper.DeviceFingerprintMapper;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 近期匹配设备的进程内缓存。
+ * <p>
+ * 设备文档按 id 缓存，visitorId、canvas 指纹与 IP 作为索引键指向设备 id。
+ * 写入与读取均复制文档（{@link DeviceFingerprintMapper#detach}）：调用方合并时原地修改的只是自己的副本，
+ * 不同 visitorId 的上报经 canvas、IP 键命中同一设备时也不会读到其他线程正在修改的实例，合并结果需重新 {@link #put}。
+ * 命中率、淘汰数等指标以 {@code cache.*} 形式通过 Actuator 暴露。
+ */
+@Component
+@ConditionalOnProperty(prefix = "fingerprint.device-cache", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class HotDeviceCache {
+
+    static final String CACHE_NAME = "hotDeviceCache";
+
+    private final Cache<String, DeviceFingerprintDocument> devices;
+    private final Cache<String, String> deviceIdsByKey;
+
+    public HotDeviceCache(DeviceCacheProperties properties, MeterRegistry meterRegistry) {
+        this.devices = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getTtl())
+                .recordStats()
+                .build();
+        // 每个设备最多对应 visitorId、canvas、IP 三个索引键
+        this.deviceIdsByKey = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize() * 3)
+                .expireAfterWrite(properties.getTtl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, devices, CACHE_NAME);
+        CaffeineCacheMetrics.monitor(meterRegistry, deviceIdsByKey, CACHE_NAME + ".keys");
+    }
+
+    /**
+     * 按 visitorId、canvas 指纹、IP 的顺序查找缓存中的候选设备。
+     *
+     * @param incoming 新上报的指纹
+     * @return 去重后的候选设备副本，可能为空
+     */
+    public List<DeviceFingerprintDocument> findCandidates(DeviceFingerprintDocument incoming) {
+        List<DeviceFingerprintDocument> candidates = new ArrayList<>(3);
+        List<String> deviceIds = new ArrayList<>(3);
+        for (String key : indexKeys(incoming)) {
+            String deviceId = deviceIdsByKey.getIfPresent(key);
+            if (deviceId == null || deviceIds.contains(deviceId)) {
+                continue;
+            }
+            DeviceFingerprintDocument document = devices.getIfPresent(deviceId);
+            if (document != null) {
+                deviceIds.add(deviceId);
+                candidates.add(DeviceFingerprintMapper.detach(document));
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * 写入或刷新设备文档及其索引键。缓存的是文档副本，之后调用方继续修改传入的文档不影响缓存；
+     * 副本中的低基数字段替换为字典中的共享实例，从 ES 读取的文档也不再各持一份字符串。
+     *
+     * @param document 已持久化的设备文档
+     */
+    public void put(DeviceFingerprintDocument document) {
+        if (document == null || document.getId() == null) {
+            return;
+        }
+        DeviceFingerprintDocument copy = DeviceFingerprintMapper.canonicalize(DeviceFingerprintMapper.detach(document));
+        devices.put(copy.getId(), copy);
+        for (String key : indexKeys(copy)) {
+            deviceIdsByKey.put(key, copy.getId());
+        }
+    }
+
+    /**
+     * 移除设备文档，索引键在下次查找时自然失效。
+     *
+     * @param deviceId 设备 id
+     */
+    public void invalidate(String deviceId) {
+        if (deviceId != null) {
+            devices.invalidate(deviceId);
+        }
+    }
+
+    private List<String> indexKeys(DeviceFingerprintDocument document) {
+        List<String> keys = new ArrayList<>(3);
+        if (StringUtils.isNotBlank(document.getVisitorId())) {
+            keys.add("visitorId:" + document.getVisitorId());
+        }
+        if (document.getBrowser() != null && StringUtils.isNotBlank(document.getBrowser().getCanvasFingerprint())) {
+            keys.add("canvas:" + document.getBrowser().getCanvasFingerprint());
+        }
+        if (document.getNetwork() != null && StringUtils.isNotBlank(document.getNetwork().getIpAddress())) {
+            keys.add("ip:" + document.getNetwork().getIpAddress());
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,86 @@
+package com.fingerprint.server.service.support;
+
+import com.fingerprint.server.config.MatchingProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 按匹配键分段加锁，保证同一键上的匹配与合并在本节点内串行执行。
+ * <p>
+ * 不同键落在不同分段时可并行执行，分段数决定了可用的并发度。
+ */
+@Component
+public class KeyedLocks {
+
+    private final ReentrantLock[] stripes;
+
+    @Autowired
+    public KeyedLocks(MatchingProperties properties) {
+        this(properties.getLockStripes());
+    }
+
+    public KeyedLocks(int stripeCount) {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * 持有键对应分段锁执行操作。
+     *
+     * @param key 匹配键，允许为 null
+     * @param action 需要串行执行的操作
+     * @return 操作结果
+     */
+    public <T> T withLock(String key, Supplier<T> action) {
+        ReentrantLock lock = stripes[stripeIndex(key)];
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 按分段序号升序持有多个键对应的锁执行操作，避免批量请求之间死锁。
+     *
+     * @param keys 匹配键集合
+     * @param action 需要串行执行的操作
+     * @return 操作结果
+     */
+    public <T> T withLocks(Collection<String> keys, Supplier<T> action) {
+        TreeSet<Integer> indexes = new TreeSet<>();
+        for (String key : keys) {
+            indexes.add(stripeIndex(key));
+        }
+        int acquired = 0;
+        try {
+            for (int index : indexes) {
+                stripes[index].lock();
+                acquired++;
+            }
+            return action.get();
+        } finally {
+            for (int index : indexes) {
+                if (acquired-- == 0) {
+                    break;
+                }
+                stripes[index].unlock();
+            }
+        }
+    }
+
+    private int stripeIndex(String key) {
+        int h = key == null ? 0 : key.hashCode();
+        h ^= (h >>> 16);
+        return h & (stripes.length - 1);
+    }
+}
@@ -0,0 +1,122 @@
+package com.fingerprint.server.service.support;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 指纹匹配各阶段的指标。
+ * <p>
+ * 所有计量器在启动时注册，标签只取固定的枚举值，记录时不再查找注册表。阶段耗时统一记为
+ * {@code fingerprint.matching.stage{stage=...}}，combined 模式下 visitorId 查询与候选查询合并为一次 {@code _msearch}，
+ * 计入 {@code candidate_search}。存在 {@link ObservationRegistry} 时每次上报（或每个批次）额外创建一个 observation，
+ * 接入 tracing 后即为一个 span。
+ */
+@Component
+public class MatchingMetrics {
+
+    /**
+     * 匹配阶段。
+     */
+    public enum Stage {
+        GEO_LOOKUP,
+        VISITOR_LOOKUP,
+        CANDIDATE_SEARCH,
+        SCORING,
+        WINNER_LOAD,
+        SAVE;
+
+        final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    static final String OBSERVATION_NAME = "fingerprint.matching";
+
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final DistributionSummary candidateHits;
+    private final DistributionSummary scoredCandidates;
+    private final DistributionSummary similarityScores;
+    private final Counter matchedCounter;
+    private final Counter createdCounter;
+
+    @Autowired(required = false)
+    private ObservationRegistry observationRegistry = ObservationRegistry.NOOP;
+
+    public MatchingMetrics(MeterRegistry meterRegistry) {
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder("fingerprint.matching.stage")
+                    .description("指纹匹配各阶段耗时")
+                    .tag("stage", stage.tag)
+                    .register(meterRegistry));
+        }
+        this.candidateHits = DistributionSummary.builder("fingerprint.matching.candidates")
+                .description("每次候选查询返回的设备数量")
+                .serviceLevelObjectives(1, 2, 5, 10, 20, 50, 100)
+                .register(meterRegistry);
+        this.scoredCandidates = DistributionSummary.builder("fingerprint.matching.scored_candidates")
+                .description("每次打分的候选设备数量")
+                .serviceLevelObjectives(1, 2, 5, 10, 20, 50, 100)
+                .register(meterRegistry);
+        this.similarityScores = DistributionSummary.builder("fingerprint.matching.score")
+                .description("每次上报最佳候选的相似度")
+                .serviceLevelObjectives(0.5, 0.6, 0.7, 0.75, 0.8, 0.85, 0.9, 0.95)
+                .register(meterRegistry);
+        this.matchedCounter = outcomeCounter(meterRegistry, "matched");
+        this.createdCounter = outcomeCounter(meterRegistry, "created");
+    }
+
+    public <T> T time(Stage stage, Supplier<T> action) {
+        return stageTimers.get(stage).record(action);
+    }
+
+    public void time(Stage stage, Runnable action) {
+        stageTimers.get(stage).record(action);
+    }
+
+    public void recordCandidateHits(int count) {
+        candidateHits.record(count);
+    }
+
+    public void recordScoredCandidates(int count) {
+        scoredCandidates.record(count);
+    }
+
+    /**
+     * 记录一次上报的匹配结果。
+     *
+     * @param bestScore 最佳候选的相似度，没有候选时为 null
+     */
+    public void recordOutcome(boolean matched, Double bestScore) {
+        (matched ? matchedCounter : createdCounter).increment();
+        if (bestScore != null) {
+            similarityScores.record(bestScore);
+        }
+    }
+
+    /**
+     * 在 observation 中执行一次上报或一个批次的处理。
+     *
+     * @param mode {@code single} 或 {@code batch}
+     */
+    public <T> T observe(String mode, Supplier<T> action) {
+        return Observation.createNotStarted(OBSERVATION_NAME, observationRegistry)
+                .lowCardinalityKeyValue("mode", mode)
+                .observe(action);
+    }
+
+    private static Counter outcomeCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("fingerprint.matching.outcome")
+                .description("按结果统计的上报数量")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,121 @@
+package com.fingerprint.server.service.support;
+
+import com.fingerprint.server.util.IpAddress;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * 按网段缓存查询结果，网段内任意地址均可命中。
+ * <p>
+ * 地址使用 {@link IpAddress} 的 128 位表示（IPv4 映射到 {@code ::ffff:0:0/96}），
+ * 每个网段以“掩码后的地址 + 前缀长度”为键存放在同一个 Caffeine 缓存中，并用位图记录出现过的前缀长度。查找时按前缀从长到短逐个掩码探测，即基于哈希的最长前缀匹配，
+ * 探测次数等于实际出现的前缀长度种类数。容量、TTL 与淘汰沿用 Caffeine，命中率按每次查找而非每次探测统计。
+ *
+ * @param <V> 缓存值类型
+ */
+public class NetworkPrefixCache<V> {
+
+    private final Cache<NetworkKey, V> cache;
+    private final ConcurrentStatsCounter stats = new ConcurrentStatsCounter();
+    private final AtomicLongArray prefixLengths = new AtomicLongArray(3);
+
+    public NetworkPrefixCache(long maximumSize, Duration ttl, MeterRegistry meterRegistry, String cacheName) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats(() -> stats)
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, cacheName);
+    }
+
+    /**
+     * 查找包含该地址的网段，未命中时调用加载函数并按其返回的网段写入缓存。
+     *
+     * @param address 地址
+     * @param loader  加载函数，返回 null 表示结果不可缓存
+     * @return 缓存或加载得到的值；加载函数返回 null 时为 null
+     */
+    public V get(IpAddress address, Function<IpAddress, Loaded<V>> loader) {
+        long high = address.high();
+        long low = address.low();
+
+        for (int word = prefixLengths.length() - 1; word >= 0; word--) {
+            long bits = prefixLengths.get(word);
+            while (bits != 0) {
+                int bit = 63 - Long.numberOfLeadingZeros(bits);
+                bits &= ~(1L << bit);
+                NetworkKey key = NetworkKey.of(high, low, word * 64 + bit);
+                // 探测本身不计入统计，命中后再以普通读取记录命中并更新淘汰策略
+                if (cache.policy().getIfPresentQuietly(key) != null) {
+                    V value = cache.getIfPresent(key);
+                    if (value != null) {
+                        return value;
+                    }
+                }
+            }
+        }
+
+        stats.recordMisses(1);
+        long start = System.nanoTime();
+        Loaded<V> loaded = loader.apply(address);
+        if (loaded == null) {
+            stats.recordLoadFailure(System.nanoTime() - start);
+            return null;
+        }
+        stats.recordLoadSuccess(System.nanoTime() - start);
+
+        int prefixLength = Math.max(0, Math.min(128, address.toMappedPrefixLength(loaded.prefixLength())));
+        markPrefixLength(prefixLength);
+        cache.put(NetworkKey.of(high, low, prefixLength), loaded.value());
+        return loaded.value();
+    }
+
+    /**
+     * 清空全部网段。
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+        for (int word = 0; word < prefixLengths.length(); word++) {
+            prefixLengths.set(word, 0L);
+        }
+    }
+
+    private void markPrefixLength(int prefixLength) {
+        int word = prefixLength >>> 6;
+        long bit = 1L << (prefixLength & 63);
+        if ((prefixLengths.get(word) & bit) == 0) {
+            prefixLengths.getAndAccumulate(word, bit, (current, mask) -> current | mask);
+        }
+    }
+
+    /**
+     * 加载结果及其所属网段的前缀长度（IPv4 地址按 IPv4 前缀计算，0–32）。
+     *
+     * @param value        缓存值
+     * @param prefixLength 前缀长度
+     * @param <V>          缓存值类型
+     */
+    public record Loaded<V>(V value, int prefixLength) {
+    }
+
+    private record NetworkKey(long high, long low, int prefixLength) {
+
+        static NetworkKey of(long high, long low, int prefixLength) {
+            if (prefixLength >= 64) {
+                return new NetworkKey(high, low & mask(prefixLength - 64), prefixLength);
+            }
+            return new NetworkKey(high & mask(prefixLength), 0L, prefixLength);
+        }
+
+        private static long mask(int bits) {
+            return bits == 0 ? 0L : -1L << (64 - bits);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.fingerprint.server.service.support;
+
+import com.fingerprint.server.config.MatchingProperties;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.data.elasticsearch.core.query.ScriptType;
+import org.springframework.data.elasticsearch.core.query.UpdateQuery;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 构造把一次上报合并到已有设备的脚本局部更新。
+ * <p>
+ * 合并规则与整篇写入时一致：上报中存在的子对象整体替换，metadata 按键合并，IP 写入历史首位并保留最近
+ * {@link DeviceFingerprintDocument#IP_HISTORY_LIMIT} 个，观测次数在 ES 端原子累加。脚本只改写内容有变化的字段；
+ * 内容完全相同且设备在 {@code scripted-update-touch-interval} 内已更新过时返回 noop，ES 不重建文档。
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "fingerprint.matching", name = "scripted-update-enabled", havingValue = "true")
+public class ScriptedMergeUpdateBuilder {
+
+    /**
+     * 上报中存在即整体替换的字段。
+     */
+    static final String[] REPLACED_FIELDS = {"browser", "device", "network", "geoLocation", "certificate", "lshBands"};
+
+    static final String SCRIPT = """
+            def s = ctx._source;
+            boolean changed = false;
+            for (def entry : params.replace.entrySet()) {
+              if (!Objects.equals(entry.getValue(), s[entry.getKey()])) {
+                s[entry.getKey()] = entry.getValue();
+                changed = true;
+              }
+            }
+            if (params.metadata != null && !params.metadata.isEmpty()) {
+              if (s.metadata == null) { s.metadata = new HashMap(); }
+              for (def entry : params.metadata.entrySet()) {
+                if (!Objects.equals(entry.getValue(), s.metadata[entry.getKey()])) {
+                  s.metadata[entry.getKey()] = entry.getValue();
+                  changed = true;
+                }
+              }
+            }
+            if (params.ip != null) {
+              if (s.ipHistory == null) { s.ipHistory = new ArrayList(); }
+              if (!s.ipHistory.contains(params.ip)) {
+                s.ipHistory.add(0, params.ip);
+                while (s.ipHistory.size() > params.ipHistoryLimit) { s.ipHistory.remove(s.ipHistory.size() - 1); }
+                changed = true;
+              }
+            }
+            if (!changed && params.noopAfterMillis >= 0 && s.updatedAt != null
+                && ZonedDateTime.parse(s.updatedAt).toInstant().toEpochMilli() >= params.noopAfterMillis) {
+              ctx.op = 'noop';
+            } else {
+              s.observationCount = (s.observationCount == null ? 0 : s.observationCount) + 1;
+              s.similarityScore = params.similarityScore;
+              s.updatedAt = params.updatedAt;
+            }
+            """;
+
+    private final ElasticsearchConverter converter;
+    private final MatchingProperties matchingProperties;
+
+    /**
+     * @param deviceId        匹配到的设备
+     * @param incoming        新上报的指纹
+     * @param now             合并时间
+     * @param similarityScore 匹配得分
+     */
+    public UpdateQuery build(String deviceId, DeviceFingerprintDocument incoming, Instant now, double similarityScore) {
+        // 参数按写入 _source 时的格式转换，脚本中可直接与已存储的值比较
+        Document source = converter.mapObject(incoming);
+        Map<String, Object> replace = new LinkedHashMap<>();
+        for (String field : REPLACED_FIELDS) {
+            Object value = source.get(field);
+            if (value != null) {
+                replace.put(field, value);
+            }
+        }
+        Document stamp = converter.mapObject(DeviceFingerprintDocument.builder().updatedAt(now).build());
+
+        Map<String, Object> params = new HashMap<>();
+        params.put("replace", replace);
+        params.put("metadata", source.get("metadata"));
+        params.put("ip", incoming.getNetwork() == null || StringUtils.isBlank(incoming.getNetwork().getIpAddress())
+                ? null : incoming.getNetwork().getIpAddress());
+        params.put("ipHistoryLimit", DeviceFingerprintDocument.IP_HISTORY_LIMIT);
+        params.put("similarityScore", similarityScore);
+        params.put("updatedAt", stamp.get("updatedAt"));
+        Duration touchInterval = matchingProperties.getScriptedUpdateTouchInterval();
+        params.put("noopAfterMillis", touchInterval == null || touchInterval.isZero()
+                ? -1L : now.minus(touchInterval).toEpochMilli());
+
+        return UpdateQuery.builder(deviceId)
+                .withScriptType(ScriptType.INLINE)
+                .withScript(SCRIPT)
+                .withLang("painless")
+                .withParams(params)
+                .withRetryOnConflict(matchingProperties.getMaxConflictRetries())
+                .build();
+    }
+}
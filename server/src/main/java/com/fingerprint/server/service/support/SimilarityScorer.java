@@ -6,14 +6,12 @@ import lombok.RequiredArgsConstructor;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Component;
 
-import java.util.HashSet;
 import java.util.List;
-import java.util.Objects;
-import java.util.Optional;
-import java.util.Set;
 
 /**
  * 负责计算设备指纹之间的相似度。
+ * <p>
+ * 新上报指纹先通过 {@link #compile} 预编译，再与各候选文档逐一打分，打分过程不产生对象分配。
  */
 @Component
 @RequiredArgsConstructor
@@ -29,115 +27,198 @@ public class SimilarityScorer {
      * @return 0~1 之间的相似度
      */
     public double calculate(DeviceFingerprintDocument incoming, DeviceFingerprintDocument existing) {
+        if (incoming == null || existing == null) {
+            return 0d;
+        }
+        return calculate(compile(incoming), existing);
+    }
+
+    /**
+     * 预编译新上报指纹，同一指纹与多个候选打分时只需编译一次。
+     *
+     * @param incoming 新上报的指纹
+     * @return 预编译特征
+     */
+    public CompiledFingerprint compile(DeviceFingerprintDocument incoming) {
+        return new CompiledFingerprint(incoming);
+    }
+
+    /**
+     * 计算预编译指纹与历史文档的相似度得分。
+     *
+     * @param incoming 预编译的新上报指纹
+     * @param existing 历史指纹
+     * @return 0~1 之间的相似度
+     */
+    public double calculate(CompiledFingerprint incoming, DeviceFingerprintDocument existing) {
         if (incoming == null || existing == null) {
             return 0d;
         }
         double score = 0d;
-        score += similarityProperties.getVisitorWeight() * visitorScore(incoming.getVisitorId(), existing.getVisitorId());
-        score += similarityProperties.getBrowserWeight() * browserScore(incoming.getBrowser(), existing.getBrowser());
-        score += similarityProperties.getDeviceWeight() * deviceScore(incoming.getDevice(), existing.getDevice());
-        score += similarityProperties.getNetworkWeight() * networkScore(incoming.getNetwork(), existing.getNetwork());
-        score += similarityProperties.getGeoWeight() * geoScore(incoming.getGeoLocation(), existing.getGeoLocation());
-        score += similarityProperties.getCertificateWeight() * certificateScore(incoming.getCertificate(), existing.getCertificate());
+        score += similarityProperties.getVisitorWeight() * visitorScore(incoming.visitorId, existing.getVisitorId());
+        score += similarityProperties.getBrowserWeight() * browserScore(incoming, existing.getBrowser());
+        score += similarityProperties.getDeviceWeight() * deviceScore(incoming, existing.getDevice());
+        score += similarityProperties.getNetworkWeight() * networkScore(incoming, existing.getNetwork());
+        score += similarityProperties.getGeoWeight() * geoScore(incoming, existing.getGeoLocation());
+        score += similarityProperties.getCertificateWeight() * certificateScore(incoming, existing.getCertificate());
 
         return Math.min(1d, Math.max(0d, score));
     }
 
+    /**
+     * 新上报指纹与任意候选可能得到的最高分：每个分量至多得满分，新上报缺失的分量不计入。
+     *
+     * @param sameVisitor 是否计入 visitorId 分量；为 false 时即为 visitorId 不同的候选的最高分
+     */
+    public double maxScore(CompiledFingerprint incoming, boolean sameVisitor) {
+        return upperBound(incoming, sameVisitor, true, true, true, true, true);
+    }
+
+    /**
+     * visitorId 不同的候选在各分量均得满分时的得分，即除 visitorId 以外的权重之和。
+     */
+    public double maxScoreWithoutVisitor() {
+        return Math.min(1d, similarityProperties.getBrowserWeight() + similarityProperties.getDeviceWeight()
+                + similarityProperties.getNetworkWeight() + similarityProperties.getGeoWeight()
+                + similarityProperties.getCertificateWeight());
+    }
+
+    /**
+     * 新上报指纹与指定候选的得分上界，只检查 visitorId 与各子对象是否存在，开销远小于 {@link #calculate}。
+     * 累加顺序与 {@link #calculate} 一致，各分量均得满分时两者相等。
+     */
+    public double upperBound(CompiledFingerprint incoming, DeviceFingerprintDocument existing) {
+        return upperBound(incoming,
+                StringUtils.equals(incoming.visitorId, existing.getVisitorId()),
+                existing.getBrowser() != null,
+                existing.getDevice() != null,
+                existing.getNetwork() != null,
+                existing.getGeoLocation() != null,
+                existing.getCertificate() != null);
+    }
+
+    private double upperBound(CompiledFingerprint incoming, boolean visitor, boolean browser, boolean device,
+                              boolean network, boolean geo, boolean certificate) {
+        double bound = 0d;
+        bound += visitor ? similarityProperties.getVisitorWeight() : 0d;
+        bound += browser && incoming.hasBrowser ? similarityProperties.getBrowserWeight() : 0d;
+        bound += device && incoming.hasDevice ? similarityProperties.getDeviceWeight() : 0d;
+        bound += network && incoming.hasNetwork ? similarityProperties.getNetworkWeight() : 0d;
+        bound += geo && incoming.hasGeo ? similarityProperties.getGeoWeight() : 0d;
+        bound += certificate && incoming.hasCertificate ? similarityProperties.getCertificateWeight() : 0d;
+        return Math.min(1d, Math.max(0d, bound));
+    }
+
     private double visitorScore(String incoming, String existing) {
         return StringUtils.equals(incoming, existing) ? 1d : 0d;
     }
 
-    private double browserScore(DeviceFingerprintDocument.BrowserFingerprint incoming,
-                                DeviceFingerprintDocument.BrowserFingerprint existing) {
-        if (incoming == null || existing == null) {
+    private double browserScore(CompiledFingerprint incoming, DeviceFingerprintDocument.BrowserFingerprint existing) {
+        if (!incoming.hasBrowser || existing == null) {
             return 0d;
         }
-        double userAgentScore = normalizedStringScore(incoming.getUserAgent(), existing.getUserAgent());
-        double languageScore = normalizedStringScore(incoming.getLanguage(), existing.getLanguage());
-        double timezoneScore = normalizedStringScore(incoming.getTimezone(), existing.getTimezone());
-        double pluginScore = listJaccard(incoming.getPlugins(), existing.getPlugins());
-        double canvasScore = normalizedStringScore(incoming.getCanvasFingerprint(), existing.getCanvasFingerprint());
-        double webglScore = normalizedStringScore(incoming.getWebglFingerprint(), existing.getWebglFingerprint());
-        double audioScore = normalizedStringScore(incoming.getAudioFingerprint(), existing.getAudioFingerprint());
+        double sum = 0d;
+        sum += userAgentScore(incoming, existing);
+        sum += normalizedStringScore(incoming.language, existing.getLanguage());
+        sum += normalizedStringScore(incoming.browserTimezone, existing.getTimezone());
+        sum += listJaccard(incoming.plugins, existing.getPlugins());
+        sum += normalizedStringScore(incoming.canvasFingerprint, existing.getCanvasFingerprint());
+        sum += normalizedStringScore(incoming.webglFingerprint, existing.getWebglFingerprint());
+        sum += normalizedStringScore(incoming.audioFingerprint, existing.getAudioFingerprint());
+        return sum / 7;
+    }
 
-        return average(userAgentScore, languageScore, timezoneScore, pluginScore, canvasScore, webglScore, audioScore);
+    /**
+     * UA 整串相同时得满分；否则双方都有解析分项时按浏览器 4、系统 3、设备类型 2、主版本 1 的比例计分，
+     * 浏览器小版本升级仍可得 0.9 分。任一方缺少分项（未解析或历史文档）时退回整串比较。
+     */
+    private double userAgentScore(CompiledFingerprint incoming, DeviceFingerprintDocument.BrowserFingerprint existing) {
+        double exact = normalizedStringScore(incoming.userAgent, existing.getUserAgent());
+        if (exact == 1d || incoming.uaFamily == null || StringUtils.isBlank(existing.getUaFamily())) {
+            return exact;
+        }
+        int matched = 0;
+        matched += incoming.uaFamily.equals(existing.getUaFamily()) ? 4 : 0;
+        matched += incoming.uaOs != null && incoming.uaOs.equals(existing.getUaOs()) ? 3 : 0;
+        matched += incoming.uaDeviceClass != null && incoming.uaDeviceClass.equals(existing.getUaDeviceClass()) ? 2 : 0;
+        matched += normalizedNumericScore(incoming.hasUaMajorVersion, incoming.uaMajorVersion,
+                existing.getUaMajorVersion()) == 1d ? 1 : 0;
+        return matched / 10d;
     }
 
-    private double deviceScore(DeviceFingerprintDocument.DeviceFingerprint incoming,
-                                DeviceFingerprintDocument.DeviceFingerprint existing) {
-        if (incoming == null || existing == null) {
+    private double deviceScore(CompiledFingerprint incoming, DeviceFingerprintDocument.DeviceFingerprint existing) {
+        if (!incoming.hasDevice || existing == null) {
             return 0d;
         }
-        double platformScore = normalizedStringScore(incoming.getPlatform(), existing.getPlatform());
-        double archScore = normalizedStringScore(incoming.getArchitecture(), existing.getArchitecture());
-        double touchScore = normalizedNumericScore(incoming.getTouchPoints(), existing.getTouchPoints());
-        double memoryScore = normalizedNumericScore(incoming.getDeviceMemory(), existing.getDeviceMemory());
-        double cpuScore = normalizedNumericScore(incoming.getCpuCores(), existing.getCpuCores());
-        double resolutionScore = normalizedStringScore(incoming.getScreenResolution(), existing.getScreenResolution());
-        double colorDepthScore = normalizedStringScore(incoming.getColorDepth(), existing.getColorDepth());
-
-        return average(platformScore, archScore, touchScore, memoryScore, cpuScore, resolutionScore, colorDepthScore);
+        double sum = 0d;
+        sum += normalizedStringScore(incoming.platform, existing.getPlatform());
+        sum += normalizedStringScore(incoming.architecture, existing.getArchitecture());
+        sum += normalizedNumericScore(incoming.hasTouchPoints, incoming.touchPoints, existing.getTouchPoints());
+        sum += normalizedNumericScore(incoming.hasDeviceMemory, incoming.deviceMemory, existing.getDeviceMemory());
+        sum += normalizedNumericScore(incoming.hasCpuCores, incoming.cpuCores, existing.getCpuCores());
+        sum += normalizedStringScore(incoming.screenResolution, existing.getScreenResolution());
+        sum += normalizedStringScore(incoming.colorDepth, existing.getColorDepth());
+        return sum / 7;
     }
 
-    private double networkScore(DeviceFingerprintDocument.NetworkFingerprint incoming,
-                                 DeviceFingerprintDocument.NetworkFingerprint existing) {
-        if (incoming == null || existing == null) {
+    private double networkScore(CompiledFingerprint incoming, DeviceFingerprintDocument.NetworkFingerprint existing) {
+        if (!incoming.hasNetwork || existing == null) {
             return 0d;
         }
-        double ipv4Score = normalizedStringScore(incoming.getIpAddress(), existing.getIpAddress());
-        double ipv6Score = normalizedStringScore(incoming.getIpv6Address(), existing.getIpv6Address());
-        double typeScore = normalizedStringScore(incoming.getConnectionType(), existing.getConnectionType());
-        double downlinkScore = normalizedDoubleRange(incoming.getDownlinkMbps(), existing.getDownlinkMbps(), 5d);
-        double rttScore = normalizedDoubleRange(incoming.getRtt(), existing.getRtt(), 50d);
-        double ispScore = normalizedStringScore(incoming.getIsp(), existing.getIsp());
-
-        return average(ipv4Score, ipv6Score, typeScore, downlinkScore, rttScore, ispScore);
+        double sum = 0d;
+        sum += normalizedStringScore(incoming.ipAddress, existing.getIpAddress());
+        sum += normalizedStringScore(incoming.ipv6Address, existing.getIpv6Address());
+        sum += normalizedStringScore(incoming.connectionType, existing.getConnectionType());
+        sum += normalizedDoubleRange(incoming.hasDownlink, incoming.downlinkMbps, existing.getDownlinkMbps(), 5d);
+        sum += normalizedDoubleRange(incoming.hasRtt, incoming.rtt, existing.getRtt(), 50d);
+        sum += normalizedStringScore(incoming.isp, existing.getIsp());
+        return sum / 6;
     }
 
-    private double geoScore(DeviceFingerprintDocument.GeoLocation incoming,
-                            DeviceFingerprintDocument.GeoLocation existing) {
-        if (incoming == null || existing == null) {
+    private double geoScore(CompiledFingerprint incoming, DeviceFingerprintDocument.GeoLocation existing) {
+        if (!incoming.hasGeo || existing == null) {
             return 0d;
         }
-        double countryScore = normalizedStringScore(incoming.getCountry(), existing.getCountry());
-        double regionScore = normalizedStringScore(incoming.getRegion(), existing.getRegion());
-        double cityScore = normalizedStringScore(incoming.getCity(), existing.getCity());
-        double timezoneScore = normalizedStringScore(incoming.getTimezone(), existing.getTimezone());
-        Double distanceKm = geoDistance(incoming, existing);
-        double distanceScore = distanceKm == null ? 0d : switch (distanceKm.intValue()) {
-            case 0 -> 1d;
-            default -> distanceKm < 20 ? 0.9d : distanceKm < 50 ? 0.7d : distanceKm < 200 ? 0.4d : 0.1d;
-        };
-
-        return average(countryScore, regionScore, cityScore, timezoneScore, distanceScore);
+        double sum = 0d;
+        sum += normalizedStringScore(incoming.country, existing.getCountry());
+        sum += normalizedStringScore(incoming.region, existing.getRegion());
+        sum += normalizedStringScore(incoming.city, existing.getCity());
+        sum += normalizedStringScore(incoming.geoTimezone, existing.getTimezone());
+        sum += distanceScore(incoming, existing);
+        return sum / 5;
     }
 
-    private double certificateScore(DeviceFingerprintDocument.CertificateFingerprint incoming,
+    private double certificateScore(CompiledFingerprint incoming,
                                     DeviceFingerprintDocument.CertificateFingerprint existing) {
-        if (incoming == null || existing == null) {
+        if (!incoming.hasCertificate || existing == null) {
             return 0d;
         }
-        double fingerprintScore = listJaccard(incoming.getFingerprints(), existing.getFingerprints());
-        double pinningScore = listJaccard(incoming.getPinningHashes(), existing.getPinningHashes());
-        return average(fingerprintScore, pinningScore);
+        double sum = 0d;
+        sum += listJaccard(incoming.certificateFingerprints, existing.getFingerprints());
+        sum += listJaccard(incoming.pinningHashes, existing.getPinningHashes());
+        return sum / 2;
     }
 
+    /**
+     * @param a 预编译值，空白时已归一为 null
+     */
     private double normalizedStringScore(String a, String b) {
-        if (StringUtils.isBlank(a) || StringUtils.isBlank(b)) {
+        if (a == null || StringUtils.isBlank(b)) {
             return 0d;
         }
-        return StringUtils.equalsIgnoreCase(a, b) ? 1d : 0d;
+        // 低基数字段经 StringDictionary 规范化后，两侧取值相同时通常是同一实例，== 即可短路
+        return a == b || a.equals(b) || a.equalsIgnoreCase(b) ? 1d : 0d;
     }
 
-    private double normalizedNumericScore(Integer a, Integer b) {
-        if (a == null || b == null) {
+    private double normalizedNumericScore(boolean hasA, int a, Integer b) {
+        if (!hasA || b == null) {
             return 0d;
         }
-        return Objects.equals(a, b) ? 1d : 0d;
+        return a == b ? 1d : 0d;
     }
 
-    private double normalizedDoubleRange(Double a, Double b, double tolerance) {
-        if (a == null || b == null) {
+    private double normalizedDoubleRange(boolean hasA, double a, Double b, double tolerance) {
+        if (!hasA || b == null) {
             return 0d;
         }
         double diff = Math.abs(a - b);
@@ -147,59 +228,68 @@ public class SimilarityScorer {
         return diff <= tolerance ? Math.max(0d, 1d - diff / tolerance) : 0d;
     }
 
-    private double listJaccard(List<String> a, List<String> b) {
-        if (a == null || b == null || a.isEmpty() || b.isEmpty()) {
+    /**
+     * 集合 Jaccard 相似度，不构建临时集合。
+     * <p>
+     * 与原实现保持一致：候选列表中重复出现的值即使不在新上报集合中也计入交集。
+     */
+    private double listJaccard(CompiledFingerprint.StringSet a, List<String> b) {
+        if (a == null || b == null || b.isEmpty()) {
             return 0d;
         }
-        Set<String> union = new HashSet<>();
-        Set<String> intersection = new HashSet<>();
-        for (String value : a) {
-            if (value != null) {
-                union.add(value);
+        int size = b.size();
+        int distinct = 0;
+        int common = 0;
+        int duplicatedOnly = 0;
+        for (int i = 0; i < size; i++) {
+            String value = b.get(i);
+            if (value == null || occursBetween(b, value, 0, i)) {
+                continue;
             }
-        }
-        for (String value : b) {
-            if (value != null) {
-                if (union.contains(value)) {
-                    intersection.add(value);
-                }
-                union.add(value);
+            distinct++;
+            if (a.contains(value)) {
+                common++;
+            } else if (occursBetween(b, value, i + 1, size)) {
+                duplicatedOnly++;
             }
         }
-        if (union.isEmpty()) {
+        int union = a.size() + distinct - common;
+        if (union == 0) {
             return 0d;
         }
-        return (double) intersection.size() / (double) union.size();
+        return (double) (common + duplicatedOnly) / (double) union;
     }
 
-    private double average(double... values) {
-        double sum = 0d;
-        int count = 0;
-        for (double value : values) {
-            if (!Double.isNaN(value)) {
-                sum += value;
-                count++;
+    private boolean occursBetween(List<String> values, String value, int from, int to) {
+        int hash = value.hashCode();
+        for (int i = from; i < to; i++) {
+            String other = values.get(i);
+            if (other != null && other.hashCode() == hash && other.equals(value)) {
+                return true;
             }
         }
-        return count == 0 ? 0d : sum / count;
+        return false;
     }
 
-    private Double geoDistance(DeviceFingerprintDocument.GeoLocation incoming,
-                               DeviceFingerprintDocument.GeoLocation existing) {
-        Double lat1 = incoming.getLatitude();
-        Double lon1 = incoming.getLongitude();
+    private double distanceScore(CompiledFingerprint incoming, DeviceFingerprintDocument.GeoLocation existing) {
         Double lat2 = existing.getLatitude();
         Double lon2 = existing.getLongitude();
-        if (lat1 == null || lon1 == null || lat2 == null || lon2 == null) {
-            return null;
+        if (!incoming.hasCoordinates || lat2 == null || lon2 == null) {
+            return 0d;
         }
+        double lat1 = incoming.latitude;
+        double lon1 = incoming.longitude;
         double R = 6371.0d;
         double dLat = Math.toRadians(lat2 - lat1);
         double dLon = Math.toRadians(lon2 - lon1);
         double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
-                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                + incoming.cosLatitude * Math.cos(Math.toRadians(lat2))
                 * Math.sin(dLon / 2) * Math.sin(dLon / 2);
         double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        return R * c;
+        double distanceKm = R * c;
+        return switch ((int) distanceKm) {
+            case 0 -> 1d;
+            default -> distanceKm < 20 ? 0.9d : distanceKm < 50 ? 0.7d : distanceKm < 200 ? 0.4d : 0.1d;
+        };
     }
 }
@@ -0,0 +1,172 @@
+package com.fingerprint.server.service.support;
+
+import com.fingerprint.server.config.UserAgentProperties;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+/**
+ * 把 User-Agent 拆分为浏览器、主版本号、操作系统与设备类型，并写入 {@link DeviceFingerprintDocument.BrowserFingerprint}。
+ * <p>
+ * 规则为按顺序匹配的少量特征串，覆盖主流浏览器与系统，不追求完整的 UA 数据库；无法识别浏览器时不写入分项，打分时退回整串比较。
+ * 实际出现的 UA 种类远少于上报量，解析结果按原始字符串缓存，容量由 {@code fingerprint.user-agent.cache-size} 控制，
+ * 命中率以 {@code cache.*{cache=userAgentCache}} 指标暴露。
+ */
+@Component
+@ConditionalOnProperty(prefix = "fingerprint.user-agent", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class UserAgentParser {
+
+    static final String CACHE_NAME = "userAgentCache";
+
+    /**
+     * 解析结果，各分项无法识别时为 null。
+     *
+     * @param family       浏览器，如 {@code Chrome}
+     * @param majorVersion 浏览器主版本号
+     * @param os           操作系统，如 {@code Windows}
+     * @param deviceClass  设备类型：{@code desktop}、{@code mobile}、{@code tablet} 或 {@code bot}
+     */
+    public record UserAgentInfo(String family, Integer majorVersion, String os, String deviceClass) {
+
+        static final UserAgentInfo UNKNOWN = new UserAgentInfo(null, null, null, null);
+    }
+
+    /**
+     * 浏览器特征串与名称，按顺序匹配：基于 Chromium 的浏览器需排在 Chrome 之前。
+     */
+    private static final String[][] FAMILY_TOKENS = {
+            {"EdgA/", "Edge"}, {"EdgiOS/", "Edge"}, {"Edg/", "Edge"}, {"Edge/", "Edge"},
+            {"OPR/", "Opera"}, {"OPiOS/", "Opera"},
+            {"SamsungBrowser/", "Samsung Internet"},
+            {"YaBrowser/", "Yandex"},
+            {"UCBrowser/", "UC Browser"},
+            {"MicroMessenger/", "WeChat"},
+            {"FxiOS/", "Firefox"}, {"Firefox/", "Firefox"},
+            {"CriOS/", "Chrome"}, {"Chrome/", "Chrome"},
+            {"MSIE ", "IE"}
+    };
+
+    /**
+     * 操作系统特征串与名称，按顺序匹配：iOS 的 UA 含 {@code like Mac OS X}，Android 与 HarmonyOS 的 UA 含 {@code Linux}。
+     */
+    private static final String[][] OS_TOKENS = {
+            {"Windows", "Windows"},
+            {"iPhone", "iOS"}, {"iPad", "iOS"}, {"iPod", "iOS"},
+            {"HarmonyOS", "HarmonyOS"},
+            {"Android", "Android"},
+            {"CrOS", "ChromeOS"},
+            {"Macintosh", "macOS"}, {"Mac OS X", "macOS"},
+            {"Linux", "Linux"}
+    };
+
+    private static final String[] BOT_TOKENS = {"bot", "spider", "crawl", "slurp", "headless"};
+
+    private final Cache<String, UserAgentInfo> cache;
+
+    public UserAgentParser(UserAgentProperties properties, MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getCacheSize())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * 解析浏览器指纹中的 User-Agent 并写入分项字段；UA 为空或无法识别浏览器时清空分项。
+     *
+     * @param browser 浏览器指纹，可为 null
+     */
+    public void enrich(DeviceFingerprintDocument.BrowserFingerprint browser) {
+        if (browser == null) {
+            return;
+        }
+        UserAgentInfo info = parse(browser.getUserAgent());
+        browser.setUaFamily(info.family());
+        browser.setUaMajorVersion(info.majorVersion());
+        browser.setUaOs(info.os());
+        browser.setUaDeviceClass(info.deviceClass());
+    }
+
+    /**
+     * 解析 User-Agent，相同字符串只解析一次。
+     *
+     * @param userAgent 原始 User-Agent，可为 null
+     * @return 解析结果；为空或无法识别浏览器时各分项均为 null
+     */
+    public UserAgentInfo parse(String userAgent) {
+        if (StringUtils.isBlank(userAgent)) {
+            return UserAgentInfo.UNKNOWN;
+        }
+        return cache.get(userAgent, UserAgentParser::parseUncached);
+    }
+
+    static UserAgentInfo parseUncached(String userAgent) {
+        String family = null;
+        Integer majorVersion = null;
+        for (String[] token : FAMILY_TOKENS) {
+            int index = userAgent.indexOf(token[0]);
+            if (index >= 0) {
+                family = token[1];
+                majorVersion = majorVersion(userAgent, index + token[0].length());
+                break;
+            }
+        }
+        if (family == null) {
+            int trident = userAgent.indexOf("Trident/");
+            int safari = userAgent.indexOf("Safari/");
+            int version = userAgent.indexOf("Version/");
+            if (trident >= 0) {
+                int rv = userAgent.indexOf("rv:", trident);
+                family = "IE";
+                majorVersion = rv < 0 ? null : majorVersion(userAgent, rv + "rv:".length());
+            } else if (safari >= 0 && version >= 0) {
+                family = "Safari";
+                majorVersion = majorVersion(userAgent, version + "Version/".length());
+            }
+        }
+        if (family == null) {
+            return UserAgentInfo.UNKNOWN;
+        }
+
+        String os = null;
+        for (String[] token : OS_TOKENS) {
+            if (userAgent.contains(token[0])) {
+                os = token[1];
+                break;
+            }
+        }
+        return new UserAgentInfo(family, majorVersion, os, deviceClass(userAgent, os));
+    }
+
+    private static String deviceClass(String userAgent, String os) {
+        String lower = userAgent.toLowerCase(Locale.ROOT);
+        for (String token : BOT_TOKENS) {
+            if (lower.contains(token)) {
+                return "bot";
+            }
+        }
+        if (userAgent.contains("iPad") || lower.contains("tablet")
+                || ("Android".equals(os) && !userAgent.contains("Mobile"))) {
+            return "tablet";
+        }
+        if (userAgent.contains("Mobi") || userAgent.contains("iPhone") || userAgent.contains("iPod")) {
+            return "mobile";
+        }
+        return "desktop";
+    }
+
+    private static Integer majorVersion(String userAgent, int start) {
+        int end = start;
+        while (end < userAgent.length() && end - start < 6 && Character.isDigit(userAgent.charAt(end))) {
+            end++;
+        }
+        return end == start ? null : Integer.valueOf(userAgent.substring(start, end));
+    }
+}
@@ -0,0 +1,391 @@
+package com.fingerprint.server.util;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * 解析后的 IP 地址。
+ * <p>
+ * 以两个 long 保存 128 位地址，IPv4 按 {@code ::ffff:a.b.c.d} 映射，低 32 位即 IPv4 的 int 值。
+ * 解析过程逐字符扫描，不使用正则、不拆分字符串，也不经过 {@link InetAddress#getByName} 的主机名解析；
+ * 回环、私有、链路本地、CGNAT 等分类均为掩码比较。每个请求只解析一次，之后在 GeoIP 与存储间直接传递。
+ */
+public final class IpAddress {
+
+    private static final long IPV4_MAPPED_PREFIX = 0xFFFF_0000_0000L;
+    private static final int IPV4_MAPPED_OFFSET = 96;
+
+    private final long high;
+    private final long low;
+    private String text;
+
+    private IpAddress(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * 由 IPv4 的 int 值构造。
+     */
+    public static IpAddress ofIpv4(int value) {
+        return new IpAddress(0L, IPV4_MAPPED_PREFIX | (value & 0xFFFF_FFFFL));
+    }
+
+    /**
+     * 由 128 位值构造，IPv4 映射地址视为 IPv4。
+     */
+    public static IpAddress ofIpv6(long high, long low) {
+        return new IpAddress(high, low);
+    }
+
+    /**
+     * 解析 IP 地址文本，允许首尾空白。
+     *
+     * @return 解析结果；为空或格式非法时返回 null
+     */
+    public static IpAddress parse(CharSequence text) {
+        return text == null ? null : parse(text, 0, text.length());
+    }
+
+    /**
+     * 解析文本中 {@code [start, end)} 区间内的 IP 地址，允许首尾空白，不创建子串。
+     *
+     * @return 解析结果；为空或格式非法时返回 null
+     */
+    public static IpAddress parse(CharSequence text, int start, int end) {
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            return null;
+        }
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == ':') {
+                return parseIpv6(text, start, end);
+            }
+        }
+        long ipv4 = parseIpv4(text, start, end);
+        return ipv4 < 0 ? null : ofIpv4((int) ipv4);
+    }
+
+    /**
+     * @return IPv4 值（无符号，0 至 2^32-1）；格式非法时返回 -1
+     */
+    private static long parseIpv4(CharSequence text, int start, int end) {
+        long value = 0;
+        int octets = 0;
+        int octet = 0;
+        int digits = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                octet = octet * 10 + (c - '0');
+                if (++digits > 3 || octet > 255) {
+                    return -1;
+                }
+            } else if (c == '.' && digits > 0 && octets < 3) {
+                value = (value << 8) | octet;
+                octets++;
+                octet = 0;
+                digits = 0;
+            } else {
+                return -1;
+            }
+        }
+        if (digits == 0 || octets != 3) {
+            return -1;
+        }
+        return (value << 8) | octet;
+    }
+
+    private static IpAddress parseIpv6(CharSequence text, int start, int end) {
+        int[] groups = new int[8];
+        int count = 0;
+        int compressAt = -1;
+        int i = start;
+        if (text.charAt(i) == ':') {
+            if (end - i < 2 || text.charAt(i + 1) != ':') {
+                return null;
+            }
+            compressAt = 0;
+            i += 2;
+        }
+        while (i < end) {
+            if (count == 8) {
+                return null;
+            }
+            int groupStart = i;
+            int value = 0;
+            int digits = 0;
+            int digit;
+            while (i < end && (digit = hexValue(text.charAt(i))) >= 0) {
+                if (++digits > 4) {
+                    return null;
+                }
+                value = (value << 4) | digit;
+                i++;
+            }
+            if (i < end && text.charAt(i) == '.') {
+                // 末尾内嵌的 IPv4，占两组
+                long ipv4 = count > 6 ? -1 : parseIpv4(text, groupStart, end);
+                if (ipv4 < 0) {
+                    return null;
+                }
+                groups[count++] = (int) (ipv4 >>> 16);
+                groups[count++] = (int) (ipv4 & 0xFFFF);
+                break;
+            }
+            if (digits == 0) {
+                return null;
+            }
+            groups[count++] = value;
+            if (i == end) {
+                break;
+            }
+            // 区域标识（%eth0）等其他字符一律视为非法
+            if (text.charAt(i++) != ':' || i == end) {
+                return null;
+            }
+            if (text.charAt(i) == ':') {
+                if (compressAt >= 0) {
+                    return null;
+                }
+                compressAt = count;
+                i++;
+            }
+        }
+
+        if (compressAt >= 0) {
+            if (count == 8) {
+                return null;
+            }
+            int shift = 8 - count;
+            for (int j = count - 1; j >= compressAt; j--) {
+                groups[j + shift] = groups[j];
+                groups[j] = 0;
+            }
+        } else if (count != 8) {
+            return null;
+        }
+
+        long high = 0;
+        long low = 0;
+        for (int j = 0; j < 4; j++) {
+            high = (high << 16) | groups[j];
+            low = (low << 16) | groups[j + 4];
+        }
+        return new IpAddress(high, low);
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    public boolean isIpv4() {
+        return high == 0L && (low >>> 32) == 0xFFFFL;
+    }
+
+    /**
+     * IPv4 地址的 int 值，仅在 {@link #isIpv4()} 为 true 时有意义。
+     */
+    public int ipv4Value() {
+        return (int) low;
+    }
+
+    /**
+     * 128 位表示的高 64 位。
+     */
+    public long high() {
+        return high;
+    }
+
+    /**
+     * 128 位表示的低 64 位。
+     */
+    public long low() {
+        return low;
+    }
+
+    /**
+     * 将本地址族的前缀长度换算为 128 位表示下的前缀长度，IPv4 前缀加 96。
+     */
+    public int toMappedPrefixLength(int prefixLength) {
+        return isIpv4() ? prefixLength + IPV4_MAPPED_OFFSET : prefixLength;
+    }
+
+    /**
+     * 是否位于以 {@code network} 开头、长度为 {@code prefixLength}（按 128 位计算）的网段内。
+     */
+    public boolean matches(IpAddress network, int prefixLength) {
+        if (prefixLength <= 64) {
+            return ((high ^ network.high) & mask(prefixLength)) == 0;
+        }
+        return high == network.high && ((low ^ network.low) & mask(prefixLength - 64)) == 0;
+    }
+
+    private static long mask(int bits) {
+        return bits == 0 ? 0L : -1L << (64 - bits);
+    }
+
+    /**
+     * 回环地址：127.0.0.0/8、::1。
+     */
+    public boolean isLoopback() {
+        return isIpv4() ? inIpv4(0x7F00_0000, 8) : high == 0L && low == 1L;
+    }
+
+    /**
+     * 私有地址：10.0.0.0/8、172.16.0.0/12、192.168.0.0/16、fc00::/7。
+     */
+    public boolean isPrivate() {
+        if (isIpv4()) {
+            return inIpv4(0x0A00_0000, 8) || inIpv4(0xAC10_0000, 12) || inIpv4(0xC0A8_0000, 16);
+        }
+        return (high >>> 57) == (0xFC00L >>> 9);
+    }
+
+    /**
+     * 链路本地地址：169.254.0.0/16、fe80::/10。
+     */
+    public boolean isLinkLocal() {
+        if (isIpv4()) {
+            return inIpv4(0xA9FE_0000, 16);
+        }
+        return (high >>> 54) == (0xFE80L >>> 6);
+    }
+
+    /**
+     * 运营商级 NAT 共享地址：100.64.0.0/10。
+     */
+    public boolean isCgnat() {
+        return isIpv4() && inIpv4(0x6440_0000, 10);
+    }
+
+    /**
+     * 未指定地址：0.0.0.0/8、::。
+     */
+    public boolean isUnspecified() {
+        return isIpv4() ? inIpv4(0, 8) : high == 0L && low == 0L;
+    }
+
+    /**
+     * 是否为非公网地址，此类地址无需查询 GeoIP。
+     */
+    public boolean isLocalOrPrivate() {
+        return isLoopback() || isPrivate() || isLinkLocal() || isCgnat() || isUnspecified();
+    }
+
+    private boolean inIpv4(int network, int prefixLength) {
+        return ((ipv4Value() ^ network) & (-1 << (32 - prefixLength))) == 0;
+    }
+
+    /**
+     * 转换为 {@link InetAddress}，直接由字节构造，不做主机名解析。
+     */
+    public InetAddress toInetAddress() {
+        byte[] bytes;
+        if (isIpv4()) {
+            int value = ipv4Value();
+            bytes = new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+        } else {
+            bytes = new byte[16];
+            for (int i = 0; i < 8; i++) {
+                bytes[i] = (byte) (high >>> (56 - 8 * i));
+                bytes[i + 8] = (byte) (low >>> (56 - 8 * i));
+            }
+        }
+        try {
+            return InetAddress.getByAddress(bytes);
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof IpAddress other && high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(high) * 31 + Long.hashCode(low);
+    }
+
+    /**
+     * 规范文本形式：IPv4 为点分十进制，IPv6 为 RFC 5952 压缩格式。
+     */
+    @Override
+    public String toString() {
+        String result = text;
+        if (result == null) {
+            result = isIpv4() ? formatIpv4() : formatIpv6();
+            text = result;
+        }
+        return result;
+    }
+
+    private String formatIpv4() {
+        int value = ipv4Value();
+        return new StringBuilder(15)
+                .append(value >>> 24).append('.')
+                .append((value >>> 16) & 0xFF).append('.')
+                .append((value >>> 8) & 0xFF).append('.')
+                .append(value & 0xFF)
+                .toString();
+    }
+
+    private String formatIpv6() {
+        // 找出最长的连续全零组（至少两组）用 :: 压缩
+        int bestStart = -1;
+        int bestLength = 1;
+        for (int i = 0; i < 8; ) {
+            if (group(i) != 0) {
+                i++;
+                continue;
+            }
+            int j = i;
+            while (j < 8 && group(j) == 0) {
+                j++;
+            }
+            if (j - i > bestLength) {
+                bestStart = i;
+                bestLength = j - i;
+            }
+            i = j;
+        }
+
+        StringBuilder builder = new StringBuilder(39);
+        for (int i = 0; i < 8; i++) {
+            if (i == bestStart) {
+                builder.append("::");
+                i += bestLength - 1;
+                continue;
+            }
+            if (builder.length() > 0 && builder.charAt(builder.length() - 1) != ':') {
+                builder.append(':');
+            }
+            builder.append(Integer.toHexString(group(i)));
+        }
+        return builder.toString();
+    }
+
+    private int group(int index) {
+        long word = index < 4 ? high : low;
+        return (int) (word >>> (48 - 16 * (index & 3))) & 0xFFFF;
+    }
+}
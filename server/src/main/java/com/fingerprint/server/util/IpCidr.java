@@ -0,0 +1,40 @@
+package com.fingerprint.server.util;
+
+/**
+ * CIDR 网段，例如 {@code 10.0.0.0/8}、{@code fc00::/7}。
+ *
+ * @param network      网段地址
+ * @param prefixLength 按 128 位表示计算的前缀长度（IPv4 网段已加 96）
+ */
+public record IpCidr(IpAddress network, int prefixLength) {
+
+    /**
+     * 解析 CIDR 文本，省略前缀长度时表示单个地址。
+     *
+     * @throws IllegalArgumentException 格式非法
+     */
+    public static IpCidr parse(String text) {
+        int slash = text.indexOf('/');
+        IpAddress network = IpAddress.parse(text, 0, slash < 0 ? text.length() : slash);
+        if (network == null) {
+            throw new IllegalArgumentException("Invalid CIDR: " + text);
+        }
+        int maxLength = network.isIpv4() ? 32 : 128;
+        int prefixLength = maxLength;
+        if (slash >= 0) {
+            try {
+                prefixLength = Integer.parseInt(text.substring(slash + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid CIDR: " + text, e);
+            }
+            if (prefixLength < 0 || prefixLength > maxLength) {
+                throw new IllegalArgumentException("Invalid CIDR prefix length: " + text);
+            }
+        }
+        return new IpCidr(network, network.toMappedPrefixLength(prefixLength));
+    }
+
+    public boolean contains(IpAddress address) {
+        return address != null && address.matches(network, prefixLength);
+    }
+}
@@ -0,0 +1,94 @@
+package com.fingerprint.server.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 基于 MinHash 的局部敏感哈希工具类。
+ * <p>
+ * 对特征集合计算 {@value #BANDS} × {@value #ROWS_PER_BAND} 个最小哈希值并按行分段，
+ * 每段组合成一个形如 {@code "3:9f1c0a..."} 的分段键。两个集合的 Jaccard 相似度为 s 时，
+ * 至少一段相同的概率为 {@code 1 - (1 - s^ROWS_PER_BAND)^BANDS}。
+ * 分段参数变化会使已存储的签名失效，因此以常量形式固定。
+ */
+public final class MinHashUtil {
+
+    /**
+     * 分段数量。
+     */
+    public static final int BANDS = 12;
+
+    /**
+     * 每段包含的最小哈希个数。
+     */
+    public static final int ROWS_PER_BAND = 6;
+
+    private static final long[] SEEDS = new long[BANDS * ROWS_PER_BAND];
+
+    static {
+        long state = 0x5DEECE66DL;
+        for (int i = 0; i < SEEDS.length; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            SEEDS[i] = mix64(state);
+        }
+    }
+
+    private MinHashUtil() {
+        // 工具类，禁止实例化
+    }
+
+    /**
+     * 计算特征集合的分段键。
+     *
+     * @param features 特征集合，null 元素会被忽略
+     * @return 分段键列表；没有有效特征时返回空列表
+     */
+    public static List<String> bands(Collection<String> features) {
+        long[] minimums = new long[SEEDS.length];
+        Arrays.fill(minimums, Long.MAX_VALUE);
+        boolean any = false;
+        for (String feature : features) {
+            if (feature == null) {
+                continue;
+            }
+            any = true;
+            long base = fnv1a64(feature);
+            for (int i = 0; i < SEEDS.length; i++) {
+                long hash = mix64(base ^ SEEDS[i]);
+                if (hash < minimums[i]) {
+                    minimums[i] = hash;
+                }
+            }
+        }
+        if (!any) {
+            return List.of();
+        }
+
+        List<String> bands = new ArrayList<>(BANDS);
+        for (int band = 0; band < BANDS; band++) {
+            long hash = 0xCBF29CE484222325L;
+            for (int row = 0; row < ROWS_PER_BAND; row++) {
+                hash = mix64(hash ^ minimums[band * ROWS_PER_BAND + row]);
+            }
+            bands.add(band + ":" + Long.toHexString(hash));
+        }
+        return bands;
+    }
+
+    private static long fnv1a64(String value) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,79 @@
+package com.fingerprint.server.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 低基数字段的进程内字符串字典。
+ * <p>
+ * 语言、时区、平台、国家城市等取值种类很少，但每次上报都会解析出新的 {@link String} 实例并长期留在缓存的文档中。
+ * 经 {@link #canonical(String)} 替换为字典中的同值实例后，相同取值在堆上只保留一份，哈希值只计算一次，
+ * 比较时 {@code ==} 即可短路。
+ * <p>
+ * 字典有界：超过 {@value #MAX_LENGTH} 个字符的值不收录；条目达到 {@value #MAX_ENTRIES} 时整体清空重建，
+ * 与 Jackson {@code InternCache} 的做法相同。清空只影响此后的实例共享，不影响取值本身，因此调用方不能以引用相等判断取值是否相同。
+ */
+public final class StringDictionary {
+
+    /**
+     * 最大条目数。
+     */
+    public static final int MAX_ENTRIES = 16_384;
+
+    /**
+     * 收录的最大字符数，更长的值通常是高基数的指纹或 UA，不值得收录。
+     */
+    public static final int MAX_LENGTH = 128;
+
+    private static final ConcurrentHashMap<String, String> ENTRIES = new ConcurrentHashMap<>(1024);
+
+    private StringDictionary() {
+        // 工具类，禁止实例化
+    }
+
+    /**
+     * 返回与给定值相等的字典实例，字典中没有时收录给定值本身。
+     *
+     * @param value 原始值，可为 null
+     * @return 字典中的同值实例；null 或过长时原样返回
+     */
+    public static String canonical(String value) {
+        if (value == null || value.length() > MAX_LENGTH) {
+            return value;
+        }
+        String existing = ENTRIES.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        if (ENTRIES.size() >= MAX_ENTRIES) {
+            ENTRIES.clear();
+        }
+        existing = ENTRIES.putIfAbsent(value, value);
+        return existing == null ? value : existing;
+    }
+
+    /**
+     * 逐个替换列表元素为字典实例，返回新的可变列表。
+     *
+     * @param values 原始列表，可为 null
+     * @return 新列表；原列表为 null 时返回 null
+     */
+    public static List<String> canonical(List<String> values) {
+        if (values == null) {
+            return null;
+        }
+        List<String> result = new ArrayList<>(values.size());
+        for (String value : values) {
+            result.add(canonical(value));
+        }
+        return result;
+    }
+
+    /**
+     * 当前条目数，用于测试与诊断。
+     */
+    public static int size() {
+        return ENTRIES.size();
+    }
+}
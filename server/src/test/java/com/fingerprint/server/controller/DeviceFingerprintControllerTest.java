@@ -1,9 +1,12 @@
 package com.fingerprint.server.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
 import com.fingerprint.server.dto.FingerprintRequest;
 import com.fingerprint.server.dto.FingerprintResponse;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
 import com.fingerprint.server.service.DeviceFingerprintService;
+import com.fingerprint.server.service.support.ClientIpResolver;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
@@ -15,9 +18,13 @@ import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 /**
@@ -35,10 +42,13 @@ class DeviceFingerprintControllerTest {
     @MockBean
     private DeviceFingerprintService deviceFingerprintService;
 
+    @MockBean
+    private ClientIpResolver clientIpResolver;
+
     @Test
     void shouldReturnCreatedWhenNewDevice() throws Exception {
         FingerprintResponse response = new FingerprintResponse("device-new", false, 0d, null, Instant.now(), Map.of());
-        when(deviceFingerprintService.handleFingerprint(any(), any())).thenReturn(response);
+        when(deviceFingerprintService.handleFingerprint(any(DeviceFingerprintDocument.class), any())).thenReturn(response);
 
         mockMvc.perform(post("/api/v1/fingerprints")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -49,7 +59,7 @@ class DeviceFingerprintControllerTest {
     @Test
     void shouldReturnOkWhenMatched() throws Exception {
         FingerprintResponse response = new FingerprintResponse("device-existing", true, 0.98d, "device-existing", Instant.now(), Map.of());
-        when(deviceFingerprintService.handleFingerprint(any(), any())).thenReturn(response);
+        when(deviceFingerprintService.handleFingerprint(any(DeviceFingerprintDocument.class), any())).thenReturn(response);
 
         mockMvc.perform(post("/api/v1/fingerprints")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -57,6 +67,58 @@ class DeviceFingerprintControllerTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    void shouldAcceptCborPayload() throws Exception {
+        FingerprintResponse response = new FingerprintResponse("device-new", false, 0d, null, Instant.now(), Map.of());
+        when(deviceFingerprintService.handleFingerprint(any(DeviceFingerprintDocument.class), any())).thenReturn(response);
+        ObjectMapper cborMapper = new CBORMapper().findAndRegisterModules();
+
+        mockMvc.perform(post("/api/v1/fingerprints")
+                        .contentType(MediaType.APPLICATION_CBOR)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(cborMapper.writeValueAsBytes(buildRequest())))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.deviceId").value("device-new"));
+    }
+
+    @Test
+    void shouldRejectInvalidPayloadWithValidationDetails() throws Exception {
+        FingerprintRequest request = buildRequest();
+        FingerprintRequest invalid = new FingerprintRequest(" ", request.browser(), null, request.network(),
+                request.certificate(), request.collectedAt(), request.metadata());
+
+        mockMvc.perform(post("/api/v1/fingerprints")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(invalid)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Validation failed"))
+                .andExpect(jsonPath("$.details", containsInAnyOrder("visitorId 不能为空", "终端硬件指纹不能为空")));
+        verifyNoInteractions(deviceFingerprintService);
+    }
+
+    @Test
+    void shouldReturnResponsesInOrderForBatch() throws Exception {
+        List<FingerprintResponse> responses = List.of(
+                new FingerprintResponse("device-existing", true, 0.98d, "device-existing", Instant.now(), Map.of()),
+                new FingerprintResponse("device-new", false, 0d, null, Instant.now(), Map.of()));
+        when(deviceFingerprintService.handleFingerprints(anyList())).thenReturn(responses);
+
+        mockMvc.perform(post("/api/v1/fingerprints/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(buildRequest(), buildRequest()))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].deviceId").value("device-existing"))
+                .andExpect(jsonPath("$[1].matched").value(false));
+    }
+
+    @Test
+    void shouldRejectEmptyBatch() throws Exception {
+        mockMvc.perform(post("/api/v1/fingerprints/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[]"))
+                .andExpect(status().isBadRequest());
+    }
+
     private FingerprintRequest buildRequest() {
         return new FingerprintRequest(
                 "visitor-xyz",
@@ -0,0 +1,154 @@
+package com.fingerprint.server.mapper;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fingerprint.server.dto.FingerprintRequest;
+import com.fingerprint.server.exception.FingerprintValidationException;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 上报请求体流式解析测试。
+ */
+class FingerprintDocumentReaderTest {
+
+    private ObjectMapper jsonMapper;
+    private DeviceFingerprintMapper mapper;
+    private FingerprintDocumentReader reader;
+
+    @BeforeEach
+    void setUp() {
+        jsonMapper = JsonMapper.builder().findAndAddModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build();
+        mapper = new DeviceFingerprintMapper();
+        reader = new FingerprintDocumentReader(jsonMapper);
+    }
+
+    @Test
+    void shouldProduceSameDocumentAsMapper() throws IOException {
+        FingerprintRequest request = buildRequest("visitor-1", List.of("PluginA", "PluginB"), List.of("cert-1"));
+
+        DeviceFingerprintDocument document = read(jsonMapper, jsonMapper.writeValueAsBytes(request));
+
+        assertEquals(mapper.toDocument(request), document);
+    }
+
+    @Test
+    void shouldShareLowCardinalityValuesAcrossReports() throws IOException {
+        byte[] payload = jsonMapper.writeValueAsBytes(buildRequest("visitor-1", List.of("PluginA"), null));
+
+        DeviceFingerprintDocument first = read(jsonMapper, payload);
+        DeviceFingerprintDocument second = read(jsonMapper, payload);
+
+        assertSame(first.getBrowser().getLanguage(), second.getBrowser().getLanguage());
+        assertSame(first.getBrowser().getPlugins().get(0), second.getBrowser().getPlugins().get(0));
+        assertSame(first.getDevice().getPlatform(), second.getDevice().getPlatform());
+        assertSame(first.getNetwork().getConnectionType(), second.getNetwork().getConnectionType());
+        assertNotSame(first.getBrowser().getCanvasFingerprint(), second.getBrowser().getCanvasFingerprint());
+    }
+
+    @Test
+    void shouldReadCborWithNumericTimestamps() throws IOException {
+        FingerprintRequest request = buildRequest("visitor-1", List.of("PluginA"), List.of("cert-1"));
+        ObjectMapper cborMapper = CBORMapper.builder().findAndAddModules().build();
+
+        DeviceFingerprintDocument document = read(cborMapper, cborMapper.writeValueAsBytes(request));
+
+        assertEquals(mapper.toDocument(request), document);
+    }
+
+    @Test
+    void shouldSkipUnknownFieldsAndCoerceScalars() throws IOException {
+        String payload = """
+                {"visitorId":"visitor-1","geoLocation":{"country":"CN"},
+                 "browser":{"userAgent":"UA","language":"zh-CN","timezone":"Asia/Shanghai","extra":[1,2]},
+                 "device":{"platform":"macOS","architecture":"arm64","touchPoints":"0","deviceMemory":8.0,
+                           "cpuCores":8,"screenResolution":"1920x1080","colorDepth":24},
+                 "network":{"ipAddress":"1.1.1.1","connectionType":"wifi","downlinkMbps":"10.5","rtt":50},
+                 "certificate":{},
+                 "collectedAt":"2024-01-01T00:00:00Z"}
+                """;
+
+        DeviceFingerprintDocument document = read(jsonMapper, payload.getBytes());
+
+        assertEquals(0, document.getDevice().getTouchPoints());
+        assertEquals(8, document.getDevice().getDeviceMemory());
+        assertEquals("24", document.getDevice().getColorDepth());
+        assertEquals(10.5d, document.getNetwork().getDownlinkMbps());
+        assertNull(document.getCertificate(), "证书两个列表都缺失时与映射器一致，不保留空对象");
+        assertNull(document.getGeoLocation());
+    }
+
+    @Test
+    void shouldReportSameMessagesAsBeanValidation() throws IOException {
+        FingerprintRequest valid = buildRequest("visitor-1", List.of("PluginA"), List.of("cert-1"));
+        FingerprintRequest invalid = new FingerprintRequest(
+                " ",
+                new FingerprintRequest.BrowserFingerprint(null, "zh-CN", "", List.of(), null, null, null),
+                new FingerprintRequest.DeviceFingerprint("macOS", null, null, 8, null, "1920x1080", " "),
+                null,
+                new FingerprintRequest.CertificateFingerprint(List.of(), null),
+                null,
+                valid.metadata());
+
+        FingerprintValidationException ex = assertThrows(FingerprintValidationException.class,
+                () -> read(jsonMapper, jsonMapper.writeValueAsBytes(invalid)));
+
+        Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+        Set<String> expected = validator.validate(invalid).stream()
+                .map(ConstraintViolation::getMessage)
+                .collect(Collectors.toSet());
+        assertEquals(expected.size(), ex.getDetails().size());
+        assertEquals(expected, new HashSet<>(ex.getDetails()));
+    }
+
+    @Test
+    void shouldRejectMismatchedTypes() {
+        String payload = """
+                {"visitorId":"visitor-1","device":{"cpuCores":"eight"}}
+                """;
+
+        assertThrows(MismatchedInputException.class, () -> read(jsonMapper, payload.getBytes()));
+    }
+
+    private DeviceFingerprintDocument read(ObjectMapper objectMapper, byte[] payload) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(payload)) {
+            return reader.read(parser);
+        }
+    }
+
+    private FingerprintRequest buildRequest(String visitorId, List<String> plugins, List<String> certificates) {
+        return new FingerprintRequest(
+                visitorId,
+                new FingerprintRequest.BrowserFingerprint("Mozilla/5.0", "zh-CN", "Asia/Shanghai", plugins,
+                        "canvas", "webgl", "audio"),
+                new FingerprintRequest.DeviceFingerprint("macOS", "x86_64", 5, 16, 8, "2560x1600", "24"),
+                new FingerprintRequest.NetworkFingerprint("1.1.1.1", "::1", "wifi", 120d, 20d, "ISP",
+                        Map.of("effectiveType", "4g")),
+                new FingerprintRequest.CertificateFingerprint(certificates, List.of("pin-1")),
+                Instant.parse("2024-05-01T08:30:15.123456789Z"),
+                Map.of("source", "web", "confidence", 0.9d));
+    }
+}
@@ -0,0 +1,293 @@
+package com.fingerprint.server.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.bulk.OperationType;
+import com.fingerprint.server.config.DeduplicationProperties;
+import com.fingerprint.server.config.MatchingProperties;
+import com.fingerprint.server.config.SimilarityProperties;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import com.fingerprint.server.service.support.DeduplicationCheckpoint;
+import com.fingerprint.server.service.support.SimilarityScorer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.convert.MappingElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.mapping.SimpleElasticsearchMappingContext;
+import org.springframework.data.elasticsearch.core.query.Query;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * 离线去重任务测试。
+ */
+@ExtendWith(MockitoExtension.class)
+class DeviceDeduplicationJobTest {
+
+    private static final IndexCoordinates INDEX = IndexCoordinates.of("device_fingerprints");
+
+    @Mock
+    private ElasticsearchOperations operations;
+
+    @Mock
+    private ElasticsearchClient client;
+
+    @TempDir
+    Path tempDir;
+
+    private SimilarityProperties similarityProperties;
+    private DeduplicationProperties properties;
+    private DeviceDeduplicationJob job;
+
+    @BeforeEach
+    void setUp() {
+        MappingElasticsearchConverter converter = new MappingElasticsearchConverter(new SimpleElasticsearchMappingContext());
+        converter.afterPropertiesSet();
+        similarityProperties = new SimilarityProperties();
+        properties = new DeduplicationProperties();
+        properties.setCheckpointFile(tempDir.resolve("dedup.checkpoint.json"));
+        properties.setParallelism(2);
+        job = new DeviceDeduplicationJob(operations, client, converter, new SimilarityScorer(similarityProperties),
+                similarityProperties, new MatchingProperties(), properties);
+    }
+
+    @Test
+    void shouldDeleteDuplicatesBeforeCreditingOldestDevice() throws IOException {
+        properties.setDryRun(false);
+        DeviceFingerprintDocument oldest = device("a", "v1", Instant.parse("2024-01-01T00:00:00Z"));
+        DeviceFingerprintDocument newer = device("b", "v1", Instant.parse("2024-02-01T00:00:00Z"));
+        newer.setObservationCount(3);
+        newer.setIpHistory(List.of("2.2.2.2"));
+        DeviceFingerprintDocument other = device("c", "v1", Instant.parse("2024-03-01T00:00:00Z"));
+        other.setBrowser(null);
+        other.setDevice(null);
+        DeviceFingerprintDocument single = device("d", "v2", Instant.parse("2024-01-01T00:00:00Z"));
+        stubScan(searchHitsOf(newer, oldest, other, single));
+        when(operations.indexOps(INDEX)).thenReturn(mock(IndexOperations.class));
+        when(client.bulk(any(BulkRequest.class)))
+                .thenReturn(bulkResponse(item("b", "deleted")), bulkResponse(item("a", "updated")));
+
+        DeviceDeduplicationJob.Result result = job.run();
+
+        assertEquals(new DeviceDeduplicationJob.Result(4, 1, 0, 1), result);
+        List<BulkRequest> requests = captureBulkRequests(2);
+        BulkOperation delete = requests.get(0).operations().get(0);
+        assertEquals(1, requests.get(0).operations().size());
+        assertEquals("b", delete.update().id());
+        assertEquals(DeviceDeduplicationJob.DUPLICATE_SCRIPT, delete.update().action().script().inline().source());
+        BulkOperation credit = requests.get(1).operations().get(0);
+        assertEquals("a", credit.update().id(), "应保留最早创建的设备");
+        assertEquals(List.of("b"), param(credit, "mergedDeviceIds"));
+        assertEquals(3L, (Long) param(credit, "observations"));
+        assertEquals(List.of("2.2.2.2"), param(credit, "ipHistory"));
+        verify(operations).closePointInTime("pit");
+        assertFalse(Files.exists(properties.getCheckpointFile()), "任务完成后应删除断点");
+    }
+
+    @Test
+    void shouldCreditOnlyDuplicatesThatWereDeleted() throws IOException {
+        properties.setDryRun(false);
+        DeviceFingerprintDocument oldest = device("a", "v1", Instant.parse("2024-01-01T00:00:00Z"));
+        DeviceFingerprintDocument deleted = device("b", "v1", Instant.parse("2024-02-01T00:00:00Z"));
+        DeviceFingerprintDocument updatedSinceScan = device("c", "v1", Instant.parse("2024-03-01T00:00:00Z"));
+        updatedSinceScan.setObservationCount(7);
+        stubScan(searchHitsOf(oldest, deleted, updatedSinceScan));
+        when(operations.indexOps(INDEX)).thenReturn(mock(IndexOperations.class));
+        when(client.bulk(any(BulkRequest.class)))
+                .thenReturn(bulkResponse(item("b", "deleted"), item("c", "noop")), bulkResponse(item("a", "updated")));
+
+        DeviceDeduplicationJob.Result result = job.run();
+
+        assertEquals(1, result.duplicates(), "扫描后被更新的设备未被删除，不应计入");
+        BulkOperation credit = captureBulkRequests(2).get(1).operations().get(0);
+        assertEquals(List.of("b"), param(credit, "mergedDeviceIds"));
+        assertEquals(1L, (Long) param(credit, "observations"));
+    }
+
+    @Test
+    void shouldStopWithoutAdvancingCheckpointWhenBulkItemFails() throws IOException {
+        properties.setDryRun(false);
+        DeduplicationCheckpoint previous = new DeduplicationCheckpoint();
+        previous.setPass("visitorId");
+        previous.setLastKey("v0");
+        previous.setScanned(10);
+        previous.save(properties.getCheckpointFile());
+        DeviceFingerprintDocument oldest = device("a", "v1", Instant.parse("2024-01-01T00:00:00Z"));
+        DeviceFingerprintDocument deleted = device("b", "v1", Instant.parse("2024-02-01T00:00:00Z"));
+        DeviceFingerprintDocument rejected = device("c", "v1", Instant.parse("2024-03-01T00:00:00Z"));
+        stubScan(searchHitsOf(oldest, deleted, rejected));
+        when(client.bulk(any(BulkRequest.class)))
+                .thenReturn(bulkResponse(item("b", "deleted"), failedItem("c", 429)), bulkResponse(item("a", "updated")));
+
+        assertThrows(IllegalStateException.class, () -> job.run());
+
+        BulkOperation credit = captureBulkRequests(2).get(1).operations().get(0);
+        assertEquals(List.of("b"), param(credit, "mergedDeviceIds"), "已删除的设备仍应计入保留设备");
+        verify(operations).closePointInTime("pit");
+        DeduplicationCheckpoint checkpoint = DeduplicationCheckpoint.load(properties.getCheckpointFile());
+        assertEquals("v0", checkpoint.getLastKey(), "写入失败时断点不应前进");
+        assertEquals(10, checkpoint.getScanned());
+        assertTrue(checkpoint.getCompletedPasses().isEmpty(), "写入失败时不应标记字段完成");
+    }
+
+    @Test
+    void shouldResumeAfterLastCompletedBlock() {
+        DeduplicationCheckpoint checkpoint = new DeduplicationCheckpoint();
+        checkpoint.setPass("visitorId");
+        checkpoint.setLastKey("v1");
+        checkpoint.setScanned(10);
+        checkpoint.save(properties.getCheckpointFile());
+        stubScan(searchHitsOf());
+
+        DeviceDeduplicationJob.Result result = job.run();
+
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(operations).search(captor.capture(), eq(DeviceFingerprintDocument.class));
+        assertEquals(List.of("v1", Long.MAX_VALUE), captor.getValue().getSearchAfter());
+        assertEquals(10, result.scanned());
+        verifyNoInteractions(client);
+    }
+
+    @Test
+    void shouldOnlyBlockOnVisitorIdWhenOtherWeightsCannotReachThreshold() {
+        assertEquals(List.of("visitorId"), job.passes());
+
+        similarityProperties.setThreshold(0.6d);
+
+        assertEquals(properties.getBlockingFields(), job.passes());
+    }
+
+    private void stubScan(SearchHits<DeviceFingerprintDocument> hits) {
+        when(operations.getIndexCoordinatesFor(DeviceFingerprintDocument.class)).thenReturn(INDEX);
+        when(operations.openPointInTime(eq(INDEX), any())).thenReturn("pit");
+        when(operations.search(any(Query.class), eq(DeviceFingerprintDocument.class))).thenReturn(hits);
+    }
+
+    private List<BulkRequest> captureBulkRequests(int count) throws IOException {
+        ArgumentCaptor<BulkRequest> captor = ArgumentCaptor.forClass(BulkRequest.class);
+        verify(client, times(count)).bulk(captor.capture());
+        captor.getAllValues().forEach(request -> assertEquals(INDEX.getIndexName(), request.index()));
+        return captor.getAllValues();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T param(BulkOperation operation, String name) {
+        return (T) operation.update().action().script().inline().params().get(name).to(Object.class);
+    }
+
+    private static BulkResponse bulkResponse(BulkResponseItem... items) {
+        return BulkResponse.of(response -> response
+                .errors(Arrays.stream(items).anyMatch(item -> item.error() != null))
+                .took(1)
+                .items(List.of(items)));
+    }
+
+    private static BulkResponseItem item(String id, String result) {
+        return BulkResponseItem.of(item -> item.operationType(OperationType.Update)
+                .index(INDEX.getIndexName())
+                .id(id)
+                .status(200)
+                .result(result));
+    }
+
+    private static BulkResponseItem failedItem(String id, int status) {
+        return BulkResponseItem.of(item -> item.operationType(OperationType.Update)
+                .index(INDEX.getIndexName())
+                .id(id)
+                .status(status)
+                .error(error -> error.type("es_rejected_execution_exception").reason("rejected")));
+    }
+
+    private DeviceFingerprintDocument device(String id, String visitorId, Instant createdAt) {
+        return DeviceFingerprintDocument.builder()
+                .id(id)
+                .visitorId(visitorId)
+                .createdAt(createdAt)
+                .updatedAt(createdAt)
+                .observationCount(1)
+                .browser(DeviceFingerprintDocument.BrowserFingerprint.builder()
+                        .userAgent("UA")
+                        .language("zh-CN")
+                        .timezone("Asia/Shanghai")
+                        .plugins(List.of("PluginA", "PluginB"))
+                        .canvasFingerprint("canvas")
+                        .webglFingerprint("webgl")
+                        .audioFingerprint("audio")
+                        .build())
+                .device(DeviceFingerprintDocument.DeviceFingerprint.builder()
+                        .platform("macOS")
+                        .architecture("x86_64")
+                        .touchPoints(5)
+                        .deviceMemory(16)
+                        .cpuCores(8)
+                        .screenResolution("2560x1600")
+                        .colorDepth("24")
+                        .build())
+                .network(DeviceFingerprintDocument.NetworkFingerprint.builder()
+                        .ipAddress("1.1.1.1")
+                        .connectionType("wifi")
+                        .downlinkMbps(120d)
+                        .rtt(20d)
+                        .isp("ISP")
+                        .build())
+                .geoLocation(DeviceFingerprintDocument.GeoLocation.builder()
+                        .country("CN")
+                        .region("SH")
+                        .city("Shanghai")
+                        .latitude(31.2304)
+                        .longitude(121.4737)
+                        .timezone("Asia/Shanghai")
+                        .build())
+                .certificate(DeviceFingerprintDocument.CertificateFingerprint.builder()
+                        .fingerprints(List.of("cert1"))
+                        .pinningHashes(List.of("pin1"))
+                        .build())
+                .build();
+    }
+
+    private SearchHits<DeviceFingerprintDocument> searchHitsOf(DeviceFingerprintDocument... documents) {
+        List<SearchHit<DeviceFingerprintDocument>> hitList = new ArrayList<>();
+        long shardDoc = 0;
+        for (DeviceFingerprintDocument document : documents) {
+            @SuppressWarnings("unchecked")
+            SearchHit<DeviceFingerprintDocument> hit = mock(SearchHit.class);
+            when(hit.getContent()).thenReturn(document);
+            when(hit.getSortValues()).thenReturn(List.of(document.getVisitorId(), shardDoc++));
+            hitList.add(hit);
+        }
+        @SuppressWarnings("unchecked")
+        SearchHits<DeviceFingerprintDocument> hits = mock(SearchHits.class);
+        when(hits.iterator()).thenReturn(hitList.iterator());
+        return hits;
+    }
+}
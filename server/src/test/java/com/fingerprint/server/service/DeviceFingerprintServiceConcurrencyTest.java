@@ -0,0 +1,207 @@
+package com.fingerprint.server.service;
+
+import com.fingerprint.server.config.MatchingProperties;
+import com.fingerprint.server.config.SimilarityProperties;
+import com.fingerprint.server.dto.FingerprintRequest;
+import com.fingerprint.server.mapper.DeviceFingerprintMapper;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import com.fingerprint.server.repository.DeviceFingerprintRepository;
+import com.fingerprint.server.service.support.CandidateScriptQueryBuilder;
+import com.fingerprint.server.service.support.KeyedLocks;
+import com.fingerprint.server.service.support.MatchingMetrics;
+import com.fingerprint.server.service.support.SimilarityScorer;
+import com.fingerprint.server.util.IpAddress;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.query.Query;
+import org.springframework.data.elasticsearch.core.query.SeqNoPrimaryTerm;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 设备指纹服务并发写入压力测试。
+ * <p>
+ * 使用内存存储模拟 ES 的 seq_no 版本校验，验证并发上报既不丢失观测计数也不产生重复设备。
+ */
+class DeviceFingerprintServiceConcurrencyTest {
+
+    private static final int VISITORS = 4;
+    private static final int THREADS = 8;
+    private static final int REPORTS_PER_THREAD = 200;
+
+    private final Map<String, DeviceFingerprintDocument> store = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger conflicts = new AtomicInteger();
+    private final AtomicReference<DeviceFingerprintDocument> staleRead = new AtomicReference<>();
+
+    private DeviceFingerprintService deviceFingerprintService;
+
+    @BeforeEach
+    void setUp() {
+        DeviceFingerprintRepository repository = mock(DeviceFingerprintRepository.class);
+        ElasticsearchOperations elasticsearchOperations = mock(ElasticsearchOperations.class);
+
+        when(repository.findByVisitorIdOrderByUpdatedAtDesc(anyString(), any(Pageable.class))).thenAnswer(invocation -> {
+            String visitorId = invocation.getArgument(0);
+            Pageable pageable = invocation.getArgument(1);
+            return store.values().stream()
+                    .filter(doc -> visitorId.equals(doc.getVisitorId()))
+                    .sorted(Comparator.comparing(DeviceFingerprintDocument::getUpdatedAt).reversed())
+                    .limit(pageable.getPageSize())
+                    .map(this::copyOf)
+                    .toList();
+        });
+        // 候选为投影，合并使用的 seq_no 来自胜出者的完整读取
+        when(elasticsearchOperations.get(anyString(), eq(DeviceFingerprintDocument.class))).thenAnswer(invocation -> {
+            DeviceFingerprintDocument stale = staleRead.getAndSet(null);
+            if (stale != null) {
+                return stale;
+            }
+            DeviceFingerprintDocument current = store.get(invocation.<String>getArgument(0));
+            return current == null ? null : copyOf(current);
+        });
+        @SuppressWarnings("unchecked")
+        SearchHits<DeviceFingerprintDocument> emptyHits = mock(SearchHits.class);
+        when(emptyHits.iterator()).thenAnswer(invocation -> List.<SearchHit<DeviceFingerprintDocument>>of().iterator());
+        when(elasticsearchOperations.search(any(Query.class), eq(DeviceFingerprintDocument.class))).thenReturn(emptyHits);
+        when(repository.save(any(DeviceFingerprintDocument.class))).thenAnswer(invocation -> {
+            DeviceFingerprintDocument document = invocation.getArgument(0);
+            indexWithVersionCheck(document);
+            return document;
+        });
+
+        SimilarityProperties properties = new SimilarityProperties();
+        // 测试中没有 GeoIP 数据，且各线程上报的 IP 不同，相应降低阈值
+        properties.setThreshold(0.8d);
+        MatchingProperties matchingProperties = new MatchingProperties();
+        // 以 visitorId 查询模拟存储中的最新文档
+        matchingProperties.setLookupMode(MatchingProperties.LookupMode.SEQUENTIAL);
+        deviceFingerprintService = new DeviceFingerprintService(repository, elasticsearchOperations,
+                new DeviceFingerprintMapper(), new SimilarityScorer(properties), properties,
+                matchingProperties, new KeyedLocks(64), new CandidateScriptQueryBuilder(properties, matchingProperties),
+                new MatchingMetrics(new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void shouldKeepObservationCountsAndAvoidDuplicatesUnderParallelReports() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < REPORTS_PER_THREAD; i++) {
+                    String visitorId = "visitor-" + ((thread + i) % VISITORS);
+                    deviceFingerprintService.handleFingerprint(buildRequest(visitorId), IpAddress.parse("1.1.1." + (thread + i) % VISITORS));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        Map<String, Integer> devicesPerVisitor = new HashMap<>();
+        int totalObservations = 0;
+        for (DeviceFingerprintDocument document : store.values()) {
+            devicesPerVisitor.merge(document.getVisitorId(), 1, Integer::sum);
+            totalObservations += document.getObservationCount();
+        }
+        assertEquals(VISITORS, store.size(), "每个访客只应对应一个设备文档");
+        devicesPerVisitor.values().forEach(count -> assertEquals(1, count));
+        assertEquals(THREADS * REPORTS_PER_THREAD, totalObservations, "并发上报不应丢失观测计数");
+    }
+
+    @Test
+    void shouldRetryWhenStoredVersionChangedConcurrently() {
+        deviceFingerprintService.handleFingerprint(buildRequest("visitor-conflict"), IpAddress.parse("1.1.1.1"));
+        DeviceFingerprintDocument stored = store.values().iterator().next();
+        // 模拟其他节点在本节点读取后写入：本节点读到的是写入前的旧版本
+        staleRead.set(copyOf(stored));
+        DeviceFingerprintDocument external = copyOf(stored);
+        external.setObservationCount(stored.getObservationCount() + 1);
+        indexWithVersionCheck(external);
+
+        deviceFingerprintService.handleFingerprint(buildRequest("visitor-conflict"), IpAddress.parse("1.1.1.1"));
+
+        assertEquals(1, conflicts.get());
+        assertEquals(3, store.get(stored.getId()).getObservationCount());
+    }
+
+    private synchronized void indexWithVersionCheck(DeviceFingerprintDocument document) {
+        DeviceFingerprintDocument current = store.get(document.getId());
+        if (current != null && !current.getSeqNoPrimaryTerm().equals(document.getSeqNoPrimaryTerm())) {
+            conflicts.incrementAndGet();
+            throw new OptimisticLockingFailureException("version conflict for " + document.getId());
+        }
+        if (current == null && document.getSeqNoPrimaryTerm() != null) {
+            throw new OptimisticLockingFailureException("document missing: " + document.getId());
+        }
+        document.setSeqNoPrimaryTerm(new SeqNoPrimaryTerm(sequence.incrementAndGet(), 1));
+        store.put(document.getId(), copyOf(document));
+    }
+
+    private DeviceFingerprintDocument copyOf(DeviceFingerprintDocument source) {
+        return DeviceFingerprintDocument.builder()
+                .id(source.getId())
+                .visitorId(source.getVisitorId())
+                .browser(source.getBrowser())
+                .device(source.getDevice())
+                .network(source.getNetwork())
+                .geoLocation(source.getGeoLocation())
+                .certificate(source.getCertificate())
+                .metadata(source.getMetadata() == null ? null : new HashMap<>(source.getMetadata()))
+                .similarityScore(source.getSimilarityScore())
+                .observationCount(source.getObservationCount())
+                .ipHistory(source.getIpHistory() == null ? null : new ArrayList<>(source.getIpHistory()))
+                .createdAt(source.getCreatedAt())
+                .updatedAt(source.getUpdatedAt())
+                .seqNoPrimaryTerm(source.getSeqNoPrimaryTerm())
+                .build();
+    }
+
+    private FingerprintRequest buildRequest(String visitorId) {
+        return new FingerprintRequest(
+                visitorId,
+                new FingerprintRequest.BrowserFingerprint(
+                        "Mozilla/5.0", "zh-CN", "Asia/Shanghai", List.of("PluginA"), "canvas-" + visitorId, "webgl", "audio"),
+                new FingerprintRequest.DeviceFingerprint(
+                        "macOS", "x86_64", 5, 16, 8, "2560x1600", "24"),
+                new FingerprintRequest.NetworkFingerprint(
+                        "1.1.1.1", null, "wifi", 120d, 20d, "ISP", Map.of()),
+                new FingerprintRequest.CertificateFingerprint(List.of("cert-" + visitorId), List.of("pin-1")),
+                Instant.now(),
+                Map.of("sessionId", "sess-1")
+        );
+    }
+}
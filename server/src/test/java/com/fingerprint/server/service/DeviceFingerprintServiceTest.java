@@ -1,25 +1,52 @@
 package com.fingerprint.server.service;
 
+import com.fingerprint.server.config.MatchingProperties;
 import com.fingerprint.server.config.SimilarityProperties;
 import com.fingerprint.server.dto.FingerprintRequest;
 import com.fingerprint.server.dto.FingerprintResponse;
 import com.fingerprint.server.mapper.DeviceFingerprintMapper;
 import com.fingerprint.server.model.DeviceFingerprintDocument;
 import com.fingerprint.server.repository.DeviceFingerprintRepository;
+import com.fingerprint.server.service.support.CandidateProjection;
+import com.fingerprint.server.service.support.CandidateScriptQueryBuilder;
+import com.fingerprint.server.service.support.DeviceIndexTiering;
+import com.fingerprint.server.service.support.KeyedLocks;
+import com.fingerprint.server.service.support.MatchingMetrics;
+import com.fingerprint.server.service.support.ScriptedMergeUpdateBuilder;
 import com.fingerprint.server.service.support.SimilarityScorer;
+import com.fingerprint.server.util.IpAddress;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.BulkFailureException;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.MultiGetItem;
 import org.springframework.data.elasticsearch.core.SearchHit;
 import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.Query;
+import org.springframework.data.elasticsearch.core.query.ScriptType;
+import org.springframework.data.elasticsearch.core.query.UpdateQuery;
+import org.springframework.data.elasticsearch.core.query.UpdateResponse;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -43,39 +70,53 @@ class DeviceFingerprintServiceTest {
 
     private SimilarityProperties properties;
 
+    private MatchingProperties matchingProperties;
+
+    private SimpleMeterRegistry meterRegistry;
+
     @BeforeEach
     void setUp() {
         mapper = new DeviceFingerprintMapper();
         properties = new SimilarityProperties();
         SimilarityScorer scorer = new SimilarityScorer(properties);
-        deviceFingerprintService = new DeviceFingerprintService(repository, elasticsearchOperations, mapper, scorer, properties);
+        matchingProperties = new MatchingProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        // 多数用例分别为 visitorId 查询与候选查询打桩
+        matchingProperties.setLookupMode(MatchingProperties.LookupMode.SEQUENTIAL);
+        deviceFingerprintService = new DeviceFingerprintService(repository, elasticsearchOperations, mapper, scorer, properties,
+                matchingProperties, new KeyedLocks(16), new CandidateScriptQueryBuilder(properties, matchingProperties),
+                new MatchingMetrics(meterRegistry));
     }
 
     @Test
     void shouldCreateNewDeviceWhenNoMatchFound() {
         FingerprintRequest request = buildRequest("visitor-new", "2.2.2.2");
-        when(repository.findTopByVisitorIdOrderByUpdatedAtDesc("visitor-new")).thenReturn(Optional.empty());
-        when(elasticsearchOperations.search(any(), eq(DeviceFingerprintDocument.class))).thenReturn(emptySearchHits());
+        when(repository.findByVisitorIdOrderByUpdatedAtDesc(eq("visitor-new"), any(Pageable.class))).thenReturn(List.of());
         when(repository.save(any(DeviceFingerprintDocument.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
-        FingerprintResponse response = deviceFingerprintService.handleFingerprint(request, "2.2.2.2");
+        FingerprintResponse response = deviceFingerprintService.handleFingerprint(request, IpAddress.parse("2.2.2.2"));
 
         assertFalse(response.matched());
         assertEquals(0d, response.similarityScore());
-        verify(repository, times(1)).save(any(DeviceFingerprintDocument.class));
+        ArgumentCaptor<DeviceFingerprintDocument> saved = ArgumentCaptor.forClass(DeviceFingerprintDocument.class);
+        verify(repository, times(1)).save(saved.capture());
+        assertNull(saved.getValue().getLshBands(), "默认权重下 LSH 召回不可能匹配，不应计算分段键");
+        verify(elasticsearchOperations, never()).search(any(Query.class), eq(DeviceFingerprintDocument.class));
     }
 
     @Test
     void shouldUpdateExistingDeviceWhenSimilarityIsHigh() {
+        // 测试未接入 GeoIP，地理位置分量为 0
+        properties.setThreshold(0.85d);
         FingerprintRequest request = buildRequest("visitor-existing", "1.1.1.1");
         DeviceFingerprintDocument existing = mapper.toDocument(request);
         existing.setId("device-1");
         existing.setObservationCount(5);
-        when(repository.findTopByVisitorIdOrderByUpdatedAtDesc("visitor-existing")).thenReturn(Optional.of(existing));
-        when(elasticsearchOperations.search(any(), eq(DeviceFingerprintDocument.class))).thenReturn(emptySearchHits());
+        when(repository.findByVisitorIdOrderByUpdatedAtDesc(eq("visitor-existing"), any(Pageable.class))).thenReturn(List.of(existing));
+        when(elasticsearchOperations.get("device-1", DeviceFingerprintDocument.class)).thenReturn(existing);
         when(repository.save(any(DeviceFingerprintDocument.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
-        FingerprintResponse response = deviceFingerprintService.handleFingerprint(request, "1.1.1.1");
+        FingerprintResponse response = deviceFingerprintService.handleFingerprint(request, IpAddress.parse("1.1.1.1"));
 
         assertTrue(response.matched());
         assertEquals("device-1", response.deviceId());
@@ -83,6 +124,344 @@ class DeviceFingerprintServiceTest {
         verify(repository, times(1)).save(existing);
     }
 
+    @Test
+    void shouldRecordStageTimersAndOutcome() {
+        // 测试未接入 GeoIP，地理位置分量为 0
+        properties.setThreshold(0.85d);
+        FingerprintRequest request = buildRequest("visitor-existing", "1.1.1.1");
+        DeviceFingerprintDocument existing = mapper.toDocument(request);
+        existing.setId("device-1");
+        when(repository.findByVisitorIdOrderByUpdatedAtDesc(eq("visitor-existing"), any(Pageable.class))).thenReturn(List.of(existing));
+        when(elasticsearchOperations.get("device-1", DeviceFingerprintDocument.class)).thenReturn(existing);
+        when(repository.save(any(DeviceFingerprintDocument.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        deviceFingerprintService.handleFingerprint(request, IpAddress.parse("1.1.1.1"));
+
+        for (String stage : List.of("visitor_lookup", "scoring", "winner_load", "save")) {
+            assertEquals(1, meterRegistry.get("fingerprint.matching.stage").tag("stage", stage).timer().count(), stage);
+        }
+        assertEquals(0, meterRegistry.get("fingerprint.matching.stage").tag("stage", "candidate_search").timer().count(),
+                "只能按 visitorId 匹配时 visitorId 查询已覆盖全部候选，不应再发出候选查询");
+        assertEquals(0, meterRegistry.get("fingerprint.matching.candidates").summary().totalAmount());
+        assertEquals(1, meterRegistry.get("fingerprint.matching.scored_candidates").summary().totalAmount());
+        assertEquals(1d, meterRegistry.get("fingerprint.matching.outcome").tag("outcome", "matched").counter().count());
+        assertEquals(0d, meterRegistry.get("fingerprint.matching.outcome").tag("outcome", "created").counter().count());
+        assertTrue(meterRegistry.get("fingerprint.matching.score").summary().max() >= properties.getThreshold());
+    }
+
+    @Test
+    void shouldResolveBatchWithSingleMultiSearchAndBulkSave() {
+        // 批量上报不经过 GeoIP 补全，地理位置分量为 0
+        properties.setThreshold(0.85d);
+        FingerprintRequest existingRequest = buildRequest("visitor-existing", "1.1.1.1");
+        DeviceFingerprintDocument existing = mapper.toDocument(existingRequest);
+        existing.setId("device-1");
+        existing.setObservationCount(5);
+        List<FingerprintRequest> requests = List.of(
+                existingRequest,
+                buildRequest("visitor-new", "2.2.2.2"),
+                buildRequest("visitor-new", "2.2.2.2"));
+        when(elasticsearchOperations.multiSearch(anyList(), eq(DeviceFingerprintDocument.class)))
+                .thenReturn(List.of(searchHitsOf(existing), emptySearchHits(), emptySearchHits()));
+        when(elasticsearchOperations.multiGet(any(Query.class), eq(DeviceFingerprintDocument.class)))
+                .thenReturn(List.of(MultiGetItem.of(existing, null)));
+
+        List<FingerprintResponse> responses = deviceFingerprintService.handleFingerprints(requests);
+
+        assertEquals(3, responses.size());
+        assertTrue(responses.get(0).matched());
+        assertEquals("device-1", responses.get(0).deviceId());
+        assertFalse(responses.get(1).matched());
+        assertTrue(responses.get(2).matched(), "同一批次内的重复上报应匹配到批内新建的设备");
+        assertEquals(responses.get(1).deviceId(), responses.get(2).deviceId());
+        assertEquals(6, existing.getObservationCount());
+        verify(elasticsearchOperations, times(1)).multiSearch(anyList(), eq(DeviceFingerprintDocument.class));
+        verify(elasticsearchOperations, times(1)).multiGet(any(Query.class), eq(DeviceFingerprintDocument.class));
+        verify(repository, times(1)).saveAll(anyIterable());
+        verify(repository, never()).save(any(DeviceFingerprintDocument.class));
+    }
+
+    @Test
+    void shouldRetryOnlyConflictedBatchItemsAfterBulkFailure() {
+        properties.setThreshold(0.85d);
+        FingerprintRequest existingRequest = buildRequest("visitor-existing", "1.1.1.1");
+        DeviceFingerprintDocument existing = mapper.toDocument(existingRequest);
+        existing.setId("device-1");
+        existing.setObservationCount(5);
+        DeviceFingerprintDocument reloaded = mapper.toDocument(existingRequest);
+        reloaded.setId("device-1");
+        reloaded.setObservationCount(6);
+        List<FingerprintRequest> requests = List.of(existingRequest, buildRequest("visitor-new", "2.2.2.2"));
+        when(elasticsearchOperations.multiSearch(anyList(), eq(DeviceFingerprintDocument.class)))
+                .thenReturn(List.of(searchHitsOf(existing), emptySearchHits()))
+                .thenReturn(List.of(searchHitsOf(reloaded)));
+        when(elasticsearchOperations.multiGet(any(Query.class), eq(DeviceFingerprintDocument.class)))
+                .thenReturn(List.of(MultiGetItem.of(existing, null)))
+                .thenReturn(List.of(MultiGetItem.of(reloaded, null)));
+        List<List<String>> savedIds = new ArrayList<>();
+        when(repository.saveAll(anyIterable())).thenAnswer(invocation -> {
+            List<String> ids = new ArrayList<>();
+            invocation.<Iterable<DeviceFingerprintDocument>>getArgument(0).forEach(doc -> ids.add(doc.getId()));
+            savedIds.add(ids);
+            if (savedIds.size() == 1) {
+                throw new BulkFailureException("conflict",
+                        Map.of("device-1", new BulkFailureException.FailureDetails(409, "version_conflict_engine_exception")));
+            }
+            return invocation.getArgument(0);
+        });
+
+        List<FingerprintResponse> responses = deviceFingerprintService.handleFingerprints(requests);
+
+        assertTrue(responses.get(0).matched());
+        assertEquals("device-1", responses.get(0).deviceId());
+        assertFalse(responses.get(1).matched());
+        assertEquals(2, savedIds.size());
+        assertEquals(List.of("device-1"), savedIds.get(1), "只有冲突的上报重新匹配并写入，新设备不应重复写入");
+        assertEquals(7, reloaded.getObservationCount());
+    }
+
+    @Test
+    void shouldRunVisitorLookupOnExecutorWhenConcurrentLookupEnabled() {
+        matchingProperties.setLookupMode(MatchingProperties.LookupMode.CONCURRENT);
+        // 阈值低于 visitorId 以外的权重之和，候选查询与 visitorId 查询同时发出
+        properties.setThreshold(0.5d);
+        AtomicInteger submitted = new AtomicInteger();
+        Executor executor = task -> {
+            submitted.incrementAndGet();
+            new Thread(task).start();
+        };
+        ReflectionTestUtils.setField(deviceFingerprintService, "lookupExecutor", executor);
+        FingerprintRequest request = buildRequest("visitor-existing", "1.1.1.1");
+        DeviceFingerprintDocument existing = mapper.toDocument(request);
+        existing.setId("device-1");
+        existing.setObservationCount(5);
+        when(repository.findByVisitorIdOrderByUpdatedAtDesc(eq("visitor-existing"), any(Pageable.class))).thenReturn(List.of(existing));
+        when(elasticsearchOperations.multiSearch(anyList(), eq(DeviceFingerprintDocument.class)))
+                .thenAnswer(invocation -> ((List<?>) invocation.getArgument(0)).stream().map(query -> searchHitsOf(existing)).toList());
+        when(elasticsearchOperations.get("device-1", DeviceFingerprintDocument.class)).thenReturn(existing);
+        when(repository.save(any(DeviceFingerprintDocument.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        FingerprintResponse response = deviceFingerprintService.handleFingerprint(request, IpAddress.parse("1.1.1.1"));
+
+        assertTrue(response.matched());
+        assertEquals("device-1", response.deviceId());
+        assertEquals(1, submitted.get());
+        assertEquals(6, existing.getObservationCount(), "两路查询返回的同一设备只应合并一次");
+    }
+
+    @Test
+    void shouldFailInsteadOfScoringPartialCandidatesWhenVisitorLookupTimesOut() {
+        matchingProperties.setLookupMode(MatchingProperties.LookupMode.CONCURRENT);
+        matchingProperties.setLookupTimeout(Duration.ofMillis(50));
+        properties.setThreshold(0.85d);
+        ReflectionTestUtils.setField(deviceFingerprintService, "lookupExecutor", (Executor) task -> new Thread(task).start());
+        FingerprintRequest request = buildRequest("visitor-existing", "1.1.1.1");
+        DeviceFingerprintDocument existing = mapper.toDocument(request);
+        existing.setId("device-1");
+        existing.setObservationCount(5);
+        when(repository.findByVisitorIdOrderByUpdatedAtDesc(eq("visitor-existing"), any(Pageable.class))).thenAnswer(invocation -> {
+            Thread.sleep(2_000);
+            return List.of();
+        });
+
+        assertTimeoutPreemptively(Duration.ofSeconds(1), () -> assertThrows(QueryTimeoutException.class,
+                () -> deviceFingerprintService.handleFingerprint(request, IpAddress.parse("1.1.1.1"))));
+
+        verify(repository, never()).save(any(DeviceFingerprintDocument.class));
+        assertEquals(5, existing.getObservationCount());
+    }
+
+    @Test
+    void shouldResolveVisitorAndCandidatesWithSingleMultiSearchInCombinedMode() {
+        matchingProperties.setLookupMode(MatchingProperties.LookupMode.COMBINED);
+        properties.setThreshold(0.85d);
+        FingerprintRequest request = buildRequest("visitor-existing", "1.1.1.1");
+        DeviceFingerprintDocument existing = mapper.toDocument(request);
+        existing.setId("device-1");
+        existing.setObservationCount(5);
+        when(elasticsearchOperations.multiSearch(anyList(), eq(DeviceFingerprintDocument.class)))
+                .thenReturn(List.of(searchHitsOf(existing)));
+        when(elasticsearchOperations.get("device-1", DeviceFingerprintDocument.class)).thenReturn(existing);
+        when(repository.save(any(DeviceFingerprintDocument.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        FingerprintResponse response = deviceFingerprintService.handleFingerprint(request, IpAddress.parse("1.1.1.1"));
+
+        assertTrue(response.matched());
+        assertEquals(6, existing.getObservationCount());
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Query>> queries = ArgumentCaptor.forClass(List.class);
+        verify(elasticsearchOperations, times(1)).multiSearch(queries.capture(), eq(DeviceFingerprintDocument.class));
+        assertEquals(1, queries.getValue().size(), "visitorId 查询兼作 VISITOR_ID 召回条件，不应重复发出");
+        assertEquals(5, queries.getValue().get(0).getMaxResults());
+        verify(repository, never()).findByVisitorIdOrderByUpdatedAtDesc(any(), any());
+        verify(elasticsearchOperations, never()).search(any(Query.class), eq(DeviceFingerprintDocument.class));
+    }
+
+    @Test
+    void shouldFetchOnlyWinnerInFullWhenScriptScoringEnabled() {
+        matchingProperties.setScriptScoringEnabled(true);
+        properties.setThreshold(0.85d);
+        FingerprintRequest request = buildRequest("visitor-existing", "1.1.1.1");
+        DeviceFingerprintDocument projection = mapper.toDocument(request);
+        projection.setId("device-1");
+        projection.setMetadata(null);
+        projection.setIpHistory(null);
+        DeviceFingerprintDocument full = mapper.toDocument(request);
+        full.setId("device-1");
+        full.setObservationCount(5);
+        when(elasticsearchOperations.search(any(NativeQuery.class), eq(DeviceFingerprintDocument.class)))
+                .thenReturn(searchHitsOf(projection));
+        when(elasticsearchOperations.get("device-1", DeviceFingerprintDocument.class)).thenReturn(full);
+        when(repository.save(any(DeviceFingerprintDocument.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        FingerprintResponse response = deviceFingerprintService.handleFingerprint(request, IpAddress.parse("1.1.1.1"));
+
+        assertTrue(response.matched());
+        assertEquals(6, full.getObservationCount());
+        verify(repository, never()).findByVisitorIdOrderByUpdatedAtDesc(any(), any());
+        verify(repository, times(1)).save(full);
+    }
+
+    @Test
+    void shouldSearchWarmTierOnlyOnHotMissAndPromoteMatch() {
+        matchingProperties.setLookupMode(MatchingProperties.LookupMode.COMBINED);
+        properties.setThreshold(0.85d);
+        IndexCoordinates warmIndex = IndexCoordinates.of("device_fingerprints_warm");
+        DeviceIndexTiering tiering = mock(DeviceIndexTiering.class);
+        when(tiering.warmIndex()).thenReturn(warmIndex);
+        ReflectionTestUtils.setField(deviceFingerprintService, "deviceIndexTiering", tiering);
+        FingerprintRequest request = buildRequest("visitor-dormant", "1.1.1.1");
+        DeviceFingerprintDocument dormant = mapper.toDocument(request);
+        dormant.setId("device-dormant");
+        dormant.setObservationCount(5);
+        when(elasticsearchOperations.multiSearch(anyList(), eq(DeviceFingerprintDocument.class)))
+                .thenReturn(List.of(emptySearchHits()));
+        when(elasticsearchOperations.multiSearch(anyList(), eq(DeviceFingerprintDocument.class), eq(warmIndex)))
+                .thenReturn(List.of(searchHitsOf(dormant)));
+        // 温索引别名滚动后指向多个索引，不能对其执行 get，胜出者按 ids 查询读取
+        when(elasticsearchOperations.search(argThat((Query query) -> List.of("device-dormant").equals(query.getIds())),
+                eq(DeviceFingerprintDocument.class), eq(warmIndex))).thenReturn(searchHitsOf(dormant));
+        when(repository.save(any(DeviceFingerprintDocument.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        FingerprintResponse response = deviceFingerprintService.handleFingerprint(request, IpAddress.parse("1.1.1.1"));
+
+        assertTrue(response.matched());
+        assertEquals("device-dormant", response.deviceId());
+        assertEquals(6, dormant.getObservationCount());
+        InOrder order = inOrder(tiering, repository);
+        order.verify(tiering).promote(dormant);
+        order.verify(repository).save(dormant);
+        verify(elasticsearchOperations, never()).get(any(), eq(DeviceFingerprintDocument.class), any(IndexCoordinates.class));
+    }
+
+    @Test
+    void shouldRetrieveProjectionsAndLoadOnlyWinnerInFull() {
+        matchingProperties.setLookupMode(MatchingProperties.LookupMode.COMBINED);
+        properties.setThreshold(0.85d);
+        FingerprintRequest request = buildRequest("visitor-existing", "1.1.1.1");
+        DeviceFingerprintDocument winner = mapper.toDocument(request);
+        winner.setId("device-1");
+        winner.setMetadata(null);
+        DeviceFingerprintDocument loser = mapper.toDocument(buildRequest("visitor-other", "9.9.9.9"));
+        loser.setId("device-2");
+        DeviceFingerprintDocument full = mapper.toDocument(request);
+        full.setId("device-1");
+        full.setObservationCount(5);
+        full.setMetadata(new HashMap<>(Map.of("firstSeenBy", "edge-1")));
+        when(elasticsearchOperations.multiSearch(anyList(), eq(DeviceFingerprintDocument.class)))
+                .thenReturn(List.of(searchHitsOf(winner, loser)));
+        when(elasticsearchOperations.get("device-1", DeviceFingerprintDocument.class)).thenReturn(full);
+        when(repository.save(any(DeviceFingerprintDocument.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        deviceFingerprintService.handleFingerprint(request, IpAddress.parse("1.1.1.1"));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Query>> queries = ArgumentCaptor.forClass(List.class);
+        verify(elasticsearchOperations).multiSearch(queries.capture(), eq(DeviceFingerprintDocument.class));
+        queries.getValue().forEach(query ->
+                assertArrayEquals(CandidateProjection.SOURCE_INCLUDES, query.getSourceFilter().getIncludes()));
+        verify(elasticsearchOperations, never()).get(eq("device-2"), eq(DeviceFingerprintDocument.class));
+        verify(repository).save(full);
+        assertEquals("edge-1", full.getMetadata().get("firstSeenBy"), "合并应基于完整文档，保留投影中不含的字段");
+        assertEquals(6, full.getObservationCount());
+    }
+
+    @Test
+    void shouldMergeWithScriptedUpdateAndKeepLocalCopyOnNoop() {
+        // 测试未接入 GeoIP，地理位置分量为 0
+        properties.setThreshold(0.85d);
+        ScriptedMergeUpdateBuilder updateBuilder = mock(ScriptedMergeUpdateBuilder.class);
+        ReflectionTestUtils.setField(deviceFingerprintService, "scriptedMergeUpdateBuilder", updateBuilder);
+        FingerprintRequest request = buildRequest("visitor-existing", "1.1.1.1");
+        DeviceFingerprintDocument existing = mapper.toDocument(request);
+        existing.setId("device-1");
+        existing.setObservationCount(5);
+        UpdateQuery update = UpdateQuery.builder("device-1")
+                .withScriptType(ScriptType.INLINE)
+                .withLang("painless")
+                .withScript("ctx.op = 'noop'")
+                .build();
+        when(repository.findByVisitorIdOrderByUpdatedAtDesc(eq("visitor-existing"), any(Pageable.class))).thenReturn(List.of(existing));
+        when(elasticsearchOperations.get("device-1", DeviceFingerprintDocument.class)).thenReturn(existing);
+        when(updateBuilder.build(eq("device-1"), any(DeviceFingerprintDocument.class), any(Instant.class), anyDouble()))
+                .thenReturn(update);
+        when(elasticsearchOperations.update(eq(update), any()))
+                .thenReturn(new UpdateResponse(UpdateResponse.Result.NOOP),
+                        new UpdateResponse(UpdateResponse.Result.UPDATED));
+
+        FingerprintResponse noop = deviceFingerprintService.handleFingerprint(request, IpAddress.parse("1.1.1.1"));
+        assertTrue(noop.matched());
+        assertEquals(5, existing.getObservationCount(), "noop 时 ES 未写入，本地副本不应累加观测次数");
+
+        deviceFingerprintService.handleFingerprint(request, IpAddress.parse("1.1.1.1"));
+        assertEquals(6, existing.getObservationCount());
+        verify(repository, never()).save(any(DeviceFingerprintDocument.class));
+    }
+
+    @Test
+    void shouldSkipCandidateSearchWhenVisitorHitReachesMaxScore() {
+        // 网络与证书分量不计权重时，相同上报与 visitorId 最新设备的得分即为可能的最高分
+        properties.setNetworkWeight(0d);
+        properties.setCertificateWeight(0d);
+        properties.setThreshold(0.7d);
+        FingerprintRequest request = buildRequest("visitor-existing", "1.1.1.1");
+        DeviceFingerprintDocument existing = mapper.toDocument(request);
+        existing.setId("device-1");
+        when(repository.findByVisitorIdOrderByUpdatedAtDesc(eq("visitor-existing"), any(Pageable.class))).thenReturn(List.of(existing));
+        when(elasticsearchOperations.get("device-1", DeviceFingerprintDocument.class)).thenReturn(existing);
+        when(repository.save(any(DeviceFingerprintDocument.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        FingerprintResponse response = deviceFingerprintService.handleFingerprint(request, IpAddress.parse("1.1.1.1"));
+
+        assertTrue(response.matched());
+        verify(elasticsearchOperations, never()).search(any(Query.class), eq(DeviceFingerprintDocument.class));
+        verify(elasticsearchOperations, never()).multiSearch(anyList(), eq(DeviceFingerprintDocument.class));
+    }
+
+    @Test
+    void shouldQueryEachCriterionWithItsOwnLimitInSelectivityOrder() {
+        // 阈值低于 visitorId 以外的权重之和时，其他 visitorId 的设备也可能匹配，需按全部条件召回
+        properties.setThreshold(0.5d);
+        matchingProperties.getCandidateLimits().put(MatchingProperties.CandidateCriterion.IP_ADDRESS, 3);
+        FingerprintRequest request = buildRequest("visitor-new", "2.2.2.2");
+        when(repository.findByVisitorIdOrderByUpdatedAtDesc(eq("visitor-new"), any(Pageable.class))).thenReturn(List.of());
+        when(elasticsearchOperations.multiSearch(anyList(), eq(DeviceFingerprintDocument.class)))
+                .thenAnswer(invocation -> ((List<?>) invocation.getArgument(0)).stream().map(query -> emptySearchHits()).toList());
+        when(repository.save(any(DeviceFingerprintDocument.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        deviceFingerprintService.handleFingerprint(request, IpAddress.parse("2.2.2.2"));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Query>> queries = ArgumentCaptor.forClass(List.class);
+        verify(elasticsearchOperations).multiSearch(queries.capture(), eq(DeviceFingerprintDocument.class));
+        List<Query> captured = queries.getValue();
+        assertEquals(4, captured.size(), "证书、canvas、LSH 与 IP 应分别查询，visitorId 已由单独的查询召回");
+        assertEquals(5, captured.get(0).getMaxResults());
+        assertEquals(3, captured.get(captured.size() - 1).getMaxResults());
+        verify(repository).findByVisitorIdOrderByUpdatedAtDesc(eq("visitor-new"),
+                argThat((Pageable pageable) -> pageable.getPageSize() == 5));
+    }
+
     private FingerprintRequest buildRequest(String visitorId, String ip) {
         return new FingerprintRequest(
                 visitorId,
@@ -124,10 +503,29 @@ class DeviceFingerprintServiceTest {
     }
 
     private SearchHits<DeviceFingerprintDocument> emptySearchHits() {
-        @SuppressWarnings("unchecked")
-        SearchHits<DeviceFingerprintDocument> hits = mock(SearchHits.class);
-        when(hits.getSearchHits()).thenReturn(List.of());
-        when(hits.iterator()).thenReturn(List.<SearchHit<DeviceFingerprintDocument>>of().iterator());
-        return hits;
+        return searchHitsOf(List.of());
+    }
+
+    private SearchHits<DeviceFingerprintDocument> searchHitsOf(DeviceFingerprintDocument... documents) {
+        List<SearchHit<DeviceFingerprintDocument>> hits = new ArrayList<>();
+        for (DeviceFingerprintDocument document : documents) {
+            @SuppressWarnings("unchecked")
+            SearchHit<DeviceFingerprintDocument> hit = mock(SearchHit.class, invocation ->
+                    "getContent".equals(invocation.getMethod().getName()) ? document : RETURNS_DEFAULTS.answer(invocation));
+            hits.add(hit);
+        }
+        return searchHitsOf(hits);
+    }
+
+    /**
+     * 以 Answer 代替 when 打桩，可直接在其他 {@code when(...).thenReturn(...)} 的参数中调用；每次迭代返回新的迭代器。
+     */
+    @SuppressWarnings("unchecked")
+    private SearchHits<DeviceFingerprintDocument> searchHitsOf(List<SearchHit<DeviceFingerprintDocument>> hits) {
+        return mock(SearchHits.class, invocation -> switch (invocation.getMethod().getName()) {
+            case "iterator" -> hits.iterator();
+            case "getSearchHits" -> hits;
+            default -> RETURNS_DEFAULTS.answer(invocation);
+        });
     }
 }
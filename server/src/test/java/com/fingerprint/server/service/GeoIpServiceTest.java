@@ -0,0 +1,71 @@
+package com.fingerprint.server.service;
+
+import com.fingerprint.server.config.GeoIpProperties;
+import com.fingerprint.server.service.support.GeoIpDatabase;
+import com.maxmind.geoip2.DatabaseReader;
+import com.maxmind.geoip2.exception.AddressNotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * GeoIP 查询服务单元测试。
+ */
+class GeoIpServiceTest {
+
+    private DatabaseReader reader;
+    private GeoIpDatabase database;
+    private SimpleMeterRegistry meterRegistry;
+    private GeoIpService geoIpService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        reader = mock(DatabaseReader.class);
+        when(reader.city(any(InetAddress.class))).thenThrow(new AddressNotFoundException("not found"));
+        database = new GeoIpDatabase(reader);
+        meterRegistry = new SimpleMeterRegistry();
+        geoIpService = new GeoIpService(database, new GeoIpProperties(), meterRegistry);
+    }
+
+    @Test
+    void shouldCacheNegativeResultByBinaryAddress() throws Exception {
+        assertTrue(geoIpService.lookup("36.112.10.1").isEmpty());
+        assertTrue(geoIpService.lookup("36.112.10.1").isEmpty());
+        // 同一 IPv6 地址的不同写法命中同一缓存项
+        assertTrue(geoIpService.lookup("2409:8a1e:0:0:0:0:0:1").isEmpty());
+        assertTrue(geoIpService.lookup("2409:8a1e::1").isEmpty());
+
+        verify(reader, times(2)).city(any(InetAddress.class));
+        assertEquals(2d, meterRegistry.get("cache.size").tag("cache", GeoIpService.CACHE_NAME).gauge().value());
+    }
+
+    @Test
+    void shouldSkipDatabaseForPrivateAddresses() throws Exception {
+        assertTrue(geoIpService.lookup("192.168.1.10").isEmpty());
+
+        verify(reader, never()).city(any(InetAddress.class));
+    }
+
+    @Test
+    void shouldInvalidateCacheWhenDatabaseIsReplaced() throws Exception {
+        geoIpService.lookup("36.112.10.1");
+        DatabaseReader updated = mock(DatabaseReader.class);
+        when(updated.city(any(InetAddress.class))).thenThrow(new AddressNotFoundException("not found"));
+
+        database.replace(updated);
+        geoIpService.lookup("36.112.10.1");
+
+        verify(updated, times(1)).city(any(InetAddress.class));
+    }
+}
@@ -0,0 +1,23 @@
+package com.fingerprint.server.service.support;
+
+import com.fingerprint.server.repository.DeviceFingerprintRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.annotations.SourceFilters;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * 候选投影测试。
+ */
+class CandidateProjectionTest {
+
+    @Test
+    void shouldUseSameFieldsForRepositoryVisitorLookup() throws NoSuchMethodException {
+        SourceFilters filters = DeviceFingerprintRepository.class
+                .getMethod("findByVisitorIdOrderByUpdatedAtDesc", String.class, Pageable.class)
+                .getAnnotation(SourceFilters.class);
+
+        assertArrayEquals(CandidateProjection.SOURCE_INCLUDES, filters.includes());
+    }
+}
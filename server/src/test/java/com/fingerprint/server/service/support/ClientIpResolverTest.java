@@ -0,0 +1,65 @@
+package com.fingerprint.server.service.support;
+
+import com.fingerprint.server.config.ClientIpProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 客户端 IP 解析测试。
+ */
+class ClientIpResolverTest {
+
+    private final ClientIpResolver resolver = new ClientIpResolver(new ClientIpProperties());
+
+    @Test
+    void shouldWalkForwardedForFromRightSkippingTrustedProxies() {
+        MockHttpServletRequest request = request("10.0.0.8");
+        // 最左侧地址由客户端自行填写，不可信
+        request.addHeader("X-Forwarded-For", "1.1.1.1, 36.112.10.1, 10.0.0.3");
+        request.addHeader("X-Forwarded-For", "10.0.0.2");
+
+        assertEquals("36.112.10.1", resolver.resolve(request).toString());
+    }
+
+    @Test
+    void shouldIgnoreForwardingHeadersFromUntrustedPeer() {
+        MockHttpServletRequest request = request("36.112.10.1");
+        request.addHeader("X-Forwarded-For", "1.1.1.1");
+        request.addHeader("X-Real-IP", "2.2.2.2");
+
+        assertEquals("36.112.10.1", resolver.resolve(request).toString());
+    }
+
+    @Test
+    void shouldStopAtMalformedEntryAndFallBackToRealIp() {
+        MockHttpServletRequest malformed = request("10.0.0.8");
+        malformed.addHeader("X-Forwarded-For", "36.112.10.1, unknown, 10.0.0.3");
+        assertEquals("10.0.0.3", resolver.resolve(malformed).toString());
+
+        MockHttpServletRequest realIp = request("127.0.0.1");
+        realIp.addHeader("X-Real-IP", "2409:8a1e:6c34:1f70:0:0:0:1");
+        assertEquals("2409:8a1e:6c34:1f70::1", resolver.resolve(realIp).toString());
+    }
+
+    @Test
+    void shouldHonourConfiguredTrustedProxies() {
+        ClientIpProperties properties = new ClientIpProperties();
+        properties.setTrustedProxies(List.of("203.0.113.0/24"));
+        ClientIpResolver customResolver = new ClientIpResolver(properties);
+
+        MockHttpServletRequest request = request("203.0.113.10");
+        request.addHeader("X-Forwarded-For", "36.112.10.1, 10.0.0.3");
+
+        assertEquals("10.0.0.3", customResolver.resolve(request).toString());
+    }
+
+    private static MockHttpServletRequest request(String remoteAddr) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(remoteAddr);
+        return request;
+    }
+}
@@ -0,0 +1,128 @@
+package com.fingerprint.server.service.support;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import com.fingerprint.server.config.DeviceIndexProperties;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.data.elasticsearch.core.index.AliasAction;
+import org.springframework.data.elasticsearch.core.index.AliasActions;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.reindex.ReindexRequest;
+import org.springframework.data.elasticsearch.core.reindex.ReindexResponse;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 设备索引映射版本管理测试。
+ */
+class DeviceIndexManagerTest {
+
+    private static final IndexCoordinates ALIAS = IndexCoordinates.of("device_fingerprints");
+    private static final IndexCoordinates TARGET = IndexCoordinates.of("device_fingerprints_v2");
+
+    private ElasticsearchOperations operations;
+    private DeviceIndexProperties properties;
+    private IndexOperations aliasOps;
+    private IndexOperations targetOps;
+
+    @BeforeEach
+    void setUp() {
+        operations = mock(ElasticsearchOperations.class);
+        properties = new DeviceIndexProperties();
+        aliasOps = mock(IndexOperations.class);
+        targetOps = mock(IndexOperations.class);
+        IndexOperations documentOps = mock(IndexOperations.class);
+        when(documentOps.createMapping()).thenReturn(Document.from(Map.of("_meta", Map.of("version", 2))));
+        when(operations.indexOps(DeviceFingerprintDocument.class)).thenReturn(documentOps);
+        when(operations.getIndexCoordinatesFor(DeviceFingerprintDocument.class)).thenReturn(ALIAS);
+        when(operations.indexOps(ALIAS)).thenReturn(aliasOps);
+        when(operations.indexOps(TARGET)).thenReturn(targetOps);
+    }
+
+    @Test
+    void shouldCreateVersionedIndexBehindAliasOnEmptyCluster() {
+        when(aliasOps.exists()).thenReturn(false);
+
+        manager().initialize();
+
+        verify(targetOps).create(argThat((Map<String, Object> settings) ->
+                "1000ms".equals(settings.get("index.refresh_interval"))), any(Document.class));
+        AliasActions actions = capturedAliasActions();
+        assertEquals(1, actions.getActions().size());
+        assertInstanceOf(AliasAction.Add.class, actions.getActions().get(0));
+    }
+
+    @Test
+    void shouldReindexLegacyIndexAndReplaceItWithAlias() {
+        properties.setAutoMigrate(true);
+        when(aliasOps.exists()).thenReturn(true);
+        when(aliasOps.getAliasesForIndex("device_fingerprints")).thenReturn(Map.of("device_fingerprints", Set.of()));
+        when(aliasOps.getMapping()).thenReturn(Map.of("properties", Map.of()));
+        ReindexResponse full = reindexed(100);
+        ReindexResponse catchUp = reindexed(3);
+        ReindexResponse settled = reindexed(0);
+        when(operations.reindex(any(ReindexRequest.class))).thenReturn(full, catchUp, settled);
+
+        manager().initialize();
+
+        verify(targetOps).create(any(), any(Document.class));
+        verify(operations, times(3)).reindex(any(ReindexRequest.class));
+        List<AliasAction> actions = capturedAliasActions().getActions();
+        assertInstanceOf(AliasAction.Add.class, actions.get(0));
+        assertInstanceOf(AliasAction.RemoveIndex.class, actions.get(1), "同名旧索引应在切换别名的同一请求中删除");
+        verify(aliasOps, never()).delete();
+    }
+
+    @Test
+    void shouldKeepOutdatedIndexWhenAutoMigrateIsDisabled() {
+        when(aliasOps.exists()).thenReturn(true);
+        when(aliasOps.getAliasesForIndex("device_fingerprints")).thenReturn(Map.of("device_fingerprints", Set.of()));
+        when(aliasOps.getMapping()).thenReturn(Map.of("properties", Map.of()));
+
+        manager().initialize();
+
+        verify(targetOps, never()).create(any(), any(Document.class));
+        verify(operations, never()).reindex(any(ReindexRequest.class));
+    }
+
+    @Test
+    void shouldReadMappingVersionFromMeta() {
+        assertEquals(3, DeviceIndexManager.versionOf(Map.of("_meta", Map.of("version", 3))));
+        assertEquals(DeviceIndexManager.LEGACY_VERSION, DeviceIndexManager.versionOf(Map.of("properties", Map.of())));
+        assertEquals("device_fingerprints_v3", DeviceIndexManager.indexName("device_fingerprints", 3));
+    }
+
+    private DeviceIndexManager manager() {
+        return new DeviceIndexManager(operations, mock(ElasticsearchClient.class, RETURNS_DEEP_STUBS), properties);
+    }
+
+    private AliasActions capturedAliasActions() {
+        ArgumentCaptor<AliasActions> captor = ArgumentCaptor.forClass(AliasActions.class);
+        verify(targetOps).alias(captor.capture());
+        return captor.getValue();
+    }
+
+    private static ReindexResponse reindexed(long created) {
+        ReindexResponse response = mock(ReindexResponse.class);
+        when(response.getCreated()).thenReturn(created);
+        return response;
+    }
+}
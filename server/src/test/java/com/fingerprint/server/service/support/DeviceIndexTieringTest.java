@@ -0,0 +1,142 @@
+package com.fingerprint.server.service.support;
+
+import com.fingerprint.server.config.IndexTieringProperties;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.elasticsearch.UncategorizedElasticsearchException;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.Query;
+import org.springframework.data.elasticsearch.core.query.SeqNoPrimaryTerm;
+import org.springframework.http.HttpStatus;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 设备索引冷热分层测试。
+ */
+class DeviceIndexTieringTest {
+
+    private static final IndexCoordinates HOT = IndexCoordinates.of("device_fingerprints");
+    private static final IndexCoordinates WARM = IndexCoordinates.of("device_fingerprints_warm");
+
+    private ElasticsearchOperations operations;
+    private IndexTieringProperties properties;
+    private DeviceIndexTiering tiering;
+
+    @BeforeEach
+    void setUp() {
+        operations = mock(ElasticsearchOperations.class);
+        when(operations.getIndexCoordinatesFor(DeviceFingerprintDocument.class)).thenReturn(HOT);
+        when(operations.indexOps(any(IndexCoordinates.class))).thenReturn(mock(IndexOperations.class));
+        properties = new IndexTieringProperties();
+        tiering = new DeviceIndexTiering(operations, properties, mock(DeviceIndexManager.class), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void shouldMoveStaleDevicesAndDropWarmCopiesOfConcurrentlyUpdatedOnes() {
+        Instant stale = Instant.now().minus(90, ChronoUnit.DAYS);
+        DeviceFingerprintDocument dormant = document("device-dormant", stale);
+        DeviceFingerprintDocument revived = document("device-revived", stale);
+        SearchHits<DeviceFingerprintDocument> staleHits = hitsOf(dormant, revived);
+        // 删除后热索引中仍能查到的设备即为迁移期间被更新的设备
+        SearchHits<DeviceFingerprintDocument> survivorHits = hitsOf(revived);
+        when(operations.search(any(Query.class), eq(DeviceFingerprintDocument.class), eq(HOT)))
+                .thenReturn(staleHits, survivorHits);
+
+        int migrated = tiering.migrate();
+
+        assertEquals(1, migrated);
+        verify(operations).bulkIndex(argThat((List<IndexQuery> copies) -> copies.size() == 2), eq(WARM));
+        verify(operations).delete(argThat((Query query) -> query.getIds().containsAll(List.of("device-dormant", "device-revived"))),
+                eq(DeviceFingerprintDocument.class), eq(HOT));
+        verify(operations).delete(argThat((Query query) -> query.getIds().equals(List.of("device-revived"))),
+                eq(DeviceFingerprintDocument.class), eq(WARM));
+        assertNull(dormant.getSeqNoPrimaryTerm(), "温索引副本不应携带热索引的 seq_no");
+    }
+
+    @Test
+    void shouldPromoteWarmDeviceIntoHotIndex() {
+        DeviceFingerprintDocument dormant = document("device-dormant", Instant.now());
+
+        tiering.promote(dormant);
+
+        assertNull(dormant.getSeqNoPrimaryTerm());
+        verify(operations).index(argThat((IndexQuery query) -> query.getOpType() == IndexQuery.OpType.CREATE
+                && "device-dormant".equals(query.getId())), eq(HOT));
+        verify(operations).delete(any(Query.class), eq(DeviceFingerprintDocument.class), eq(WARM));
+    }
+
+    @Test
+    void shouldRejectPromotionWhenHotCopyExists() {
+        when(operations.index(any(IndexQuery.class), eq(HOT))).thenThrow(new UncategorizedElasticsearchException(
+                "version_conflict_engine_exception", HttpStatus.CONFLICT.value(), null, null));
+
+        assertThrows(OptimisticLockingFailureException.class,
+                () -> tiering.promote(document("device-1", Instant.now())));
+
+        verify(operations, times(1)).delete(any(Query.class), eq(DeviceFingerprintDocument.class), eq(WARM));
+    }
+
+    @Test
+    void shouldKeepWarmCopyWhenPromotionFailsForOtherReasons() {
+        when(operations.index(any(IndexQuery.class), eq(HOT))).thenThrow(new UncategorizedElasticsearchException(
+                "es_rejected_execution_exception", HttpStatus.TOO_MANY_REQUESTS.value(), null, null));
+
+        assertThrows(UncategorizedElasticsearchException.class,
+                () -> tiering.promote(document("device-1", Instant.now())));
+
+        verify(operations, never()).delete(any(Query.class), eq(DeviceFingerprintDocument.class), eq(WARM));
+    }
+
+    @Test
+    void shouldNameNextRolloverGeneration() {
+        assertEquals("device_fingerprints_warm-000002", DeviceIndexTiering.nextIndexName("device_fingerprints_warm-000001"));
+        assertEquals("device_fingerprints_warm-000100", DeviceIndexTiering.nextIndexName("device_fingerprints_warm-000099"));
+    }
+
+    private static DeviceFingerprintDocument document(String id, Instant updatedAt) {
+        return DeviceFingerprintDocument.builder()
+                .id(id)
+                .updatedAt(updatedAt)
+                .seqNoPrimaryTerm(new SeqNoPrimaryTerm(1, 1))
+                .build();
+    }
+
+    private static SearchHits<DeviceFingerprintDocument> hitsOf(DeviceFingerprintDocument... documents) {
+        List<SearchHit<DeviceFingerprintDocument>> hits = new ArrayList<>();
+        for (DeviceFingerprintDocument document : documents) {
+            @SuppressWarnings("unchecked")
+            SearchHit<DeviceFingerprintDocument> hit = mock(SearchHit.class);
+            when(hit.getContent()).thenReturn(document);
+            when(hit.getId()).thenReturn(document.getId());
+            hits.add(hit);
+        }
+        @SuppressWarnings("unchecked")
+        SearchHits<DeviceFingerprintDocument> searchHits = mock(SearchHits.class);
+        when(searchHits.iterator()).thenAnswer(invocation -> hits.iterator());
+        return searchHits;
+    }
+}
@@ -0,0 +1,189 @@
+package com.fingerprint.server.service.support;
+
+import com.fingerprint.server.config.WriteBehindProperties;
+import com.fingerprint.server.mapper.DeviceFingerprintMapper;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import com.fingerprint.server.repository.DeviceFingerprintRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.elasticsearch.BulkFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 写后缓冲单元测试。
+ */
+class DeviceWriteBehindBufferTest {
+
+    private static final Consumer<DeviceFingerprintDocument> OBSERVE = document -> {
+        document.setObservationCount(document.getObservationCount() + 1);
+        if (!document.getIpHistory().contains("2.2.2.2")) {
+            document.getIpHistory().add(0, "2.2.2.2");
+        }
+    };
+
+    private DeviceFingerprintRepository repository;
+    private WriteBehindProperties properties;
+    private DeviceWriteBehindBuffer buffer;
+    private List<DeviceFingerprintDocument> written;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(DeviceFingerprintRepository.class);
+        properties = new WriteBehindProperties();
+        // 测试中手动刷写，避免定时任务干扰
+        properties.setFlushInterval(Duration.ofHours(1));
+        written = new ArrayList<>();
+        when(repository.saveAll(anyIterable())).thenAnswer(invocation -> {
+            Iterable<DeviceFingerprintDocument> documents = invocation.getArgument(0);
+            documents.forEach(written::add);
+            return documents;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (buffer != null) {
+            buffer.close();
+        }
+    }
+
+    @Test
+    void shouldCoalesceMergesOfSameDeviceIntoSingleWrite() {
+        buffer = new DeviceWriteBehindBuffer(repository, properties, new SimpleMeterRegistry());
+        DeviceFingerprintDocument cached = buildDocument("device-1", 5);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(buffer.merge(cached, OBSERVE).isPresent());
+        }
+        buffer.flush();
+
+        verify(repository, times(1)).saveAll(anyIterable());
+        assertEquals(1, written.size());
+        assertEquals(8, written.get(0).getObservationCount());
+        assertEquals(List.of("2.2.2.2", "1.1.1.1"), written.get(0).getIpHistory());
+        assertEquals(5, cached.getObservationCount(), "传入的缓存实例不应被修改");
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void shouldReplayMergesOnLatestDocumentAfterBulkConflict() {
+        BulkFailureException conflict = mock(BulkFailureException.class);
+        doReturn(Map.of("device-1", "version_conflict_engine_exception")).when(conflict).getFailedDocuments();
+        when(repository.saveAll(anyIterable()))
+                .thenThrow(conflict)
+                .thenAnswer(invocation -> {
+                    Iterable<DeviceFingerprintDocument> documents = invocation.getArgument(0);
+                    documents.forEach(written::add);
+                    return documents;
+                });
+        when(repository.findById("device-1")).thenReturn(Optional.of(buildDocument("device-1", 10)));
+        buffer = new DeviceWriteBehindBuffer(repository, properties, new SimpleMeterRegistry());
+
+        buffer.merge(buildDocument("device-1", 5), OBSERVE);
+        buffer.merge(buildDocument("device-1", 5), OBSERVE);
+        buffer.flush();
+        assertEquals(1, buffer.size());
+
+        buffer.flush();
+
+        assertEquals(1, written.size());
+        assertEquals(12, written.get(0).getObservationCount(), "其他节点的更新与本节点的两次观测都应保留");
+    }
+
+    @Test
+    void shouldNotReplayMergesOfTimedOutFlushThatWasApplied() {
+        BulkFailureException conflict = mock(BulkFailureException.class);
+        doReturn(Map.of("device-1", "version_conflict_engine_exception")).when(conflict).getFailedDocuments();
+        List<DeviceFingerprintDocument> applied = new ArrayList<>();
+        when(repository.saveAll(anyIterable()))
+                .thenAnswer(invocation -> {
+                    // ES 已写入，但客户端在收到响应前超时
+                    Iterable<DeviceFingerprintDocument> documents = invocation.getArgument(0);
+                    documents.forEach(document -> applied.add(DeviceFingerprintMapper.detach(document)));
+                    throw new DataAccessResourceFailureException("timeout");
+                })
+                .thenThrow(conflict);
+        when(repository.findById("device-1")).thenAnswer(invocation -> Optional.of(DeviceFingerprintMapper.detach(applied.get(0))));
+        buffer = new DeviceWriteBehindBuffer(repository, properties, new SimpleMeterRegistry());
+
+        buffer.merge(buildDocument("device-1", 5), OBSERVE);
+        buffer.merge(buildDocument("device-1", 5), OBSERVE);
+        buffer.flush();
+        assertEquals(1, buffer.size());
+
+        buffer.flush();
+
+        assertEquals(0, buffer.size(), "已生效的刷写不应重放合并操作");
+        verify(repository, times(2)).saveAll(anyIterable());
+        assertEquals(7, applied.get(0).getObservationCount());
+    }
+
+    @Test
+    void shouldRefreshCachedDeviceAfterSuccessfulFlush() {
+        HotDeviceCache cache = mock(HotDeviceCache.class);
+        buffer = new DeviceWriteBehindBuffer(repository, properties, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(buffer, "hotDeviceCache", cache);
+
+        buffer.merge(buildDocument("device-1", 5), OBSERVE);
+        buffer.flush();
+
+        verify(cache).put(written.get(0));
+        assertEquals(1, written.get(0).getFlushTokens().size());
+    }
+
+    @Test
+    void shouldReturnSnapshotDetachedFromPendingDocument() {
+        buffer = new DeviceWriteBehindBuffer(repository, properties, new SimpleMeterRegistry());
+
+        DeviceFingerprintDocument snapshot = buffer.merge(buildDocument("device-1", 5), OBSERVE).orElseThrow();
+        buffer.merge(buildDocument("device-1", 5), OBSERVE);
+        buffer.flush();
+
+        assertEquals(6, snapshot.getObservationCount(), "之后的合并不应修改已返回的快照");
+        assertEquals(7, written.get(0).getObservationCount());
+    }
+
+    @Test
+    void shouldFallBackWhenFullAndDrainOnClose() {
+        properties.setCapacity(1);
+        properties.setOfferTimeout(Duration.ofMillis(10));
+        buffer = new DeviceWriteBehindBuffer(repository, properties, new SimpleMeterRegistry());
+
+        assertTrue(buffer.merge(buildDocument("device-1", 1), OBSERVE).isPresent());
+        assertTrue(buffer.merge(buildDocument("device-2", 1), OBSERVE).isEmpty());
+
+        buffer.close();
+        buffer = null;
+
+        assertEquals(1, written.size());
+        assertEquals("device-1", written.get(0).getId());
+    }
+
+    private DeviceFingerprintDocument buildDocument(String id, int observationCount) {
+        return DeviceFingerprintDocument.builder()
+                .id(id)
+                .visitorId("visitor-" + id)
+                .observationCount(observationCount)
+                .ipHistory(new ArrayList<>(List.of("1.1.1.1")))
+                .build();
+    }
+}
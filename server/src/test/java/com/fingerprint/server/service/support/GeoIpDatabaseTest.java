@@ -0,0 +1,69 @@
+package com.fingerprint.server.service.support;
+
+import com.maxmind.db.ClosedDatabaseException;
+import com.maxmind.geoip2.DatabaseReader;
+import com.maxmind.geoip2.model.CityResponse;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 可热替换 GeoIP 数据库单元测试。
+ */
+class GeoIpDatabaseTest {
+
+    @Test
+    void shouldSwapReaderNotifyListenersAndCloseOldReader() throws Exception {
+        DatabaseReader initial = mock(DatabaseReader.class);
+        DatabaseReader updated = mock(DatabaseReader.class);
+        GeoIpDatabase database = new GeoIpDatabase(initial);
+        AtomicInteger reloads = new AtomicInteger();
+        database.onReload(reloads::incrementAndGet);
+
+        database.replace(updated);
+
+        assertSame(updated, database.reader());
+        assertEquals(1, reloads.get());
+        verify(initial).close();
+        verify(updated, never()).close();
+    }
+
+    @Test
+    void shouldStillSwapWhenListenerFails() {
+        DatabaseReader updated = mock(DatabaseReader.class);
+        GeoIpDatabase database = new GeoIpDatabase(mock(DatabaseReader.class));
+        database.onReload(() -> {
+            throw new IllegalStateException("cache unavailable");
+        });
+
+        database.replace(updated);
+
+        assertSame(updated, database.reader());
+    }
+
+    @Test
+    void shouldRetryLookupOnReplacementWhenReaderClosedMidQuery() throws Exception {
+        DatabaseReader initial = mock(DatabaseReader.class);
+        DatabaseReader updated = mock(DatabaseReader.class);
+        CityResponse response = mock(CityResponse.class);
+        InetAddress address = InetAddress.getByName("1.1.1.1");
+        GeoIpDatabase database = new GeoIpDatabase(initial);
+        // 查询进行中数据库被替换，旧实例随即关闭
+        when(initial.city(address)).thenAnswer(invocation -> {
+            database.replace(updated);
+            // 构造器不公开，以 mock 代替
+            throw mock(ClosedDatabaseException.class);
+        });
+        when(updated.city(address)).thenReturn(response);
+
+        assertSame(response, database.city(address));
+    }
+}
@@ -0,0 +1,93 @@
+package com.fingerprint.server.service.support;
+
+import com.fingerprint.server.config.DeviceCacheProperties;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 热点设备缓存单元测试。
+ */
+class HotDeviceCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private HotDeviceCache hotDeviceCache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        hotDeviceCache = new HotDeviceCache(new DeviceCacheProperties(), meterRegistry);
+    }
+
+    @Test
+    void shouldFindDeviceBySecondaryKey() {
+        DeviceFingerprintDocument cached = buildDocument("device-1", "visitor-1", "canvas-1", "1.1.1.1");
+        hotDeviceCache.put(cached);
+
+        List<DeviceFingerprintDocument> candidates = hotDeviceCache.findCandidates(
+                buildDocument(null, "visitor-other", "canvas-1", "9.9.9.9"));
+
+        assertEquals(1, candidates.size());
+        assertEquals(cached, candidates.get(0));
+    }
+
+    @Test
+    void shouldIsolateCachedDeviceFromCallerMutations() {
+        DeviceFingerprintDocument cached = buildDocument("device-1", "visitor-1", "canvas-1", "1.1.1.1");
+        hotDeviceCache.put(cached);
+        cached.getNetwork().setIpAddress("2.2.2.2");
+
+        DeviceFingerprintDocument first = hotDeviceCache.findCandidates(cached).get(0);
+        first.getIpHistory().add("3.3.3.3");
+        first.getBrowser().setCanvasFingerprint("canvas-2");
+        DeviceFingerprintDocument second = hotDeviceCache.findCandidates(cached).get(0);
+
+        assertNotSame(first, second, "每次查找都应返回独立副本");
+        assertEquals("1.1.1.1", second.getNetwork().getIpAddress());
+        assertEquals(List.of("1.1.1.1"), second.getIpHistory());
+        assertEquals("canvas-1", second.getBrowser().getCanvasFingerprint());
+    }
+
+    @Test
+    void shouldDeduplicateDeviceReachedThroughSeveralKeys() {
+        DeviceFingerprintDocument cached = buildDocument("device-1", "visitor-1", "canvas-1", "1.1.1.1");
+        hotDeviceCache.put(cached);
+
+        List<DeviceFingerprintDocument> candidates = hotDeviceCache.findCandidates(cached);
+
+        assertEquals(1, candidates.size());
+    }
+
+    @Test
+    void shouldMissAfterInvalidationAndExposeMetrics() {
+        hotDeviceCache.put(buildDocument("device-1", "visitor-1", "canvas-1", "1.1.1.1"));
+        hotDeviceCache.invalidate("device-1");
+
+        assertTrue(hotDeviceCache.findCandidates(buildDocument(null, "visitor-1", null, null)).isEmpty());
+        assertNotNull(meterRegistry.find("cache.gets").tag("cache", HotDeviceCache.CACHE_NAME).meter());
+    }
+
+    private DeviceFingerprintDocument buildDocument(String id, String visitorId, String canvas, String ip) {
+        return DeviceFingerprintDocument.builder()
+                .id(id)
+                .visitorId(visitorId)
+                .ipHistory(ip == null ? null : new ArrayList<>(List.of(ip)))
+                .browser(DeviceFingerprintDocument.BrowserFingerprint.builder()
+                        .canvasFingerprint(canvas)
+                        .build())
+                .network(DeviceFingerprintDocument.NetworkFingerprint.builder()
+                        .ipAddress(ip)
+                        .build())
+                .build();
+    }
+}
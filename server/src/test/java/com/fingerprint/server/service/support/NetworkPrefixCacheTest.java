@@ -0,0 +1,81 @@
+package com.fingerprint.server.service.support;
+
+import com.fingerprint.server.util.IpAddress;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 网段缓存单元测试。
+ */
+class NetworkPrefixCacheTest {
+
+    private NetworkPrefixCache<String> cache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        cache = new NetworkPrefixCache<>(1000, Duration.ofHours(1), new SimpleMeterRegistry(), "test");
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void shouldServeWholeIpv4NetworkFromSingleLoad() {
+        assertEquals("block-a", cache.get(address("36.112.10.1"), loader("block-a", 24)));
+        assertEquals("block-a", cache.get(address("36.112.10.254"), loader("unexpected", 24)));
+        assertEquals(1, loads.get());
+
+        assertEquals("block-b", cache.get(address("36.112.11.1"), loader("block-b", 24)));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void shouldPreferLongestMatchingPrefix() {
+        cache.get(address("10.1.2.3"), loader("narrow", 24));
+        cache.get(address("10.9.9.9"), loader("wide", 8));
+
+        assertEquals("narrow", cache.get(address("10.1.2.200"), loader("unexpected", 24)));
+        assertEquals("wide", cache.get(address("10.200.0.1"), loader("unexpected", 24)));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void shouldMatchIpv6NetworkWithoutCrossingIntoIpv4() {
+        cache.get(address("2001:db8:1234::1"), loader("v6", 48));
+
+        assertEquals("v6", cache.get(address("2001:db8:1234:ffff::1"), loader("unexpected", 48)));
+        assertEquals("other", cache.get(address("2001:db8:1235::1"), loader("other", 48)));
+        assertEquals("v4", cache.get(address("32.1.13.184"), loader("v4", 8)));
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void shouldNotCacheFailedLoadsAndClearOnInvalidate() {
+        assertNull(cache.get(address("1.2.3.4"), address -> null));
+        cache.get(address("1.2.3.4"), loader("loaded", 32));
+        assertEquals(1, loads.get());
+
+        cache.invalidateAll();
+
+        assertEquals("reloaded", cache.get(address("1.2.3.4"), loader("reloaded", 32)));
+        assertEquals(2, loads.get());
+    }
+
+    private Function<IpAddress, NetworkPrefixCache.Loaded<String>> loader(String value, int prefixLength) {
+        return address -> {
+            loads.incrementAndGet();
+            return new NetworkPrefixCache.Loaded<>(value, prefixLength);
+        };
+    }
+
+    private static IpAddress address(String ip) {
+        return IpAddress.parse(ip);
+    }
+}
@@ -0,0 +1,84 @@
+package com.fingerprint.server.service.support;
+
+import com.fingerprint.server.config.MatchingProperties;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.elasticsearch.core.convert.MappingElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.mapping.SimpleElasticsearchMappingContext;
+import org.springframework.data.elasticsearch.core.query.ScriptData;
+import org.springframework.data.elasticsearch.core.query.ScriptType;
+import org.springframework.data.elasticsearch.core.query.UpdateQuery;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 脚本局部更新构造测试。
+ */
+class ScriptedMergeUpdateBuilderTest {
+
+    private MatchingProperties properties;
+    private ScriptedMergeUpdateBuilder builder;
+
+    @BeforeEach
+    void setUp() {
+        MappingElasticsearchConverter converter = new MappingElasticsearchConverter(new SimpleElasticsearchMappingContext());
+        converter.afterPropertiesSet();
+        properties = new MatchingProperties();
+        builder = new ScriptedMergeUpdateBuilder(converter, properties);
+    }
+
+    @Test
+    void shouldSendOnlyReportedSubObjects() {
+        DeviceFingerprintDocument incoming = DeviceFingerprintDocument.builder()
+                .visitorId("visitor-1")
+                .network(DeviceFingerprintDocument.NetworkFingerprint.builder().ipAddress("1.1.1.1").build())
+                .build();
+
+        UpdateQuery update = builder.build("device-1", incoming, Instant.now(), 0.9d);
+
+        assertEquals("device-1", update.getId());
+        assertEquals("painless", update.getLang());
+        assertEquals(properties.getMaxConflictRetries(), update.getRetryOnConflict());
+        Map<String, Object> params = update.getParams();
+        Map<?, ?> replace = (Map<?, ?>) params.get("replace");
+        assertTrue(replace.containsKey("network"));
+        assertFalse(replace.containsKey("browser"), "上报中缺失的子对象不应覆盖已存储的值");
+        assertEquals("1.1.1.1", params.get("ip"));
+        assertEquals(DeviceFingerprintDocument.IP_HISTORY_LIMIT, params.get("ipHistoryLimit"));
+        assertNotNull(params.get("updatedAt"));
+        assertEquals(-1L, params.get("noopAfterMillis"), "未配置 touch interval 时不应产生 noop");
+    }
+
+    @Test
+    void shouldAllowNoopWithinTouchInterval() {
+        properties.setScriptedUpdateTouchInterval(Duration.ofMinutes(5));
+        Instant now = Instant.parse("2024-01-01T00:10:00Z");
+
+        UpdateQuery update = builder.build("device-1", DeviceFingerprintDocument.builder().build(), now, 0.9d);
+
+        assertEquals(Instant.parse("2024-01-01T00:05:00Z").toEpochMilli(), update.getParams().get("noopAfterMillis"));
+        assertNull(update.getParams().get("ip"));
+    }
+
+    @Test
+    void shouldBuildInlineScriptData() {
+        UpdateQuery update = builder.build("device-1", DeviceFingerprintDocument.builder().build(), Instant.now(), 0.9d);
+
+        ScriptData scriptData = update.getScriptData();
+
+        assertNotNull(scriptData, "脚本更新必须能转换为请求中的 script");
+        assertEquals(ScriptType.INLINE, scriptData.type());
+        assertEquals("painless", scriptData.language());
+        assertEquals(ScriptedMergeUpdateBuilder.SCRIPT, scriptData.script());
+        assertEquals(update.getParams(), scriptData.params());
+    }
+}
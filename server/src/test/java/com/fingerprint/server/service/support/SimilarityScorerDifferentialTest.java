@@ -0,0 +1,397 @@
+package com.fingerprint.server.service.support;
+
+import com.fingerprint.server.config.SimilarityProperties;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 预编译打分与原始逐字段打分实现的差分测试，要求结果逐位一致。
+ */
+class SimilarityScorerDifferentialTest {
+
+    private static final String[] STRINGS = {null, "", "  ", "zh-CN", "ZH-cn", "en-US", "Asia/Shanghai", "UA", "ua", "x"};
+    private static final String[] UA_FAMILIES = {null, " ", "Chrome", "Safari", "iOS", "mobile"};
+    private static final String[] LIST_VALUES = {null, "PluginA", "PluginB", "plugina", "cert1", "pin1", "Aa", "BB"};
+
+    private SimilarityProperties properties;
+    private SimilarityScorer scorer;
+    private ReferenceScorer reference;
+
+    @BeforeEach
+    void setUp() {
+        properties = new SimilarityProperties();
+        scorer = new SimilarityScorer(properties);
+        reference = new ReferenceScorer(properties);
+    }
+
+    @Test
+    void shouldMatchReferenceForFixedCases() {
+        DeviceFingerprintDocument base = fixedDocument("visitor-1", "1.1.1.1");
+        DeviceFingerprintDocument otherNetwork = fixedDocument("visitor-1", "8.8.8.8");
+        DeviceFingerprintDocument stranger = fixedDocument("visitor-2", "8.8.8.8");
+
+        assertSameScore(base, base);
+        assertSameScore(base, otherNetwork);
+        assertSameScore(otherNetwork, base);
+        assertSameScore(base, stranger);
+        assertSameScore(base, new DeviceFingerprintDocument());
+        assertSameScore(new DeviceFingerprintDocument(), new DeviceFingerprintDocument());
+    }
+
+    @Test
+    void shouldMatchReferenceForRandomizedInputs() {
+        Random random = new Random(20251109L);
+        for (int i = 0; i < 20_000; i++) {
+            DeviceFingerprintDocument incoming = randomDocument(random);
+            DeviceFingerprintDocument existing = random.nextInt(4) == 0 ? incoming : randomDocument(random);
+            assertSameScore(incoming, existing);
+        }
+    }
+
+    @Test
+    void shouldReuseCompiledFingerprintAcrossCandidates() {
+        Random random = new Random(42L);
+        DeviceFingerprintDocument incoming = randomDocument(random);
+        CompiledFingerprint compiled = scorer.compile(incoming);
+        for (int i = 0; i < 1_000; i++) {
+            DeviceFingerprintDocument existing = randomDocument(random);
+            assertEquals(reference.calculate(incoming, existing), scorer.calculate(compiled, existing));
+        }
+    }
+
+    private void assertSameScore(DeviceFingerprintDocument incoming, DeviceFingerprintDocument existing) {
+        assertEquals(reference.calculate(incoming, existing), scorer.calculate(incoming, existing),
+                () -> "score differs for incoming=" + incoming + " existing=" + existing);
+    }
+
+    private DeviceFingerprintDocument randomDocument(Random random) {
+        DeviceFingerprintDocument.DeviceFingerprintDocumentBuilder builder = DeviceFingerprintDocument.builder()
+                .visitorId(pick(random, new String[]{null, "v1", "v2"}));
+        if (random.nextInt(5) != 0) {
+            builder.browser(DeviceFingerprintDocument.BrowserFingerprint.builder()
+                    .userAgent(pick(random, STRINGS))
+                    .language(pick(random, STRINGS))
+                    .timezone(pick(random, STRINGS))
+                    .plugins(randomList(random))
+                    .canvasFingerprint(pick(random, STRINGS))
+                    .webglFingerprint(pick(random, STRINGS))
+                    .audioFingerprint(pick(random, STRINGS))
+                    .uaFamily(pick(random, UA_FAMILIES))
+                    .uaMajorVersion(randomInteger(random))
+                    .uaOs(pick(random, UA_FAMILIES))
+                    .uaDeviceClass(pick(random, UA_FAMILIES))
+                    .build());
+        }
+        if (random.nextInt(5) != 0) {
+            builder.device(DeviceFingerprintDocument.DeviceFingerprint.builder()
+                    .platform(pick(random, STRINGS))
+                    .architecture(pick(random, STRINGS))
+                    .touchPoints(randomInteger(random))
+                    .deviceMemory(randomInteger(random))
+                    .cpuCores(randomInteger(random))
+                    .screenResolution(pick(random, STRINGS))
+                    .colorDepth(pick(random, STRINGS))
+                    .build());
+        }
+        if (random.nextInt(5) != 0) {
+            builder.network(DeviceFingerprintDocument.NetworkFingerprint.builder()
+                    .ipAddress(pick(random, STRINGS))
+                    .ipv6Address(pick(random, STRINGS))
+                    .connectionType(pick(random, STRINGS))
+                    .downlinkMbps(randomDouble(random, 20d))
+                    .rtt(randomDouble(random, 200d))
+                    .isp(pick(random, STRINGS))
+                    .build());
+        }
+        if (random.nextInt(5) != 0) {
+            builder.geoLocation(DeviceFingerprintDocument.GeoLocation.builder()
+                    .country(pick(random, STRINGS))
+                    .region(pick(random, STRINGS))
+                    .city(pick(random, STRINGS))
+                    .timezone(pick(random, STRINGS))
+                    .latitude(random.nextInt(6) == 0 ? null : 31d + random.nextDouble() * 3d)
+                    .longitude(random.nextInt(6) == 0 ? null : 121d + random.nextDouble() * 3d)
+                    .build());
+        }
+        if (random.nextInt(5) != 0) {
+            builder.certificate(DeviceFingerprintDocument.CertificateFingerprint.builder()
+                    .fingerprints(randomList(random))
+                    .pinningHashes(randomList(random))
+                    .build());
+        }
+        return builder.build();
+    }
+
+    private List<String> randomList(Random random) {
+        int size = random.nextInt(7) - 1;
+        if (size < 0) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(pick(random, LIST_VALUES));
+        }
+        return values;
+    }
+
+    private Integer randomInteger(Random random) {
+        return random.nextInt(4) == 0 ? null : random.nextInt(4);
+    }
+
+    private Double randomDouble(Random random, double max) {
+        return random.nextInt(4) == 0 ? null : (random.nextBoolean() ? Math.floor(random.nextDouble() * 4) : random.nextDouble() * max);
+    }
+
+    private String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private DeviceFingerprintDocument fixedDocument(String visitorId, String ipAddress) {
+        return DeviceFingerprintDocument.builder()
+                .id("test")
+                .visitorId(visitorId)
+                .browser(DeviceFingerprintDocument.BrowserFingerprint.builder()
+                        .userAgent("UA")
+                        .language("zh-CN")
+                        .timezone("Asia/Shanghai")
+                        .plugins(List.of("PluginA", "PluginB"))
+                        .canvasFingerprint("canvas")
+                        .webglFingerprint("webgl")
+                        .audioFingerprint("audio")
+                        .build())
+                .device(DeviceFingerprintDocument.DeviceFingerprint.builder()
+                        .platform("macOS")
+                        .architecture("x86_64")
+                        .touchPoints(5)
+                        .deviceMemory(16)
+                        .cpuCores(8)
+                        .screenResolution("2560x1600")
+                        .colorDepth("24")
+                        .build())
+                .network(DeviceFingerprintDocument.NetworkFingerprint.builder()
+                        .ipAddress(ipAddress)
+                        .connectionType("wifi")
+                        .downlinkMbps(120d)
+                        .rtt(20d)
+                        .isp("ISP")
+                        .build())
+                .geoLocation(DeviceFingerprintDocument.GeoLocation.builder()
+                        .country("CN")
+                        .region("SH")
+                        .city("Shanghai")
+                        .latitude(31.2304)
+                        .longitude(121.4737)
+                        .timezone("Asia/Shanghai")
+                        .build())
+                .certificate(DeviceFingerprintDocument.CertificateFingerprint.builder()
+                        .fingerprints(List.of("cert1"))
+                        .pinningHashes(List.of("pin1"))
+                        .build())
+                .build();
+    }
+
+    /**
+     * 预编译之前的逐字段打分实现，作为差分基准保留。
+     */
+    private static final class ReferenceScorer {
+
+        private final SimilarityProperties similarityProperties;
+
+        private ReferenceScorer(SimilarityProperties similarityProperties) {
+            this.similarityProperties = similarityProperties;
+        }
+
+        double calculate(DeviceFingerprintDocument incoming, DeviceFingerprintDocument existing) {
+            if (incoming == null || existing == null) {
+                return 0d;
+            }
+            double score = 0d;
+            score += similarityProperties.getVisitorWeight() * (StringUtils.equals(incoming.getVisitorId(), existing.getVisitorId()) ? 1d : 0d);
+            score += similarityProperties.getBrowserWeight() * browserScore(incoming.getBrowser(), existing.getBrowser());
+            score += similarityProperties.getDeviceWeight() * deviceScore(incoming.getDevice(), existing.getDevice());
+            score += similarityProperties.getNetworkWeight() * networkScore(incoming.getNetwork(), existing.getNetwork());
+            score += similarityProperties.getGeoWeight() * geoScore(incoming.getGeoLocation(), existing.getGeoLocation());
+            score += similarityProperties.getCertificateWeight() * certificateScore(incoming.getCertificate(), existing.getCertificate());
+            return Math.min(1d, Math.max(0d, score));
+        }
+
+        private double browserScore(DeviceFingerprintDocument.BrowserFingerprint incoming,
+                                    DeviceFingerprintDocument.BrowserFingerprint existing) {
+            if (incoming == null || existing == null) {
+                return 0d;
+            }
+            return average(
+                    userAgentScore(incoming, existing),
+                    normalizedStringScore(incoming.getLanguage(), existing.getLanguage()),
+                    normalizedStringScore(incoming.getTimezone(), existing.getTimezone()),
+                    listJaccard(incoming.getPlugins(), existing.getPlugins()),
+                    normalizedStringScore(incoming.getCanvasFingerprint(), existing.getCanvasFingerprint()),
+                    normalizedStringScore(incoming.getWebglFingerprint(), existing.getWebglFingerprint()),
+                    normalizedStringScore(incoming.getAudioFingerprint(), existing.getAudioFingerprint()));
+        }
+
+        private double deviceScore(DeviceFingerprintDocument.DeviceFingerprint incoming,
+                                   DeviceFingerprintDocument.DeviceFingerprint existing) {
+            if (incoming == null || existing == null) {
+                return 0d;
+            }
+            return average(
+                    normalizedStringScore(incoming.getPlatform(), existing.getPlatform()),
+                    normalizedStringScore(incoming.getArchitecture(), existing.getArchitecture()),
+                    normalizedNumericScore(incoming.getTouchPoints(), existing.getTouchPoints()),
+                    normalizedNumericScore(incoming.getDeviceMemory(), existing.getDeviceMemory()),
+                    normalizedNumericScore(incoming.getCpuCores(), existing.getCpuCores()),
+                    normalizedStringScore(incoming.getScreenResolution(), existing.getScreenResolution()),
+                    normalizedStringScore(incoming.getColorDepth(), existing.getColorDepth()));
+        }
+
+        private double networkScore(DeviceFingerprintDocument.NetworkFingerprint incoming,
+                                    DeviceFingerprintDocument.NetworkFingerprint existing) {
+            if (incoming == null || existing == null) {
+                return 0d;
+            }
+            return average(
+                    normalizedStringScore(incoming.getIpAddress(), existing.getIpAddress()),
+                    normalizedStringScore(incoming.getIpv6Address(), existing.getIpv6Address()),
+                    normalizedStringScore(incoming.getConnectionType(), existing.getConnectionType()),
+                    normalizedDoubleRange(incoming.getDownlinkMbps(), existing.getDownlinkMbps(), 5d),
+                    normalizedDoubleRange(incoming.getRtt(), existing.getRtt(), 50d),
+                    normalizedStringScore(incoming.getIsp(), existing.getIsp()));
+        }
+
+        private double geoScore(DeviceFingerprintDocument.GeoLocation incoming,
+                                DeviceFingerprintDocument.GeoLocation existing) {
+            if (incoming == null || existing == null) {
+                return 0d;
+            }
+            Double distanceKm = geoDistance(incoming, existing);
+            double distanceScore = distanceKm == null ? 0d : switch (distanceKm.intValue()) {
+                case 0 -> 1d;
+                default -> distanceKm < 20 ? 0.9d : distanceKm < 50 ? 0.7d : distanceKm < 200 ? 0.4d : 0.1d;
+            };
+            return average(
+                    normalizedStringScore(incoming.getCountry(), existing.getCountry()),
+                    normalizedStringScore(incoming.getRegion(), existing.getRegion()),
+                    normalizedStringScore(incoming.getCity(), existing.getCity()),
+                    normalizedStringScore(incoming.getTimezone(), existing.getTimezone()),
+                    distanceScore);
+        }
+
+        private double certificateScore(DeviceFingerprintDocument.CertificateFingerprint incoming,
+                                        DeviceFingerprintDocument.CertificateFingerprint existing) {
+            if (incoming == null || existing == null) {
+                return 0d;
+            }
+            return average(
+                    listJaccard(incoming.getFingerprints(), existing.getFingerprints()),
+                    listJaccard(incoming.getPinningHashes(), existing.getPinningHashes()));
+        }
+
+        private double userAgentScore(DeviceFingerprintDocument.BrowserFingerprint incoming,
+                                      DeviceFingerprintDocument.BrowserFingerprint existing) {
+            double exact = normalizedStringScore(incoming.getUserAgent(), existing.getUserAgent());
+            if (exact == 1d || StringUtils.isBlank(incoming.getUaFamily()) || StringUtils.isBlank(existing.getUaFamily())) {
+                return exact;
+            }
+            int matched = 0;
+            matched += incoming.getUaFamily().equals(existing.getUaFamily()) ? 4 : 0;
+            matched += StringUtils.isNotBlank(incoming.getUaOs()) && incoming.getUaOs().equals(existing.getUaOs()) ? 3 : 0;
+            matched += StringUtils.isNotBlank(incoming.getUaDeviceClass())
+                    && incoming.getUaDeviceClass().equals(existing.getUaDeviceClass()) ? 2 : 0;
+            matched += normalizedNumericScore(incoming.getUaMajorVersion(), existing.getUaMajorVersion()) == 1d ? 1 : 0;
+            return matched / 10d;
+        }
+
+        private double normalizedStringScore(String a, String b) {
+            if (StringUtils.isBlank(a) || StringUtils.isBlank(b)) {
+                return 0d;
+            }
+            return StringUtils.equalsIgnoreCase(a, b) ? 1d : 0d;
+        }
+
+        private double normalizedNumericScore(Integer a, Integer b) {
+            if (a == null || b == null) {
+                return 0d;
+            }
+            return Objects.equals(a, b) ? 1d : 0d;
+        }
+
+        private double normalizedDoubleRange(Double a, Double b, double tolerance) {
+            if (a == null || b == null) {
+                return 0d;
+            }
+            double diff = Math.abs(a - b);
+            if (diff < 0.0001d) {
+                return 1d;
+            }
+            return diff <= tolerance ? Math.max(0d, 1d - diff / tolerance) : 0d;
+        }
+
+        private double listJaccard(List<String> a, List<String> b) {
+            if (a == null || b == null || a.isEmpty() || b.isEmpty()) {
+                return 0d;
+            }
+            Set<String> union = new HashSet<>();
+            Set<String> intersection = new HashSet<>();
+            for (String value : a) {
+                if (value != null) {
+                    union.add(value);
+                }
+            }
+            for (String value : b) {
+                if (value != null) {
+                    if (union.contains(value)) {
+                        intersection.add(value);
+                    }
+                    union.add(value);
+                }
+            }
+            if (union.isEmpty()) {
+                return 0d;
+            }
+            return (double) intersection.size() / (double) union.size();
+        }
+
+        private double average(double... values) {
+            double sum = 0d;
+            int count = 0;
+            for (double value : values) {
+                if (!Double.isNaN(value)) {
+                    sum += value;
+                    count++;
+                }
+            }
+            return count == 0 ? 0d : sum / count;
+        }
+
+        private Double geoDistance(DeviceFingerprintDocument.GeoLocation incoming,
+                                   DeviceFingerprintDocument.GeoLocation existing) {
+            Double lat1 = incoming.getLatitude();
+            Double lon1 = incoming.getLongitude();
+            Double lat2 = existing.getLatitude();
+            Double lon2 = existing.getLongitude();
+            if (lat1 == null || lon1 == null || lat2 == null || lon2 == null) {
+                return null;
+            }
+            double R = 6371.0d;
+            double dLat = Math.toRadians(lat2 - lat1);
+            double dLon = Math.toRadians(lon2 - lon1);
+            double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                    + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                    * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+            double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+            return R * c;
+        }
+    }
+}
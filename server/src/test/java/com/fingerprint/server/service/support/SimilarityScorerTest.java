@@ -30,6 +30,38 @@ class SimilarityScorerTest {
         assertEquals(1.0d, score, 1e-6, "完全一致的指纹相似度应为 1");
     }
 
+    @Test
+    void shouldBoundScoreByWeightsOfAvailableComponents() {
+        DeviceFingerprintDocument incoming = buildDocument("visitor-1", "1.1.1.1");
+        DeviceFingerprintDocument other = buildDocument("visitor-2", "1.1.1.1");
+        other.setGeoLocation(null);
+        CompiledFingerprint compiled = similarityScorer.compile(incoming);
+
+        assertEquals(similarityScorer.calculate(compiled, incoming), similarityScorer.upperBound(compiled, incoming), 1e-9);
+        assertEquals(0.55d, similarityScorer.upperBound(compiled, other), 1e-9, "visitorId 与地理位置分量不应计入上界");
+        assertTrue(similarityScorer.calculate(compiled, other) <= similarityScorer.upperBound(compiled, other));
+        assertEquals(0.65d, similarityScorer.maxScore(compiled, false), 1e-9);
+        assertEquals(0.65d, similarityScorer.maxScoreWithoutVisitor(), 1e-9);
+    }
+
+    @Test
+    void shouldScoreUserAgentByComponentsAfterBrowserUpdate() {
+        String chrome123 = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/123.0.0.0 Safari/537.36";
+        String chrome124 = chrome123.replace("Chrome/123", "Chrome/124");
+        DeviceFingerprintDocument existing = withUserAgent(buildDocument("visitor-1", "1.1.1.1"), chrome123, true);
+        DeviceFingerprintDocument updated = withUserAgent(buildDocument("visitor-1", "1.1.1.1"), chrome124, true);
+        DeviceFingerprintDocument unchanged = withUserAgent(buildDocument("visitor-1", "1.1.1.1"), chrome123, true);
+        DeviceFingerprintDocument legacy = withUserAgent(buildDocument("visitor-1", "1.1.1.1"), chrome123, false);
+        double browserWeight = new SimilarityProperties().getBrowserWeight();
+        // 以 UA 未变化时的得分为基准，只比较 UA 分量带来的差值
+        double baseline = similarityScorer.calculate(unchanged, existing);
+
+        assertEquals(baseline - browserWeight * 0.1d / 7, similarityScorer.calculate(updated, existing), 1e-9,
+                "仅主版本号变化时 UA 分量应得 0.9");
+        assertEquals(baseline - browserWeight / 7, similarityScorer.calculate(updated, legacy), 1e-9,
+                "历史文档没有解析分项时退回整串比较");
+    }
+
     @Test
     void shouldDecreaseScoreWhenNetworkDiffers() {
         DeviceFingerprintDocument incoming = buildDocument("visitor-1", "1.1.1.1");
@@ -62,7 +94,7 @@ class SimilarityScorerTest {
                         .build())
                 .network(DeviceFingerprintDocument.NetworkFingerprint.builder()
                         .ipAddress(ipAddress)
-                        .ipv6Address(null)
+                        .ipv6Address("2001:db8::1")
                         .connectionType("wifi")
                         .downlinkMbps(120d)
                         .rtt(20d)
@@ -82,4 +114,16 @@ class SimilarityScorerTest {
                         .build())
                 .build();
     }
+
+    private DeviceFingerprintDocument withUserAgent(DeviceFingerprintDocument document, String userAgent, boolean parsed) {
+        document.getBrowser().setUserAgent(userAgent);
+        if (parsed) {
+            UserAgentParser.UserAgentInfo info = UserAgentParser.parseUncached(userAgent);
+            document.getBrowser().setUaFamily(info.family());
+            document.getBrowser().setUaMajorVersion(info.majorVersion());
+            document.getBrowser().setUaOs(info.os());
+            document.getBrowser().setUaDeviceClass(info.deviceClass());
+        }
+        return document;
+    }
 }
@@ -0,0 +1,65 @@
+package com.fingerprint.server.service.support;
+
+import com.fingerprint.server.config.UserAgentProperties;
+import com.fingerprint.server.model.DeviceFingerprintDocument;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * User-Agent 解析测试。
+ */
+class UserAgentParserTest {
+
+    private static final String CHROME_WINDOWS = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 "
+            + "(KHTML, like Gecko) Chrome/123.0.6312.86 Safari/537.36";
+    private static final String EDGE_WINDOWS = CHROME_WINDOWS + " Edg/123.0.2420.65";
+    private static final String SAFARI_IPHONE = "Mozilla/5.0 (iPhone; CPU iPhone OS 17_4 like Mac OS X) AppleWebKit/605.1.15 "
+            + "(KHTML, like Gecko) Version/17.4 Mobile/15E148 Safari/604.1";
+    private static final String CHROME_ANDROID_TABLET = "Mozilla/5.0 (Linux; Android 14; SM-X710) AppleWebKit/537.36 "
+            + "(KHTML, like Gecko) Chrome/122.0.0.0 Safari/537.36";
+    private static final String WECHAT_ANDROID = "Mozilla/5.0 (Linux; Android 13; V2227A) AppleWebKit/537.36 "
+            + "(KHTML, like Gecko) Chrome/116.0.0.0 Mobile Safari/537.36 MicroMessenger/8.0.47.2560";
+    private static final String GOOGLEBOT = "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html) "
+            + "Chrome/120.0.0.0 Safari/537.36";
+
+    private UserAgentParser parser;
+
+    @BeforeEach
+    void setUp() {
+        parser = new UserAgentParser(new UserAgentProperties(), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void shouldParseCommonUserAgents() {
+        assertEquals(new UserAgentParser.UserAgentInfo("Chrome", 123, "Windows", "desktop"), parser.parse(CHROME_WINDOWS));
+        assertEquals(new UserAgentParser.UserAgentInfo("Edge", 123, "Windows", "desktop"), parser.parse(EDGE_WINDOWS));
+        assertEquals(new UserAgentParser.UserAgentInfo("Safari", 17, "iOS", "mobile"), parser.parse(SAFARI_IPHONE));
+        assertEquals(new UserAgentParser.UserAgentInfo("Chrome", 122, "Android", "tablet"), parser.parse(CHROME_ANDROID_TABLET));
+        assertEquals(new UserAgentParser.UserAgentInfo("WeChat", 8, "Android", "mobile"), parser.parse(WECHAT_ANDROID));
+        assertEquals("bot", parser.parse(GOOGLEBOT).deviceClass());
+    }
+
+    @Test
+    void shouldLeaveComponentsEmptyForUnknownUserAgent() {
+        DeviceFingerprintDocument.BrowserFingerprint browser = DeviceFingerprintDocument.BrowserFingerprint.builder()
+                .userAgent("curl/8.4.0")
+                .uaFamily("Chrome")
+                .build();
+
+        parser.enrich(browser);
+
+        assertNull(browser.getUaFamily(), "无法识别时应清除旧的分项");
+        assertNull(browser.getUaDeviceClass());
+        assertNull(parser.parse(" ").family());
+    }
+
+    @Test
+    void shouldParseEachDistinctUserAgentOnce() {
+        assertSame(parser.parse(CHROME_WINDOWS), parser.parse(new String(CHROME_WINDOWS)));
+    }
+}
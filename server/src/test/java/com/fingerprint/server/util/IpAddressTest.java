@@ -0,0 +1,74 @@
+package com.fingerprint.server.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * IP 地址解析与分类测试。
+ */
+class IpAddressTest {
+
+    @Test
+    void shouldParseAndFormatLikeInetAddress() throws Exception {
+        String[] samples = {
+                "36.112.10.1", "0.0.0.0", "255.255.255.255",
+                "2409:8a1e:6c34:1f70::1", "::", "::1", "1::", "fe80::1:2",
+                "2001:db8:0:0:1:0:0:1", "2001:0db8:0000:0000:0000:0000:0000:0001", "::ffff:1.2.3.4", "64:ff9b::10.0.0.1"
+        };
+        for (String sample : samples) {
+            IpAddress address = IpAddress.parse(sample);
+            InetAddress expected = InetAddress.getByName(sample);
+            assertEquals(expected, address.toInetAddress(), sample);
+            assertEquals(IpAddress.parse(expected.getHostAddress()), address, sample);
+        }
+        assertEquals("2001:db8::1:0:0:1", IpAddress.parse("2001:db8:0:0:1:0:0:1").toString());
+        assertEquals("1.2.3.4", IpAddress.parse("::ffff:1.2.3.4").toString());
+        assertEquals("36.112.10.1", IpAddress.parse(" 36.112.10.1 ").toString());
+    }
+
+    @Test
+    void shouldRejectMalformedAddresses() {
+        String[] samples = {
+                "", "unknown", "1.2.3", "1.2.3.4.5", "256.1.1.1", "1..2.3", "1.2.3.4:8080",
+                ":::", "1:2:3:4:5:6:7:8:9", "1::2::3", "12345::", "fe80::1%eth0", "1:2:3:4:5:6:7:1.2.3.4", "localhost"
+        };
+        for (String sample : samples) {
+            assertNull(IpAddress.parse(sample), sample);
+        }
+        assertNull(IpAddress.parse(null));
+    }
+
+    @Test
+    void shouldClassifyNonPublicRanges() {
+        for (String local : new String[]{"127.0.0.1", "10.1.2.3", "172.16.0.1", "172.31.255.255", "192.168.1.10",
+                "169.254.1.1", "100.64.0.1", "100.127.255.255", "0.0.0.0", "::1", "::", "fd12::1", "fe80::1"}) {
+            assertTrue(IpAddress.parse(local).isLocalOrPrivate(), local);
+        }
+        for (String global : new String[]{"36.112.10.1", "172.32.0.1", "100.128.0.1", "8.8.8.8", "2409:8a1e::1", "fec0::1"}) {
+            assertFalse(IpAddress.parse(global).isLocalOrPrivate(), global);
+        }
+        assertTrue(IpAddress.parse("100.64.0.1").isCgnat());
+        assertTrue(IpAddress.parse("::ffff:10.0.0.1").isPrivate());
+    }
+
+    @Test
+    void shouldMatchCidr() {
+        IpCidr ipv4 = IpCidr.parse("172.16.0.0/12");
+        assertTrue(ipv4.contains(IpAddress.parse("172.20.1.1")));
+        assertFalse(ipv4.contains(IpAddress.parse("172.32.0.1")));
+        assertFalse(ipv4.contains(IpAddress.parse("2409:8a1e::1")));
+
+        IpCidr ipv6 = IpCidr.parse("2409:8a1e::/32");
+        assertTrue(ipv6.contains(IpAddress.parse("2409:8a1e:ffff::1")));
+        assertFalse(ipv6.contains(IpAddress.parse("2409:8a1f::1")));
+
+        assertTrue(IpCidr.parse("203.0.113.7").contains(IpAddress.parse("203.0.113.7")));
+        assertTrue(IpCidr.parse("0.0.0.0/0").contains(IpAddress.parse("8.8.8.8")));
+    }
+}
@@ -0,0 +1,55 @@
+package com.fingerprint.server.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * MinHash 分段工具单元测试。
+ */
+class MinHashUtilTest {
+
+    private static final List<String> FEATURES = List.of(
+            "ua=Mozilla/5.0 Chrome/123", "lang=zh-CN", "tz=Asia/Shanghai", "canvas=c1", "webgl=w1", "audio=a1",
+            "plugin=PDF Viewer", "plugin=Chrome PDF Viewer", "plugin=Native Client",
+            "platform=MacIntel", "arch=x86_64", "touch=0", "memory=16", "cpu=8", "screen=2560x1600", "color=24");
+
+    @Test
+    void shouldProduceStableBandsIndependentOfOrder() {
+        List<String> reversed = new ArrayList<>(FEATURES);
+        Collections.reverse(reversed);
+
+        List<String> bands = MinHashUtil.bands(FEATURES);
+
+        assertEquals(MinHashUtil.BANDS, bands.size());
+        assertEquals(bands, MinHashUtil.bands(reversed));
+        assertTrue(bands.get(0).startsWith("0:"));
+    }
+
+    @Test
+    void shouldShareBandsAfterPartialDrift() {
+        List<String> drifted = new ArrayList<>(FEATURES);
+        drifted.set(0, "ua=Mozilla/5.0 Chrome/124");
+        drifted.set(3, "canvas=c2");
+
+        List<String> shared = new ArrayList<>(MinHashUtil.bands(FEATURES));
+        shared.retainAll(MinHashUtil.bands(drifted));
+
+        assertFalse(shared.isEmpty(), "少量特征变化后仍应至少共享一个分段");
+    }
+
+    @Test
+    void shouldIgnoreNullFeaturesAndReturnEmptyForNoFeatures() {
+        assertTrue(MinHashUtil.bands(Arrays.asList(null, null)).isEmpty());
+        List<String> withNull = new ArrayList<>(FEATURES);
+        withNull.add(null);
+        assertEquals(MinHashUtil.bands(FEATURES), MinHashUtil.bands(withNull));
+    }
+}
@@ -0,0 +1,59 @@
+package com.fingerprint.server.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 字符串字典单元测试。
+ */
+class StringDictionaryTest {
+
+    @Test
+    void shouldReturnSharedInstanceForEqualValues() {
+        String first = new String("zh-CN-dictionary-test");
+        String second = new String("zh-CN-dictionary-test");
+
+        assertSame(StringDictionary.canonical(first), StringDictionary.canonical(second));
+        assertSame(first, StringDictionary.canonical(second), "首次出现的实例应被收录");
+    }
+
+    @Test
+    void shouldNotAdmitNullOrLongValues() {
+        String longValue = "x".repeat(StringDictionary.MAX_LENGTH + 1);
+
+        assertNull(StringDictionary.canonical((String) null));
+        assertSame(longValue, StringDictionary.canonical(longValue));
+        assertNotSame(longValue, StringDictionary.canonical(new String(longValue)));
+    }
+
+    @Test
+    void shouldCanonicalizeListElementsIntoNewList() {
+        String plugin = StringDictionary.canonical(new String("PDF Viewer-dictionary-test"));
+        List<String> source = List.of(new String("PDF Viewer-dictionary-test"), "Native Client");
+
+        List<String> result = StringDictionary.canonical(source);
+
+        assertEquals(source, result);
+        assertSame(plugin, result.get(0));
+        result.add("mutable");
+        assertNull(StringDictionary.canonical((List<String>) null));
+        assertEquals(Arrays.asList("a", null), StringDictionary.canonical(Arrays.asList("a", null)));
+    }
+
+    @Test
+    void shouldStayBounded() {
+        for (int i = 0; i < StringDictionary.MAX_ENTRIES + 100; i++) {
+            StringDictionary.canonical("bounded-" + i);
+        }
+
+        assertTrue(StringDictionary.size() <= StringDictionary.MAX_ENTRIES);
+    }
+}
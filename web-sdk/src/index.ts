@@ -53,8 +53,14 @@ export interface FingerprintClientOptions {
   certificateProvider?: () => Promise<CertificateFingerprint | undefined>;
   metadataProvider?: () => Promise<Record<string, unknown>>;
   fingerprintAgentProvider?: () => Promise<Awaited<ReturnType<typeof FingerprintJS.load>>>;
+  wireFormat?: WireFormat;
 }
 
+/**
+ * 上报请求体格式：`json` 或更紧凑的 `cbor`（`application/cbor`），后端同一接口均可接收。
+ */
+export type WireFormat = 'json' | 'cbor';
+
 /**
  * FingerprintJS 采集结果类型。
  */
@@ -113,6 +119,7 @@ export class FingerprintClient {
     this.options = {
       timeoutMs: 5000,
       headers: {},
+      wireFormat: 'json',
       ...options,
     } as FingerprintClient['options'];
     this.fetchImplementation = options.fetchImplementation ?? globalThis.fetch.bind(globalThis);
@@ -157,8 +164,10 @@ export class FingerprintClient {
     const controller = new AbortController();
     const timeout = setTimeout(() => controller.abort(), this.options.timeoutMs);
     try {
+      const cbor = this.options.wireFormat === 'cbor';
       const headers: Record<string, string> = {
-        'Content-Type': 'application/json',
+        'Content-Type': cbor ? 'application/cbor' : 'application/json',
+        Accept: 'application/json',
         ...this.options.headers,
       };
       if (this.options.apiKey) {
@@ -167,7 +176,7 @@ export class FingerprintClient {
       const response = await this.fetchImplementation(this.options.backendEndpoint, {
         method: 'POST',
         headers,
-        body: JSON.stringify(payload),
+        body: cbor ? encodeCbor(payload) : JSON.stringify(payload),
         signal: controller.signal,
       });
       if (!response.ok) {
@@ -247,3 +256,82 @@ export class FingerprintClient {
     return undefined;
   }
 }
+
+/**
+ * 将上报载荷编码为 CBOR（RFC 8949）。
+ *
+ * 只支持载荷用到的类型：对象、数组、字符串、数值、布尔与 null；与 `JSON.stringify` 一致，对象中值为 `undefined` 的键会被省略，
+ * 数组中的 `undefined` 编码为 null。整数使用最短的整数编码，其余数值编码为 64 位浮点数。
+ */
+export function encodeCbor(value: unknown): Uint8Array {
+  const bytes: number[] = [];
+  const textEncoder = new TextEncoder();
+  const scratch = new DataView(new ArrayBuffer(8));
+
+  const writeHeader = (majorType: number, length: number): void => {
+    const major = majorType << 5;
+    if (length < 24) {
+      bytes.push(major | length);
+    } else if (length < 0x100) {
+      bytes.push(major | 24, length);
+    } else if (length < 0x10000) {
+      bytes.push(major | 25, length >>> 8, length & 0xff);
+    } else if (length < 0x100000000) {
+      bytes.push(major | 26, length >>> 24, (length >>> 16) & 0xff, (length >>> 8) & 0xff, length & 0xff);
+    } else {
+      const high = Math.floor(length / 0x100000000);
+      const low = length >>> 0;
+      bytes.push(major | 27);
+      for (const word of [high, low]) {
+        bytes.push(word >>> 24, (word >>> 16) & 0xff, (word >>> 8) & 0xff, word & 0xff);
+      }
+    }
+  };
+
+  const writeNumber = (num: number): void => {
+    if (Number.isSafeInteger(num)) {
+      if (num >= 0) {
+        writeHeader(0, num);
+      } else {
+        writeHeader(1, -1 - num);
+      }
+      return;
+    }
+    scratch.setFloat64(0, num);
+    bytes.push(0xfb);
+    for (let i = 0; i < 8; i++) {
+      bytes.push(scratch.getUint8(i));
+    }
+  };
+
+  const write = (item: unknown): void => {
+    if (item === null || item === undefined) {
+      bytes.push(0xf6);
+    } else if (typeof item === 'boolean') {
+      bytes.push(item ? 0xf5 : 0xf4);
+    } else if (typeof item === 'number') {
+      writeNumber(item);
+    } else if (typeof item === 'string') {
+      const encoded = textEncoder.encode(item);
+      writeHeader(3, encoded.length);
+      for (let i = 0; i < encoded.length; i++) {
+        bytes.push(encoded[i]);
+      }
+    } else if (Array.isArray(item)) {
+      writeHeader(4, item.length);
+      item.forEach(write);
+    } else if (typeof item === 'object') {
+      const entries = Object.entries(item as Record<string, unknown>).filter(([, entry]) => entry !== undefined);
+      writeHeader(5, entries.length);
+      for (const [key, entry] of entries) {
+        write(key);
+        write(entry);
+      }
+    } else {
+      throw new TypeError(`Unsupported CBOR value type: ${typeof item}`);
+    }
+  };
+
+  write(value);
+  return Uint8Array.from(bytes);
+}